@@ -26,18 +26,16 @@ package org.identityconnectors.ldap;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.TimeZone;
-import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
-import javax.naming.directory.SearchControls;
+import javax.naming.directory.Attributes;
 import javax.naming.directory.SearchResult;
-import javax.naming.ldap.LdapContext;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
-import org.identityconnectors.framework.common.objects.ObjectClass;
-import org.identityconnectors.ldap.search.LdapInternalSearch;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
 
 /**
  *
@@ -56,6 +54,8 @@ public class ADLdapUtil {
      * Maximum number of members retrieved from a group in one search 
      */
     public static final int GROUP_MEMBERS_MAXRANGE = 1500;
+
+    private static final String GROUP_MEMBER_ATTR = "member";
     
     /*
     * The time difference between Java and .Net for Dates
@@ -200,46 +200,56 @@ public class ADLdapUtil {
     
     /*
      * This method returns the list of members when the group has over 1500 members.
-     * 
+     * The ranges are read one at a time, only the current one is kept besides the list.
      */
     public static List fetchGroupMembersByRange(LdapConnection conn, LdapEntry entry){
-        boolean done = false;
-        int first = 0;
-        int last = GROUP_MEMBERS_MAXRANGE -1;
         List members = new ArrayList();
-        // get the first slice (0-1499)
-        org.identityconnectors.framework.common.objects.Attribute range = conn.getSchemaMapping().createAttribute(ObjectClass.GROUP, String.format("member;range=%d-%d",first,last), entry, false);
-        if (range != null){
-            members.addAll(range.getValue());
-            first = last +1;
-            last = first + GROUP_MEMBERS_MAXRANGE -1;
-            
-            while (!done) {
-                try {
-                    SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
-                    controls.setSearchScope(SearchControls.OBJECT_SCOPE);
-                    controls.setReturningAttributes(new String[]{String.format("member;range=%d-%d", first, last)});
-                    LdapContext context = conn.getInitialContext().newInstance(null);
-                    NamingEnumeration<SearchResult> entries = context.search(entry.getDN(), "objectclass=*", controls);
-                    SearchResult res = entries.next();
-                    if (res != null) {
-                        range = conn.getSchemaMapping().createAttribute(ObjectClass.GROUP, String.format("member;range=%d-%d", first, last), LdapEntry.create(null,res), true);
-                        // we hit the last slice... so the range ends with an '*'
-                        if (range.getValue().isEmpty()) {
-                            range = conn.getSchemaMapping().createAttribute(ObjectClass.GROUP, String.format("member;range=%d-*", first), LdapEntry.create(null,res), true);
-                            done = true;
-                        }
-                        members.addAll(range.getValue());
-                    }
-                } catch (NamingException e) {
-                    log.error(e, "Error reading group member;range attribute");
-                }
-                first = last + 1;
-                last = first + GROUP_MEMBERS_MAXRANGE -1;
+        Iterator<Object> values = getGroupMembersByRange(conn, entry);
+        if (values != null) {
+            while (values.hasNext()) {
+                members.add(values.next());
             }
         }
         return members;
     }
+
+    public static org.identityconnectors.framework.common.objects.Attribute buildGroupMembersByRange(LdapConnection conn, SearchResult result, String attrName){
+        return buildGroupMembersByRange(conn, LdapEntry.create(null, result), attrName);
+    }
+
+    /*
+     * Builds the attribute with the members of a group which has over 1500 members
+     * directly from the ranges, without collecting them in a list first.
+     */
+    public static org.identityconnectors.framework.common.objects.Attribute buildGroupMembersByRange(LdapConnection conn, LdapEntry entry, String attrName){
+        AttributeBuilder builder = new AttributeBuilder();
+        builder.setName(attrName);
+        Iterator<Object> values = getGroupMembersByRange(conn, entry);
+        if (values != null) {
+            while (values.hasNext()) {
+                builder.addValue(values.next());
+            }
+        }
+        return builder.build();
+    }
+
+    /*
+     * Iterates over the members of a group which has over 1500 members, reading
+     * the next range from the server only once the current one has been consumed.
+     * Returns null if the members of the entry are not ranged.
+     */
+    public static Iterator<Object> getGroupMembersByRange(LdapConnection conn, LdapEntry entry){
+        return RangedAttributeValues.create(conn, entry.getDN(), entry.getAttributes(), GROUP_MEMBER_ATTR);
+    }
+
+    /*
+     * Returns the first range of members of a group which has over 1500 members,
+     * such as member;range=0-1499, or null if the members are not ranged.
+     * The size of the ranges depends on the MaxValRange policy of the server.
+     */
+    public static Attribute getGroupMembersRange(Attributes attrs){
+        return RangedAttributeValues.getRange(attrs, GROUP_MEMBER_ATTR);
+    }
     
     public static Date getJavaDateFromADTime(String adTime) {
         long milliseconds = (Long.parseLong(adTime) / 10000) - DIFF_NET_JAVA_FOR_DATE_AND_TIMES;
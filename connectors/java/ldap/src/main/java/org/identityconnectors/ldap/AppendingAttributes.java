@@ -207,7 +207,7 @@ public abstract class AppendingAttributes implements Attributes {
 
         @Override
         protected Enumeration<Attribute> getRemainingValues() {
-            final Set<String> remaining = getAttributeIDsToAppend();
+            final Set<String> remaining = new HashSet<String>(getAttributeIDsToAppend());
             remaining.removeAll(replaced);
 
             return new Enumeration<Attribute>() {
@@ -244,7 +244,7 @@ public abstract class AppendingAttributes implements Attributes {
 
         @Override
         protected Enumeration<String> getRemainingValues() {
-            final Set<String> remaining = getAttributeIDsToAppend();
+            final Set<String> remaining = new HashSet<String>(getAttributeIDsToAppend());
             remaining.removeAll(replaced);
 
             return new Enumeration<String>() {
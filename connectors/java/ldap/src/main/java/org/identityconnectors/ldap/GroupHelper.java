@@ -29,23 +29,31 @@ import static org.identityconnectors.ldap.LdapUtil.escapeAttrValue;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import javax.naming.InvalidNameException;
+import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
 import javax.naming.directory.AttributeInUseException;
+import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.ModificationItem;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
 import javax.naming.ldap.LdapContext;
 import javax.naming.ldap.LdapName;
 
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.ldap.search.LdapSearches;
+import org.identityconnectors.ldap.search.MatchedValuesControl;
 import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
 
 public class GroupHelper {
@@ -84,6 +92,46 @@ public class GroupHelper {
         return handler.getResults();
     }
 
+    /**
+     * Returns the LDAP groups of each of the given entries, keyed by the
+     * entry DN. The groups of all entries are retrieved with a single search.
+     * The server must support the {@link MatchedValuesControl}, so that only
+     * the member values of the given entries are returned, however large the
+     * groups are. If the server returns the members of some group incompletely
+     * anyway, the groups are retrieved for each entry separately.
+     */
+    public Map<String, List<String>> getLdapGroupsByMember(Collection<String> entryDNs) {
+        log.ok("Retrieving LDAP groups for {0} entries", entryDNs.size());
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        if (entryDNs.isEmpty()) {
+            return result;
+        }
+        String memberAttr = getLdapGroupMemberAttribute();
+        ToMemberGroupsHandler<LdapName> handler = new ToMemberGroupsHandler<LdapName>(memberAttr) {
+            protected LdapName toKey(String memberValue) {
+                try {
+                    return new LdapName(memberValue);
+                } catch (InvalidNameException e) {
+                    // Not a member we are looking for.
+                    return null;
+                }
+            }
+        };
+        for (String entryDN : entryDNs) {
+            handler.addMember(LdapUtil.quietCreateLdapName(entryDN));
+        }
+        String filter = createAttributeFilter(memberAttr, entryDNs);
+        LdapSearches.findEntries(handler, conn, filter, createMatchedValuesControls(memberAttr, entryDNs), memberAttr);
+        for (String entryDN : entryDNs) {
+            if (handler.isComplete()) {
+                result.put(entryDN, handler.getGroups(LdapUtil.quietCreateLdapName(entryDN)));
+            } else {
+                result.put(entryDN, getLdapGroups(entryDN));
+            }
+        }
+        return result;
+    }
+
     public Set<GroupMembership> getLdapGroupMemberships(String entryDN) {
         log.ok("Retrieving LDAP group memberships for {0}", entryDN);
         String filter = createAttributeFilter(getLdapGroupMemberAttribute(), singletonList(entryDN));
@@ -128,6 +176,37 @@ public class GroupHelper {
         return handler.getResults();
     }
 
+    /**
+     * Returns the POSIX groups of each of the given POSIX reference attribute
+     * values, keyed by the value. Like {@link #getLdapGroupsByMember}, the
+     * groups are retrieved with a single search when possible.
+     */
+    public Map<String, List<String>> getPosixGroupsByMember(Collection<String> posixRefAttrs) {
+        log.ok("Retrieving POSIX groups for {0}", posixRefAttrs);
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        if (posixRefAttrs.isEmpty()) {
+            return result;
+        }
+        ToMemberGroupsHandler<String> handler = new ToMemberGroupsHandler<String>("memberUid") {
+            protected String toKey(String memberValue) {
+                return memberValue;
+            }
+        };
+        for (String posixRefAttr : posixRefAttrs) {
+            handler.addMember(posixRefAttr);
+        }
+        String filter = createAttributeFilter("memberUid", posixRefAttrs);
+        LdapSearches.findEntries(handler, conn, filter, createMatchedValuesControls("memberUid", posixRefAttrs), "memberUid");
+        for (String posixRefAttr : posixRefAttrs) {
+            if (handler.isComplete()) {
+                result.put(posixRefAttr, handler.getGroups(posixRefAttr));
+            } else {
+                result.put(posixRefAttr, getPosixGroups(singletonList(posixRefAttr)));
+            }
+        }
+        return result;
+    }
+
     public Set<GroupMembership> getPosixGroupMemberships(Collection<String> posixRefAttrs) {
         log.ok("Retrieving POSIX group memberships for {0}", posixRefAttrs);
         ToGroupMembershipHandler handler = new ToGroupMembershipHandler();
@@ -184,6 +263,10 @@ public class GroupHelper {
         return builder.toString();
     }
 
+    private static Control[] createMatchedValuesControls(String memberAttr, Collection<String> memberValues) {
+        return new Control[] { new MatchedValuesControl(memberAttr, memberValues, Control.CRITICAL) };
+    }
+
     private void addMemberToGroup(String memberAttr, String memberValue, String groupDN, LdapContext context) {
         BasicAttribute attr = new BasicAttribute(memberAttr, memberValue);
         ModificationItem item = new ModificationItem(DirContext.ADD_ATTRIBUTE, attr);
@@ -329,6 +412,71 @@ public class GroupHelper {
         }
     }
 
+    /**
+     * Collects the groups of a known set of members from the member attribute
+     * of the returned groups.
+     */
+    private abstract static class ToMemberGroupsHandler<K> implements LdapSearchResultsHandler {
+
+        private final String memberAttr;
+        private final Map<K, List<String>> groupsByMember = new HashMap<K, List<String>>();
+        private boolean complete = true;
+
+        public ToMemberGroupsHandler(String memberAttr) {
+            this.memberAttr = memberAttr;
+        }
+
+        /**
+         * Returns the key of the member value, or {@code null} if the value
+         * cannot be a member we are looking for.
+         */
+        protected abstract K toKey(String memberValue);
+
+        public void addMember(K member) {
+            groupsByMember.put(member, new ArrayList<String>());
+        }
+
+        public boolean handle(String baseDN, SearchResult searchResult) throws NamingException {
+            String groupDN = LdapEntry.create(baseDN, searchResult).getDN().toString();
+            Attributes attrs = searchResult.getAttributes();
+            Attribute attr = attrs.get(memberAttr);
+            if (attr == null || isRanged(attrs)) {
+                log.ok("Incomplete {0} values returned for group {1}", memberAttr, groupDN);
+                complete = false;
+                return false;
+            }
+            NamingEnumeration<?> values = attr.getAll();
+            while (values.hasMore()) {
+                Object value = values.next();
+                K key = value instanceof String ? toKey((String) value) : null;
+                List<String> groups = key != null ? groupsByMember.get(key) : null;
+                if (groups != null && !groups.contains(groupDN)) {
+                    groups.add(groupDN);
+                }
+            }
+            return true;
+        }
+
+        private boolean isRanged(Attributes attrs) throws NamingException {
+            String rangedPrefix = memberAttr + ";range=";
+            NamingEnumeration<String> ids = attrs.getIDs();
+            while (ids.hasMore()) {
+                if (ids.next().regionMatches(true, 0, rangedPrefix, 0, rangedPrefix.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public List<String> getGroups(K member) {
+            return groupsByMember.get(member);
+        }
+    }
+
     private static final class ToGroupMembershipHandler implements LdapSearchResultsHandler {
 
         private final Set<GroupMembership> results = new HashSet<GroupMembership>();
@@ -159,6 +159,12 @@ public class LdapConfiguration extends AbstractConfiguration {
      */
     private boolean maintainPosixGroupMembership = false;
 
+    /**
+     * The number of entries whose LDAP or POSIX groups are retrieved with a
+     * single group search.
+     */
+    private int groupMembershipBatchSize = 100;
+
     /**
      * If the server stores passwords in clear text, we will hash them with
      * the algorithm specified here.
@@ -194,6 +200,12 @@ public class LdapConfiguration extends AbstractConfiguration {
      */
     private int blockSize = 100;
 
+    /**
+     * The number of base contexts searched concurrently, each on its own
+     * connection. With 1, the base contexts are searched one after another.
+     */
+    private int parallelBaseContextSearches = 1;
+
     /**
      * If true, simple paged search will be preferred over VLV index search
      * when both are available.
@@ -301,10 +313,18 @@ public class LdapConfiguration extends AbstractConfiguration {
 
         checkNotBlank(groupMemberAttribute, "groupMemberAttribute.notBlank");
 
+        if (groupMembershipBatchSize <= 0) {
+            failValidation("groupMembershipBatchSize.legalValue");
+        }
+
         if (blockSize <= 0) {
             failValidation("blockSize.legalValue");
         }
 
+        if (parallelBaseContextSearches <= 0) {
+            failValidation("parallelBaseContextSearches.legalValue");
+        }
+
         checkNotBlank(vlvSortAttribute, "vlvSortAttribute.notBlank");
 
         checkNotBlank(uidAttribute, "uidAttribute.notBlank");
@@ -602,6 +622,14 @@ public class LdapConfiguration extends AbstractConfiguration {
         this.maintainPosixGroupMembership = maintainPosixGroupMembership;
     }
 
+    public int getGroupMembershipBatchSize() {
+        return groupMembershipBatchSize;
+    }
+
+    public void setGroupMembershipBatchSize(int groupMembershipBatchSize) {
+        this.groupMembershipBatchSize = groupMembershipBatchSize;
+    }
+
     public String getPasswordHashAlgorithm() {
         return passwordHashAlgorithm;
     }
@@ -642,6 +670,14 @@ public class LdapConfiguration extends AbstractConfiguration {
         this.blockSize = blockSize;
     }
 
+    public int getParallelBaseContextSearches() {
+        return parallelBaseContextSearches;
+    }
+
+    public void setParallelBaseContextSearches(int parallelBaseContextSearches) {
+        this.parallelBaseContextSearches = parallelBaseContextSearches;
+    }
+
     public Boolean getUsePagedResultControl() {
         return usePagedResultControl;
     }
@@ -892,10 +928,12 @@ public class LdapConfiguration extends AbstractConfiguration {
         builder.append(groupMemberAttribute);
         builder.append(maintainLdapGroupMembership);
         builder.append(maintainPosixGroupMembership);
+        builder.append(groupMembershipBatchSize);
         builder.append(passwordHashAlgorithm);
         builder.append(respectResourcePasswordPolicyChangeAfterReset);
         builder.append(useBlocks);
         builder.append(blockSize);
+        builder.append(parallelBaseContextSearches);
         builder.append(usePagedResultControl);
         builder.append(vlvSortAttribute);
         builder.append(vlvSortOrderingRule);
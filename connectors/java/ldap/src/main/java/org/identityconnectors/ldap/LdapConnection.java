@@ -110,6 +110,8 @@ public class LdapConnection {
     private final LdapConfiguration config;
     private final LdapSchemaMapping schemaMapping;
     private LdapContext initCtx;
+    private final List<LdapContext> idleSearchContexts = new ArrayList<LdapContext>();
+    private LdapNativeSchema nativeSchema;
     private Set<String> supportedControls;
     private ServerType serverType;
 
@@ -152,6 +154,65 @@ public class LdapConnection {
         return initCtx;
     }
     
+    /**
+     * Returns a connection with the same configuration for a search running
+     * concurrently with other operations on this connection. It has its own
+     * connection to the server, taken from the search context pool, and
+     * must be given back by {@link #returnSearchConnection}.
+     */
+    public LdapConnection borrowSearchConnection() {
+        LdapConnection result = new LdapConnection(config);
+        result.initCtx = borrowSearchContext();
+        return result;
+    }
+
+    public void returnSearchConnection(LdapConnection searchConn) {
+        LdapContext ctx = searchConn.initCtx;
+        searchConn.initCtx = null;
+        // The context is missing if the search closed the connection.
+        if (ctx != null) {
+            returnSearchContext(ctx);
+        }
+    }
+
+    private LdapContext borrowSearchContext() {
+        for (;;) {
+            LdapContext ctx;
+            synchronized (idleSearchContexts) {
+                if (idleSearchContexts.isEmpty()) {
+                    break;
+                }
+                ctx = idleSearchContexts.remove(idleSearchContexts.size() - 1);
+            }
+            // The server may have dropped the connection while it was idle.
+            if (isAlive(ctx)) {
+                return ctx;
+            }
+            quietClose(ctx);
+        }
+        return connect(config.getPrincipal(), config.getCredentials());
+    }
+
+    private void returnSearchContext(LdapContext ctx) {
+        synchronized (idleSearchContexts) {
+            if (idleSearchContexts.size() < config.getParallelBaseContextSearches()) {
+                idleSearchContexts.add(ctx);
+                return;
+            }
+        }
+        quietClose(ctx);
+    }
+
+    private static boolean isAlive(LdapContext ctx) {
+        try {
+            ctx.getAttributes("", new String[]{"subschemaSubentry"});
+            return true;
+        } catch (NamingException e) {
+            log.info(e, "Discarding a stale search context");
+            return false;
+        }
+    }
+
     public LdapContext getRunAsContext(String principal, GuardedString credentials) {
         return connect(principal, credentials);
     }
@@ -332,6 +393,12 @@ public class LdapConnection {
         } finally {
             initCtx = null;
         }
+        synchronized (idleSearchContexts) {
+            for (LdapContext ctx : idleSearchContexts) {
+                quietClose(ctx);
+            }
+            idleSearchContexts.clear();
+        }
     }
 
     private static void quietClose(LdapContext ctx) {
@@ -348,16 +415,44 @@ public class LdapConnection {
         return schemaMapping;
     }
 
+    /**
+     * @deprecated Use {@link #getNativeSchema()}, which returns the same
+     * shared schema.
+     */
+    @Deprecated
     public LdapNativeSchema createNativeSchema() {
+        return getNativeSchema();
+    }
+
+    /**
+     * Returns the native schema. When the schema is read from the server, it is
+     * taken from the cache shared by all connections to the same server as the
+     * same user, if it has not been modified since it was cached.
+     */
+    public LdapNativeSchema getNativeSchema() {
+        if (nativeSchema != null) {
+            return nativeSchema;
+        }
         try {
             if (config.isReadSchema()) {
-                return new ServerNativeSchema(this);
+                nativeSchema = NativeSchemaCache.getServerNativeSchema(this, getNativeSchemaCacheKey());
             } else {
-                return new StaticNativeSchema();
+                nativeSchema = new StaticNativeSchema();
             }
         } catch (NamingException e) {
             throw new ConnectorException(e);
         }
+        return nativeSchema;
+    }
+
+    private String getNativeSchemaCacheKey() {
+        StringBuilder builder = new StringBuilder(getLdapUrls());
+        if (config.isSsl()) {
+            builder.append(" ssl");
+        }
+        builder.append(' ');
+        builder.append(config.getPrincipal());
+        return builder.toString();
     }
 
     public AuthenticationResult authenticate(String entryDN, GuardedString password) {
@@ -0,0 +1,97 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.     
+ * 
+ * The contents of this file are subject to the terms of the Common Development 
+ * and Distribution License("CDDL") (the "License").  You may not use this file 
+ * except in compliance with the License.
+ * 
+ * You can obtain a copy of the License at 
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations 
+ * under the License. 
+ * 
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields 
+ * enclosed by brackets [] replaced by your own identifying information: 
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap;
+
+import static org.identityconnectors.ldap.LdapUtil.getStringAttrValue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * A process-wide cache of the native schemas read from the servers, shared
+ * by all connections to the same server as the same user. Before a cached
+ * schema is returned, it is revalidated by comparing the
+ * {@code modifyTimestamp} of the subschema entry, which is much cheaper than
+ * reading the whole schema again. A schema is not cached if the server does
+ * not return that timestamp.
+ */
+final class NativeSchemaCache {
+
+    private static final Log log = Log.getLog(NativeSchemaCache.class);
+
+    private static final ConcurrentMap<String, CachedSchema> cache = new ConcurrentHashMap<String, CachedSchema>();
+
+    private NativeSchemaCache() {
+    }
+
+    public static LdapNativeSchema getServerNativeSchema(LdapConnection conn, String key) throws NamingException {
+        LdapContext ctx = conn.getInitialContext();
+        CachedSchema cached = cache.get(key);
+        String subschemaDN;
+        if (cached != null) {
+            subschemaDN = cached.subschemaDN;
+        } else {
+            Attributes rootAttrs = ctx.getAttributes("", new String[] { "subschemaSubentry" });
+            subschemaDN = getStringAttrValue(rootAttrs, "subschemaSubentry");
+        }
+        String modifyTimestamp = null;
+        if (subschemaDN != null) {
+            Attributes attrs = ctx.getAttributes(subschemaDN, new String[] { "modifyTimestamp" });
+            modifyTimestamp = getStringAttrValue(attrs, "modifyTimestamp");
+        }
+        if (cached != null && modifyTimestamp != null && modifyTimestamp.equals(cached.modifyTimestamp)) {
+            log.ok("Using the cached schema of {0}", key);
+            return cached.schema;
+        }
+
+        log.ok("Reading the schema of {0}", key);
+        // The timestamp was read first, so a schema modified in the meantime
+        // will be read again next time.
+        ServerNativeSchema schema = new ServerNativeSchema(conn);
+        if (modifyTimestamp != null) {
+            cache.put(key, new CachedSchema(schema, subschemaDN, modifyTimestamp));
+        } else {
+            cache.remove(key);
+        }
+        return schema;
+    }
+
+    private static final class CachedSchema {
+
+        final ServerNativeSchema schema;
+        final String subschemaDN;
+        final String modifyTimestamp;
+
+        public CachedSchema(ServerNativeSchema schema, String subschemaDN, String modifyTimestamp) {
+            this.schema = schema;
+            this.subschemaDN = subschemaDN;
+            this.modifyTimestamp = modifyTimestamp;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.     
+ * 
+ * The contents of this file are subject to the terms of the Common Development 
+ * and Distribution License("CDDL") (the "License").  You may not use this file 
+ * except in compliance with the License.
+ * 
+ * You can obtain a copy of the License at 
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations 
+ * under the License. 
+ * 
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields 
+ * enclosed by brackets [] replaced by your own identifying information: 
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.ldap.LdapName;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Iterates over the values of an attribute which the server returns in
+ * ranges, as Active Directory does for the values of large multi-valued
+ * attributes such as {@code member}. Only the current range of values is
+ * held in memory; the next range is read from the entry once the current
+ * one has been consumed.
+ */
+public class RangedAttributeValues implements Iterator<Object> {
+
+    private static final Log log = Log.getLog(RangedAttributeValues.class);
+
+    private static final String RANGE_OPTION = ";range=";
+
+    private final LdapConnection conn;
+    private final LdapName entryDN;
+    private final String attrName;
+
+    private NamingEnumeration<?> values;
+    private int nextLow;
+
+    private RangedAttributeValues(LdapConnection conn, LdapName entryDN, String attrName, Attribute range) throws NamingException {
+        this.conn = conn;
+        this.entryDN = entryDN;
+        this.attrName = attrName;
+        setRange(range);
+    }
+
+    /**
+     * Returns the values of the given attribute if the given attributes
+     * contain a range of them, or {@code null} otherwise.
+     */
+    public static RangedAttributeValues create(LdapConnection conn, LdapName entryDN, Attributes attrs, String attrName) {
+        Attribute range = getRange(attrs, attrName);
+        if (range == null) {
+            return null;
+        }
+        try {
+            return new RangedAttributeValues(conn, entryDN, attrName, range);
+        } catch (NamingException e) {
+            throw new ConnectorException(e);
+        }
+    }
+
+    /**
+     * Returns the range of values of the given attribute contained in the
+     * given attributes, such as {@code member;range=0-1499}, or {@code null}.
+     */
+    public static Attribute getRange(Attributes attrs, String attrName) {
+        String prefix = attrName + RANGE_OPTION;
+        try {
+            NamingEnumeration<? extends Attribute> attrEnum = attrs.getAll();
+            while (attrEnum.hasMore()) {
+                Attribute attr = attrEnum.next();
+                if (attr.getID().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    return attr;
+                }
+            }
+        } catch (NamingException e) {
+            throw new ConnectorException(e);
+        }
+        return null;
+    }
+
+    private void setRange(Attribute range) throws NamingException {
+        String id = range.getID();
+        String high = id.substring(id.lastIndexOf('-') + 1);
+        if ("*".equals(high)) {
+            nextLow = -1;
+        } else {
+            try {
+                nextLow = Integer.parseInt(high) + 1;
+            } catch (NumberFormatException e) {
+                throw new ConnectorException("Invalid range in attribute " + id);
+            }
+        }
+        values = range.getAll();
+    }
+
+    public boolean hasNext() {
+        try {
+            while (!values.hasMore()) {
+                if (nextLow < 0) {
+                    return false;
+                }
+                String rangeAttrName = attrName + RANGE_OPTION + nextLow + "-*";
+                log.ok("Reading {0} of {1}", rangeAttrName, entryDN);
+                Attributes attrs = conn.getInitialContext().getAttributes(entryDN, new String[] { rangeAttrName });
+                Attribute range = getRange(attrs, attrName);
+                if (range == null) {
+                    // The remaining values have been removed in the meantime.
+                    nextLow = -1;
+                    return false;
+                }
+                setRange(range);
+            }
+            return true;
+        } catch (NamingException e) {
+            throw new ConnectorException(e);
+        }
+    }
+
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return values.next();
+        } catch (NamingException e) {
+            throw new ConnectorException(e);
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -46,15 +46,14 @@ import org.identityconnectors.framework.common.objects.AttributeInfo.Flags;
 
 /**
  * Implements {@link LdapNativeSchema} by reading it from the server.
+ * Instances are not modified after they have been created, so they can
+ * be shared by several connections.
  */
 public class ServerNativeSchema implements LdapNativeSchema {
 
     // The LDAP directory attributes to expose as framework attributes.
     private static final Set<String> LDAP_DIRECTORY_ATTRS;
 
-    private final LdapConnection conn;
-    private final DirContext schemaCtx;
-
     private final Set<String> structuralLdapClasses = newCaseInsensitiveSet();
     private final Map<String, Set<String>> ldapClass2MustAttrs = newCaseInsensitiveMap();
     private final Map<String, Set<String>> ldapClass2MayAttrs = newCaseInsensitiveMap();
@@ -72,11 +71,10 @@ public class ServerNativeSchema implements LdapNativeSchema {
     }
 
     public ServerNativeSchema(LdapConnection conn) throws NamingException {
-        this.conn = conn;
-        schemaCtx = conn.getInitialContext().getSchema("");
+        DirContext schemaCtx = conn.getInitialContext().getSchema("");
         try {
-            initObjectClasses();
-            initAttributeDescriptions();
+            initObjectClasses(schemaCtx);
+            initAttributeDescriptions(schemaCtx, conn);
         } finally {
             schemaCtx.close();
         }
@@ -141,7 +139,7 @@ public class ServerNativeSchema implements LdapNativeSchema {
         return attrName2Type.get(ldapAttrName);
     }
 
-    private void initObjectClasses() throws NamingException {
+    private void initObjectClasses(DirContext schemaCtx) throws NamingException {
         DirContext objClassCtx = (DirContext) schemaCtx.lookup("ClassDefinition");
         NamingEnumeration<NameClassPair> objClassEnum = objClassCtx.list("");
         while (objClassEnum.hasMore()) {
@@ -183,7 +181,7 @@ public class ServerNativeSchema implements LdapNativeSchema {
         }
     }
 
-    private void initAttributeDescriptions() throws NamingException {
+    private void initAttributeDescriptions(DirContext schemaCtx, LdapConnection conn) throws NamingException {
         DirContext attrsCtx = (DirContext) schemaCtx.lookup("AttributeDefinition");
         NamingEnumeration<NameClassPair> attrsEnum = attrsCtx.list("");
         while (attrsEnum.hasMore()) {
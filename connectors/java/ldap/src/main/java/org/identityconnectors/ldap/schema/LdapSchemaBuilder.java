@@ -67,7 +67,7 @@ class LdapSchemaBuilder {
 
     public LdapSchemaBuilder(LdapConnection conn) {
         this.conn = conn;
-        this.nativeSchema = conn.createNativeSchema();
+        this.nativeSchema = conn.getNativeSchema();
         this.ignoredAttrs = CollectionUtil.newCaseInsensitiveSet();
     }
     
@@ -127,7 +127,7 @@ public class LdapSchemaMapping {
     private Set<String> getEffectiveLdapClasses(String ldapClass) {
         Set<String> result = ldapClass2Effective.get(ldapClass);
         if (result == null) {
-            result = conn.createNativeSchema().getEffectiveObjectClasses(ldapClass);
+            result = conn.getNativeSchema().getEffectiveObjectClasses(ldapClass);
             ldapClass2Effective.put(ldapClass, result);
         }
         return result;
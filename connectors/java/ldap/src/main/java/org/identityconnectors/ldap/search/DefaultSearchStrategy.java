@@ -27,6 +27,8 @@ import java.io.IOException;
 
 import static org.identityconnectors.ldap.LdapUtil.escapeDNValueOfJNDIReservedChars;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -51,16 +53,36 @@ public class DefaultSearchStrategy extends LdapSearchStrategy {
 
     private final boolean ignoreNonExistingBaseDNs;
     private final SortKey[] sortKeys;
+    private final Control[] requestControls;
     private boolean sizeLimitExceeded = false;
 
     public DefaultSearchStrategy(boolean ignoreNonExistingBaseDNs) {
         this.ignoreNonExistingBaseDNs = ignoreNonExistingBaseDNs;
         this.sortKeys = null;
+        this.requestControls = null;
+    }
+
+    /**
+     * @param requestControls additional controls sent with the search requests.
+     */
+    public DefaultSearchStrategy(boolean ignoreNonExistingBaseDNs, Control[] requestControls) {
+        this.ignoreNonExistingBaseDNs = ignoreNonExistingBaseDNs;
+        this.sortKeys = null;
+        this.requestControls = requestControls;
     }
 
     public DefaultSearchStrategy(boolean ignoreNonExistingBaseDNs, SortKey[] sortKeys) {
         this.ignoreNonExistingBaseDNs = ignoreNonExistingBaseDNs;
         this.sortKeys = sortKeys;
+        this.requestControls = null;
+    }
+
+    @Override
+    public LdapSearchStrategy copy() {
+        if (sortKeys != null && sortKeys.length > 0) {
+            return null;
+        }
+        return new DefaultSearchStrategy(ignoreNonExistingBaseDNs, requestControls);
     }
 
     @Override
@@ -68,9 +90,8 @@ public class DefaultSearchStrategy extends LdapSearchStrategy {
         log.ok("Searching in {0} with filter {1} and {2}", baseDNs, query, searchControlsToString(searchControls));
 
         Iterator<String> baseDNIter = baseDNs.iterator();
-        boolean proceed = true;
-        boolean isSorted = false;
         LdapContext ctx = conn.getInitialContext();
+        List<Control> controls = new ArrayList<Control>();
         
         if (sortKeys != null && sortKeys.length > 0){
             javax.naming.ldap.SortKey[] skis = new javax.naming.ldap.SortKey[sortKeys.length];
@@ -78,10 +99,29 @@ public class DefaultSearchStrategy extends LdapSearchStrategy {
                 skis[i] = new javax.naming.ldap.SortKey(sortKeys[i].getField(),sortKeys[i].isAscendingOrder(),null);
             }
             // We don't want to make this critical... better return unsorted results than nothing.
-            ctx = conn.getInitialContext().newInstance(new Control[]{new SortControl(skis, Control.NONCRITICAL)});
-            isSorted = true;
+            controls.add(new SortControl(skis, Control.NONCRITICAL));
         }
+        if (requestControls != null) {
+            controls.addAll(Arrays.asList(requestControls));
+        }
+        // The request controls need a context of their own, which is
+        // closed once all base DNs have been searched.
+        boolean ownContext = !controls.isEmpty();
+        if (ownContext) {
+            ctx = conn.getInitialContext().newInstance(controls.toArray(new Control[controls.size()]));
+        }
+
+        try {
+            searchBaseDNs(ctx, baseDNIter, query, searchControls, handler);
+        } finally {
+            if (ownContext) {
+                ctx.close();
+            }
+        }
+    }
 
+    private void searchBaseDNs(LdapContext ctx, Iterator<String> baseDNIter, String query, SearchControls searchControls, LdapSearchResultsHandler handler) throws NamingException {
+        boolean proceed = true;
         while (baseDNIter.hasNext() && proceed) {
             String baseDN = baseDNIter.next();
 
@@ -111,9 +151,6 @@ public class DefaultSearchStrategy extends LdapSearchStrategy {
                 }
             } finally {
                 results.close();
-                if (isSorted){
-                    ctx.close();
-                }
             }
         }
     }
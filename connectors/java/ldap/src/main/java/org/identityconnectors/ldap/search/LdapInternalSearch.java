@@ -59,6 +59,11 @@ public class LdapInternalSearch {
 
     public void execute(LdapSearchResultsHandler handler) {
         String filter = blankAsAllObjects(this.filter);
+        LdapSearchStrategy strategy = this.strategy;
+        int parallelism = conn.getConfiguration().getParallelBaseContextSearches();
+        if (parallelism > 1 && baseDNs.size() > 1 && strategy.copy() != null) {
+            strategy = new ParallelSearchStrategy(strategy, parallelism);
+        }
         try {
             strategy.doSearch(conn, baseDNs, filter, controls, handler);
         } catch (IOException e) {
@@ -25,8 +25,11 @@
  */
 package org.identityconnectors.ldap.search;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Collections.singletonList;
@@ -77,7 +80,8 @@ import org.identityconnectors.ldap.ADLdapUtil;
 import static org.identityconnectors.ldap.LdapUtil.buildMemberIdAttribute;
 import static org.identityconnectors.ldap.LdapUtil.getStringAttrValues;
 import static org.identityconnectors.ldap.ADLdapUtil.objectGUIDtoString;
-import static org.identityconnectors.ldap.ADLdapUtil.fetchGroupMembersByRange;
+import static org.identityconnectors.ldap.ADLdapUtil.buildGroupMembersByRange;
+import static org.identityconnectors.ldap.ADLdapUtil.getGroupMembersRange;
 import static org.identityconnectors.ldap.ADLdapUtil.getADLdapDatefromJavaDate;
 import static org.identityconnectors.ldap.ADLdapUtil.getJavaDateFromADTime;
 
@@ -146,11 +150,27 @@ public class LdapSearch {
         final String[] attrsToGetOption = options.getAttributesToGet();
         final Set<String> attrsToGet = getAttributesToGet(attrsToGetOption);
         LdapInternalSearch search = getInternalSearch(attrsToGet);
-        search.execute(new LdapSearchResultsHandler() {
-            public boolean handle(String baseDN, SearchResult result) throws NamingException {
-                return handler.handle(createConnectorObject(baseDN, result, attrsToGet, attrsToGetOption != null));
-            }
-        });
+        int batchSize = conn.getConfiguration().getGroupMembershipBatchSize();
+        if (batchSize > 1 && (attrsToGet.contains(LdapConstants.LDAP_GROUPS_NAME)
+                || attrsToGet.contains(LdapConstants.POSIX_GROUPS_NAME))
+                && conn.supportsControl(MatchedValuesControl.OID)) {
+            // Retrieve the groups of a batch of entries with a single search
+            // instead of one search per entry. Without the control the group
+            // search would return all members of every group found.
+            final GroupBatch batch = new GroupBatch(handler, attrsToGet, attrsToGetOption != null, batchSize);
+            search.execute(new LdapSearchResultsHandler() {
+                public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                    return batch.add(LdapEntry.create(baseDN, result));
+                }
+            });
+            batch.flush();
+        } else {
+            search.execute(new LdapSearchResultsHandler() {
+                public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                    return handler.handle(createConnectorObject(baseDN, result, attrsToGet, attrsToGetOption != null));
+                }
+            });
+        }
         
         if (handler instanceof SearchResultsHandler) {
         	String pagedResultsCookie = search.getPagedResultsCookie();
@@ -247,8 +267,16 @@ public class LdapSearch {
      * is used to compute the connector object's name attribute.
      */
     private ConnectorObject createConnectorObject(String baseDN, SearchResult result, Set<String> attrsToGet, boolean emptyAttrWhenNotFound) {
-        LdapEntry entry = LdapEntry.create(baseDN, result);
+        return createConnectorObject(LdapEntry.create(baseDN, result), attrsToGet, emptyAttrWhenNotFound, null, null);
+    }
 
+    /**
+     * Creates a {@link ConnectorObject} based on the given entry. The LDAP
+     * and POSIX groups are taken from the given maps if not {@code null},
+     * otherwise they are searched for.
+     */
+    private ConnectorObject createConnectorObject(LdapEntry entry, Set<String> attrsToGet, boolean emptyAttrWhenNotFound,
+            Map<String, List<String>> ldapGroupsByDN, Map<String, List<String>> posixGroupsByRef) {
         ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
         builder.setObjectClass(oclass);
         builder.setUid(conn.getSchemaMapping().createUid(oclass, entry));
@@ -260,11 +288,25 @@ public class LdapSearch {
                 continue;
             }
             if (LdapConstants.isLdapGroups(attrName)) {
-                List<String> ldapGroups = groupHelper.getLdapGroups(entry.getDN().toString());
+                List<String> ldapGroups;
+                if (ldapGroupsByDN != null) {
+                    ldapGroups = ldapGroupsByDN.get(entry.getDN().toString());
+                } else {
+                    ldapGroups = groupHelper.getLdapGroups(entry.getDN().toString());
+                }
                 attribute = AttributeBuilder.build(LdapConstants.LDAP_GROUPS_NAME, ldapGroups);
             } else if (LdapConstants.isPosixGroups(attrName)) {
                 Set<String> posixRefAttrs = getStringAttrValues(entry.getAttributes(), GroupHelper.getPosixRefAttribute());
-                List<String> posixGroups = groupHelper.getPosixGroups(posixRefAttrs);
+                List<String> posixGroups;
+                if (posixGroupsByRef != null) {
+                    Set<String> groups = new LinkedHashSet<String>();
+                    for (String posixRefAttr : posixRefAttrs) {
+                        groups.addAll(posixGroupsByRef.get(posixRefAttr));
+                    }
+                    posixGroups = new ArrayList<String>(groups);
+                } else {
+                    posixGroups = groupHelper.getPosixGroups(posixRefAttrs);
+                }
                 attribute = AttributeBuilder.build(LdapConstants.POSIX_GROUPS_NAME, posixGroups);
 			} else if (LdapConstants.PASSWORD.is(attrName)) {
 				try {
@@ -362,9 +404,9 @@ public class LdapSearch {
                         || ServerType.MSAD_LDS.equals(conn.getServerType())) {
                     // Make sure we're not hitting AD large group issue
                     // see: http://msdn.microsoft.com/en-us/library/ms817827.aspx
-                    if (entry.getAttributes().get("member;range=0-1499") != null) {
+                    if (getGroupMembersRange(entry.getAttributes()) != null) {
                         // we're in the limitation
-                        attribute = AttributeBuilder.build(attrName, fetchGroupMembersByRange(conn, entry));
+                        attribute = buildGroupMembersByRange(conn, entry, attrName);
                     }
                 }
                 if (conn.getConfiguration().isGetGroupMemberId()) {
@@ -380,7 +422,75 @@ public class LdapSearch {
         return builder.build();
     }
 
-    
+
+    /**
+     * Buffers the entries returned by a search and retrieves the LDAP and
+     * POSIX groups of each batch of entries at once, before the connector
+     * objects are passed to the handler.
+     */
+    private final class GroupBatch {
+
+        private final ResultsHandler handler;
+        private final Set<String> attrsToGet;
+        private final boolean emptyAttrWhenNotFound;
+        private final int batchSize;
+        private final List<LdapEntry> entries;
+
+        public GroupBatch(ResultsHandler handler, Set<String> attrsToGet, boolean emptyAttrWhenNotFound, int batchSize) {
+            this.handler = handler;
+            this.attrsToGet = attrsToGet;
+            this.emptyAttrWhenNotFound = emptyAttrWhenNotFound;
+            this.batchSize = batchSize;
+            entries = new ArrayList<LdapEntry>(batchSize);
+        }
+
+        /**
+         * Adds the entry to the batch, passing the batch to the handler if it
+         * is full. Returns false if the handler asked to stop.
+         */
+        public boolean add(LdapEntry entry) {
+            entries.add(entry);
+            if (entries.size() < batchSize) {
+                return true;
+            }
+            return flush();
+        }
+
+        public boolean flush() {
+            if (entries.isEmpty()) {
+                return true;
+            }
+            Map<String, List<String>> ldapGroupsByDN = null;
+            if (attrsToGet.contains(LdapConstants.LDAP_GROUPS_NAME)) {
+                List<String> entryDNs = new ArrayList<String>(entries.size());
+                for (LdapEntry entry : entries) {
+                    entryDNs.add(entry.getDN().toString());
+                }
+                ldapGroupsByDN = groupHelper.getLdapGroupsByMember(entryDNs);
+            }
+            Map<String, List<String>> posixGroupsByRef = null;
+            if (attrsToGet.contains(LdapConstants.POSIX_GROUPS_NAME)) {
+                Set<String> posixRefAttrs = new LinkedHashSet<String>();
+                for (LdapEntry entry : entries) {
+                    posixRefAttrs.addAll(getStringAttrValues(entry.getAttributes(), GroupHelper.getPosixRefAttribute()));
+                }
+                posixGroupsByRef = groupHelper.getPosixGroupsByMember(posixRefAttrs);
+            }
+            try {
+                for (LdapEntry entry : entries) {
+                    ConnectorObject object = createConnectorObject(entry, attrsToGet, emptyAttrWhenNotFound,
+                            ldapGroupsByDN, posixGroupsByRef);
+                    if (!handler.handle(object)) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                entries.clear();
+            }
+        }
+    }
+
     private PasswordDecryptor getPasswordDecryptor() {
         if (passwordDecryptor == null) {
             conn.getConfiguration().getPasswordDecryptionKey().access(new Accessor() {
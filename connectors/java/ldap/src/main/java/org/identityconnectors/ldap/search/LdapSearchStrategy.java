@@ -31,6 +31,7 @@ import javax.naming.NamingException;
 import javax.naming.directory.SearchControls;
 import javax.naming.ldap.LdapContext;
 
+import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.ldap.LdapConnection;
 
 public abstract class LdapSearchStrategy {
@@ -38,6 +39,21 @@ public abstract class LdapSearchStrategy {
     public abstract void doSearch(LdapConnection conn, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler)
             throws IOException, NamingException;
 
+    /**
+     * Returns a new strategy with the same settings, but none of the state
+     * of a previous search, for searching a base DN concurrently with others.
+     * Returns {@code null} if the results must not be interleaved with the
+     * results from other base DNs, e.g. because they are sorted or paged.
+     */
+    public LdapSearchStrategy copy() {
+        return null;
+    }
+
+    static boolean isPagedSearch(OperationOptions options) {
+        return options != null && (options.getPageSize() != null || options.getPagedResultsOffset() != null
+                || options.getPagedResultsCookie() != null);
+    }
+
     static String searchControlsToString(SearchControls controls) {
         StringBuilder builder = new StringBuilder();
         builder.append("SearchControls: {returningAttributes=");
@@ -24,15 +24,27 @@
 package org.identityconnectors.ldap.search;
 
 import static java.util.Collections.singletonList;
+import static org.identityconnectors.ldap.LdapUtil.escapeAttrValue;
 import static org.identityconnectors.ldap.LdapUtil.isUnderContexts;
+import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
 import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
 
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
@@ -41,6 +53,7 @@ import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.AttributeUtil;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.Uid;
@@ -154,6 +167,100 @@ public class LdapSearches {
         return search.getSingleResult();
     }
 
+    /**
+     * Finds the objects with the given entry DNs which also match the given
+     * native filter, if any. Instead of one search per entry, the entries
+     * under the same parent are retrieved with one search for their RDNs.
+     * Entries which do not exist or do not match are not in the returned map.
+     */
+    public static Map<LdapName, ConnectorObject> findObjectsByEntryDN(LdapConnection conn, ObjectClass oclass, Collection<String> entryDNs,
+            String nativeFilter, String... attrsToGet) {
+        log.ok("Searching for {0} objects of class {1} with filter {2}", entryDNs.size(), oclass.getObjectClassValue(), nativeFilter);
+
+        final Map<LdapName, ConnectorObject> result = new HashMap<LdapName, ConnectorObject>();
+        Map<LdapName, StringBuilder> rdnFiltersByParent = new LinkedHashMap<LdapName, StringBuilder>();
+        for (String entryDN : entryDNs) {
+            LdapName entryName = quietCreateLdapName(entryDN);
+            if (entryName.size() == 0 || result.containsKey(entryName)) {
+                continue;
+            }
+            String rdnFilter = createRdnFilter(entryName.getRdn(entryName.size() - 1));
+            if (rdnFilter == null) {
+                // Cannot search by this RDN, look the entry up by itself.
+                ConnectorObject object = findObject(conn, oclass, LdapFilter.forEntryDN(entryDN).withNativeFilter(nativeFilter), attrsToGet);
+                if (object != null) {
+                    result.put(entryName, object);
+                }
+                continue;
+            }
+            LdapName parentName = (LdapName) entryName.getPrefix(entryName.size() - 1);
+            StringBuilder rdnFilters = rdnFiltersByParent.get(parentName);
+            if (rdnFilters == null) {
+                rdnFilters = new StringBuilder();
+                rdnFiltersByParent.put(parentName, rdnFilters);
+            }
+            rdnFilters.append(rdnFilter);
+        }
+
+        OperationOptionsBuilder builder = new OperationOptionsBuilder();
+        builder.setAttributesToGet(attrsToGet);
+        builder.setScope(OperationOptions.SCOPE_ONE_LEVEL);
+        OperationOptions options = builder.build();
+        for (Map.Entry<LdapName, StringBuilder> entry : rdnFiltersByParent.entrySet()) {
+            LdapFilter filter = LdapFilter.forNativeFilter("(|" + entry.getValue() + ")");
+            if (nativeFilter != null) {
+                filter = filter.and(LdapFilter.forNativeFilter(nativeFilter));
+            }
+            LdapSearch search = new LdapSearch(conn, oclass, filter, null, options, entry.getKey().toString());
+            try {
+                search.execute(new ResultsHandler() {
+                    public boolean handle(ConnectorObject object) {
+                        result.put(quietCreateLdapName(object.getName().getNameValue()), object);
+                        return true;
+                    }
+                });
+            } catch (ConnectorException e) {
+                // Just as for a single entry, a missing parent means missing entries.
+                if (!(e.getCause() instanceof NameNotFoundException)) {
+                    throw e;
+                }
+                log.info(e, null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a filter matching the attribute values of the RDN, or
+     * {@code null} if they cannot be expressed in a filter.
+     */
+    private static String createRdnFilter(Rdn rdn) {
+        StringBuilder builder = new StringBuilder();
+        Attributes attrs = rdn.toAttributes();
+        try {
+            NamingEnumeration<? extends javax.naming.directory.Attribute> attrEnum = attrs.getAll();
+            while (attrEnum.hasMore()) {
+                javax.naming.directory.Attribute attr = attrEnum.next();
+                NamingEnumeration<?> values = attr.getAll();
+                while (values.hasMore()) {
+                    builder.append('(');
+                    builder.append(attr.getID());
+                    builder.append('=');
+                    if (!escapeAttrValue(values.next(), builder)) {
+                        return null;
+                    }
+                    builder.append(')');
+                }
+            }
+        } catch (NamingException e) {
+            return null;
+        }
+        if (rdn.size() > 1) {
+            builder.insert(0, "(&").append(')');
+        }
+        return builder.toString();
+    }
+
     public static LdapEntry getEntry(LdapConnection conn, LdapName entryDN, String... ldapAttrsToGet) {
         log.ok("Searching for entry {0}", entryDN);
 
@@ -179,13 +286,22 @@ public class LdapSearches {
     }
 
     public static void findEntries(LdapSearchResultsHandler handler, LdapConnection conn, String filter, String... ldapAttrsToGet) {
+        findEntries(handler, conn, filter, null, ldapAttrsToGet);
+    }
+
+    /**
+     * Like {@link #findEntries(LdapSearchResultsHandler, LdapConnection, String, String...)},
+     * but sends the given controls with the search requests.
+     */
+    public static void findEntries(LdapSearchResultsHandler handler, LdapConnection conn, String filter, Control[] requestControls,
+            String... ldapAttrsToGet) {
         log.ok("Searching for entries matching {0}", filter);
 
         List<String> baseDNs = Arrays.asList(conn.getConfiguration().getBaseContexts());
         SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
         controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
         controls.setReturningAttributes(ldapAttrsToGet);
-        LdapInternalSearch search = new LdapInternalSearch(conn, filter, baseDNs, new DefaultSearchStrategy(false), controls);
+        LdapInternalSearch search = new LdapInternalSearch(conn, filter, baseDNs, new DefaultSearchStrategy(false, requestControls), controls);
         search.execute(handler);
     }
 }
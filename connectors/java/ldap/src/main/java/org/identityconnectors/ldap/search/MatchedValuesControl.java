@@ -0,0 +1,100 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.     
+ * 
+ * The contents of this file are subject to the terms of the Common Development 
+ * and Distribution License("CDDL") (the "License").  You may not use this file 
+ * except in compliance with the License.
+ * 
+ * You can obtain a copy of the License at 
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations 
+ * under the License. 
+ * 
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields 
+ * enclosed by brackets [] replaced by your own identifying information: 
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap.search;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+import javax.naming.ldap.BasicControl;
+
+/**
+ * Matched Values control as specified in RFC 3876. Asks the server to return
+ * only the values of an attribute which match the given filter, instead of
+ * all values of the attribute.
+ *
+ *  ValuesReturnFilter ::= SEQUENCE OF SimpleFilterItem
+ *
+ *  SimpleFilterItem ::= CHOICE {
+ *         equalityMatch   [3] AttributeValueAssertion,
+ *         ... }
+ *
+ * Simplistic implementation that only supports equality matches of the
+ * values of a single attribute.
+ */
+public class MatchedValuesControl extends BasicControl {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String OID = "1.2.826.0.1.3344810.2.3";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int SEQUENCE = 0x30;
+    private static final int OCTET_STRING = 0x04;
+    /** Context specific, constructed, tag 3. */
+    private static final int EQUALITY_MATCH = 0xa3;
+
+    public MatchedValuesControl(String attrName, Collection<String> values, boolean criticality) {
+        super(OID, criticality, null);
+        super.value = encodeValue(attrName, values);
+    }
+
+    static byte[] encodeValue(String attrName, Collection<String> values) {
+        byte[] attrDesc = encodeElement(OCTET_STRING, attrName.getBytes(UTF8));
+        ByteArrayOutputStream items = new ByteArrayOutputStream();
+        for (String value : values) {
+            byte[] assertionValue = encodeElement(OCTET_STRING, value.getBytes(UTF8));
+            ByteArrayOutputStream assertion = new ByteArrayOutputStream(attrDesc.length + assertionValue.length);
+            assertion.write(attrDesc, 0, attrDesc.length);
+            assertion.write(assertionValue, 0, assertionValue.length);
+            byte[] item = encodeElement(EQUALITY_MATCH, assertion.toByteArray());
+            items.write(item, 0, item.length);
+        }
+        return encodeElement(SEQUENCE, items.toByteArray());
+    }
+
+    /**
+     * Encodes a BER element with the given tag, using the definite length
+     * form.
+     */
+    private static byte[] encodeElement(int tag, byte[] contents) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length + 6);
+        out.write(tag);
+        int length = contents.length;
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            int lengthBytes = 1;
+            while (length >>> (8 * lengthBytes) != 0) {
+                lengthBytes++;
+            }
+            out.write(0x80 | lengthBytes);
+            for (int i = lengthBytes - 1; i >= 0; i--) {
+                out.write(length >>> (8 * i));
+            }
+        }
+        out.write(contents, 0, contents.length);
+        return out.toByteArray();
+    }
+}
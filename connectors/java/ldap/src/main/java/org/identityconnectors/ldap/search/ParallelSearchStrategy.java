@@ -0,0 +1,209 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.     
+ * 
+ * The contents of this file are subject to the terms of the Common Development 
+ * and Distribution License("CDDL") (the "License").  You may not use this file 
+ * except in compliance with the License.
+ * 
+ * You can obtain a copy of the License at 
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations 
+ * under the License. 
+ * 
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields 
+ * enclosed by brackets [] replaced by your own identifying information: 
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap.search;
+
+import static java.util.Collections.singletonList;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.LdapConnection;
+
+/**
+ * A search strategy which searches several base DNs concurrently. Each base DN
+ * is searched by a {@linkplain LdapSearchStrategy#copy copy} of the given
+ * strategy, on a connection borrowed from the {@link LdapConnection}, so that
+ * paged and VLV searches keep their semantics per base DN. The results are
+ * passed to the handler in the calling thread, in the order they arrive.
+ */
+public class ParallelSearchStrategy extends LdapSearchStrategy {
+
+    private static final Log log = Log.getLog(ParallelSearchStrategy.class);
+
+    /**
+     * The maximum number of results waiting to be handled.
+     */
+    private static final int QUEUE_SIZE = 256;
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "LdapParallelSearch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final LdapSearchStrategy strategy;
+    private final int parallelism;
+
+    /**
+     * @param strategy the strategy whose {@linkplain LdapSearchStrategy#copy copies}
+     *        search the individual base DNs; must be copyable.
+     */
+    public ParallelSearchStrategy(LdapSearchStrategy strategy, int parallelism) {
+        this.strategy = strategy;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void doSearch(final LdapConnection conn, List<String> baseDNs, final String query, final SearchControls searchControls, LdapSearchResultsHandler handler)
+            throws IOException, NamingException {
+        log.ok("Searching in {0} concurrently with filter {1} and {2}", baseDNs, query, searchControlsToString(searchControls));
+
+        final Queue<String> pendingBaseDNs = new ConcurrentLinkedQueue<String>(baseDNs);
+        final BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(QUEUE_SIZE);
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        final Stop stop = new Stop();
+        int workers = Math.min(parallelism, baseDNs.size());
+        final CountDownLatch done = new CountDownLatch(workers);
+
+        for (int i = 0; i < workers; i++) {
+            EXECUTOR.execute(new Runnable() {
+                public void run() {
+                    try {
+                        LdapConnection searchConn = conn.borrowSearchConnection();
+                        try {
+                            String baseDN;
+                            while (!stop.isStopped() && (baseDN = pendingBaseDNs.poll()) != null) {
+                                // The strategies keep the state of the search in their fields.
+                                strategy.copy().doSearch(searchConn, singletonList(baseDN), query, searchControls, new LdapSearchResultsHandler() {
+                                    public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                                        return offer(results, new Result(baseDN, result), stop);
+                                    }
+                                });
+                            }
+                        } finally {
+                            conn.returnSearchConnection(searchConn);
+                        }
+                    } catch (Exception e) {
+                        error.compareAndSet(null, e);
+                        stop.stop();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            while (!stop.isStopped()) {
+                Result result = results.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    if (!handler.handle(result.baseDN, result.searchResult)) {
+                        stop.stop();
+                    }
+                } else if (done.getCount() == 0 && results.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException(e);
+        } finally {
+            // Stop the remaining searches, if any, and wait for them to give
+            // back their connections.
+            stop.stop();
+            results.clear();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Exception e = error.get();
+        if (e instanceof NamingException) {
+            throw (NamingException) e;
+        } else if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e != null) {
+            throw new ConnectorException(e);
+        }
+    }
+
+    /**
+     * Queues the result, waiting for room in the queue unless the search is
+     * stopped. Returns false if the search is stopped.
+     */
+    private static boolean offer(BlockingQueue<Result> results, Result result, Stop stop) throws InterruptedNamingException {
+        try {
+            while (!stop.isStopped()) {
+                if (results.offer(result, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedNamingException(e.getMessage());
+        }
+    }
+
+    private static final class Stop {
+
+        private volatile boolean stopped;
+
+        public void stop() {
+            stopped = true;
+        }
+
+        public boolean isStopped() {
+            return stopped;
+        }
+    }
+
+    private static final class Result {
+
+        private final String baseDN;
+        private final SearchResult searchResult;
+
+        public Result(String baseDN, SearchResult searchResult) {
+            this.baseDN = baseDN;
+            this.searchResult = searchResult;
+        }
+    }
+}
@@ -68,6 +68,14 @@ public class SimplePagedSearchStrategy extends LdapSearchStrategy {
         this.sortKeys = sortKeys;
     }
 
+    @Override
+    public LdapSearchStrategy copy() {
+        if (isPagedSearch(options) || (sortKeys != null && sortKeys.length > 0)) {
+            return null;
+        }
+        return new SimplePagedSearchStrategy(defaultPageSize);
+    }
+
     @Override
     public void doSearch(LdapConnection conn, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler) throws IOException, NamingException {
         log.ok("Searching in {0} with filter {1} and {2}", baseDNs, query, searchControlsToString(searchControls));
@@ -78,6 +78,14 @@ public class VlvIndexSearchStrategy extends LdapSearchStrategy {
         this.blockSize = blockSize;
     }
 
+    @Override
+    public LdapSearchStrategy copy() {
+        if (isPagedSearch(options) || (options != null && options.getSortKeys() != null && options.getSortKeys().length > 0)) {
+            return null;
+        }
+        return new VlvIndexSearchStrategy(options, vlvDefaultSortAttr, sortOrderingRuleID, blockSize);
+    }
+
     @Override
     public void doSearch(LdapConnection conn, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler) throws IOException, NamingException {
         getLog().ok("Searching in {0} with filter {1} and {2}", baseDNs, query, searchControlsToString(searchControls));
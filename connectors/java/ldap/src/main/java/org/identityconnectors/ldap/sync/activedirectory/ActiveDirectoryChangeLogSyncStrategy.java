@@ -66,7 +66,8 @@ import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
 import org.identityconnectors.ldap.search.SimplePagedSearchStrategy;
 import org.identityconnectors.ldap.sync.LdapSyncStrategy;
 import static org.identityconnectors.ldap.ADLdapUtil.objectGUIDtoString;
-import static org.identityconnectors.ldap.ADLdapUtil.fetchGroupMembersByRange;
+import static org.identityconnectors.ldap.ADLdapUtil.buildGroupMembersByRange;
+import static org.identityconnectors.ldap.ADLdapUtil.getGroupMembersRange;
 import static org.identityconnectors.ldap.ADLdapUtil.getADLdapDatefromJavaDate;
 import static org.identityconnectors.ldap.ADLdapUtil.getJavaDateFromADTime;
 import static org.identityconnectors.ldap.LdapConstants.OBJECTCLASS_ATTR;
@@ -153,14 +154,15 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
                         // Make sure we're not hitting AD large group issue
                         if (ObjectClass.GROUP.equals(oclass)) {
                             // see: http://msdn.microsoft.com/en-us/library/ms817827.aspx
-                            if (attrs.get("member;range=0-1499") != null) {
+                            javax.naming.directory.Attribute memberRange = getGroupMembersRange(attrs);
+                            if (memberRange != null) {
                                 // we're in the limitation
-                                Attribute range = AttributeBuilder.build("member", fetchGroupMembersByRange(conn, result));
+                                Attribute range = buildGroupMembersByRange(conn, result, "member");
                                 cob.addAttribute(range);
                                 if (conn.getConfiguration().isGetGroupMemberId()) {
                                     cob.addAttribute(buildMemberIdAttribute(conn, range));
                                 }
-                                attrs.remove("member;range=0-1499");
+                                attrs.remove(memberRange.getID());
                                 attrs.remove("member");
                             }
                         }
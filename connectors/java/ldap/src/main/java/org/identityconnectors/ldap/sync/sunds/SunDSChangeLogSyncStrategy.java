@@ -39,7 +39,9 @@ import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -73,7 +75,6 @@ import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapEntry;
 import org.identityconnectors.ldap.search.DefaultSearchStrategy;
-import org.identityconnectors.ldap.search.LdapFilter;
 import org.identityconnectors.ldap.search.LdapInternalSearch;
 import org.identityconnectors.ldap.search.LdapSearch;
 import org.identityconnectors.ldap.search.LdapSearches;
@@ -130,54 +131,108 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
         controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
         controls.setReturningAttributes(new String[] { changeNumberAttr, "targetDN", "changeType", "changes", "newRdn", "deleteOldRdn", "newSuperior", "targetEntryUUID", "targetUniqueID", "changeInitiatorsName" });
 
-        final int[] currentChangeNumber = { getStartChangeNumber(token) };
-        final int[] processedChangeNumber = { -1 };
-
-        final boolean[] results = new boolean[1];
-        do {
-            results[0] = false;
+        // Always specify the attributes to get. This will return attributes with
+        // empty values when the attribute is not present, allowing the client to
+        // detect that the attribute has been removed.
+        Set<String> attrsToGet;
+        if (options.getAttributesToGet() != null) {
+            attrsToGet = newSet(options.getAttributesToGet());
+            // Do not retrieve the password attribute from the entry (usually it is an unusable
+            // hashed value anyway). We will use the one from the change log below.
+            attrsToGet.remove(OperationalAttributes.PASSWORD_NAME);
+        } else {
+            attrsToGet = newSet(LdapSearch.getAttributesReturnedByDefault(conn, oclass));
+        }
+        // If objectClass is not in the list of attributes to get, prepare to remove it later.
+        boolean removeObjectClass = attrsToGet.add("objectClass");
+        String[] attrsToGetArray = attrsToGet.toArray(new String[attrsToGet.size()]);
 
-            String filter = getChangeLogSearchFilter(changeNumberAttr, currentChangeNumber[0]);
+        int currentChangeNumber = getStartChangeNumber(token);
+        int[] processedChangeNumber = { -1 };
+        boolean proceed = true;
+        while (proceed) {
+            String filter = getChangeLogSearchFilter(changeNumberAttr, currentChangeNumber);
             LdapInternalSearch search = new LdapInternalSearch(conn, filter, singletonList(context), new DefaultSearchStrategy(false), controls);
 
+            final List<ChangeLogEntry> block = new ArrayList<ChangeLogEntry>();
             search.execute(new LdapSearchResultsHandler() {
                 public boolean handle(String baseDN, SearchResult result) throws NamingException {
-                    results[0] = true;
                     LdapEntry entry = LdapEntry.create(baseDN, result);
-
                     int changeNumber = convertToInt(getStringAttrValue(entry.getAttributes(), changeNumberAttr), -1);
-                    if (changeNumber > currentChangeNumber[0]) {
-                        currentChangeNumber[0] = changeNumber;
-                    }
-
-                    SyncDelta delta = createSyncDelta(entry, changeNumber, options.getAttributesToGet());
-                    if (delta != null) {
-                        boolean handled = handler.handle(delta);
-                        if (handled){
-                            processedChangeNumber[0] = changeNumber;
-                        } else{
-                            results[0] = false;
-                        }
-                        return handled;
-                    }
-                    processedChangeNumber[0] = changeNumber;
+                    block.add(new ChangeLogEntry(entry, changeNumber));
                     return true;
                 }
             });
+            if (block.isEmpty()) {
+                break;
+            }
+
+            Collections.sort(block);
+            proceed = processBlock(block, handler, attrsToGetArray, removeObjectClass, processedChangeNumber);
 
             // We have already processed the current change.
             // In the next cycle we want to start with the next change.
-            if (results[0]) {
-                currentChangeNumber[0]++;
+            int lastChangeNumber = block.get(block.size() - 1).changeNumber;
+            if (lastChangeNumber > currentChangeNumber) {
+                currentChangeNumber = lastChangeNumber;
             }
-        } while (results[0]);
+            currentChangeNumber++;
+        }
         // ICF 1.4 now allows us to send the Token even if no entries were actually processed
         if (processedChangeNumber[0] != -1){
             ((SyncTokenResultsHandler)handler).handleResult(new SyncToken(processedChangeNumber[0]));
         }
     }
 
-    private SyncDelta createSyncDelta(LdapEntry changeLogEntry, int changeNumber, String[] attrsToGetOption) {
+    /**
+     * Creates and passes to the handler the sync deltas for a block of change
+     * log entries sorted by change number. The current state of all entries
+     * modified in the block is retrieved at once, and only once per entry,
+     * no matter how many changes in the block affected that entry. The last
+     * change processed, whether passed to the handler or skipped, is stored
+     * in {@code processedChangeNumber}.
+     */
+    private boolean processBlock(List<ChangeLogEntry> block, SyncResultsHandler handler, String[] attrsToGet, boolean removeObjectClass,
+            int[] processedChangeNumber) {
+        List<PendingSyncDelta> pendingDeltas = new ArrayList<PendingSyncDelta>(block.size());
+        Set<String> modifiedEntryDNs = new LinkedHashSet<String>();
+        for (ChangeLogEntry entry : block) {
+            PendingSyncDelta pendingDelta = prepareSyncDelta(entry.entry, entry.changeNumber);
+            // Keep skipped entries as nulls, they still advance the processed change number.
+            pendingDeltas.add(pendingDelta);
+            if (pendingDelta != null && pendingDelta.newTargetDN != null) {
+                modifiedEntryDNs.add(pendingDelta.newTargetDN);
+            }
+        }
+
+        Map<LdapName, ConnectorObject> modifiedEntries = Collections.emptyMap();
+        if (!modifiedEntryDNs.isEmpty()) {
+            modifiedEntries = LdapSearches.findObjectsByEntryDN(conn, oclass, modifiedEntryDNs, getModifiedEntrySearchFilter(), attrsToGet);
+        }
+
+        for (int i = 0; i < block.size(); i++) {
+            PendingSyncDelta pendingDelta = pendingDeltas.get(i);
+            SyncDelta delta = null;
+            if (pendingDelta != null && pendingDelta.newTargetDN != null) {
+                ConnectorObject object = modifiedEntries.get(quietCreateLdapName(pendingDelta.newTargetDN));
+                delta = createSyncDelta(pendingDelta, object, removeObjectClass);
+            } else if (pendingDelta != null) {
+                delta = pendingDelta.builder.build();
+            }
+            if (delta != null && !handler.handle(delta)) {
+                return false;
+            }
+            processedChangeNumber[0] = block.get(i).changeNumber;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the sync delta for a change log entry as far as possible without
+     * reading the modified entry. Returns {@code null} if the change log entry
+     * should be skipped.
+     */
+    private PendingSyncDelta prepareSyncDelta(LdapEntry changeLogEntry, int changeNumber) {
         log.ok("Attempting to create sync delta for log entry {0}", changeNumber);
 
         String targetDN = getStringAttrValue(changeLogEntry.getAttributes(), "targetDN");
@@ -198,6 +253,7 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
         SyncDeltaBuilder syncDeltaBuilder = new SyncDeltaBuilder();
         syncDeltaBuilder.setToken(new SyncToken(changeNumber));
         syncDeltaBuilder.setDeltaType(deltaType);
+        syncDeltaBuilder.setObjectClass(oclass);
 
         if (deltaType.equals(SyncDeltaType.DELETE)) {
             log.ok("Creating sync delta for deleted entry");
@@ -236,7 +292,7 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
             } else {
                 syncDeltaBuilder.setUid(new Uid(targetDN));
             }
-            return syncDeltaBuilder.build();
+            return new PendingSyncDelta(syncDeltaBuilder, targetDN, null, changeType, null);
         }
 
         String changes = getStringAttrValue(changeLogEntry.getAttributes(), "changes");
@@ -265,23 +321,14 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
             newTargetDN = getNewTargetDN(targetName, newSuperior, newRdn);
         }
 
-        // Always specify the attributes to get. This will return attributes with
-        // empty values when the attribute is not present, allowing the client to
-        // detect that the attribute has been removed.
-        Set<String> attrsToGet;
-        if (attrsToGetOption != null) {
-            attrsToGet = newSet(attrsToGetOption);
-            // Do not retrieve the password attribute from the entry (usually it is an unusable
-            // hashed value anyway). We will use the one from the change log below.
-            attrsToGet.remove(OperationalAttributes.PASSWORD_NAME);
-        } else {
-            attrsToGet = newSet(LdapSearch.getAttributesReturnedByDefault(conn, oclass));
-        }
-        // If objectClass is not in the list of attributes to get, prepare to remove it later.
-        boolean removeObjectClass = attrsToGet.add("objectClass");
-        LdapFilter filter = LdapFilter.forEntryDN(newTargetDN).withNativeFilter(getModifiedEntrySearchFilter());
+        return new PendingSyncDelta(syncDeltaBuilder, targetDN, newTargetDN, changeType, attrChanges);
+    }
 
-        ConnectorObject object = LdapSearches.findObject(conn, oclass, filter, attrsToGet.toArray(new String[attrsToGet.size()]));
+    /**
+     * Completes the sync delta for a created or updated entry given its current
+     * state. Returns {@code null} if the change log entry should be skipped.
+     */
+    private SyncDelta createSyncDelta(PendingSyncDelta pendingDelta, ConnectorObject object, boolean removeObjectClass) {
         if (object == null) {
             log.ok("Skipping entry because the modified entry is missing, not of the right object class, or not matching the search filter");
             return null;
@@ -296,7 +343,7 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
 
         Attribute passwordAttr = null;
         if (conn.getConfiguration().isSynchronizePasswords()) {
-            List<Object> passwordValues = attrChanges.get(conn.getConfiguration().getPasswordAttributeToSynchronize());
+            List<Object> passwordValues = pendingDelta.attrChanges.get(conn.getConfiguration().getPasswordAttributeToSynchronize());
             if (!passwordValues.isEmpty()) {
                 byte[] encryptedPwd = (byte[]) passwordValues.get(0); 
                 String decryptedPwd = getPasswordDecryptor().decryptPassword(encryptedPwd);
@@ -325,11 +372,12 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
         }
 
         log.ok("Creating sync delta for created or updated entry");
-        if ("modrdn".equalsIgnoreCase(changeType)) {
+        SyncDeltaBuilder syncDeltaBuilder = pendingDelta.builder;
+        if ("modrdn".equalsIgnoreCase(pendingDelta.changeType)) {
             String uidAttr = conn.getSchemaMapping().getLdapUidAttribute(oclass);
             // We can only set the previous Uid if it is the entry DN, which is readily available.
             if (LdapEntry.isDNAttribute(uidAttr)) {
-                syncDeltaBuilder.setPreviousUid(conn.getSchemaMapping().createUid(oclass, targetDN));
+                syncDeltaBuilder.setPreviousUid(conn.getSchemaMapping().createUid(oclass, pendingDelta.targetDN));
             }
         }
         syncDeltaBuilder.setUid(object.getUid());
@@ -671,4 +719,41 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
         }
         return result;
     }
+
+    private static final class ChangeLogEntry implements Comparable<ChangeLogEntry> {
+
+        final LdapEntry entry;
+        final int changeNumber;
+
+        public ChangeLogEntry(LdapEntry entry, int changeNumber) {
+            this.entry = entry;
+            this.changeNumber = changeNumber;
+        }
+
+        public int compareTo(ChangeLogEntry o) {
+            return changeNumber < o.changeNumber ? -1 : (changeNumber == o.changeNumber ? 0 : 1);
+        }
+    }
+
+    /**
+     * A sync delta waiting for the current state of the modified entry.
+     * The {@code newTargetDN} is {@code null} for deleted entries, whose
+     * delta is already complete.
+     */
+    private static final class PendingSyncDelta {
+
+        final SyncDeltaBuilder builder;
+        final String targetDN;
+        final String newTargetDN;
+        final String changeType;
+        final Map<String, List<Object>> attrChanges;
+
+        public PendingSyncDelta(SyncDeltaBuilder builder, String targetDN, String newTargetDN, String changeType, Map<String, List<Object>> attrChanges) {
+            this.builder = builder;
+            this.targetDN = targetDN;
+            this.newTargetDN = newTargetDN;
+            this.changeType = changeType;
+            this.attrChanges = attrChanges;
+        }
+    }
 }
@@ -56,7 +56,8 @@ import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
 import org.identityconnectors.ldap.ADLdapUtil;
 import org.identityconnectors.ldap.LdapEntry;
 
-import static org.identityconnectors.ldap.ADLdapUtil.fetchGroupMembersByRange;
+import static org.identityconnectors.ldap.ADLdapUtil.buildGroupMembersByRange;
+import static org.identityconnectors.ldap.ADLdapUtil.getGroupMembersRange;
 import static org.identityconnectors.ldap.ADLdapUtil.getADLdapDatefromJavaDate;
 import static org.identityconnectors.ldap.ADLdapUtil.getJavaDateFromADTime;
 import static org.identityconnectors.ldap.ADLdapUtil.objectGUIDtoString;
@@ -197,14 +198,15 @@ public class TimestampsSyncStrategy implements LdapSyncStrategy {
                         if (ObjectClass.GROUP.equals(oclass)) {
                             // Make sure we're not hitting AD large group issue
                             // see: http://msdn.microsoft.com/en-us/library/ms817827.aspx
-                            if (attrs.get("member;range=0-1499") != null) {
+                            javax.naming.directory.Attribute memberRange = getGroupMembersRange(attrs);
+                            if (memberRange != null) {
                                 // we're in the limitation
-                                Attribute range = AttributeBuilder.build("member", fetchGroupMembersByRange(conn, result));
+                                Attribute range = buildGroupMembersByRange(conn, result, "member");
                                 cob.addAttribute(range);
                                 if (conn.getConfiguration().isGetGroupMemberId()){
                                     cob.addAttribute(buildMemberIdAttribute(conn, range));
                                 }
-                                attrs.remove("member;range=0-1499");
+                                attrs.remove(memberRange.getID());
                                 attrs.remove("member");
                             }
                         }
@@ -0,0 +1,163 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.ldap.search.LdapFilter;
+import org.identityconnectors.ldap.search.LdapSearch;
+import org.identityconnectors.test.common.ToListResultsHandler;
+import org.testng.annotations.Test;
+
+public class GroupHelperTests extends InMemoryLdapTestBase {
+
+    private static final List<String> ACME_USERS = asList(BUGS_BUNNY_DN, ELMER_FUDD_DN, SYLVESTER_DN, DAFFY_DUCK_DN);
+
+    @Test
+    public void testLdapGroupsByMember() {
+        interceptor.setMatchedValuesSupported(true);
+        GroupHelper helper = new GroupHelper(new LdapConnection(newAcmeConfiguration()));
+
+        Map<String, List<String>> groups = helper.getLdapGroupsByMember(ACME_USERS);
+        assertEquals(1, countGroupSearches("uniqueMember"));
+        assertTrue(hasMatchedValuesSearch());
+
+        assertEquals(ACME_USERS.size(), groups.size());
+        assertEquals(CollectionUtil.newSet(UNIQUE_BUGS_AND_FRIENDS_DN, UNIQUE_EXTERNAL_PEERS_DN), new HashSet<String>(groups.get(BUGS_BUNNY_DN)));
+        assertEquals(singletonList(UNIQUE_BUGS_AND_FRIENDS_DN), groups.get(ELMER_FUDD_DN));
+        assertTrue(groups.get(DAFFY_DUCK_DN).isEmpty());
+        for (String entryDN : ACME_USERS) {
+            assertEquals(new HashSet<String>(helper.getLdapGroups(entryDN)), new HashSet<String>(groups.get(entryDN)));
+        }
+    }
+
+    @Test
+    public void testPosixGroupsByMember() {
+        interceptor.setMatchedValuesSupported(true);
+        GroupHelper helper = new GroupHelper(new LdapConnection(newAcmeConfiguration()));
+
+        List<String> uids = asList("bugs.bunny", "elmer.fudd", "daffy.duck");
+        Map<String, List<String>> groups = helper.getPosixGroupsByMember(uids);
+        assertEquals(1, countGroupSearches("memberUid"));
+
+        assertEquals(CollectionUtil.newSet(POSIX_BUGS_AND_FRIENDS_DN, POSIX_EXTERNAL_PEERS_DN), new HashSet<String>(groups.get("bugs.bunny")));
+        assertEquals(singletonList(POSIX_BUGS_AND_FRIENDS_DN), groups.get("elmer.fudd"));
+        assertTrue(groups.get("daffy.duck").isEmpty());
+    }
+
+    @Test
+    public void testLdapGroupsByMemberWithRangedMembers() {
+        // The server returns the matching members of a group in ranges
+        // anyway, so the groups are retrieved for each entry instead.
+        interceptor.setMatchedValuesSupported(true);
+        interceptor.setRangedAttribute("uniqueMember", 1);
+        GroupHelper helper = new GroupHelper(new LdapConnection(newAcmeConfiguration()));
+
+        Map<String, List<String>> groups = helper.getLdapGroupsByMember(ACME_USERS);
+        assertEquals(1 + ACME_USERS.size(), countGroupSearches("uniqueMember"));
+        assertEquals(CollectionUtil.newSet(UNIQUE_BUGS_AND_FRIENDS_DN, UNIQUE_EXTERNAL_PEERS_DN), new HashSet<String>(groups.get(BUGS_BUNNY_DN)));
+        assertEquals(singletonList(UNIQUE_BUGS_AND_FRIENDS_DN), groups.get(SYLVESTER_DN));
+        assertTrue(groups.get(DAFFY_DUCK_DN).isEmpty());
+    }
+
+    @Test
+    public void testSearchRetrievesGroupsInBatches() {
+        interceptor.setMatchedValuesSupported(true);
+        LdapConfiguration config = newAcmeConfiguration();
+        config.setGroupMembershipBatchSize(3);
+        List<ConnectorObject> batched = searchAcmeUsers(config);
+        // Four users in two batches.
+        assertEquals(2, countGroupSearches("uniqueMember"));
+        assertEquals(2, countGroupSearches("memberUid"));
+
+        interceptor.reset();
+        config = newAcmeConfiguration();
+        config.setGroupMembershipBatchSize(1);
+        List<ConnectorObject> single = searchAcmeUsers(config);
+        assertEquals(ACME_USERS.size(), countGroupSearches("uniqueMember"));
+        assertFalse(hasMatchedValuesSearch());
+
+        assertEquals(single, batched);
+    }
+
+    @Test
+    public void testSearchWithoutMatchedValuesSupport() {
+        LdapConfiguration config = newAcmeConfiguration();
+        config.setGroupMembershipBatchSize(3);
+        List<ConnectorObject> objects = searchAcmeUsers(config);
+        assertEquals(ACME_USERS.size(), countGroupSearches("uniqueMember"));
+        assertFalse(hasMatchedValuesSearch());
+        assertEquals(ACME_USERS.size(), objects.size());
+    }
+
+    private static LdapConfiguration newAcmeConfiguration() {
+        // A single base context, so that each group lookup is a single search.
+        LdapConfiguration config = newConfiguration();
+        config.setBaseContexts(ACME_DN);
+        return config;
+    }
+
+    private static List<ConnectorObject> searchAcmeUsers(LdapConfiguration config) {
+        LdapConnection conn = new LdapConnection(config);
+        try {
+            OperationOptionsBuilder builder = new OperationOptionsBuilder();
+            builder.setAttributesToGet(LdapConstants.LDAP_GROUPS_NAME, LdapConstants.POSIX_GROUPS_NAME);
+            ToListResultsHandler handler = new ToListResultsHandler();
+            new LdapSearch(conn, ObjectClass.ACCOUNT, LdapFilter.forNativeFilter("(uid=*)"), handler, builder.build(), ACME_USERS_DN).execute();
+            return handler.getObjects();
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static int countGroupSearches(String memberAttr) {
+        int count = 0;
+        for (RecordedSearch search : interceptor.getSearches()) {
+            if (search.getFilter().contains("(" + memberAttr + "=")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean hasMatchedValuesSearch() {
+        for (RecordedSearch search : interceptor.getSearches()) {
+            if (search.hasMatchedValuesControl()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
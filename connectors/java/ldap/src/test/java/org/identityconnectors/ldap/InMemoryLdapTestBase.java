@@ -0,0 +1,382 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchEntry;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.MatchedValuesFilter;
+import com.unboundid.ldap.sdk.controls.MatchedValuesRequestControl;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+/**
+ * Base class for the tests running against an in-memory directory server
+ * loaded with {@code data.ldif}. The server emulates some features of the
+ * directory servers the connector is used with: the Matched Values control,
+ * Active Directory style range retrieval of attribute values and the
+ * {@code modifyTimestamp} of the schema. It also records the search requests
+ * it receives.
+ */
+public abstract class InMemoryLdapTestBase {
+
+    // Cf. data.ldif.
+
+    public static final String ADMIN_DN = "cn=Directory Manager";
+    public static final GuardedString ADMIN_PASSWORD = new GuardedString("password".toCharArray());
+
+    public static final String EXAMPLE_COM_DN = "dc=example,dc=com";
+
+    public static final String ACME_DN = "o=Acme,dc=example,dc=com";
+    public static final String ACME_USERS_DN = "ou=Users,o=Acme,dc=example,dc=com";
+    public static final String BUGS_BUNNY_DN = "uid=bugs.bunny,ou=Users,o=Acme,dc=example,dc=com";
+    public static final String ELMER_FUDD_DN = "uid=elmer.fudd,ou=Users,o=Acme,dc=example,dc=com";
+    public static final String SYLVESTER_DN = "uid=sylvester,ou=Users,o=Acme,dc=example,dc=com";
+    public static final String DAFFY_DUCK_DN = "uid=daffy.duck,ou=Users,o=Acme,dc=example,dc=com";
+
+    public static final String UNIQUE_BUGS_AND_FRIENDS_DN = "cn=Unique Bugs and Friends,o=Acme,dc=example,dc=com";
+    public static final String UNIQUE_EXTERNAL_PEERS_DN = "cn=Unique External Peers,o=Acme,dc=example,dc=com";
+    public static final String UNIQUE_EMPTY_GROUP_DN = "cn=Unique Empty Group,o=Acme,dc=example,dc=com";
+
+    public static final String POSIX_BUGS_AND_FRIENDS_DN = "cn=POSIX Bugs and Friends,o=Acme,dc=example,dc=com";
+    public static final String POSIX_EXTERNAL_PEERS_DN = "cn=POSIX External Peers,o=Acme,dc=example,dc=com";
+
+    public static final String SMALL_COMPANY_DN = "o=Small Company,dc=example,dc=com";
+    public static final String SINGLE_ACCOUNT_DN = "uid=single.account,o=Small Company,dc=example,dc=com";
+
+    public static final String BIG_COMPANY_DN = "o=Big Company,dc=example,dc=com";
+    public static final String BIG_COMPANY_PEOPLE_DN = "ou=People,o=Big Company,dc=example,dc=com";
+    public static final String BIG_GROUP_DN = "cn=Big Group,o=Big Company,dc=example,dc=com";
+    public static final int BIG_COMPANY_USER_COUNT = 10;
+
+    protected static InMemoryDirectoryServer server;
+    protected static Interceptor interceptor;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        interceptor = new Interceptor();
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(EXAMPLE_COM_DN);
+        config.addAdditionalBindCredentials(ADMIN_DN, "password");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        config.addInMemoryOperationInterceptor(interceptor);
+        config.setSchema(Schema.mergeSchemas(Schema.getDefaultStandardSchema(),
+                Schema.getSchema(InMemoryLdapTestBase.class.getResourceAsStream("schema.ldif"))));
+        configureServer(config);
+        server = new InMemoryDirectoryServer(config);
+        server.importFromLDIF(true, InMemoryLdapTestBase.class.getResource("data.ldif").getPath());
+        List<String> bigGroup = new ArrayList<String>();
+        bigGroup.add("dn: " + BIG_GROUP_DN);
+        bigGroup.add("objectClass: groupOfNames");
+        bigGroup.add("cn: Big Group");
+        for (int i = 0; i < BIG_COMPANY_USER_COUNT; i++) {
+            server.add(
+                    "dn: " + getBigCompanyUserDN(i),
+                    "objectClass: inetOrgPerson",
+                    "uid: user." + i,
+                    "cn: User " + i,
+                    "sn: " + i);
+            bigGroup.add("member: " + getBigCompanyUserDN(i));
+        }
+        server.add(bigGroup.toArray(new String[bigGroup.size()]));
+        server.startListening();
+    }
+
+    /**
+     * Allows subclasses to modify the configuration of the server, for
+     * example to enable the change log.
+     */
+    protected void configureServer(InMemoryDirectoryServerConfig config) throws LDAPException {
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.shutDown(true);
+        server = null;
+    }
+
+    @BeforeMethod
+    public void resetInterceptor() {
+        interceptor.reset();
+    }
+
+    public static String getBigCompanyUserDN(int i) {
+        return "uid=user." + i + "," + BIG_COMPANY_PEOPLE_DN;
+    }
+
+    public static LdapConfiguration newConfiguration() {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setHost("localhost");
+        config.setPort(server.getListenPort());
+        config.setBaseContexts(ACME_DN, BIG_COMPANY_DN);
+        config.setPrincipal(ADMIN_DN);
+        config.setCredentials(ADMIN_PASSWORD);
+        config.setReadSchema(false);
+        return config;
+    }
+
+    /**
+     * Emulates the server features not supported by the in-memory directory
+     * server and records the search requests.
+     */
+    protected static final class Interceptor extends InMemoryOperationInterceptor {
+
+        private static final String MATCHED_VALUES_PROPERTY = "matchedValues";
+        private static final String RANGE_LOW_PROPERTY = "rangeLow";
+        private static final String RANGE_OPTION = ";range=";
+
+        private final List<RecordedSearch> searches = Collections.synchronizedList(new ArrayList<RecordedSearch>());
+        private volatile boolean matchedValuesSupported;
+        private volatile String rangedAttribute;
+        private volatile int rangeSize;
+        private volatile String schemaModifyTimestamp;
+
+        public synchronized void reset() {
+            searches.clear();
+            matchedValuesSupported = false;
+            rangedAttribute = null;
+            rangeSize = 0;
+            schemaModifyTimestamp = null;
+        }
+
+        /**
+         * Sets whether the server advertises and honors the Matched Values
+         * control.
+         */
+        public void setMatchedValuesSupported(boolean matchedValuesSupported) {
+            this.matchedValuesSupported = matchedValuesSupported;
+        }
+
+        /**
+         * Returns the values of the given attribute in ranges of the given
+         * size, like Active Directory does for large groups.
+         */
+        public void setRangedAttribute(String rangedAttribute, int rangeSize) {
+            this.rangedAttribute = rangedAttribute;
+            this.rangeSize = rangeSize;
+        }
+
+        /**
+         * Sets the {@code modifyTimestamp} returned for the schema entry, or
+         * {@code null} to return none.
+         */
+        public void setSchemaModifyTimestamp(String schemaModifyTimestamp) {
+            this.schemaModifyTimestamp = schemaModifyTimestamp;
+        }
+
+        public List<RecordedSearch> getSearches() {
+            synchronized (searches) {
+                return new ArrayList<RecordedSearch>(searches);
+            }
+        }
+
+        /**
+         * Returns the recorded searches with the given filter, compared as
+         * strings.
+         */
+        public List<RecordedSearch> getSearches(String filter) {
+            List<RecordedSearch> result = new ArrayList<RecordedSearch>();
+            for (RecordedSearch search : getSearches()) {
+                if (search.getFilter().equalsIgnoreCase(filter)) {
+                    result.add(search);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void processSearchRequest(InMemoryInterceptedSearchRequest request) throws LDAPException {
+            SearchRequest searchRequest = request.getRequest().duplicate();
+            searches.add(new RecordedSearch(request.getConnectionID(), searchRequest));
+
+            Control matchedValues = searchRequest.getControl(MatchedValuesRequestControl.MATCHED_VALUES_REQUEST_OID);
+            List<String> attrs = new ArrayList<String>(Arrays.asList(searchRequest.getAttributes()));
+            boolean modified = false;
+            if (matchedValues != null) {
+                if (!matchedValuesSupported) {
+                    throw new LDAPException(ResultCode.UNAVAILABLE_CRITICAL_EXTENSION, "Matched values control not supported");
+                }
+                request.setProperty(MATCHED_VALUES_PROPERTY, new MatchedValuesRequestControl(matchedValues).getFilters());
+                modified = true;
+            }
+            String rangedAttr = rangedAttribute;
+            if (rangedAttr != null) {
+                String prefix = rangedAttr + RANGE_OPTION;
+                for (int i = 0; i < attrs.size(); i++) {
+                    String attr = attrs.get(i);
+                    if (attr.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                        String range = attr.substring(prefix.length());
+                        request.setProperty(RANGE_LOW_PROPERTY, Integer.valueOf(range.substring(0, range.indexOf('-'))));
+                        attrs.set(i, rangedAttr);
+                        modified = true;
+                    }
+                }
+            }
+            if (modified) {
+                SearchRequest newRequest = searchRequest.duplicate(withoutControl(searchRequest.getControls(), MatchedValuesRequestControl.MATCHED_VALUES_REQUEST_OID));
+                newRequest.setAttributes(attrs);
+                request.setRequest(newRequest);
+            }
+        }
+
+        @Override
+        public void processSearchEntry(InMemoryInterceptedSearchEntry result) {
+            SearchResultEntry entry = result.getSearchEntry();
+            Entry newEntry = entry.duplicate();
+            boolean modified = false;
+            if (entry.getDN().length() == 0 && matchedValuesSupported) {
+                newEntry.addAttribute("supportedControl", MatchedValuesRequestControl.MATCHED_VALUES_REQUEST_OID);
+                modified = true;
+            }
+            if ("cn=schema".equalsIgnoreCase(entry.getDN()) && schemaModifyTimestamp != null) {
+                newEntry.setAttribute("modifyTimestamp", schemaModifyTimestamp);
+                modified = true;
+            }
+            MatchedValuesFilter[] filters = (MatchedValuesFilter[]) result.getProperty(MATCHED_VALUES_PROPERTY);
+            if (filters != null) {
+                modified |= applyMatchedValues(newEntry, filters);
+            }
+            String rangedAttr = rangedAttribute;
+            if (rangedAttr != null) {
+                com.unboundid.ldap.sdk.Attribute attr = newEntry.getAttribute(rangedAttr);
+                Integer low = (Integer) result.getProperty(RANGE_LOW_PROPERTY);
+                if (attr != null && (low != null || attr.size() > rangeSize)) {
+                    newEntry.removeAttribute(rangedAttr);
+                    String[] values = attr.getValues();
+                    int from = low != null ? low : 0;
+                    int to = Math.min(from + rangeSize, values.length);
+                    String high = to == values.length ? "*" : String.valueOf(to - 1);
+                    newEntry.addAttribute(rangedAttr + RANGE_OPTION + from + "-" + high, Arrays.copyOfRange(values, Math.min(from, to), to));
+                    modified = true;
+                }
+            }
+            if (modified) {
+                result.setSearchEntry(newEntry);
+            }
+        }
+
+        private static boolean applyMatchedValues(Entry entry, MatchedValuesFilter[] filters) {
+            boolean modified = false;
+            for (com.unboundid.ldap.sdk.Attribute attr : entry.getAttributes()) {
+                List<String> matched = new ArrayList<String>();
+                boolean filtered = false;
+                for (MatchedValuesFilter filter : filters) {
+                    if (filter.getAttributeType().equalsIgnoreCase(attr.getName())) {
+                        filtered = true;
+                        for (String value : attr.getValues()) {
+                            if (valuesEqual(value, filter.getAssertionValue()) && !matched.contains(value)) {
+                                matched.add(value);
+                            }
+                        }
+                    }
+                }
+                if (filtered) {
+                    entry.setAttribute(attr.getName(), matched.toArray(new String[matched.size()]));
+                    modified = true;
+                }
+            }
+            return modified;
+        }
+
+        private static boolean valuesEqual(String value, String assertionValue) {
+            try {
+                return new DN(value).equals(new DN(assertionValue));
+            } catch (LDAPException e) {
+                return value.equalsIgnoreCase(assertionValue);
+            }
+        }
+
+        private static Control[] withoutControl(Control[] controls, String oid) {
+            List<Control> result = new ArrayList<Control>();
+            for (Control control : controls) {
+                if (!control.getOID().equals(oid)) {
+                    result.add(control);
+                }
+            }
+            return result.toArray(new Control[result.size()]);
+        }
+    }
+
+    /**
+     * A search request received by the server.
+     */
+    public static final class RecordedSearch {
+
+        private final long connectionID;
+        private final String baseDN;
+        private final String filter;
+        private final List<String> attributes;
+        private final boolean matchedValues;
+
+        RecordedSearch(long connectionID, SearchRequest request) {
+            this.connectionID = connectionID;
+            this.baseDN = request.getBaseDN();
+            this.filter = request.getFilter().toString();
+            this.attributes = Arrays.asList(request.getAttributes());
+            this.matchedValues = request.hasControl(MatchedValuesRequestControl.MATCHED_VALUES_REQUEST_OID);
+        }
+
+        public long getConnectionID() {
+            return connectionID;
+        }
+
+        public String getBaseDN() {
+            return baseDN;
+        }
+
+        public String getFilter() {
+            return filter;
+        }
+
+        public List<String> getAttributes() {
+            return attributes;
+        }
+
+        public boolean hasMatchedValuesControl() {
+            return matchedValues;
+        }
+
+        @Override
+        public String toString() {
+            return baseDN + " " + filter + " " + attributes;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPException;
+
+public class NativeSchemaCacheTests extends InMemoryLdapTestBase {
+
+    private static final String OTHER_ADMIN_DN = "cn=Other Manager";
+
+    @Override
+    protected void configureServer(InMemoryDirectoryServerConfig config) throws LDAPException {
+        config.addAdditionalBindCredentials(OTHER_ADMIN_DN, "password");
+    }
+
+    @Test
+    public void testSchemaSharedWhileNotModified() {
+        interceptor.setSchemaModifyTimestamp("20150101000000Z");
+        LdapNativeSchema schema = getNativeSchema(newSchemaConfiguration());
+        assertTrue(schema instanceof ServerNativeSchema);
+        assertTrue(schema.getStructuralObjectClasses().contains("inetOrgPerson"));
+        assertSame(schema, getNativeSchema(newSchemaConfiguration()));
+    }
+
+    @Test
+    public void testSchemaReadAgainWhenModified() {
+        interceptor.setSchemaModifyTimestamp("20150201000000Z");
+        LdapNativeSchema schema = getNativeSchema(newSchemaConfiguration());
+
+        interceptor.setSchemaModifyTimestamp("20150202000000Z");
+        LdapNativeSchema modifiedSchema = getNativeSchema(newSchemaConfiguration());
+        assertNotSame(schema, modifiedSchema);
+        assertSame(modifiedSchema, getNativeSchema(newSchemaConfiguration()));
+    }
+
+    @Test
+    public void testSchemaNotSharedWithoutTimestamp() {
+        LdapNativeSchema schema = getNativeSchema(newSchemaConfiguration());
+        assertNotSame(schema, getNativeSchema(newSchemaConfiguration()));
+    }
+
+    @Test
+    public void testSchemaNotSharedBetweenUsers() {
+        interceptor.setSchemaModifyTimestamp("20150301000000Z");
+        LdapNativeSchema schema = getNativeSchema(newSchemaConfiguration());
+
+        LdapConfiguration config = newSchemaConfiguration();
+        config.setPrincipal(OTHER_ADMIN_DN);
+        config.setCredentials(new GuardedString("password".toCharArray()));
+        LdapNativeSchema otherSchema = getNativeSchema(config);
+        assertNotSame(schema, otherSchema);
+        assertSame(otherSchema, getNativeSchema(config));
+    }
+
+    private static LdapConfiguration newSchemaConfiguration() {
+        LdapConfiguration config = newConfiguration();
+        config.setReadSchema(true);
+        return config;
+    }
+
+    private static LdapNativeSchema getNativeSchema(LdapConfiguration config) {
+        LdapConnection conn = new LdapConnection(config);
+        try {
+            return conn.getNativeSchema();
+        } finally {
+            conn.close();
+        }
+    }
+}
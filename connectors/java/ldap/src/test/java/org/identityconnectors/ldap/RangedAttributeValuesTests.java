@@ -0,0 +1,117 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap;
+
+import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.ldap.LdapName;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.ldap.search.LdapSearches;
+import org.testng.annotations.Test;
+
+public class RangedAttributeValuesTests extends InMemoryLdapTestBase {
+
+    private static final LdapName BIG_GROUP_NAME = quietCreateLdapName(BIG_GROUP_DN);
+
+    @Test
+    public void testNotRanged() {
+        LdapConnection conn = new LdapConnection(newConfiguration());
+        try {
+            LdapEntry entry = LdapSearches.getEntry(conn, BIG_GROUP_NAME, "member");
+            assertNull(RangedAttributeValues.getRange(entry.getAttributes(), "member"));
+            assertNull(RangedAttributeValues.create(conn, BIG_GROUP_NAME, entry.getAttributes(), "member"));
+            assertNull(ADLdapUtil.getGroupMembersByRange(conn, entry));
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testReadsRangesOneAtATime() {
+        interceptor.setRangedAttribute("member", 3);
+        LdapConnection conn = new LdapConnection(newConfiguration());
+        try {
+            LdapEntry entry = LdapSearches.getEntry(conn, BIG_GROUP_NAME, "member");
+            assertEquals("member;range=0-2", RangedAttributeValues.getRange(entry.getAttributes(), "member").getID());
+            int searches = interceptor.getSearches().size();
+
+            RangedAttributeValues values = RangedAttributeValues.create(conn, BIG_GROUP_NAME, entry.getAttributes(), "member");
+            List<Object> members = new ArrayList<Object>();
+            for (int i = 0; i < 3; i++) {
+                assertTrue(values.hasNext());
+                members.add(values.next());
+            }
+            // The first range was returned with the entry.
+            assertEquals(searches, interceptor.getSearches().size());
+
+            assertTrue(values.hasNext());
+            assertEquals(searches + 1, interceptor.getSearches().size());
+            assertEquals(BIG_GROUP_DN, interceptor.getSearches().get(searches).getBaseDN());
+            assertEquals("member;range=3-*", interceptor.getSearches().get(searches).getAttributes().get(0));
+
+            while (values.hasNext()) {
+                members.add(values.next());
+            }
+            assertFalse(values.hasNext());
+            // The ranges 3-5, 6-8 and 9-*.
+            assertEquals(searches + 3, interceptor.getSearches().size());
+            assertEquals(getBigGroupMembers(), members);
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testGroupMembersByRange() {
+        interceptor.setRangedAttribute("member", 4);
+        LdapConnection conn = new LdapConnection(newConfiguration());
+        try {
+            LdapEntry entry = LdapSearches.getEntry(conn, BIG_GROUP_NAME, "member");
+            assertEquals("member;range=0-3", ADLdapUtil.getGroupMembersRange(entry.getAttributes()).getID());
+
+            assertEquals(getBigGroupMembers(), ADLdapUtil.fetchGroupMembersByRange(conn, entry));
+
+            Attribute members = ADLdapUtil.buildGroupMembersByRange(conn, entry, "member");
+            assertEquals("member", members.getName());
+            assertEquals(getBigGroupMembers(), members.getValue());
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static List<Object> getBigGroupMembers() {
+        List<Object> result = new ArrayList<Object>();
+        for (int i = 0; i < BIG_COMPANY_USER_COUNT; i++) {
+            result.add(getBigCompanyUserDN(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap.search;
+
+import static java.util.Arrays.asList;
+import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.ldap.LdapName;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.ldap.InMemoryLdapTestBase;
+import org.identityconnectors.ldap.LdapConnection;
+import org.testng.annotations.Test;
+
+public class LdapSearchesTests extends InMemoryLdapTestBase {
+
+    // An empty RDN value cannot be expressed in a search filter.
+    private static final String EMPTY_RDN_DN = "mail=,ou=Users,o=Acme,dc=example,dc=com";
+
+    @Test
+    public void testFindObjectsByEntryDNSearchesOncePerParent() {
+        List<String> entryDNs = asList(BUGS_BUNNY_DN, SINGLE_ACCOUNT_DN, ELMER_FUDD_DN,
+                getBigCompanyUserDN(1), getBigCompanyUserDN(2), BUGS_BUNNY_DN);
+        LdapConnection conn = new LdapConnection(newConfiguration());
+        try {
+            Map<LdapName, ConnectorObject> objects = LdapSearches.findObjectsByEntryDN(conn, ObjectClass.ACCOUNT, entryDNs, null, "uid");
+            assertEquals(5, objects.size());
+            for (String entryDN : entryDNs) {
+                ConnectorObject object = objects.get(quietCreateLdapName(entryDN));
+                assertEquals(quietCreateLdapName(entryDN), quietCreateLdapName(object.getName().getNameValue()));
+            }
+        } finally {
+            conn.close();
+        }
+        List<String> baseDNs = new ArrayList<String>();
+        for (RecordedSearch search : interceptor.getSearches()) {
+            // Ignore the reads of the root DSE.
+            if (search.getBaseDN().length() > 0) {
+                baseDNs.add(search.getBaseDN());
+            }
+        }
+        assertEquals(3, baseDNs.size());
+        assertEquals(CollectionUtil.newSet(ACME_USERS_DN, SMALL_COMPANY_DN, BIG_COMPANY_PEOPLE_DN), new HashSet<String>(baseDNs));
+    }
+
+    @Test
+    public void testFindObjectsByEntryDNSkipsMissingEntries() {
+        List<String> entryDNs = asList(BUGS_BUNNY_DN, "uid=nobody,ou=Users,o=Acme,dc=example,dc=com",
+                "uid=nobody,ou=Nowhere,o=Acme,dc=example,dc=com", SINGLE_ACCOUNT_DN);
+        LdapConnection conn = new LdapConnection(newConfiguration());
+        try {
+            Map<LdapName, ConnectorObject> objects = LdapSearches.findObjectsByEntryDN(conn, ObjectClass.ACCOUNT, entryDNs, null, "uid");
+            assertEquals(CollectionUtil.newSet(quietCreateLdapName(BUGS_BUNNY_DN), quietCreateLdapName(SINGLE_ACCOUNT_DN)), objects.keySet());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testFindObjectsByEntryDNWithNativeFilter() {
+        List<String> entryDNs = asList(BUGS_BUNNY_DN, ELMER_FUDD_DN, SINGLE_ACCOUNT_DN);
+        LdapConnection conn = new LdapConnection(newConfiguration());
+        try {
+            Map<LdapName, ConnectorObject> objects = LdapSearches.findObjectsByEntryDN(conn, ObjectClass.ACCOUNT, entryDNs, "(sn=Bunny)", "uid");
+            assertEquals(CollectionUtil.newSet(quietCreateLdapName(BUGS_BUNNY_DN)), objects.keySet());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testFindObjectsByEntryDNLooksUpEntryByItselfWhenRdnNotInFilter() throws Exception {
+        server.add(
+                "dn: " + EMPTY_RDN_DN,
+                "objectClass: inetOrgPerson",
+                "mail:",
+                "cn: Nameless",
+                "sn: Nameless");
+        try {
+            interceptor.reset();
+            List<String> entryDNs = asList(BUGS_BUNNY_DN, EMPTY_RDN_DN, ELMER_FUDD_DN);
+            LdapConnection conn = new LdapConnection(newConfiguration());
+            try {
+                Map<LdapName, ConnectorObject> objects = LdapSearches.findObjectsByEntryDN(conn, ObjectClass.ACCOUNT, entryDNs, null, "uid");
+                assertEquals(CollectionUtil.newSet(quietCreateLdapName(BUGS_BUNNY_DN), quietCreateLdapName(EMPTY_RDN_DN),
+                        quietCreateLdapName(ELMER_FUDD_DN)), objects.keySet());
+            } finally {
+                conn.close();
+            }
+            // One search for the entry by itself and one for the other entries under the same parent.
+            int entrySearches = 0;
+            int parentSearches = 0;
+            for (RecordedSearch search : interceptor.getSearches()) {
+                if (quietCreateLdapName(search.getBaseDN()).equals(quietCreateLdapName(EMPTY_RDN_DN))) {
+                    entrySearches++;
+                } else if (quietCreateLdapName(search.getBaseDN()).equals(quietCreateLdapName(ACME_USERS_DN))) {
+                    parentSearches++;
+                    assertTrue(search.getFilter().contains("bugs.bunny"));
+                    assertTrue(search.getFilter().contains("elmer.fudd"));
+                }
+            }
+            assertEquals(1, entrySearches);
+            assertEquals(1, parentSearches);
+        } finally {
+            server.delete(EMPTY_RDN_DN);
+        }
+    }
+}
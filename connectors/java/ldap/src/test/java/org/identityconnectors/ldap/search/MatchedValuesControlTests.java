@@ -0,0 +1,89 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.naming.ldap.Control;
+
+import org.testng.annotations.Test;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.controls.MatchedValuesFilter;
+import com.unboundid.ldap.sdk.controls.MatchedValuesRequestControl;
+
+public class MatchedValuesControlTests {
+
+    @Test
+    public void testEncoding() throws Exception {
+        MatchedValuesControl control = new MatchedValuesControl("uniqueMember",
+                Arrays.asList("uid=bugs.bunny,o=Acme", "uid=elmer.fudd,o=Acme"), Control.CRITICAL);
+        assertEquals(MatchedValuesControl.OID, control.getID());
+        assertTrue(control.isCritical());
+
+        MatchedValuesFilter[] filters = decode(control).getFilters();
+        assertEquals(2, filters.length);
+        assertEquals(MatchedValuesFilter.MATCH_TYPE_EQUALITY, filters[0].getMatchType());
+        assertEquals("uniqueMember", filters[0].getAttributeType());
+        assertEquals("uid=bugs.bunny,o=Acme", filters[0].getAssertionValue());
+        assertEquals("uid=elmer.fudd,o=Acme", filters[1].getAssertionValue());
+    }
+
+    @Test
+    public void testEncodingNonAsciiValue() throws Exception {
+        String value = "cn=Příliš žluťoučký kůň,o=Acme";
+        MatchedValuesControl control = new MatchedValuesControl("member", Arrays.asList(value), Control.NONCRITICAL);
+
+        MatchedValuesFilter[] filters = decode(control).getFilters();
+        assertEquals(1, filters.length);
+        assertEquals(value, filters[0].getAssertionValue());
+    }
+
+    @Test
+    public void testEncodingLongLengths() throws Exception {
+        // Enough values to need two and three length octets.
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            values.add("uid=user." + i + ",ou=People,o=Big Company,dc=example,dc=com");
+        }
+        values.add(new String(new char[300]).replace('\0', 'x'));
+        MatchedValuesControl control = new MatchedValuesControl("member", values, Control.CRITICAL);
+
+        MatchedValuesFilter[] filters = decode(control).getFilters();
+        assertEquals(values.size(), filters.length);
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals("member", filters[i].getAttributeType());
+            assertEquals(values.get(i), filters[i].getAssertionValue());
+        }
+    }
+
+    private static MatchedValuesRequestControl decode(MatchedValuesControl control) throws Exception {
+        return new MatchedValuesRequestControl(new com.unboundid.ldap.sdk.Control(control.getID(), control.isCritical(),
+                new ASN1OctetString(control.getEncodedValue())));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap.search;
+
+import static java.util.Arrays.asList;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.SortKey;
+import org.identityconnectors.ldap.InMemoryLdapTestBase;
+import org.identityconnectors.ldap.LdapConfiguration;
+import org.identityconnectors.ldap.LdapConnection;
+import org.testng.annotations.Test;
+
+public class ParallelSearchStrategyTests extends InMemoryLdapTestBase {
+
+    private static final String QUERY = "(objectClass=inetOrgPerson)";
+
+    private static final List<String> BASE_DNS = asList(ACME_DN, SMALL_COMPANY_DN, BIG_COMPANY_DN);
+
+    @Test
+    public void testSearchesAllBaseDNs() {
+        LdapConnection conn = new LdapConnection(newParallelConfiguration(1));
+        Set<String> expected;
+        try {
+            expected = search(conn, new DefaultSearchStrategy(false), BASE_DNS, -1);
+        } finally {
+            conn.close();
+        }
+        assertEquals(4 + 1 + BIG_COMPANY_USER_COUNT, expected.size());
+
+        conn = new LdapConnection(newParallelConfiguration(3));
+        try {
+            assertEquals(expected, search(conn, new DefaultSearchStrategy(false), BASE_DNS, -1));
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testReusesSearchConnections() {
+        LdapConnection conn = new LdapConnection(newParallelConfiguration(3));
+        try {
+            search(conn, new DefaultSearchStrategy(false), BASE_DNS, -1);
+            Set<Long> firstConnectionIDs = getQueryConnectionIDs();
+            interceptor.reset();
+
+            search(conn, new DefaultSearchStrategy(false), BASE_DNS, -1);
+            assertTrue(firstConnectionIDs.containsAll(getQueryConnectionIDs()));
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testStopsWhenHandlerReturnsFalse() {
+        LdapConnection conn = new LdapConnection(newParallelConfiguration(3));
+        try {
+            assertEquals(1, search(conn, new DefaultSearchStrategy(false), BASE_DNS, 1).size());
+            // The connections have been given back and are usable.
+            assertEquals(4 + 1 + BIG_COMPANY_USER_COUNT, search(conn, new DefaultSearchStrategy(false), BASE_DNS, -1).size());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testPropagatesSearchError() {
+        List<String> baseDNs = asList(ACME_DN, "o=Nonexistent,dc=example,dc=com", BIG_COMPANY_DN);
+        LdapConnection conn = new LdapConnection(newParallelConfiguration(3));
+        try {
+            search(conn, new DefaultSearchStrategy(false), baseDNs, -1);
+            fail();
+        } catch (ConnectorException e) {
+            assertTrue(e.getCause() instanceof NameNotFoundException);
+        } finally {
+            conn.close();
+        }
+
+        conn = new LdapConnection(newParallelConfiguration(3));
+        try {
+            assertEquals(4 + BIG_COMPANY_USER_COUNT, search(conn, new DefaultSearchStrategy(true), baseDNs, -1).size());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testSortedSearchIsSequential() {
+        LdapConnection conn = new LdapConnection(newParallelConfiguration(3));
+        try {
+            SortKey[] sortKeys = { new SortKey("uid", true) };
+            search(conn, new DefaultSearchStrategy(false, sortKeys), BASE_DNS, -1);
+            List<String> baseDNs = new ArrayList<String>();
+            for (RecordedSearch search : interceptor.getSearches(QUERY)) {
+                baseDNs.add(search.getBaseDN());
+            }
+            assertEquals(BASE_DNS, baseDNs);
+            assertEquals(1, getQueryConnectionIDs().size());
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static LdapConfiguration newParallelConfiguration(int parallelism) {
+        LdapConfiguration config = newConfiguration();
+        config.setParallelBaseContextSearches(parallelism);
+        return config;
+    }
+
+    /**
+     * Returns the DNs of the entries found, stopping after the given number
+     * of entries unless negative.
+     */
+    private static Set<String> search(LdapConnection conn, LdapSearchStrategy strategy, List<String> baseDNs, final int limit) {
+        final Set<String> result = new HashSet<String>();
+        SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(new String[] { "uid" });
+        new LdapInternalSearch(conn, QUERY, baseDNs, strategy, controls).execute(new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult searchResult) throws NamingException {
+                result.add(searchResult.getNameInNamespace());
+                return limit < 0 || result.size() < limit;
+            }
+        });
+        return result;
+    }
+
+    private static Set<Long> getQueryConnectionIDs() {
+        Set<Long> result = new HashSet<Long>();
+        for (RecordedSearch search : interceptor.getSearches(QUERY)) {
+            result.add(search.getConnectionID());
+        }
+        return result;
+    }
+}
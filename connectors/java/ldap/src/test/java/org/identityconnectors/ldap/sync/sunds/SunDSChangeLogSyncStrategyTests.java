@@ -0,0 +1,199 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap.sync.sunds;
+
+import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
+import org.identityconnectors.ldap.InMemoryLdapTestBase;
+import org.identityconnectors.ldap.LdapConfiguration;
+import org.identityconnectors.ldap.LdapConnection;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+
+public class SunDSChangeLogSyncStrategyTests extends InMemoryLdapTestBase {
+
+    private static final String PORKY_PIG_DN = "uid=porky.pig,ou=Users,o=Acme,dc=example,dc=com";
+
+    @Override
+    protected void configureServer(InMemoryDirectoryServerConfig config) {
+        config.setMaxChangeLogEntries(1000);
+    }
+
+    @Test
+    public void testSyncPassesDeltasInChangeOrder() throws Exception {
+        LdapConnection conn = new LdapConnection(newSyncConfiguration());
+        try {
+            SyncToken token = new SunDSChangeLogSyncStrategy(conn, ObjectClass.ACCOUNT).getLatestSyncToken();
+            int first = (Integer) token.getValue() + 1;
+            server.add(
+                    "dn: " + PORKY_PIG_DN,
+                    "objectClass: inetOrgPerson",
+                    "uid: porky.pig",
+                    "cn: Porky Pig",
+                    "sn: Pig");
+            setDescription(BUGS_BUNNY_DN, "first");
+            setDescription(ELMER_FUDD_DN, "first");
+            setDescription(BUGS_BUNNY_DN, "second");
+            server.delete(PORKY_PIG_DN);
+            interceptor.reset();
+
+            Handler handler = new Handler(-1);
+            OperationOptionsBuilder options = new OperationOptionsBuilder();
+            options.setAttributesToGet("description");
+            new SunDSChangeLogSyncStrategy(conn, ObjectClass.ACCOUNT).sync(token, handler, options.build());
+
+            // The entry added is gone, so its creation is skipped.
+            List<SyncDelta> deltas = handler.deltas;
+            assertEquals(4, deltas.size());
+            assertDelta(deltas.get(0), first + 1, SyncDeltaType.UPDATE, BUGS_BUNNY_DN);
+            assertDelta(deltas.get(1), first + 2, SyncDeltaType.UPDATE, ELMER_FUDD_DN);
+            assertDelta(deltas.get(2), first + 3, SyncDeltaType.UPDATE, BUGS_BUNNY_DN);
+            assertDelta(deltas.get(3), first + 4, SyncDeltaType.DELETE, PORKY_PIG_DN);
+            // Both changes of the same entry are passed with its current state.
+            assertEquals("second", AttributeUtil.getStringValue(deltas.get(0).getObject().getAttributeByName("description")));
+            assertEquals("second", AttributeUtil.getStringValue(deltas.get(2).getObject().getAttributeByName("description")));
+            assertEquals(new SyncToken(first + 4), handler.result);
+
+            // The modified entries are read with a single search.
+            int entrySearches = 0;
+            for (RecordedSearch search : interceptor.getSearches()) {
+                if (quietCreateLdapName(search.getBaseDN()).equals(quietCreateLdapName(ACME_USERS_DN))) {
+                    entrySearches++;
+                }
+            }
+            assertEquals(1, entrySearches);
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testSyncInSeveralBlocks() throws Exception {
+        LdapConfiguration config = newSyncConfiguration();
+        config.setChangeLogBlockSize(2);
+        LdapConnection conn = new LdapConnection(config);
+        try {
+            SyncToken token = new SunDSChangeLogSyncStrategy(conn, ObjectClass.ACCOUNT).getLatestSyncToken();
+            int first = (Integer) token.getValue() + 1;
+            for (int i = 0; i < 5; i++) {
+                setDescription(getBigCompanyUserDN(i), "block");
+            }
+
+            Handler handler = new Handler(-1);
+            new SunDSChangeLogSyncStrategy(conn, ObjectClass.ACCOUNT).sync(token, handler, new OperationOptionsBuilder().build());
+
+            assertEquals(5, handler.deltas.size());
+            for (int i = 0; i < 5; i++) {
+                assertDelta(handler.deltas.get(i), first + i, SyncDeltaType.UPDATE, getBigCompanyUserDN(i));
+            }
+            assertEquals(new SyncToken(first + 4), handler.result);
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testSyncStopsWhenHandlerReturnsFalse() throws Exception {
+        LdapConnection conn = new LdapConnection(newSyncConfiguration());
+        try {
+            SyncToken token = new SunDSChangeLogSyncStrategy(conn, ObjectClass.ACCOUNT).getLatestSyncToken();
+            int first = (Integer) token.getValue() + 1;
+            setDescription(SYLVESTER_DN, "stop");
+            setDescription(DAFFY_DUCK_DN, "stop");
+            setDescription(SINGLE_ACCOUNT_DN, "stop");
+
+            Handler handler = new Handler(2);
+            new SunDSChangeLogSyncStrategy(conn, ObjectClass.ACCOUNT).sync(token, handler, new OperationOptionsBuilder().build());
+
+            assertEquals(2, handler.deltas.size());
+            assertDelta(handler.deltas.get(1), first + 1, SyncDeltaType.UPDATE, DAFFY_DUCK_DN);
+            // The delta refused by the handler has not been processed.
+            assertEquals(new SyncToken(first), handler.result);
+
+            handler = new Handler(1);
+            new SunDSChangeLogSyncStrategy(conn, ObjectClass.ACCOUNT).sync(token, handler, new OperationOptionsBuilder().build());
+            assertEquals(1, handler.deltas.size());
+            assertNull(handler.result);
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static LdapConfiguration newSyncConfiguration() {
+        LdapConfiguration config = newConfiguration();
+        config.setBaseContexts(ACME_DN, SMALL_COMPANY_DN, BIG_COMPANY_DN);
+        // The in-memory change log does not record the entryUUID of deleted entries.
+        config.setUidAttribute("entryDN");
+        return config;
+    }
+
+    private static void setDescription(String entryDN, String description) throws Exception {
+        server.modify(
+                "dn: " + entryDN,
+                "changetype: modify",
+                "replace: description",
+                "description: " + description);
+    }
+
+    private static void assertDelta(SyncDelta delta, int changeNumber, SyncDeltaType deltaType, String entryDN) {
+        assertEquals(new SyncToken(changeNumber), delta.getToken());
+        assertEquals(deltaType, delta.getDeltaType());
+        assertEquals(quietCreateLdapName(entryDN), quietCreateLdapName(delta.getUid().getUidValue()));
+    }
+
+    /**
+     * Collects the deltas, refusing the one at the given position if positive.
+     */
+    private static final class Handler implements SyncTokenResultsHandler {
+
+        private final int refuse;
+        final List<SyncDelta> deltas = new ArrayList<SyncDelta>();
+        SyncToken result;
+
+        Handler(int refuse) {
+            this.refuse = refuse;
+        }
+
+        public boolean handle(SyncDelta delta) {
+            deltas.add(delta);
+            return deltas.size() != refuse;
+        }
+
+        public void handleResult(SyncToken result) {
+            this.result = result;
+        }
+    }
+}
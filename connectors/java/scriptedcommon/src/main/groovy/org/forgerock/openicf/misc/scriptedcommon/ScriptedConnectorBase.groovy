@@ -339,8 +339,7 @@ public class ScriptedConnectorBase<C extends ScriptedConfiguration> implements A
         if (GROOVY.equalsIgnoreCase(request.getScriptLanguage())
                 && StringUtil.isNotBlank(request.getScriptText())) {
             try {
-                final GroovyCodeSource codeSource = new GroovyCodeSource(request.scriptText,
-                        "Script" + System.currentTimeMillis() + ".groovy", "fix");
+                final Class scriptClass = getScriptedConfiguration().parseScript(request.scriptText);
                 Binding binding = new Binding();
                 for (Map.Entry<String, Object> entry : request.scriptArguments) {
                     binding.setVariable(entry.key, entry.value)
@@ -349,9 +348,7 @@ public class ScriptedConnectorBase<C extends ScriptedConfiguration> implements A
                         createBinding(binding, OperationType.RUNSCRIPTONCONNECTOR, null, null, null, options),
                         { String scriptName, Binding arguments ->
                             arguments.setVariable(LOGGER, logger)
-                            return InvokerHelper.createScript(getScriptedConfiguration().getGroovyScriptEngine().
-                                    getGroovyClassLoader().parseClass(codeSource, false),
-                                    arguments).run();
+                            return InvokerHelper.createScript(scriptClass, arguments).run();
                         });                       
             } catch (final RuntimeException e) {
                 throw e;
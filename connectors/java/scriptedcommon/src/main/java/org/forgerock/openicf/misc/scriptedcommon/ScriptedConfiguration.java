@@ -28,12 +28,15 @@ import static org.forgerock.openicf.misc.scriptedcommon.ScriptedConnectorBase.LO
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -92,6 +95,12 @@ public class ScriptedConfiguration extends AbstractConfiguration implements Stat
     private static final Log logger = Log.getLog(ScriptedConfiguration.class);
     private static final String DOT_STAR = ".*";
     private static final String EMPTY_STRING = "";
+
+    /**
+     * Maximum number of compiled scripts kept by {@link #parseScript(String)}.
+     */
+    private static final int SCRIPT_CACHE_SIZE = 64;
+
     private final CompilerConfiguration config;
 
     {
@@ -664,6 +673,7 @@ public class ScriptedConfiguration extends AbstractConfiguration implements Stat
                 releaseClosure = null;
             }
             groovyScriptEngine = null;
+            scriptClassCache.clear();
             propertyBag.clear();
             loggerCache.clear();
             logger.ok("Shared state ScriptedConfiguration is successfully released");
@@ -778,6 +788,54 @@ public class ScriptedConfiguration extends AbstractConfiguration implements Stat
         return logger;
     }
 
+    /**
+     * Classes of the scripts sent with RunScriptOnConnector keyed by the
+     * SHA-256 of their text, the least recently used are dropped.
+     */
+    private final Map<String, Class> scriptClassCache = Collections
+            .synchronizedMap(new LinkedHashMap<String, Class>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Class> eldest) {
+                    if (size() > SCRIPT_CACHE_SIZE) {
+                        logger.ok("Evict compiled script {0}", eldest.getValue().getName());
+                        return true;
+                    }
+                    return false;
+                }
+            });
+
+    /**
+     * Compiles the script text, the class of a script compiled before is
+     * reused instead of defining a new class for every request.
+     *
+     * @param scriptText
+     *            the Groovy source.
+     * @return the class of the script, a new instance has to be created for
+     *         each run.
+     */
+    Class parseScript(String scriptText) {
+        final String digest = digest(scriptText);
+        Class scriptClass = scriptClassCache.get(digest);
+        if (null == scriptClass) {
+            final GroovyCodeSource codeSource =
+                    new GroovyCodeSource(scriptText, "Script_" + digest.substring(0, 16)
+                            + ".groovy", "fix");
+            scriptClass = getGroovyScriptEngine().getGroovyClassLoader().parseClass(codeSource, false);
+            scriptClassCache.put(digest, scriptClass);
+        }
+        return scriptClass;
+    }
+
+    private static String digest(String text) {
+        try {
+            return SecurityUtil.computeHexSHA256Hash(text.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw ConnectorException.wrap(e);
+        }
+    }
+
     private GroovyScriptEngine groovyScriptEngine = null;
 
     protected GroovyScriptEngine getGroovyScriptEngine() {
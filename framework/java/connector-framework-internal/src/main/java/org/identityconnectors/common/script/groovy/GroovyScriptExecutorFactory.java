@@ -23,22 +23,121 @@
 package org.identityconnectors.common.script.groovy;
 
 import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.script.ScriptExecutor;
 import org.identityconnectors.common.script.ScriptExecutorFactory;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
 
 
 /**
  * Creates a new ScriptExecutorFactory for executing Groovy scripts. Scripts are
  * compiled at the creation of a new instance of {@link ScriptExecutor}.
+ * <p>
+ * The compiled script classes are kept in a bounded LRU cache keyed by the
+ * SHA-256 of the script text and the class loader, so executing the same
+ * script again does not define a new class.
+ * <p>
+ * The compiled classes are held softly, so a script stays compiled between
+ * executors until it is evicted or memory runs short. Because a compiled
+ * class references the class loader it was compiled with, the entries of a
+ * class loader must be dropped with {@link #clearCache(ClassLoader)} when its
+ * connector bundle is disposed, otherwise the class loader is only released
+ * once the memory runs short.
  */
 public class GroovyScriptExecutorFactory extends ScriptExecutorFactory {
 
+    private static final Log LOG = Log.getLog(GroovyScriptExecutorFactory.class);
+
+    /**
+     * System property to set the maximum number of compiled scripts to cache
+     * per class loader, <code>0</code> disables the cache.
+     */
+    public static final String CACHE_SIZE_PROP =
+            "org.identityconnectors.common.script.groovy.GroovyScriptExecutorFactory.cacheSize";
+
+    private static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static final int CACHE_SIZE;
+
+    static {
+        int size = DEFAULT_CACHE_SIZE;
+        final String value = System.getProperty(CACHE_SIZE_PROP);
+        if (StringUtil.isNotBlank(value)) {
+            try {
+                size = Math.max(0, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value {0} of {1}, using {2}", value, CACHE_SIZE_PROP,
+                        DEFAULT_CACHE_SIZE);
+            }
+        }
+        CACHE_SIZE = size;
+    }
+
+    private static final AtomicLong CACHE_HITS = new AtomicLong();
+
+    private static final AtomicLong CACHE_MISSES = new AtomicLong();
+
+    private static final AtomicLong CACHE_EVICTIONS = new AtomicLong();
+
+    /**
+     * Compiled script classes of each class loader. Guarded by itself.
+     */
+    private static final Map<ClassLoader, LoaderCache> CACHE =
+            new WeakHashMap<ClassLoader, LoaderCache>();
+
+    /**
+     * The compiled script classes of a class loader by script digest, in
+     * access order.
+     */
+    private static final class LoaderCache extends
+            LinkedHashMap<String, SoftReference<Class<?>>> {
+        private static final long serialVersionUID = 1L;
+
+        LoaderCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<String, SoftReference<Class<?>>> eldest) {
+            if (size() > CACHE_SIZE) {
+                CACHE_EVICTIONS.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        Class<?> getScriptClass(final String digest) {
+            final SoftReference<Class<?>> ref = get(digest);
+            if (ref == null) {
+                return null;
+            }
+            final Class<?> rv = ref.get();
+            if (rv == null) {
+                // collected, count it as evicted
+                remove(digest);
+                CACHE_EVICTIONS.incrementAndGet();
+            }
+            return rv;
+        }
+    }
+
     /**
      * Make sure we blow up if Groovy does not exist.
      */
@@ -54,19 +153,123 @@ public class GroovyScriptExecutorFactory extends ScriptExecutorFactory {
     @Override
     public ScriptExecutor newScriptExecutor(ClassLoader loader, String script,
             boolean compile) {
-        return new GroovyScriptExecutor(loader, script);
+        return new GroovyScriptExecutor(getScriptClass(loader, script));
+    }
+
+    /**
+     * Returns the number of scripts found in the cache.
+     */
+    public static long getCacheHits() {
+        return CACHE_HITS.get();
+    }
+
+    /**
+     * Returns the number of scripts that had to be compiled.
+     */
+    public static long getCacheMisses() {
+        return CACHE_MISSES.get();
+    }
+
+    /**
+     * Returns the number of compiled scripts dropped from the cache.
+     */
+    public static long getCacheEvictions() {
+        return CACHE_EVICTIONS.get();
+    }
+
+    /**
+     * Returns the number of compiled scripts in the cache, including the ones
+     * already collected but not yet noticed.
+     */
+    public static int getCacheSize() {
+        synchronized (CACHE) {
+            int rv = 0;
+            for (LoaderCache loaderCache : CACHE.values()) {
+                rv += loaderCache.size();
+            }
+            return rv;
+        }
+    }
+
+    /**
+     * Drops all compiled scripts from the cache.
+     */
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Drops the compiled scripts of a class loader from the cache.
+     *
+     * @param loader
+     *            the class loader the scripts were compiled with.
+     * @since 1.4
+     */
+    public static void clearCache(final ClassLoader loader) {
+        synchronized (CACHE) {
+            CACHE.remove(loader);
+        }
+    }
+
+    private static Class<?> getScriptClass(final ClassLoader loader, final String script) {
+        final String digest = digest(script);
+        synchronized (CACHE) {
+            final LoaderCache loaderCache = CACHE.get(loader);
+            final Class<?> cached = loaderCache != null ? loaderCache.getScriptClass(digest) : null;
+            if (cached != null) {
+                CACHE_HITS.incrementAndGet();
+                return cached;
+            }
+        }
+        CACHE_MISSES.incrementAndGet();
+        // compile outside of the lock, a concurrent compilation of the same
+        // script is harmless
+        final GroovyClassLoader groovyLoader = new GroovyClassLoader(loader);
+        final Class<?> compiled =
+                groovyLoader.parseClass(new GroovyCodeSource(script, "Script_"
+                        + digest.substring(0, 16) + ".groovy", GroovyShell.DEFAULT_CODE_BASE),
+                        false);
+        if (CACHE_SIZE > 0) {
+            synchronized (CACHE) {
+                LoaderCache loaderCache = CACHE.get(loader);
+                if (loaderCache == null) {
+                    loaderCache = new LoaderCache();
+                    CACHE.put(loader, loaderCache);
+                }
+                final Class<?> cached = loaderCache.getScriptClass(digest);
+                if (cached != null) {
+                    return cached;
+                }
+                loaderCache.put(digest, new SoftReference<Class<?>>(compiled));
+            }
+        }
+        return compiled;
+    }
+
+    private static String digest(final String script) {
+        try {
+            return SecurityUtil.computeHexSHA256Hash(script.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw ConnectorException.wrap(e);
+        }
     }
 
     private static class GroovyScriptExecutor implements ScriptExecutor {
-        private final Script groovyScript;
+        private final Class<?> scriptClass;
 
-        public GroovyScriptExecutor(ClassLoader loader, String script) {
-            groovyScript = new GroovyShell(loader).parse(script);
+        public GroovyScriptExecutor(Class<?> scriptClass) {
+            this.scriptClass = scriptClass;
         }
 
+        /**
+         * Each call runs its own instance of the script, so the executor can
+         * be shared between threads.
+         */
         public Object execute(Map<String, Object> arguments) throws Exception {
             Map<String, Object> args = CollectionUtil.nullAsEmpty(arguments);
-            groovyScript.setBinding(new Binding(args));
+            Script groovyScript = InvokerHelper.createScript(scriptClass, new Binding(args));
             return groovyScript.run();
         }
     }
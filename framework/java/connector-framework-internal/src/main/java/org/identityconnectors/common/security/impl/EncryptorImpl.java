@@ -23,6 +23,8 @@
 package org.identityconnectors.common.security.impl;
 
 import java.security.Key;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -32,6 +34,14 @@ import javax.crypto.spec.SecretKeySpec;
 import org.identityconnectors.common.security.Encryptor;
 
 
+/**
+ * AES encryptor with a fixed key and IV.
+ * <p>
+ * Initialized ciphers are kept in small pools and reused, so concurrent
+ * callers neither look up the provider nor initialize a cipher on every call,
+ * nor wait for each other. A caller that finds the pool empty makes a new
+ * cipher, a cipher returned to a full pool is dropped.
+ */
 public class EncryptorImpl implements Encryptor {
 
     private static final String ALGORITHM = "AES";
@@ -54,6 +64,22 @@ public class EncryptorImpl implements Encryptor {
     private Key key;
     private IvParameterSpec iv;
 
+    /**
+     * Maximum number of idle ciphers kept for each mode.
+     */
+    private static final int MAX_IDLE_CIPHERS = Math.max(2, Runtime.getRuntime()
+            .availableProcessors());
+
+    /**
+     * Idle ciphers for this key. A cipher is back in its initialized state
+     * after <code>doFinal</code>, so it is reused without a new
+     * <code>init</code>.
+     */
+    private final BlockingQueue<Cipher> encryptCiphers = new ArrayBlockingQueue<Cipher>(
+            MAX_IDLE_CIPHERS);
+    private final BlockingQueue<Cipher> decryptCiphers = new ArrayBlockingQueue<Cipher>(
+            MAX_IDLE_CIPHERS);
+
     public EncryptorImpl(boolean defaultKey) {
         if (defaultKey) {
             key = new SecretKeySpec(DEFAULT_KEY_BYTES, ALGORITHM);
@@ -71,22 +97,26 @@ public class EncryptorImpl implements Encryptor {
     }
 
     public byte[] decrypt(byte[] bytes) {
-        try {
-            Cipher cipher = Cipher.getInstance(FULL_ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            return cipher.doFinal(bytes);
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return doFinal(Cipher.DECRYPT_MODE, bytes);
     }
 
     public byte[] encrypt(byte[] bytes) {
+        return doFinal(Cipher.ENCRYPT_MODE, bytes);
+    }
+
+    private byte[] doFinal(int mode, byte[] bytes) {
+        final BlockingQueue<Cipher> idle =
+                mode == Cipher.ENCRYPT_MODE ? encryptCiphers : decryptCiphers;
         try {
-            Cipher cipher = Cipher.getInstance(FULL_ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-            return cipher.doFinal(bytes);
+            Cipher cipher = idle.poll();
+            if (cipher == null) {
+                cipher = Cipher.getInstance(FULL_ALGORITHM);
+                cipher.init(mode, key, iv);
+            }
+            final byte[] rv = cipher.doFinal(bytes);
+            // a cipher which failed is in an unknown state and not returned
+            idle.offer(cipher);
+            return rv;
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -27,6 +27,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.text.MessageFormat;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.Base64;
@@ -68,6 +69,11 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
     private final APIConfigurationImpl configuration;
     private final String connectorFacadeKey;
 
+    /**
+     * The share of the timeout workers the operations of this facade may take.
+     */
+    private final Semaphore timeoutWorkers = MethodTimeoutProxy.newFacadeLimit();
+
     /**
      * Builds up the maps of supported operations and calls.
      */
@@ -320,7 +326,8 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         int timeout = getAPIConfiguration().getTimeout(api);
         int bufferSize = getAPIConfiguration().getProducerBufferSize();
 
-        DelegatingTimeoutProxy handler = new DelegatingTimeoutProxy(target, timeout, bufferSize);
+        DelegatingTimeoutProxy handler =
+                new DelegatingTimeoutProxy(target, timeout, bufferSize, timeoutWorkers);
 
         return newAPIOperationProxy(api, handler);
     }
@@ -336,4 +343,19 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
             APIOperation target) {
         return newAPIOperationProxy(api, new LoggingProxy(api, target));
     }
+
+    /**
+     * Creates a proxy which reports the operation to the metrics.
+     *
+     * @param api
+     *            The operation
+     * @param target
+     *            The underlying object
+     * @return The proxy
+     */
+    protected final APIOperation createMetricsProxy(Class<? extends APIOperation> api,
+            APIOperation target) {
+        return newAPIOperationProxy(api, new MetricsProxy(getAPIConfiguration()
+                .getConnectorInfo().getConnectorKey(), target));
+    }
 }
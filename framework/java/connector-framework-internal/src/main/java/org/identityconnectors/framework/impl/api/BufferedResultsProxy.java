@@ -26,11 +26,22 @@ package org.identityconnectors.framework.impl.api;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
@@ -40,6 +51,74 @@ public class BufferedResultsProxy implements InvocationHandler {
 
     private final static Log LOG = Log.getLog(BufferedResultsProxy.class);
 
+    /**
+     * System property to set the maximum number of pooled producer threads.
+     */
+    public static final String MAX_THREADS_PROP =
+            "org.identityconnectors.framework.impl.api.BufferedResultsProxy.maxThreads";
+
+    private static final int DEFAULT_MAX_THREADS = 64;
+
+    /**
+     * Runs the producer side of the buffered operations. The threads are
+     * reused between operations and reclaimed when idle.
+     */
+    private static final ThreadPoolExecutor PRODUCERS;
+
+    /**
+     * One permit per producer thread, held until the producer returns. Once
+     * all of them are taken an operation waits for one within its timeout,
+     * no thread is started beyond the pool.
+     */
+    private static final Semaphore PRODUCER_PERMITS;
+
+    static {
+        int maxThreads = DEFAULT_MAX_THREADS;
+        String value = System.getProperty(MAX_THREADS_PROP);
+        if (StringUtil.isNotBlank(value)) {
+            try {
+                maxThreads = Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value {0} of {1}, using {2}", value, MAX_THREADS_PROP,
+                        DEFAULT_MAX_THREADS);
+            }
+        }
+        final ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            public Thread newThread(Runnable r) {
+                Thread thread =
+                        new Thread(r, "BufferedResultsProxy-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                // don't pin the class loader of whoever started the thread
+                thread.setContextClassLoader(BufferedResultsProxy.class.getClassLoader());
+                return thread;
+            }
+        };
+        // the permits keep the queue short, it never holds more producers
+        // than there are threads to run them
+        PRODUCERS =
+                new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), factory);
+        PRODUCERS.allowCoreThreadTimeOut(true);
+        PRODUCER_PERMITS = new Semaphore(maxThreads, true);
+    }
+
+    /**
+     * Returns the number of producer threads.
+     */
+    static int getMaxThreads() {
+        return PRODUCERS.getMaximumPoolSize();
+    }
+
+    /**
+     * Returns the number of producers running, including the producers whose
+     * callers have already timed out.
+     */
+    static int getBusyProducers() {
+        return getMaxThreads() - PRODUCER_PERMITS.availablePermits();
+    }
+
     private final Object target;
     private final int bufferSize;
     private final long timeoutMillis;
@@ -63,23 +142,160 @@ public class BufferedResultsProxy implements InvocationHandler {
         this.bufferSize = (bufferSize < 1) ? 100 : bufferSize;
     }
 
-    private static class BufferedResultsHandler extends Thread implements ObjectStreamHandler {
+    /**
+     * Bounded single-producer single-consumer ring buffer. The consumer
+     * drains every available object in one go, so the hand-off is paid per
+     * batch rather than per object, and the threads only park when the buffer
+     * is empty or full.
+     */
+    static final class RingBuffer {
+
+        private static final int SPINS = 16;
+
+        private final Object[] elements;
+
+        /**
+         * Index of the next element to read, only written by the consumer.
+         */
+        private final AtomicLong head = new AtomicLong();
+
+        /**
+         * Index of the next element to write, only written by the producer.
+         */
+        private final AtomicLong tail = new AtomicLong();
+
+        private volatile Thread waitingProducer = null;
+        private volatile Thread waitingConsumer = null;
+        private volatile boolean closed = false;
+
+        RingBuffer(int capacity) {
+            elements = new Object[capacity];
+        }
+
+        /**
+         * Appends an object, waiting while the buffer is full.
+         *
+         * @return false if the buffer was closed and the object dropped.
+         */
+        boolean put(Object obj) throws InterruptedException {
+            final long index = tail.get();
+            while (index - head.get() >= elements.length) {
+                if (closed) {
+                    return false;
+                }
+                waitingProducer = Thread.currentThread();
+                // re-check after publishing ourselves so we can't miss a wakeup
+                if (index - head.get() >= elements.length && !closed) {
+                    LockSupport.park(this);
+                }
+                waitingProducer = null;
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            if (closed) {
+                return false;
+            }
+            elements[(int) (index % elements.length)] = obj;
+            tail.set(index + 1);
+            Thread consumer = waitingConsumer;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+            return true;
+        }
+
+        /**
+         * Moves the available objects into the batch, waiting up to the
+         * timeout for at least one.
+         *
+         * @return the number of objects moved, 0 if we timed out.
+         */
+        int drainTo(Object[] batch, long timeoutMillis) throws InterruptedException {
+            final long index = head.get();
+            long available = tail.get() - index;
+            // a busy producer usually catches up within a few yields, which is
+            // cheaper than parking and lets a bigger batch build up
+            for (int spins = SPINS; available == 0 && spins > 0; spins--) {
+                Thread.yield();
+                available = tail.get() - index;
+            }
+            if (available == 0) {
+                final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                final long start = System.nanoTime();
+                waitingConsumer = Thread.currentThread();
+                try {
+                    while ((available = tail.get() - index) == 0) {
+                        long remaining = timeoutNanos - (System.nanoTime() - start);
+                        if (remaining <= 0) {
+                            return 0;
+                        }
+                        LockSupport.parkNanos(this, remaining);
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+                    }
+                } finally {
+                    waitingConsumer = null;
+                }
+            }
+            final int count = (int) Math.min(available, batch.length);
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((index + i) % elements.length);
+                batch[i] = elements[slot];
+                elements[slot] = null;
+            }
+            head.set(index + count);
+            Thread producer = waitingProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+            return count;
+        }
+
+        /**
+         * Drops any further object and wakes up a waiting producer so that it
+         * can exit.
+         */
+        void close() {
+            closed = true;
+            Thread producer = waitingProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+    }
+
+    private static class BufferedResultsHandler implements ObjectStreamHandler, Runnable {
         private static final Object DONE = new Object();
         private final AtomicBoolean stopped = new AtomicBoolean(false);
+        private final CountDownLatch finished = new CountDownLatch(1);
         private final Method method;
         private final Object target;
         private final Object[] arguments;
         private final long timeoutMillis;
-        private final ArrayBlockingQueue<Object> buffer;
-        private Object result = null;
+        private final RingBuffer buffer;
+        private final Locale locale;
+        private final ClassLoader contextClassLoader;
+        private volatile Thread producer = null;
+        private volatile Object result = null;
+        /**
+         * The DONE marker or exception ending the stream, held back until the
+         * objects before it have been handled.
+         */
+        private Object last = null;
 
         public BufferedResultsHandler(Method method, Object target, Object[] arguments,
                 int bufferSize, long timeoutMillis) {
             this.method = method;
             this.target = target;
             this.arguments = arguments;
-            buffer = new ArrayBlockingQueue<Object>(bufferSize);
+            buffer = new RingBuffer(bufferSize);
             this.timeoutMillis = timeoutMillis;
+            // the producer runs on a pooled thread so the caller's locale
+            // and class loader have to be propagated explicitly
+            locale = CurrentLocale.isSet() ? CurrentLocale.get() : null;
+            contextClassLoader = Thread.currentThread().getContextClassLoader();
         }
 
         public boolean handle(final Object obj) {
@@ -97,34 +313,35 @@ public class BufferedResultsProxy implements InvocationHandler {
         }
 
         /**
-         * Stops the thread and optionally waits for it to finish.
+         * Stops the producer and optionally waits for it to finish.
          *
          * @param wait
-         *            True if we should wait for the thread to finish
+         *            True if we should wait for the producer to finish
          * @throws OperationTimeoutException
          *             If we said to wait and we timed out.
          */
         public void stop(boolean wait) {
-            if (wait && Thread.currentThread() == this) {
+            if (wait && Thread.currentThread() == producer) {
                 throw new IllegalStateException("A thread cannot wait on itself");
             }
 
             if (stopped.compareAndSet(false, true)) {
 
-                // clear out the queue - this will cause the thread to
-                // wakeup so that it can exit
-                buffer.clear();
+                // close the buffer - this will wake up the producer
+                // so that it can exit
+                buffer.close();
                 if (wait) {
+                    boolean done;
                     try {
-                        // join with a time-limit. this may timeout
+                        // wait with a time-limit. this may timeout
                         // if we are blocked in the producer
-                        join(timeoutMillis);
+                        done = finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         throw ConnectorException.wrap(e);
                     }
-                    // if we're still alive, we've timed out
-                    if (isAlive()) {
+                    // if it is still running, we've timed out
+                    if (!done) {
                         throw new OperationTimeoutException();
                     }
                 }
@@ -150,8 +367,16 @@ public class BufferedResultsProxy implements InvocationHandler {
             return actualArguments;
         }
 
-        @Override
         public void run() {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader savedClassLoader = thread.getContextClassLoader();
+            producer = thread;
+            thread.setContextClassLoader(contextClassLoader);
+            if (locale != null) {
+                CurrentLocale.set(locale);
+            } else {
+                CurrentLocale.clear();
+            }
             try {
                 try {
                     result = method.invoke(target, createActualArguments());
@@ -167,42 +392,56 @@ public class BufferedResultsProxy implements InvocationHandler {
                 }
             } catch (InterruptedException e) {
                 LOG.error(e, null);
+            } finally {
+                CurrentLocale.clear();
+                thread.setContextClassLoader(savedClassLoader);
+                finished.countDown();
             }
         }
 
         /**
-         * Returns the next object from the stream. Returns null if done.
+         * Moves the next objects from the stream into the batch. Returns 0 if
+         * done.
          *
-         * @return The next object from the stream or null if done
+         * @return The number of objects moved or 0 if done
          * @throws OperationTimeoutException
          *             If we timed out
          * @throws RuntimeException
          *             If the search threw an exception
          */
-        public Object getNextObject() {
+        public int getNextObjects(Object[] batch) {
             if (isStopped()) {
-                return null;
+                return 0;
             }
-            Object obj;
+            if (last == DONE) {
+                stop(true); // stop and wait
+                return 0;
+            } else if (last instanceof RuntimeException) {
+                stop(true); // stop and wait
+                throw (RuntimeException) last;
+            }
+            int count;
             try {
-                obj = buffer.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                count = buffer.drainTo(batch, timeoutMillis);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw ConnectorException.wrap(e);
             }
-            if (obj == null) {
+            if (count == 0) {
                 stop(false); // stop, but don't wait since we've already timed
                              // out
                 throw new OperationTimeoutException();
-            } else if (obj == DONE) {
-                stop(true); // stop and wait
-                return null;
-            } else if (obj instanceof RuntimeException) {
-                stop(true); // stop and wait
-                throw (RuntimeException) obj;
-            } else {
-                return obj;
             }
+            // nothing follows the end of the stream so it is always last
+            Object obj = batch[count - 1];
+            if (obj == DONE || obj instanceof RuntimeException) {
+                last = obj;
+                batch[--count] = null;
+                if (count == 0) {
+                    return getNextObjects(batch);
+                }
+            }
+            return count;
         }
 
         private Object getResult() {
@@ -217,7 +456,7 @@ public class BufferedResultsProxy implements InvocationHandler {
             return method.invoke(target, arguments);
         }
 
-        BufferedResultsHandler bufHandler =
+        final BufferedResultsHandler bufHandler =
                 new BufferedResultsHandler(method, target, arguments, bufferSize, timeoutMillis);
 
         ObjectStreamHandler handler = null;
@@ -240,34 +479,48 @@ public class BufferedResultsProxy implements InvocationHandler {
                     "We only support operations that have a single stream handler " + method);
         }
 
-        // this guy will automatically inherit
-        // CurrentLocale since we are using a new thread
-        // NOTE: if we ever introduce thread pooling
-        // here, it needs to explicitly propagate
-        bufHandler.setDaemon(true);
-        bufHandler.start();
+        if (!PRODUCER_PERMITS.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new OperationTimeoutException("All the producer threads are busy");
+        }
+        try {
+            PRODUCERS.execute(new Runnable() {
+                public void run() {
+                    try {
+                        bufHandler.run();
+                    } finally {
+                        PRODUCER_PERMITS.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            PRODUCER_PERMITS.release();
+            throw e;
+        }
+        Object[] batch = new Object[bufferSize];
         while (!bufHandler.isStopped()) {
-            Object obj = bufHandler.getNextObject();
-            if (obj != null) {
-                try {
-                    boolean keepGoing = handler.handle(obj);
+            int count = bufHandler.getNextObjects(batch);
+            try {
+                for (int i = 0; i < count && !bufHandler.isStopped(); i++) {
+                    boolean keepGoing = handler.handle(batch[i]);
                     if (!keepGoing) {
                         // stop and wait
                         bufHandler.stop(true);
                     }
-                } catch (RuntimeException e) {
-                    // handler threw an exception
-                    try {
-                        // stop the buf handler thread
-                        bufHandler.stop(true);
-                    } catch (RuntimeException e2) {
-                        // log timeout if it happens, but don't mask
-                        // original exception
-                        LOG.error(e2, null);
-                    }
-                    // throw the exception the handler threw
-                    throw e;
                 }
+            } catch (RuntimeException e) {
+                // handler threw an exception
+                try {
+                    // stop the buf handler thread
+                    bufHandler.stop(true);
+                } catch (RuntimeException e2) {
+                    // log timeout if it happens, but don't mask
+                    // original exception
+                    LOG.error(e2, null);
+                }
+                // throw the exception the handler threw
+                throw e;
+            } finally {
+                Arrays.fill(batch, 0, count, null);
             }
         }
         return bufHandler.getResult();
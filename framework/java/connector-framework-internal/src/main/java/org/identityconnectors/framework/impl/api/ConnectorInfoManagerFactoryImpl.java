@@ -51,6 +51,9 @@ public class ConnectorInfoManagerFactoryImpl extends ConnectorInfoManagerFactory
     @Override
     public void clearLocalCache() {
         synchronized (localManagerCache) {
+            for (ConnectorInfoManager manager : localManagerCache.values()) {
+                ((LocalConnectorInfoManagerImpl) manager).dispose();
+            }
             localManagerCache.clear();
         }
     }
@@ -25,6 +25,7 @@ package org.identityconnectors.framework.impl.api;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.Semaphore;
 
 import org.identityconnectors.framework.api.operations.APIOperation;
 
@@ -49,6 +50,11 @@ public class DelegatingTimeoutProxy implements InvocationHandler {
      */
     private final int bufferSize;
 
+    /**
+     * The timeout workers of the facade, null if the facade has no limit.
+     */
+    private final Semaphore facadeLimit;
+
     /**
      * Create a new MethodTimeoutProxy.
      *
@@ -57,9 +63,25 @@ public class DelegatingTimeoutProxy implements InvocationHandler {
      * @param timeoutMillis
      */
     public DelegatingTimeoutProxy(Object target, long timeoutMillis, int bufferSize) {
+        this(target, timeoutMillis, bufferSize, null);
+    }
+
+    /**
+     * Create a new MethodTimeoutProxy.
+     *
+     * @param target
+     *            The object we are wrapping
+     * @param timeoutMillis
+     * @param facadeLimit
+     *            The timeout workers of the facade, see
+     *            {@link MethodTimeoutProxy#newFacadeLimit()}.
+     */
+    public DelegatingTimeoutProxy(Object target, long timeoutMillis, int bufferSize,
+            Semaphore facadeLimit) {
         this.target = target;
         this.timeoutMillis = timeoutMillis;
         this.bufferSize = bufferSize;
+        this.facadeLimit = facadeLimit;
     }
 
     public Object invoke(final Object proxy, final Method method, final Object[] args)
@@ -84,7 +106,7 @@ public class DelegatingTimeoutProxy implements InvocationHandler {
         else {
             if (timeoutMillis != APIOperation.NO_TIMEOUT) {
                 // everything else is a general purpose timeout proxy
-                handler = new MethodTimeoutProxy(target, timeoutMillis);
+                handler = new MethodTimeoutProxy(target, timeoutMillis, facadeLimit);
             }
         }
 
@@ -28,13 +28,18 @@ import java.lang.reflect.Method;
 import java.util.Locale;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
 
@@ -45,13 +50,120 @@ import org.identityconnectors.framework.common.exceptions.OperationTimeoutExcept
  * element by element basis. Moreover, it would be unsafe for search since the
  * thread could continue to return elements after it has timed out and we need
  * to guarantee that not happen.
+ * <p/>
+ * The method runs on a bounded, shared pool of worker threads and the caller
+ * waits for it no longer than the timeout, even if the operation is blocked in
+ * I/O that does not respond to interrupts. On timeout the worker is
+ * interrupted and the caller gets an {@link OperationTimeoutException}.
+ * <p/>
+ * A worker stays taken until the operation returns, even after its caller
+ * timed out. Once all the workers are taken, an operation waits for one within
+ * its own timeout and then fails with an {@link OperationTimeoutException}; no
+ * thread is started beyond the pool. Each facade may only take a share of the
+ * workers, so the operations hung on one resource can not take the workers of
+ * the connectors of the others.
  */
 public class MethodTimeoutProxy implements InvocationHandler {
 
+    private static final Log LOG = Log.getLog(MethodTimeoutProxy.class);
+
+    /**
+     * System property to set the maximum number of worker threads.
+     */
+    public static final String MAX_THREADS_PROP =
+            "org.identityconnectors.framework.impl.api.MethodTimeoutProxy.maxThreads";
+
+    private static final int DEFAULT_MAX_THREADS = 128;
+
+    /**
+     * System property to set the maximum number of worker threads the
+     * operations of one facade may take at a time.
+     */
+    public static final String MAX_THREADS_PER_FACADE_PROP =
+            "org.identityconnectors.framework.impl.api.MethodTimeoutProxy.maxThreadsPerFacade";
+
+    private static final int DEFAULT_MAX_THREADS_PER_FACADE = 64;
+
+    /**
+     * Runs the timed operations. Idle threads are reclaimed.
+     */
+    private static final ThreadPoolExecutor WORKERS;
+
+    /**
+     * One permit per worker thread, held until the operation returns.
+     */
+    private static final Semaphore WORKER_PERMITS;
+
+    private static final int MAX_THREADS_PER_FACADE;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "MethodTimeoutProxy-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            // don't pin the class loader of whoever started the thread
+            thread.setContextClassLoader(MethodTimeoutProxy.class.getClassLoader());
+            return thread;
+        }
+    };
+
+    /**
+     * Number of timed operations being run by the workers.
+     */
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+
+    static {
+        int maxThreads = getIntProperty(MAX_THREADS_PROP, DEFAULT_MAX_THREADS);
+        MAX_THREADS_PER_FACADE =
+                Math.min(maxThreads, getIntProperty(MAX_THREADS_PER_FACADE_PROP,
+                        DEFAULT_MAX_THREADS_PER_FACADE));
+        // the permits keep the queue short, it never holds more tasks than
+        // there are threads to run them
+        WORKERS =
+                new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        WORKERS.allowCoreThreadTimeOut(true);
+        WORKER_PERMITS = new Semaphore(maxThreads, true);
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (StringUtil.isNotBlank(value)) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value {0} of {1}, using {2}", value, name, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     */
+    static int getMaxThreads() {
+        return WORKERS.getMaximumPoolSize();
+    }
+
     /**
-     * Get a pool of threads to use for operational timeouts.
+     * Creates the limit of the worker threads the operations of a facade may
+     * take at a time, to be shared by all the timeout proxies of the facade.
+     *
+     * @return the permits of a facade.
+     */
+    public static Semaphore newFacadeLimit() {
+        return new Semaphore(MAX_THREADS_PER_FACADE, true);
+    }
+
+    /**
+     * Returns the number of timed operations in progress. This includes the
+     * operations whose callers have already timed out but which have not
+     * returned yet.
      */
-    private static final ExecutorService THREADPOOL = Executors.newCachedThreadPool();
+    public static int getInFlightOperations() {
+        return IN_FLIGHT.get();
+    }
 
     /**
      * The underlying operation that we are providing a timeout for
@@ -63,6 +175,11 @@ public class MethodTimeoutProxy implements InvocationHandler {
      */
     private final long timeoutMillis;
 
+    /**
+     * The worker threads of the facade, null if the facade has no limit.
+     */
+    private final Semaphore facadeLimit;
+
     /**
      * Create a new MethodTimeoutProxy.
      *
@@ -71,8 +188,23 @@ public class MethodTimeoutProxy implements InvocationHandler {
      * @param timeoutMillis
      */
     public MethodTimeoutProxy(Object target, long timeoutMillis) {
+        this(target, timeoutMillis, null);
+    }
+
+    /**
+     * Create a new MethodTimeoutProxy.
+     *
+     * @param target
+     *            The object we are wrapping
+     * @param timeoutMillis
+     * @param facadeLimit
+     *            The limit of the facade from {@link #newFacadeLimit()}, or
+     *            null.
+     */
+    public MethodTimeoutProxy(Object target, long timeoutMillis, Semaphore facadeLimit) {
         this.target = target;
         this.timeoutMillis = timeoutMillis;
+        this.facadeLimit = facadeLimit;
     }
 
     public Object invoke(final Object proxy, final Method method, final Object[] args)
@@ -88,15 +220,12 @@ public class MethodTimeoutProxy implements InvocationHandler {
         Callable<Object> callable = new Callable<Object>() {
 
             public Object call() throws Exception {
+                IN_FLIGHT.incrementAndGet();
                 try {
-                    try {
-                        // propagate current locale
-                        // since this is a thread pool
-                        CurrentLocale.set(locale);
-                        return method.invoke(target, args);
-                    } finally {
-                        CurrentLocale.clear();
-                    }
+                    // propagate current locale
+                    // since this is a thread pool
+                    CurrentLocale.set(locale);
+                    return method.invoke(target, args);
                 } catch (InvocationTargetException e) {
                     Throwable root = e.getCause();
                     if (root instanceof RuntimeException) {
@@ -108,21 +237,53 @@ public class MethodTimeoutProxy implements InvocationHandler {
                     } else {
                         throw ConnectorException.wrap(root);
                     }
+                } finally {
+                    CurrentLocale.clear();
+                    IN_FLIGHT.decrementAndGet();
                 }
             }
         };
 
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (facadeLimit != null && !facadeLimit.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new OperationTimeoutException("All the workers of the facade are busy");
+        }
+        if (!WORKER_PERMITS.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            release(facadeLimit);
+            throw new OperationTimeoutException("All the workers are busy");
+        }
+        final FutureTask<Object> task = new FutureTask<Object>(callable);
+        try {
+            WORKERS.execute(new Runnable() {
+                public void run() {
+                    try {
+                        // does nothing if the caller already gave up
+                        task.run();
+                    } finally {
+                        WORKER_PERMITS.release();
+                        release(facadeLimit);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            WORKER_PERMITS.release();
+            release(facadeLimit);
+            throw e;
+        }
         try {
-            // package in a future task so we can set a timeout..
-            FutureTask<Object> t = new FutureTask<Object>(callable);
-            // execute it in the thread pool so we don't waste resources.
-            THREADPOOL.execute(t);
-            // execute and hope it doesn't timeout :)
-            return t.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return task.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
         } catch (TimeoutException ex) {
+            // interrupt the worker
+            task.cancel(true);
             throw new OperationTimeoutException(ex);
         } catch (ExecutionException ex) {
             throw ex.getCause();
         }
     }
+
+    private static void release(Semaphore limit) {
+        if (limit != null) {
+            limit.release();
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.common.metrics.Metrics;
+import org.identityconnectors.common.metrics.MetricsSpi;
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+
+/**
+ * Proxy responsible for reporting the operations from the API to the
+ * {@link MetricsSpi}: the duration of each call and the number of objects
+ * passed to its results handler.
+ */
+public class MetricsProxy implements InvocationHandler {
+
+    private final Object target;
+    private final String connector;
+
+    public MetricsProxy(ConnectorKey key, Object target) {
+        this.connector = getConnectorName(key);
+        this.target = target;
+    }
+
+    /**
+     * Returns the name of the connector in the metrics.
+     */
+    public static String getConnectorName(ConnectorKey key) {
+        return key.getConnectorName() + "-" + key.getBundleVersion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+        // do not record equals, hashCode, toString
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(target, args);
+        }
+        final AtomicLong count = wrapHandlers(args);
+        final MetricsSpi metrics = Metrics.getMetricsSpi();
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object ret = method.invoke(target, args);
+            failed = false;
+            return ret;
+        } catch (InvocationTargetException e) {
+            Throwable root = e.getCause();
+            if (root instanceof RuntimeException) {
+                throw (RuntimeException) root;
+            } else if (root instanceof Exception) {
+                throw (Exception) root;
+            } else if (root instanceof Error) {
+                throw (Error) root;
+            } else {
+                throw ConnectorException.wrap(root);
+            }
+        } finally {
+            metrics.recordOperation(connector, method.getName(), System.nanoTime() - start,
+                    failed);
+            if (null != count) {
+                metrics.recordStreamedObjects(connector, method.getName(), count.get());
+            }
+        }
+    }
+
+    /**
+     * Replaces the results handlers in the arguments with counting ones.
+     *
+     * @return the counter or null if there is no handler.
+     */
+    private AtomicLong wrapHandlers(final Object[] args) {
+        AtomicLong count = null;
+        for (int i = 0; args != null && i < args.length; i++) {
+            if (args[i] instanceof ResultsHandler) {
+                count = new AtomicLong();
+                final ResultsHandler handler = (ResultsHandler) args[i];
+                final AtomicLong counter = count;
+                args[i] = new ResultsHandler() {
+                    public boolean handle(ConnectorObject object) {
+                        counter.incrementAndGet();
+                        return handler.handle(object);
+                    }
+                };
+            } else if (args[i] instanceof SyncResultsHandler) {
+                count = new AtomicLong();
+                final SyncResultsHandler handler = (SyncResultsHandler) args[i];
+                final AtomicLong counter = count;
+                args[i] = new SyncResultsHandler() {
+                    public boolean handle(SyncDelta delta) {
+                        counter.incrementAndGet();
+                        return handler.handle(delta);
+                    }
+                };
+            }
+        }
+        return count;
+    }
+}
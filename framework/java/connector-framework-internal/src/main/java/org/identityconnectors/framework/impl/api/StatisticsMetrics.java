@@ -0,0 +1,201 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.identityconnectors.common.metrics.MetricsSpi;
+
+/**
+ * Keeps the metrics in memory: counters, total and maximum duration and a
+ * histogram of the durations per operation and per pool.
+ * <p/>
+ * The operations are keyed by {@code connector.operation}.
+ */
+public class StatisticsMetrics implements MetricsSpi {
+
+    /**
+     * Upper bounds of the histogram buckets in milliseconds, the last bucket
+     * holds everything longer.
+     */
+    public static final long[] HISTOGRAM_BOUNDS = { 1, 10, 100, 1000, 10000 };
+
+    /**
+     * Statistics of the recorded durations.
+     */
+    public static final class Timer {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram =
+                new AtomicLongArray(HISTOGRAM_BOUNDS.length + 1);
+
+        private void record(long durationNanos, boolean failed) {
+            count.incrementAndGet();
+            if (failed) {
+                failures.incrementAndGet();
+            }
+            totalNanos.addAndGet(durationNanos);
+            long max = maxNanos.get();
+            while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos)) {
+                max = maxNanos.get();
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BOUNDS.length && millis >= HISTOGRAM_BOUNDS[bucket]) {
+                bucket++;
+            }
+            histogram.incrementAndGet(bucket);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+
+        /**
+         * Returns the number of durations in each bucket of
+         * {@link StatisticsMetrics#HISTOGRAM_BOUNDS}.
+         */
+        public long[] getHistogram() {
+            long[] rv = new long[histogram.length()];
+            for (int i = 0; i < rv.length; i++) {
+                rv[i] = histogram.get(i);
+            }
+            return rv;
+        }
+    }
+
+    private final ConcurrentMap<String, Timer> operations =
+            new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentMap<String, AtomicLong> streamedObjects =
+            new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Timer> poolWaits = new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentMap<String, Timer> poolCreates =
+            new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentMap<String, AtomicLong> poolTestFailures =
+            new ConcurrentHashMap<String, AtomicLong>();
+
+    public void recordOperation(String connector, String operation, long durationNanos,
+            boolean failed) {
+        getTimer(operations, connector + "." + operation).record(durationNanos, failed);
+    }
+
+    public void recordStreamedObjects(String connector, String operation, long count) {
+        getCounter(streamedObjects, connector + "." + operation).addAndGet(count);
+    }
+
+    public void recordPoolWait(String pool, long durationNanos) {
+        getTimer(poolWaits, pool).record(durationNanos, false);
+    }
+
+    public void recordPoolCreate(String pool, long durationNanos, boolean failed) {
+        getTimer(poolCreates, pool).record(durationNanos, failed);
+    }
+
+    public void recordPoolTestFailure(String pool) {
+        getCounter(poolTestFailures, pool).incrementAndGet();
+    }
+
+    public void removePool(String pool) {
+        poolWaits.remove(pool);
+        poolCreates.remove(pool);
+        poolTestFailures.remove(pool);
+    }
+
+    public Map<String, Timer> getOperations() {
+        return snapshot(operations);
+    }
+
+    public Map<String, Long> getStreamedObjects() {
+        return counters(streamedObjects);
+    }
+
+    public Map<String, Timer> getPoolWaits() {
+        return snapshot(poolWaits);
+    }
+
+    public Map<String, Timer> getPoolCreates() {
+        return snapshot(poolCreates);
+    }
+
+    public Map<String, Long> getPoolTestFailures() {
+        return counters(poolTestFailures);
+    }
+
+    private static Timer getTimer(ConcurrentMap<String, Timer> timers, String key) {
+        Timer timer = timers.get(key);
+        if (null == timer) {
+            timer = new Timer();
+            Timer previous = timers.putIfAbsent(key, timer);
+            if (null != previous) {
+                timer = previous;
+            }
+        }
+        return timer;
+    }
+
+    private static AtomicLong getCounter(ConcurrentMap<String, AtomicLong> counters, String key) {
+        AtomicLong counter = counters.get(key);
+        if (null == counter) {
+            counter = new AtomicLong();
+            AtomicLong previous = counters.putIfAbsent(key, counter);
+            if (null != previous) {
+                counter = previous;
+            }
+        }
+        return counter;
+    }
+
+    private static Map<String, Timer> snapshot(ConcurrentMap<String, Timer> timers) {
+        return Collections.unmodifiableMap(new TreeMap<String, Timer>(timers));
+    }
+
+    private static Map<String, Long> counters(ConcurrentMap<String, AtomicLong> counters) {
+        Map<String, Long> rv = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            rv.put(entry.getKey(), entry.getValue().get());
+        }
+        return Collections.unmodifiableMap(rv);
+    }
+}
@@ -24,17 +24,21 @@
 
 package org.identityconnectors.framework.impl.api.local;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.identityconnectors.common.Pair;
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.metrics.Metrics;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
-import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.ConfigurationPropertiesImpl;
+import org.identityconnectors.framework.impl.api.MetricsProxy;
 import org.identityconnectors.framework.impl.api.local.operations.OperationalContext;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.Connector;
@@ -98,8 +102,7 @@ public class ConnectorPoolManager {
         }
 
         public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
-            ObjectPoolConfiguration configuration =
-                    (ObjectPoolConfiguration) SerializerUtil.cloneObject(original);
+            ObjectPoolConfiguration configuration = new ObjectPoolConfiguration(original);
             configuration.validate();
             return configuration;
         }
@@ -174,6 +177,12 @@ public class ConnectorPoolManager {
 
     private static final Log LOG = Log.getLog(ConnectorPoolManager.class);
 
+    /**
+     * Tells apart the pools of the same connector in the metrics. The metrics
+     * of a pool are removed when it is disposed.
+     */
+    private static final AtomicInteger POOL_SEQUENCE = new AtomicInteger();
+
     /**
      * Get a object pool for this connector if it supports connector pooling.
      */
@@ -193,6 +202,15 @@ public class ConnectorPoolManager {
         return POOLS.get(connectorPoolKey);
     }
 
+    /**
+     * Get all the object pools, for monitoring.
+     *
+     * @return read-only view of the pools.
+     */
+    public static Map<ConnectorPoolKey, ObjectPool<PoolableConnector>> getPools() {
+        return Collections.unmodifiableMap(POOLS);
+    }
+
     private static Pair<ConnectorPoolKey, ObjectPool<PoolableConnector>> getPool2(
             final APIConfigurationImpl impl, final LocalConnectorInfoImpl localInfo)
             throws InstantiationException, IllegalAccessException {
@@ -206,17 +224,22 @@ public class ConnectorPoolManager {
             ObjectPool<PoolableConnector> pool = POOLS.get(key);
             // create a new pool if it doesn't exist..
             if (pool == null) {
-                LOG.info("Creating new pool: {0}", impl.getConnectorInfo().getConnectorKey());
+                final ConnectorKey connectorKey = impl.getConnectorInfo().getConnectorKey();
+                LOG.info("Creating new pool: {0}", connectorKey);
                 // this instance is strictly used for the pool..
                 pool =
                         new ObjectPool<PoolableConnector>(
                                 new ConnectorPoolHandler(impl, localInfo), impl
-                                        .getConnectorPoolConfiguration());
+                                        .getConnectorPoolConfiguration(), MetricsProxy
+                                        .getConnectorName(connectorKey)
+                                        + "#" + POOL_SEQUENCE.incrementAndGet());
                 // add back to the map of POOLS..
 
                 ObjectPool<PoolableConnector> previousPool = POOLS.putIfAbsent(key, pool);
                 // Use the pool made by other thread
                 if (previousPool != null) {
+                    // stop the evictor of the unused pool
+                    pool.shutdown();
                     pool = previousPool;
                 }
             }
@@ -232,11 +255,7 @@ public class ConnectorPoolManager {
         synchronized (POOLS) {
             ObjectPool<PoolableConnector> pool = POOLS.remove(connectorPoolKey);
             if (null != pool) {
-                try {
-                    pool.shutdown();
-                } catch (Exception e) {
-                    LOG.warn(e, "Failed to close pool: {0}", pool);
-                }
+                shutdown(pool);
             }
         }
     }
@@ -245,15 +264,20 @@ public class ConnectorPoolManager {
         synchronized (POOLS) {
             // close each pool..
             for (ObjectPool<PoolableConnector> pool : POOLS.values()) {
-                try {
-                    pool.shutdown();
-                } catch (Exception e) {
-                    LOG.warn(e, "Failed to close pool: {0}", pool);
-                }
+                shutdown(pool);
             }
             // clear the map of all POOLS..
             POOLS.clear();
         }
     }
 
+    private static void shutdown(final ObjectPool<PoolableConnector> pool) {
+        try {
+            pool.shutdown();
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to close pool: {0}", pool);
+        }
+        Metrics.getMetricsSpi().removePool(pool.getName());
+    }
+
 }
@@ -27,6 +27,7 @@ import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.identityconnectors.common.metrics.Metrics;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.AuthenticationApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
@@ -198,6 +199,10 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
 
         // now wrap the proxy in the appropriate timeout proxy
         proxy = createTimeoutProxy(api, proxy);
+        // record the time including the timeout proxy
+        if (Metrics.isEnabled()) {
+            proxy = createMetricsProxy(api, proxy);
+        }
         // wrap in a logging proxy..
         if (LoggingProxy.isLoggable()) {
             proxy = createLoggingProxy(api, proxy);
@@ -24,18 +24,23 @@
  */
 package org.identityconnectors.framework.impl.api.local;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.lang.annotation.Annotation;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.FileLock;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -44,6 +49,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
@@ -51,7 +57,10 @@ import java.util.jar.Manifest;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.IOUtil;
 import org.identityconnectors.common.ReflectionUtil;
+import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.script.groovy.GroovyScriptExecutorFactory;
+import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
@@ -68,6 +77,30 @@ import org.identityconnectors.framework.spi.PoolableConnector;
 
 public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
 
+    /**
+     * Bundle entry listing the connector classes of the bundle, one fully
+     * qualified class name per line. The classes of a bundle that has it are
+     * not scanned for the {@link ConnectorClass} annotation, only the listed
+     * ones are loaded.
+     */
+    public static final String CONNECTOR_INDEX = "META-INF/openicf/connectors";
+
+    /**
+     * Bundle entry listing the message catalogs of the connectors of the
+     * bundle, one resource path per line. The catalogs of a bundle that has
+     * it are not searched in the contents of the bundle and its libraries.
+     */
+    public static final String MESSAGE_CATALOG_INDEX = "META-INF/openicf/messages";
+
+    /**
+     * System property naming a directory to keep the libraries extracted
+     * from the bundles across restarts. Each bundle is extracted once into a
+     * sub directory named after the SHA-256 of its content. By default the
+     * libraries are copied to a new temporary directory every time.
+     */
+    public static final String BUNDLE_CACHE_PROP =
+            "org.identityconnectors.framework.impl.api.local.bundleCache";
+
     private static final Log LOG = Log.getLog(LocalConnectorInfoManagerImpl.class);
 
     private List<ConnectorInfo> connectorInfos;
@@ -123,6 +156,12 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
             info.getImmediateClassPath().add(dir.toURI().toURL());
             final List<String> bundleContents = listBundleContents(dir);
             info.getImmediateBundleContents().addAll(bundleContents);
+            if (info.getImmediateBundleContents().contains(CONNECTOR_INDEX)) {
+                info.setConnectorIndex(readIndex(new File(dir, CONNECTOR_INDEX)));
+            }
+            if (info.getImmediateBundleContents().contains(MESSAGE_CATALOG_INDEX)) {
+                info.setMessageCatalogIndex(readIndex(new File(dir, MESSAGE_CATALOG_INDEX)));
+            }
             final File libDir = new File(dir, "lib");
             if (libDir.exists()) {
                 final List<URL> libURLs = BundleLibSorter.getSortedURLs(libDir);
@@ -171,9 +210,9 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
     private static WorkingBundleInfo processURL(final URL url, final boolean topLevel)
             throws ConfigurationException {
         final WorkingBundleInfo info = new WorkingBundleInfo(url.toString());
-        final BundleTempDirectory tempDir = new BundleTempDirectory();
-
+        BundleTempDirectory tempDir = null;
         try {
+            tempDir = BundleTempDirectory.forBundle(url);
             JarInputStream stream = null;
             if ("file".equals(url.getProtocol())) {
                 info.getImmediateClassPath().add(url);
@@ -207,6 +246,12 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
                 while ((entry = stream.getNextJarEntry()) != null) {
                     final String name = entry.getName();
                     info.getImmediateBundleContents().add(name);
+                    if (topLevel && CONNECTOR_INDEX.equals(name)) {
+                        info.setConnectorIndex(readIndex(stream));
+                    }
+                    if (topLevel && MESSAGE_CATALOG_INDEX.equals(name)) {
+                        info.setMessageCatalogIndex(readIndex(stream));
+                    }
                     if (name.startsWith("lib/") && !entry.isDirectory()) {
                         final String localName = name.substring("lib/".length());
                         final URL tempurl = tempDir.copyStreamToFile(stream, name).toURI().toURL();
@@ -227,12 +272,44 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
             for (URL lib : libURLs.values()) {
                 info.getEmbeddedBundles().add(processURL(lib, false));
             }
+            tempDir.complete();
         } catch (IOException e) {
             throw new ConfigurationException(e);
+        } finally {
+            if (tempDir != null) {
+                tempDir.release();
+            }
         }
         return info;
     }
 
+    private static List<String> readIndex(final File file) throws IOException {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return readIndex(in);
+        } finally {
+            IOUtil.quietClose(in);
+        }
+    }
+
+    /**
+     * Reads the lines of a {@link #CONNECTOR_INDEX} or
+     * {@link #MESSAGE_CATALOG_INDEX}, the stream is left open.
+     */
+    private static List<String> readIndex(final InputStream in) throws IOException {
+        final List<String> rv = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() > 0 && !line.startsWith("#")) {
+                rv.add(line);
+            }
+        }
+        return rv;
+    }
+
     /**
      * Final pass - create connector infos
      */
@@ -244,7 +321,16 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
             final ClassLoader loader =
                     new BundleClassLoader(bundleInfo.getEffectiveClassPath(), bundleInfo
                             .getEffectiveNativeLibraries(), bundleParentClassLoader);
-            for (String name : bundleInfo.getImmediateBundleContents()) {
+            Collection<String> candidates = bundleInfo.getImmediateBundleContents();
+            final boolean indexed = bundleInfo.getConnectorIndex() != null;
+            if (indexed) {
+                // only the indexed classes, no need to load everything
+                candidates = new ArrayList<String>();
+                for (String className : bundleInfo.getConnectorIndex()) {
+                    candidates.add(className.replace('.', '/') + ".class");
+                }
+            }
+            for (String name : candidates) {
                 Class<?> connectorClass = null;
                 ConnectorClass options = null;
                 if (name.endsWith(".class")) {
@@ -254,14 +340,21 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
                         connectorClass = loader.loadClass(className);
                         options = connectorClass.getAnnotation(ConnectorClass.class);
                     } catch (Throwable e) {
-                        // probe for the class. this might not be an error since
-                        // it might be from a bundle
-                        // fragment ( a bundle only included by other bundles ).
-                        // However, we should definitely warn
-                        LOG.info(LOG.isOk() ?
-                                 e : null,
-                                "Unable to load class {0} from bundle {1}. Class will be ignored and will not be listed in list of connectors.",
-                                className, bundleInfo.getOriginalLocation());
+                        if (indexed) {
+                            // the index is stale
+                            LOG.warn(e,
+                                    "Unable to load class {0} listed in the connector index of bundle {1}. Class will be ignored and will not be listed in list of connectors.",
+                                    className, bundleInfo.getOriginalLocation());
+                        } else {
+                            // probe for the class. this might not be an error since
+                            // it might be from a bundle
+                            // fragment ( a bundle only included by other bundles ).
+                            // However, we should definitely warn
+                            LOG.info(LOG.isOk() ?
+                                     e : null,
+                                    "Unable to load class {0} from bundle {1}. Class will be ignored and will not be listed in list of connectors.",
+                                    className, bundleInfo.getOriginalLocation());
+                        }
                     }
                     if (connectorClass != null && options == null) {
 	                    for (Annotation annotation: connectorClass.getAnnotations()) {
@@ -275,6 +368,10 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
 	                    	}
 	                    }
                     }
+                    if (indexed && connectorClass != null && options == null) {
+                        LOG.warn("Class {0} listed in the connector index of bundle {1} has no ConnectorClass annotation. Class will be ignored and will not be listed in list of connectors.",
+                                className, bundleInfo.getOriginalLocation());
+                    }
                 }
                 if (connectorClass != null && options != null) {
                     if (!Connector.class.isAssignableFrom(connectorClass)) {
@@ -290,8 +387,8 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
                         info.setConnectorKey(new ConnectorKey(bundleInfo.getManifest().getBundleName(),
                                 bundleInfo.getManifest().getBundleVersion(), connectorClass.getName()));
                         final ConnectorMessagesImpl messages =
-                                loadMessageCatalog(bundleInfo.getEffectiveContents(), loader, info
-                                        .getConnectorClass());
+                                loadMessageCatalog(getMessageCatalogCandidates(bundleInfo),
+                                        loader, info.getConnectorClass());
                         info.setMessages(messages);
                         info.setDefaultAPIConfiguration(createDefaultAPIConfiguration(info));
                         rv.add(info);
@@ -314,6 +411,17 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
         return rv;
     }
 
+    /**
+     * Returns the paths to look for the message catalogs in, the indexed
+     * catalogs if the bundle has a {@link #MESSAGE_CATALOG_INDEX}.
+     */
+    private static Set<String> getMessageCatalogCandidates(final WorkingBundleInfo bundleInfo) {
+        if (bundleInfo.getMessageCatalogIndex() != null) {
+            return new LinkedHashSet<String>(bundleInfo.getMessageCatalogIndex());
+        }
+        return bundleInfo.getEffectiveContents();
+    }
+
     /**
      * Create an instance of the {@link APIConfiguration} object to setup the framework etc..
      */
@@ -358,6 +466,12 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
                                     localeStr.substring(0, localeStr.length() - suffix.length());
                             final Locale locale = parseLocale(localeStr);
                             Properties properties = IOUtil.getResourceAsProperties(loader, path);
+                            if (properties == null) {
+                                // only an index can list a missing catalog
+                                LOG.warn("Indexed message catalog {0} of connector {1} not found",
+                                        path, connector.getName());
+                                continue;
+                            }
                             // get or create map
                             Map<String, String> map = rv.getCatalogs().get(locale);
                             if (map == null) {
@@ -435,13 +549,146 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
         return Collections.unmodifiableList(connectorInfos);
     }
 
+    /**
+     * Releases the scripts compiled with the class loaders of the bundles, so
+     * the class loaders can be unloaded once this manager is dropped.
+     */
+    public void dispose() {
+        for (ConnectorInfo info : connectorInfos) {
+            final ClassLoader loader =
+                    ((LocalConnectorInfoImpl) info).getConnectorClass().getClassLoader();
+            try {
+                GroovyScriptExecutorFactory.clearCache(loader);
+            } catch (LinkageError e) {
+                // Groovy is not available, nothing was cached
+                break;
+            }
+        }
+    }
+
     private static final class BundleTempDirectory {
 
+        private static final String COMPLETE_MARKER = ".complete";
+
+        /**
+         * File locks are held by the whole JVM, this keeps the threads of
+         * this JVM from locking the cache concurrently.
+         */
+        private static final ReentrantLock CACHE_LOCK = new ReentrantLock();
+
         private final Random _random = new Random(System.currentTimeMillis());
 
         private File _bundleTempDir;
 
+        /**
+         * True when the directory is an entry of the bundle cache, which is
+         * kept across restarts.
+         */
+        private boolean _persistent;
+
+        /**
+         * True when the persistent entry was fully extracted by an earlier
+         * run and only has to be looked up.
+         */
+        private boolean _extracted;
+
+        private RandomAccessFile _lockFile;
+
+        private FileLock _lock;
+
+        /**
+         * Returns the directory to extract the given bundle to: an entry of
+         * the bundle cache if {@link #BUNDLE_CACHE_PROP} is set, otherwise a
+         * new temporary directory.
+         */
+        public static BundleTempDirectory forBundle(final URL url) throws IOException {
+            final BundleTempDirectory rv = new BundleTempDirectory();
+            final String cache = System.getProperty(BUNDLE_CACHE_PROP);
+            if (StringUtil.isNotBlank(cache)) {
+                rv.openCacheEntry(new File(cache.trim()), digest(url));
+            }
+            return rv;
+        }
+
+        private static String digest(final URL url) throws IOException {
+            final InputStream in = url.openStream();
+            try {
+                return SecurityUtil.computeHexSHA256Hash(in);
+            } finally {
+                IOUtil.quietClose(in);
+            }
+        }
+
+        private void openCacheEntry(final File cacheDir, final String digest) throws IOException {
+            if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+                throw new IOException("Could not create directory " + cacheDir);
+            }
+            // other connector servers may share the cache
+            CACHE_LOCK.lock();
+            _persistent = true;
+            try {
+                _lockFile = new RandomAccessFile(new File(cacheDir, digest + ".lock"), "rw");
+                _lock = _lockFile.getChannel().lock();
+                _bundleTempDir = new File(cacheDir, digest);
+                if (new File(_bundleTempDir, COMPLETE_MARKER).isFile()) {
+                    _extracted = true;
+                } else {
+                    // left over from an interrupted extraction
+                    if (_bundleTempDir.exists()) {
+                        IOUtil.delete(_bundleTempDir);
+                    }
+                    if (!_bundleTempDir.mkdirs()) {
+                        throw new IOException("Could not create directory " + _bundleTempDir);
+                    }
+                }
+            } catch (IOException e) {
+                release();
+                throw e;
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            } catch (Error e) {
+                release();
+                throw e;
+            }
+        }
+
+        /**
+         * Marks a cache entry as fully extracted.
+         */
+        public void complete() throws IOException {
+            if (_persistent && !_extracted) {
+                new FileOutputStream(new File(_bundleTempDir, COMPLETE_MARKER)).close();
+                _extracted = true;
+            }
+        }
+
+        public void release() {
+            if (_lock != null) {
+                try {
+                    _lock.release();
+                } catch (IOException e) {
+                    LOG.ok(e, "Failed to unlock {0}", _bundleTempDir);
+                }
+                _lock = null;
+            }
+            if (_lockFile != null) {
+                try {
+                    _lockFile.close();
+                } catch (IOException e) {
+                    LOG.ok(e, "Failed to close lock of {0}", _bundleTempDir);
+                }
+                _lockFile = null;
+            }
+            if (_persistent && CACHE_LOCK.isHeldByCurrentThread()) {
+                CACHE_LOCK.unlock();
+            }
+        }
+
         public File copyStreamToFile(final InputStream stream) throws IOException {
+            if (_persistent) {
+                return copyStreamToFile(stream, "bundle.jar");
+            }
             final File bundleDir = getBundleTempDir();
             File candidate;
             do {
@@ -456,6 +703,12 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
                 throws IOException {
             final File bundleDir = getBundleTempDir();
             final File newFile = new File(bundleDir, name);
+            if (_extracted) {
+                if (!newFile.isFile()) {
+                    throw new IOException("File " + newFile + " is missing from the bundle cache");
+                }
+                return newFile;
+            }
             if (newFile.exists()) {
                 throw new IOException("File " + newFile + " already exists");
             }
@@ -463,11 +716,13 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
             if (!parent.exists() && !parent.mkdirs()) {
                 throw new IOException("Could not create directory " + parent);
             }
-            while (!parent.equals(bundleDir)) {
-                parent.deleteOnExit();
-                parent = parent.getParentFile();
+            if (!_persistent) {
+                while (!parent.equals(bundleDir)) {
+                    parent.deleteOnExit();
+                    parent = parent.getParentFile();
+                }
+                newFile.deleteOnExit();
             }
-            newFile.deleteOnExit();
             copyStream(stream, newFile);
             return newFile;
         }
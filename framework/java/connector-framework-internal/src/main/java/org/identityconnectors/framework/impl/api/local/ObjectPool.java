@@ -24,24 +24,84 @@
 
 package org.identityconnectors.framework.impl.api.local;
 
-import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.metrics.Metrics;
+import org.identityconnectors.common.metrics.MetricsSpi;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 
+/**
+ * Pool of objects made and tested by an {@link ObjectPoolHandler}.
+ * <p/>
+ * Borrowing and returning an idle object does not take any lock, a thread
+ * only waits on the lock when the pool is exhausted. The number of idle
+ * objects is kept under {@code MaxIdle} when an object is returned, the
+ * objects idle longer than {@code MinEvictableIdleTimeMillis} are evicted
+ * when an object is borrowed and, if {@code TimeBetweenEvictionRunsMillis} is
+ * set, by a background evictor which also tests the idle objects when
+ * {@code TestWhileIdle} is set. The evictions of each pool run on a thread of
+ * their own, so a slow or hung test only holds up the pool it belongs to.
+ * <p/>
+ * The borrow wait, the creation of the objects and the failed tests are
+ * reported to the {@link MetricsSpi} under the name of the pool.
+ */
 public class ObjectPool<T> {
 
     private static final Log LOG = Log.getLog(ObjectPool.class);
 
+    /**
+     * Schedules the background evictors of all the pools.
+     */
+    private static final ScheduledThreadPoolExecutor EVICTOR;
+
+    /**
+     * Runs the scheduled evictions. Idle threads are reclaimed.
+     */
+    private static final ThreadPoolExecutor EVICTION_RUNNER;
+
+    static {
+        EVICTOR =
+                new ScheduledThreadPoolExecutor(1, new EvictorThreadFactory("ObjectPool Evictor"));
+        EVICTOR.setRemoveOnCancelPolicy(true);
+        EVICTION_RUNNER =
+                new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(), new EvictorThreadFactory(
+                                "ObjectPool Eviction"));
+    }
+
+    private static class EvictorThreadFactory implements ThreadFactory {
+        private final String name;
+
+        EvictorThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            // don't pin the class loader of whoever started the thread
+            thread.setContextClassLoader(ObjectPool.class.getClassLoader());
+            return thread;
+        }
+    }
+
     /**
      * Statistics bean
      */
@@ -81,17 +141,17 @@ public class ObjectPool<T> {
         /**
          * True if this is currently active, false if it is idle
          */
-        private boolean isActive;
+        private volatile boolean isActive;
 
         /**
          * Last state change (change from active to idle or vice-versa)
          */
-        private long lastStateChangeTimestamp;
+        private volatile long lastStateChangeTimestamp;
 
         /**
          * Is this a freshly created object (never been pooled)?
          */
-        private boolean isNew;
+        private volatile boolean isNew;
 
         public PooledObject(final T object) {
             this.object = object;
@@ -103,12 +163,8 @@ public class ObjectPool<T> {
             return object;
         }
 
-        public void close() throws IOException {
-            try {
-                returnObject(this);
-            } catch (InterruptedException e) {
-                LOG.error(e, "Failed to close/dispose PooledObject object");
-            }
+        public void close() {
+            returnObject(this);
         }
 
         public boolean isNew() {
@@ -136,32 +192,41 @@ public class ObjectPool<T> {
     }
 
     /**
-     * Set contains all the PooledObject was made by this pool. It contains all
+     * Number of objects made by this pool and not disposed yet. It counts all
      * idle and borrowed(active) objects.
      */
-    private Set<PooledObject> activeObjects;
+    private final AtomicInteger totalObjects = new AtomicInteger();
 
     /**
-     * Queue of idle objects. The one that has been idle for the longest comes
-     * first in the queue
+     * Deque of idle objects. The one that has been idle for the longest comes
+     * first, returned objects are added last.
      */
-    private final ConcurrentLinkedQueue<PooledObject> idleObjects =
-            new ConcurrentLinkedQueue<PooledObject>();
+    private final ConcurrentLinkedDeque<PooledObject> idleObjects =
+            new ConcurrentLinkedDeque<PooledObject>();
 
     /**
-     * Limits the maximum available pooled object in the pool.
+     * Size of {@link #idleObjects}, the size of the deque is not a constant
+     * time operation.
      */
-    private Semaphore totalPermit;
+    private final AtomicInteger idleCount = new AtomicInteger();
 
     /**
-     * Lock to maintain the state changes of the pool.
+     * Limits the maximum available pooled object in the pool.
      */
-    /** Lock held by take, poll, etc */
+    private final Semaphore totalPermit;
+
+    /** Lock held by the threads waiting for an object */
     private final ReentrantLock takeLock = new ReentrantLock();
 
     /** Wait queue for waiting takes */
     private final Condition notEmpty = takeLock.newCondition();
 
+    /**
+     * Number of threads waiting on {@link #notEmpty}, the lock is only taken
+     * to signal them if there are any.
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
     /**
      * ObjectPoolHandler we use for managing object lifecycle
      */
@@ -172,6 +237,22 @@ public class ObjectPool<T> {
      */
     private final ObjectPoolConfiguration poolConfiguration;
 
+    /**
+     * Name of the pool in the metrics.
+     */
+    private final String name;
+
+    /**
+     * The scheduled background evictor or null.
+     */
+    private final ScheduledFuture<?> evictor;
+
+    /**
+     * Set while an eviction of this pool runs, the next one is skipped until
+     * it is finished.
+     */
+    private final AtomicBoolean evictionRunning = new AtomicBoolean();
+
     /**
      * Is the pool shutdown
      */
@@ -186,15 +267,41 @@ public class ObjectPool<T> {
      *            Configuration for the pool
      */
     public ObjectPool(final ObjectPoolHandler<T> handler, final ObjectPoolConfiguration config) {
+        this(handler, config, handler.getClass().getName());
+    }
+
+    /**
+     * Create a new ObjectPool
+     *
+     * @param handler
+     *            Handler for objects
+     * @param config
+     *            Configuration for the pool
+     * @param name
+     *            Name of the pool in the metrics
+     */
+    public ObjectPool(final ObjectPoolHandler<T> handler, final ObjectPoolConfiguration config,
+            final String name) {
 
         Assertions.nullCheck(handler, "handler");
         Assertions.nullCheck(config, "config");
 
         this.handler = handler;
+        this.name = name;
         // clone it
         poolConfiguration = this.handler.validate(config);
-        activeObjects = new HashSet<PooledObject>(poolConfiguration.getMaxObjects());
         totalPermit = new Semaphore(poolConfiguration.getMaxObjects());
+
+        long period = poolConfiguration.getTimeBetweenEvictionRunsMillis();
+        if (period > 0) {
+            evictor = EVICTOR.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    startEviction();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
     }
 
     /**
@@ -206,30 +313,37 @@ public class ObjectPool<T> {
         return isShutdown;
     }
 
+    /**
+     * Returns the name of the pool in the metrics.
+     */
+    public String getName() {
+        return name;
+    }
+
     /**
      * Return an object to the pool
      *
      * @param pooled
      */
-    private void returnObject(PooledObject pooled) throws InterruptedException {
+    private void returnObject(PooledObject pooled) {
         if (isShutdown() || poolConfiguration.getMaxIdle() < 1) {
             dispose(pooled);
-        } else {
-            try {
-                for (PooledObject entry : idleObjects) {
-                    if ((poolConfiguration.getMaxIdle() <= idleObjects.size())
-                            || entry.isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis())) {
-                        if (idleObjects.remove(entry)) {
-                            dispose(entry);
-                        }
-                    }
-                }
-            } finally {
-                pooled.setActive(false);
-                pooled.setNew(false);
-                idleObjects.add(pooled);
-                signalNotEmpty();
+            return;
+        }
+        pooled.setActive(false);
+        pooled.setNew(false);
+        addIdleObject(pooled, false);
+        // make room by evicting the objects idle for the longest
+        while (idleCount.get() > poolConfiguration.getMaxIdle()) {
+            PooledObject eldest = pollIdleObject(true);
+            if (null == eldest) {
+                break;
             }
+            dispose(eldest);
+        }
+        if (isShutdown()) {
+            // shutdown() may have drained the idle objects before we added it
+            disposeIdleObjects();
         }
     }
 
@@ -243,10 +357,13 @@ public class ObjectPool<T> {
         try {
             do {
                 rv = borrowObjectNoTest();
-                try {
-                    handler.testObject(rv.getPooledObject());
-                } catch (Exception e) {
-                    if (null != rv) {
+                if (rv.isNew() || isTestOnBorrow(rv)) {
+                    try {
+                        handler.testObject(rv.getPooledObject());
+                    } catch (Exception e) {
+                        if (Metrics.isEnabled()) {
+                            Metrics.getMetricsSpi().recordPoolTestFailure(name);
+                        }
                         dispose(rv);
                         // if it's a new object, break out of the loop
                         // immediately
@@ -265,6 +382,48 @@ public class ObjectPool<T> {
         return rv;
     }
 
+    /**
+     * Borrow an object from the pool if one is idle or a new one can be made
+     * right away, never waits for an object to be returned.
+     *
+     * @return An object or null if the pool is exhausted or the object failed
+     *         the test
+     */
+    public ObjectPoolEntry<T> tryBorrowObject() {
+        if (isShutdown()) {
+            throw new IllegalStateException("Object pool already shutdown");
+        }
+        PooledObject rv = borrowIdleObject();
+        if (null == rv) {
+            if (!totalPermit.tryAcquire()) {
+                return null;
+            }
+            rv = makeObject();
+        }
+        if (rv.isNew() || isTestOnBorrow(rv)) {
+            try {
+                handler.testObject(rv.getPooledObject());
+            } catch (Exception e) {
+                if (Metrics.isEnabled()) {
+                    Metrics.getMetricsSpi().recordPoolTestFailure(name);
+                }
+                LOG.ok(e, "Object failed the test on borrow");
+                dispose(rv);
+                return null;
+            }
+        }
+        rv.setActive(true);
+        return rv;
+    }
+
+    /**
+     * Returns true if the idle object must be tested before it is borrowed.
+     */
+    private boolean isTestOnBorrow(PooledObject pooled) {
+        long idleTime = poolConfiguration.getTestOnBorrowIdleTimeMillis();
+        return idleTime <= 0 || pooled.isOlderThan(idleTime);
+    }
+
     /**
      * Borrow an object from the pool, but don't test it (it gets tested by the
      * caller *outside* of synchronization)
@@ -275,68 +434,188 @@ public class ObjectPool<T> {
         if (isShutdown()) {
             throw new IllegalStateException("Object pool already shutdown");
         }
+        if (!Metrics.isEnabled()) {
+            PooledObject pooledConn = acquireObject();
+            return null != pooledConn ? pooledConn : makeObject();
+        }
+        final long start = System.nanoTime();
+        PooledObject pooledConn = acquireObject();
+        Metrics.getMetricsSpi().recordPoolWait(name, System.nanoTime() - start);
+        return null != pooledConn ? pooledConn : makeObject();
+    }
 
+    /**
+     * Takes an idle object or, if there is none, a permit to make a new one.
+     * Waits up to {@code MaxWait} if neither is available.
+     *
+     * @return the idle object or null if the caller got a permit.
+     */
+    private PooledObject acquireObject() throws InterruptedException {
         // First borrow from the idle pool
         PooledObject pooledConn = borrowIdleObject();
-        if (null == pooledConn) {
+        if (null != pooledConn) {
+            return pooledConn;
+        }
+        if (!totalPermit.tryAcquire()) {
+            // Wait for permit or object to became available
             long nanos = TimeUnit.SECONDS.toNanos(poolConfiguration.getMaxWait());
             final ReentrantLock lock = this.takeLock;
             lock.lockInterruptibly();
+            waiters.incrementAndGet();
             try {
-                do {
+                while (true) {
+                    // Try to borrow from the idle pool
+                    pooledConn = borrowIdleObject();
+                    if (null != pooledConn) {
+                        return pooledConn;
+                    }
                     if (totalPermit.tryAcquire()) {
-                        // If the pool is empty and there are available permits
-                        // then create a new instance.
-                        return makeObject();
-                    } else {
-                        // Wait for permit or object to became available
-                        try {
-                            nanos = notEmpty.awaitNanos(nanos);
-                        } catch (InterruptedException ie) {
-                            notEmpty.signal(); // propagate to non-interrupted
-                                               // thread
-                            throw ConnectorException.wrap(ie);
-                        }
-
-                        if (nanos <= 0) {
-                            throw new ConnectorException("TimeOut");
-                        }
-                        // Try to borrow from the idle pool
-                        pooledConn = borrowIdleObject();
-                        if (null != pooledConn) {
-                            return pooledConn;
-                        }
+                        break;
+                    }
+                    if (nanos <= 0) {
+                        throw new ConnectorException("TimeOut");
                     }
-                } while (nanos > 0);
+                    try {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    } catch (InterruptedException ie) {
+                        notEmpty.signal(); // propagate to non-interrupted
+                                           // thread
+                        throw ie;
+                    }
+                }
             } finally {
+                waiters.decrementAndGet();
                 lock.unlock();
             }
         }
-        return pooledConn;
+        // If the pool is empty and there are available permits then create a
+        // new instance.
+        return null;
     }
 
     /**
-     * Polls the head object from the queue.
+     * Polls an idle object from the deque.
      * <p/>
-     * Polls the head object and before it returns it checks the {@code MaxIdle}
-     * size and the {@code MinEvictableIdleTime} before accepts the object.
+     * Before it polls it evicts the objects idle longer than the
+     * {@code MinEvictableIdleTime} as long as there are more than
+     * {@code MinIdle} idle objects.
      *
-     * @return null if there was no fresh/new object in the queue.
-     * @throws InterruptedException
-     */
-    private PooledObject borrowIdleObject() throws InterruptedException {
-        for (PooledObject pooledConn = idleObjects.poll(); pooledConn != null; pooledConn =
-                idleObjects.poll()) {
-            int size = idleObjects.size();
-            if (poolConfiguration.getMinIdle() < size + 1
-                    && ((poolConfiguration.getMaxIdle() < size) || pooledConn
-                            .isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis()))) {
-                dispose(pooledConn);
-            } else {
-                return pooledConn;
+     * @return null if there was no fresh/new object in the deque.
+     */
+    private PooledObject borrowIdleObject() {
+        evictIdleObjects();
+        return pollIdleObject(!poolConfiguration.isLifo());
+    }
+
+    /**
+     * Disposes the eldest idle objects while they are older than the
+     * {@code MinEvictableIdleTime} and there are more than {@code MinIdle}
+     * idle objects.
+     */
+    private void evictIdleObjects() {
+        final long maxAge = poolConfiguration.getMinEvictableIdleTimeMillis();
+        while (idleCount.get() > poolConfiguration.getMinIdle()) {
+            PooledObject eldest = idleObjects.peekFirst();
+            if (null == eldest || !eldest.isOlderThan(maxAge)) {
+                break;
+            }
+            // someone else may have taken it in the meantime
+            if (idleObjects.removeFirstOccurrence(eldest)) {
+                idleCount.decrementAndGet();
+                dispose(eldest);
             }
         }
-        return null;
+    }
+
+    /**
+     * Hands the eviction to a thread of its own unless the previous one is
+     * still running. The scheduler thread is shared by all the pools, so it
+     * must not wait for the tests of the objects.
+     */
+    private void startEviction() {
+        if (!evictionRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            EVICTION_RUNNER.execute(new Runnable() {
+                public void run() {
+                    try {
+                        evict();
+                    } catch (RuntimeException e) {
+                        LOG.warn(e, "Failed to evict idle objects");
+                    } finally {
+                        evictionRunning.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            evictionRunning.set(false);
+            LOG.warn(e, "Failed to evict idle objects");
+        }
+    }
+
+    /**
+     * Runs the background eviction, evicts the objects idle for too long and
+     * tests the others if {@code TestWhileIdle} is set.
+     */
+    private void evict() {
+        if (isShutdown()) {
+            return;
+        }
+        evictIdleObjects();
+        if (!poolConfiguration.isTestWhileIdle()) {
+            return;
+        }
+        List<PooledObject> idle = new ArrayList<PooledObject>(idleObjects);
+        // test the youngest first and put each back at the head so the deque
+        // stays ordered by idle time
+        for (int i = idle.size() - 1; i >= 0 && !isShutdown(); i--) {
+            PooledObject entry = idle.get(i);
+            if (!idleObjects.removeFirstOccurrence(entry)) {
+                // borrowed or evicted in the meantime
+                continue;
+            }
+            idleCount.decrementAndGet();
+            try {
+                handler.testObject(entry.getPooledObject());
+            } catch (Exception e) {
+                LOG.ok(e, "Idle object failed the test");
+                if (Metrics.isEnabled()) {
+                    Metrics.getMetricsSpi().recordPoolTestFailure(name);
+                }
+                dispose(entry);
+                continue;
+            }
+            addIdleObject(entry, true);
+        }
+        if (isShutdown()) {
+            disposeIdleObjects();
+        }
+    }
+
+    private void addIdleObject(PooledObject pooled, boolean first) {
+        if (first) {
+            idleObjects.offerFirst(pooled);
+        } else {
+            idleObjects.offerLast(pooled);
+        }
+        idleCount.incrementAndGet();
+        signalNotEmpty();
+    }
+
+    private PooledObject pollIdleObject(boolean first) {
+        PooledObject pooled = first ? idleObjects.pollFirst() : idleObjects.pollLast();
+        if (null != pooled) {
+            idleCount.decrementAndGet();
+        }
+        return pooled;
+    }
+
+    private void disposeIdleObjects() {
+        for (PooledObject entry = pollIdleObject(true); entry != null; entry =
+                pollIdleObject(true)) {
+            dispose(entry);
+        }
     }
 
     /**
@@ -347,18 +626,15 @@ public class ObjectPool<T> {
      */
     public void shutdown() {
         isShutdown = true;
+        if (null != evictor) {
+            evictor.cancel(false);
+        }
         // just evict idle objects
         // if there are any active objects still
         // going, leave them alone so they can return
         // gracefully
         try {
-            for (PooledObject entry = idleObjects.poll(); entry != null; entry = idleObjects.poll()) {
-                try {
-                    dispose(entry);
-                } catch (InterruptedException e) {
-                    LOG.error(e, "Failed to dispose PooledObject object");
-                }
-            }
+            disposeIdleObjects();
         } finally {
             handler.shutdown();
         }
@@ -370,23 +646,36 @@ public class ObjectPool<T> {
      * @return The statistics
      */
     public Statistics getStatistics() {
-        return new Statistics(idleObjects.size(), activeObjects.size());
+        return new Statistics(idleCount.get(), totalObjects.get());
     }
 
     /**
      * This is a long running process to create and init the connector instance.
      * <p/>
+     * The caller must hold a permit, it is released if the object can not be
+     * made.
      *
      * @throws ConnectorException
      *             if something happens.
      */
     private PooledObject makeObject() {
-        synchronized (activeObjects) {
-            PooledObject pooledConn =
-                    new PooledObject((activeObjects.size() > 0) ? handler.makeObject() : handler
-                            .makeObject());
-            activeObjects.add(pooledConn);
+        final boolean metrics = Metrics.isEnabled();
+        final long start = metrics ? System.nanoTime() : 0;
+        boolean failed = true;
+        try {
+            PooledObject pooledConn = new PooledObject(handler.makeObject());
+            totalObjects.incrementAndGet();
+            failed = false;
             return pooledConn;
+        } finally {
+            if (failed) {
+                totalPermit.release();
+                signalNotEmpty();
+            }
+            if (metrics) {
+                Metrics.getMetricsSpi().recordPoolCreate(name, System.nanoTime() - start,
+                        failed);
+            }
         }
     }
 
@@ -395,38 +684,30 @@ public class ObjectPool<T> {
      *
      * @param entry
      */
-    private void dispose(final PooledObject entry) throws InterruptedException {
-        final ReentrantLock lock = this.takeLock;
-        lock.lockInterruptibly();
+    private void dispose(final PooledObject entry) {
         try {
-            synchronized (activeObjects) {
-                // Make sure the disposed object was the last item in the
-                // activeObjects
-                if (activeObjects.remove(entry) && activeObjects.isEmpty()) {
-                    handler.disposeObject(entry.getPooledObject());
-                } else {
-                    handler.disposeObject(entry.getPooledObject());
-                }
-            }
+            handler.disposeObject(entry.getPooledObject());
         } catch (Exception e) {
             LOG.warn(e, "disposeObject() is not supposed to throw");
         } finally {
+            totalObjects.decrementAndGet();
             totalPermit.release();
-            notEmpty.signal();
-            lock.unlock();
+            signalNotEmpty();
         }
     }
 
     /**
-     * Signals a waiting take. Called only from borrowObjectNoTest
+     * Signals a waiting take if there is any.
      */
     private void signalNotEmpty() {
-        final ReentrantLock takeLock = this.takeLock;
-        takeLock.lock();
-        try {
-            notEmpty.signal();
-        } finally {
-            takeLock.unlock();
+        if (waiters.get() > 0) {
+            final ReentrantLock takeLock = this.takeLock;
+            takeLock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                takeLock.unlock();
+            }
         }
     }
 }
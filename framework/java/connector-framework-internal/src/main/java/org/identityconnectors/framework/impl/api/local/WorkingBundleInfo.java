@@ -59,6 +59,14 @@ public class WorkingBundleInfo {
     // List of included bundles.
     private List<WorkingBundleInfo> embeddedBundles = new ArrayList<WorkingBundleInfo>();
 
+    // The connector classes listed by the index of the bundle, or null if the
+    // bundle has no index and its classes have to be scanned.
+    private List<String> connectorIndex;
+
+    // The message catalogs listed by the index of the bundle, or null if the
+    // bundle has no index and its contents have to be searched.
+    private List<String> messageCatalogIndex;
+
     // Effective classpath (includes the classpaths of embedded bundles).
     private List<URL> effectiveClassPath;
 
@@ -101,6 +109,22 @@ public class WorkingBundleInfo {
         return embeddedBundles;
     }
 
+    public List<String> getConnectorIndex() {
+        return connectorIndex;
+    }
+
+    public void setConnectorIndex(List<String> connectorIndex) {
+        this.connectorIndex = connectorIndex;
+    }
+
+    public List<String> getMessageCatalogIndex() {
+        return messageCatalogIndex;
+    }
+
+    public void setMessageCatalogIndex(List<String> messageCatalogIndex) {
+        this.messageCatalogIndex = messageCatalogIndex;
+    }
+
     public List<URL> getEffectiveClassPath() {
         return effectiveClassPath;
     }
@@ -26,6 +26,7 @@ package org.identityconnectors.framework.impl.api.local.operations;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.SearchResult;
@@ -33,11 +34,46 @@ import org.identityconnectors.framework.spi.SearchResultsHandler;
 
 public final class DuplicateFilteringResultsHandler implements SearchResultsHandler {
 
+    /**
+     * System property to choose how the visited UIDs are kept:
+     * <ul>
+     * <li><code>exact</code>: all UIDs in a {@link HashSet}, the default</li>
+     * <li><code>fingerprint</code>: 64-bit fingerprints of the UIDs, see
+     * {@link FingerprintUidSet}</li>
+     * <li><code>spill</code>: exact, moved to a temporary file past
+     * {@link #SPILL_THRESHOLD_PROP} UIDs, see {@link SpillingUidSet}</li>
+     * </ul>
+     */
+    public static final String STRATEGY_PROP =
+            "org.identityconnectors.framework.impl.api.local.operations.DuplicateFilteringResultsHandler.strategy";
+
+    /**
+     * System property to set the number of UIDs the <code>spill</code>
+     * strategy keeps on the heap.
+     */
+    public static final String SPILL_THRESHOLD_PROP =
+            "org.identityconnectors.framework.impl.api.local.operations.DuplicateFilteringResultsHandler.spillThreshold";
+
+    private static final String STRATEGY;
+
+    private static final int SPILL_THRESHOLD;
+
+    static {
+        String strategy = System.getProperty(STRATEGY_PROP);
+        STRATEGY = StringUtil.isNotBlank(strategy) ? strategy.trim() : "exact";
+        int threshold = 100000;
+        String value = System.getProperty(SPILL_THRESHOLD_PROP);
+        if (StringUtil.isNotBlank(value)) {
+            threshold = Integer.parseInt(value.trim());
+        }
+        SPILL_THRESHOLD = threshold;
+    }
+
     // =======================================================================
     // Fields
     // =======================================================================
     private final SearchResultsHandler handler;
-    private final Set<String> visitedUIDs = new HashSet<String>();
+    private final VisitedUidSet visitedUIDs;
 
     private boolean stillHandling;
 
@@ -52,11 +88,50 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
      *
      */
     public DuplicateFilteringResultsHandler(final SearchResultsHandler handler) {
+        this(handler, newVisitedUidSet());
+    }
+
+    /**
+     * Filter chain for producers.
+     *
+     * @param handler
+     *            Producer to filter.
+     * @param visitedUIDs
+     *            Keeps the UIDs already passed to the handler.
+     */
+    public DuplicateFilteringResultsHandler(final SearchResultsHandler handler,
+            final VisitedUidSet visitedUIDs) {
         // there must be a producer..
         if (handler == null) {
             throw new IllegalArgumentException("Handler must not be null!");
         }
+        if (visitedUIDs == null) {
+            throw new IllegalArgumentException("VisitedUIDs must not be null!");
+        }
         this.handler = handler;
+        this.visitedUIDs = visitedUIDs;
+    }
+
+    /**
+     * Creates the set of visited UIDs selected by {@link #STRATEGY_PROP}.
+     */
+    static VisitedUidSet newVisitedUidSet() {
+        if ("fingerprint".equalsIgnoreCase(STRATEGY)) {
+            return new FingerprintUidSet();
+        } else if ("spill".equalsIgnoreCase(STRATEGY)) {
+            return new SpillingUidSet(SPILL_THRESHOLD);
+        }
+        return new VisitedUidSet() {
+            private final Set<String> visited = new HashSet<String>();
+
+            public boolean add(String uid) {
+                return visited.add(uid);
+            }
+
+            public void close() {
+                visited.clear();
+            }
+        };
     }
 
     public boolean handle(ConnectorObject object) {
@@ -77,4 +152,11 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
     public boolean isStillHandling() {
         return stillHandling;
     }
+
+    /**
+     * Releases the visited UIDs, the handler must not be used afterwards.
+     */
+    public void close() {
+        visitedUIDs.close();
+    }
 }
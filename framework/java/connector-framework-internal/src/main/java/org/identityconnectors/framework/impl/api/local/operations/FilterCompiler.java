@@ -0,0 +1,435 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.ComparableAttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.CompositeFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.StringFilter;
+
+/**
+ * Turns a {@link Filter} tree into a {@link Matcher} once, so the objects of a
+ * search are not matched by interpreting the tree node by node.
+ * <p>
+ * Attribute names and expected values are resolved when compiling, String
+ * values are compared without the generic {@link Comparable} path, and the
+ * operands of {@link AndFilter} and {@link OrFilter} are flattened and ordered
+ * so the cheapest tests run first; for conjunctions these are also the most
+ * selective ones. Operands which may throw an exception keep their place, so
+ * the same objects fail the search as with the interpreted filter. Below a
+ * {@link NormalizingFilter} only the attributes a test reads are normalized,
+ * instead of the whole object. Filters the compiler does not know are matched
+ * with {@link Filter#accept(ConnectorObject)}.
+ * <p>
+ * The visitor parameter is the normalizer of the enclosing
+ * {@link NormalizingFilter}, or {@code null}.
+ */
+final class FilterCompiler implements FilterVisitor<FilterCompiler.Matcher, ObjectNormalizerFacade> {
+
+    /**
+     * Compiled form of a filter.
+     */
+    abstract static class Matcher {
+
+        /**
+         * Rough relative cost of a test, lower ranks run first. Cheap exact
+         * tests are also the ones most likely to reject an object.
+         */
+        final int rank;
+
+        /**
+         * True if {@link #matches(ConnectorObject)} never throws, only these
+         * operands are moved.
+         */
+        final boolean safe;
+
+        Matcher(int rank, boolean safe) {
+            this.rank = rank;
+            this.safe = safe;
+        }
+
+        abstract boolean matches(ConnectorObject object);
+    }
+
+    private static final FilterCompiler INSTANCE = new FilterCompiler();
+
+    private static final Comparator<Matcher> BY_RANK = new Comparator<Matcher>() {
+        public int compare(Matcher m1, Matcher m2) {
+            return m1.rank < m2.rank ? -1 : (m1.rank == m2.rank ? 0 : 1);
+        }
+    };
+
+    // ranks, from exact matches on identifiers to opaque filters
+    private static final int RANK_IDENTIFIER = 1;
+    private static final int RANK_EQUALS = 2;
+    private static final int RANK_PREFIX = 3;
+    private static final int RANK_RANGE = 4;
+    private static final int RANK_SUBSTRING = 5;
+    private static final int RANK_VALUES = 6;
+    private static final int RANK_EXTENDED = 10;
+
+    private static final Matcher MATCH_ALL = new Matcher(0, true) {
+        boolean matches(ConnectorObject object) {
+            return true;
+        }
+    };
+
+    private FilterCompiler() {
+    }
+
+    /**
+     * Compiles the filter, a {@code null} filter matches every object.
+     */
+    static Matcher compile(Filter filter) {
+        if (filter == null || filter instanceof FilteredResultsHandler.PassThroughFilter) {
+            return MATCH_ALL;
+        }
+        return INSTANCE.compile(filter, null);
+    }
+
+    private Matcher compile(Filter filter, ObjectNormalizerFacade normalizer) {
+        Matcher matcher = filter.accept(this, normalizer);
+        return matcher != null ? matcher : new FilterMatcher(filter, normalizer);
+    }
+
+    // =======================================================================
+    // Composite filters
+    // =======================================================================
+
+    public Matcher visitAndFilter(ObjectNormalizerFacade normalizer, AndFilter filter) {
+        final Matcher[] operands = compileOperands(filter, AndFilter.class, normalizer);
+        // as selective as its most selective operand
+        return new Matcher(operands[0].rank, isSafe(operands)) {
+            boolean matches(ConnectorObject object) {
+                for (Matcher operand : operands) {
+                    if (!operand.matches(object)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    public Matcher visitOrFilter(ObjectNormalizerFacade normalizer, OrFilter filter) {
+        final Matcher[] operands = compileOperands(filter, OrFilter.class, normalizer);
+        // rejects only when its most expensive operand ran
+        return new Matcher(operands[operands.length - 1].rank, isSafe(operands)) {
+            boolean matches(ConnectorObject object) {
+                for (Matcher operand : operands) {
+                    if (operand.matches(object)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    public Matcher visitNotFilter(ObjectNormalizerFacade normalizer, NotFilter filter) {
+        final Matcher operand = compile(filter.getFilter(), normalizer);
+        return new Matcher(operand.rank, operand.safe) {
+            boolean matches(ConnectorObject object) {
+                return !operand.matches(object);
+            }
+        };
+    }
+
+    public Matcher visitExtendedFilter(ObjectNormalizerFacade normalizer, Filter filter) {
+        if (filter instanceof NormalizingFilter) {
+            NormalizingFilter normalizing = (NormalizingFilter) filter;
+            return compile(normalizing.getFilter(), normalizing.getNormalizerFacade());
+        }
+        return null;
+    }
+
+    /**
+     * Flattens nested composites of the same kind and orders the operands by
+     * rank. The filters have no side effects, so only the cost changes.
+     * <p>
+     * An operand which may throw is not moved and no other operand is moved
+     * across it: running a test before it could skip the exception, running
+     * it earlier could raise one the source order skipped.
+     */
+    private Matcher[] compileOperands(CompositeFilter filter,
+            Class<? extends CompositeFilter> kind, ObjectNormalizerFacade normalizer) {
+        List<Filter> filters = new ArrayList<Filter>();
+        flatten(filter, kind, filters);
+        List<Matcher> operands = new ArrayList<Matcher>(filters.size());
+        for (Filter operand : filters) {
+            operands.add(compile(operand, normalizer));
+        }
+        int start = 0;
+        for (int i = 0; i <= operands.size(); i++) {
+            if (i == operands.size() || !operands.get(i).safe) {
+                Collections.sort(operands.subList(start, i), BY_RANK);
+                start = i + 1;
+            }
+        }
+        return operands.toArray(new Matcher[operands.size()]);
+    }
+
+    private static boolean isSafe(Matcher[] operands) {
+        for (Matcher operand : operands) {
+            if (!operand.safe) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void flatten(Filter filter, Class<? extends CompositeFilter> kind,
+            List<Filter> filters) {
+        if (kind.isInstance(filter)) {
+            Collection<Filter> operands = ((CompositeFilter) filter).getFilters();
+            for (Filter operand : operands) {
+                flatten(operand, kind, filters);
+            }
+        } else {
+            filters.add(filter);
+        }
+    }
+
+    // =======================================================================
+    // Attribute filters
+    // =======================================================================
+
+    public Matcher visitEqualsFilter(ObjectNormalizerFacade normalizer, final EqualsFilter filter) {
+        final Attribute expected = filter.getAttribute();
+        final String name = expected.getName();
+        final Class<?> type = expected.getClass();
+        final List<Object> values = expected.getValue();
+        int rank = Uid.NAME.equals(name) || Name.NAME.equals(name) ? RANK_IDENTIFIER : RANK_EQUALS;
+        return new AttributeMatcher(rank, true, name, normalizer) {
+            boolean matches(Attribute attribute) {
+                // same checks as Attribute.equals, the name is compared only
+                // when the lookup did not return the expected instance
+                return attribute.getClass() == type
+                        && (attribute.getName() == name || expected.is(attribute.getName()))
+                        && CollectionUtil.equals(attribute.getValue(), values);
+            }
+        };
+    }
+
+    public Matcher visitContainsAllValuesFilter(ObjectNormalizerFacade normalizer,
+            final ContainsAllValuesFilter filter) {
+        final String name = filter.getName();
+        final List<Object> values = filter.getAttribute().getValue();
+        return new AttributeMatcher(RANK_VALUES, false, name, normalizer) {
+            boolean matches(Attribute attribute) {
+                List<Object> found = attribute.getValue();
+                if (found == null) {
+                    throw new IllegalStateException("Null value found in attribute " + name);
+                }
+                return found.containsAll(values);
+            }
+        };
+    }
+
+    public Matcher visitGreaterThanFilter(ObjectNormalizerFacade normalizer,
+            GreaterThanFilter filter) {
+        return new ComparableMatcher(filter, normalizer) {
+            boolean matches(int comparison) {
+                return comparison > 0;
+            }
+        };
+    }
+
+    public Matcher visitGreaterThanOrEqualFilter(ObjectNormalizerFacade normalizer,
+            GreaterThanOrEqualFilter filter) {
+        return new ComparableMatcher(filter, normalizer) {
+            boolean matches(int comparison) {
+                return comparison >= 0;
+            }
+        };
+    }
+
+    public Matcher visitLessThanFilter(ObjectNormalizerFacade normalizer, LessThanFilter filter) {
+        return new ComparableMatcher(filter, normalizer) {
+            boolean matches(int comparison) {
+                return comparison < 0;
+            }
+        };
+    }
+
+    public Matcher visitLessThanOrEqualFilter(ObjectNormalizerFacade normalizer,
+            LessThanOrEqualFilter filter) {
+        return new ComparableMatcher(filter, normalizer) {
+            boolean matches(int comparison) {
+                return comparison <= 0;
+            }
+        };
+    }
+
+    public Matcher visitStartsWithFilter(ObjectNormalizerFacade normalizer,
+            StartsWithFilter filter) {
+        final String value = filter.getValue();
+        return new StringMatcher(RANK_PREFIX, filter, normalizer) {
+            boolean matches(String actual) {
+                return actual.startsWith(value);
+            }
+        };
+    }
+
+    public Matcher visitEndsWithFilter(ObjectNormalizerFacade normalizer, EndsWithFilter filter) {
+        final String value = filter.getValue();
+        return new StringMatcher(RANK_SUBSTRING, filter, normalizer) {
+            boolean matches(String actual) {
+                return actual.endsWith(value);
+            }
+        };
+    }
+
+    public Matcher visitContainsFilter(ObjectNormalizerFacade normalizer, ContainsFilter filter) {
+        final String value = filter.getValue();
+        return new StringMatcher(RANK_SUBSTRING, filter, normalizer) {
+            boolean matches(String actual) {
+                return actual.contains(value);
+            }
+        };
+    }
+
+    // =======================================================================
+    // Matchers
+    // =======================================================================
+
+    /**
+     * Matches one attribute of the object, normalized if required. Objects
+     * without the attribute do not match.
+     */
+    private abstract static class AttributeMatcher extends Matcher {
+        private final String name;
+        private final ObjectNormalizerFacade normalizer;
+
+        AttributeMatcher(int rank, boolean safe, String name, ObjectNormalizerFacade normalizer) {
+            // the normalizer of the connector may throw
+            super(normalizer == null ? rank : rank + 1, safe && normalizer == null);
+            this.name = name;
+            this.normalizer = normalizer;
+        }
+
+        boolean matches(ConnectorObject object) {
+            Attribute attribute = object.getAttributeByName(name);
+            if (attribute == null) {
+                return false;
+            }
+            if (normalizer != null) {
+                attribute = normalizer.normalizeAttribute(attribute);
+            }
+            return matches(attribute);
+        }
+
+        abstract boolean matches(Attribute attribute);
+    }
+
+    /**
+     * Same result as {@link ComparableAttributeFilter#compare(ConnectorObject)}
+     * with a direct comparison when both values are strings.
+     */
+    private abstract static class ComparableMatcher extends AttributeMatcher {
+        private final Object value;
+
+        ComparableMatcher(ComparableAttributeFilter filter, ObjectNormalizerFacade normalizer) {
+            super(RANK_RANGE, false, filter.getName(), normalizer);
+            this.value = filter.getValue();
+        }
+
+        boolean matches(Attribute attribute) {
+            // a null value list throws as in the filter
+            List<Object> values = attribute.getValue();
+            if (values.size() != 1) {
+                return matches(-1);
+            }
+            Object actual = values.get(0);
+            if (actual instanceof String && value instanceof String) {
+                return matches(((String) actual).compareTo((String) value));
+            }
+            if (!(actual instanceof Comparable)) {
+                throw new IllegalArgumentException("Attribute value must be comparable!");
+            }
+            return matches(CollectionUtil.forceCompare(actual, value));
+        }
+
+        abstract boolean matches(int comparison);
+    }
+
+    /**
+     * Tests the first value of the attribute, as {@link StringFilter} does.
+     */
+    private abstract static class StringMatcher extends AttributeMatcher {
+
+        StringMatcher(int rank, StringFilter filter, ObjectNormalizerFacade normalizer) {
+            super(rank, false, filter.getName(), normalizer);
+        }
+
+        boolean matches(Attribute attribute) {
+            // a missing value or one of another type fails as in StringFilter
+            return matches((String) attribute.getValue().get(0));
+        }
+
+        abstract boolean matches(String actual);
+    }
+
+    /**
+     * Falls back to the filter itself.
+     */
+    private static final class FilterMatcher extends Matcher {
+        private final Filter filter;
+        private final ObjectNormalizerFacade normalizer;
+
+        FilterMatcher(Filter filter, ObjectNormalizerFacade normalizer) {
+            super(RANK_EXTENDED, false);
+            this.filter = filter;
+            this.normalizer = normalizer;
+        }
+
+        boolean matches(ConnectorObject object) {
+            return filter.accept(normalizer == null ? object : normalizer.normalizeObject(object));
+        }
+    }
+}
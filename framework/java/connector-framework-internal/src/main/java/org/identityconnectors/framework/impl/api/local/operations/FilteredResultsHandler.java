@@ -35,6 +35,7 @@ public final class FilteredResultsHandler implements ResultsHandler {
     // =======================================================================
     final ResultsHandler handler;
     final Filter filter;
+    private final FilterCompiler.Matcher matcher;
 
     // =======================================================================
     // Constructors
@@ -55,10 +56,12 @@ public final class FilteredResultsHandler implements ResultsHandler {
         this.handler = handler;
         // use a default pass through filter..
         this.filter = filter == null ? new PassThroughFilter() : filter;
+        // evaluated for every object, compile it once
+        this.matcher = FilterCompiler.compile(this.filter);
     }
 
     public boolean handle(ConnectorObject object) {
-        if (filter.accept(object)) {
+        if (matcher.matches(object)) {
             return handler.handle(object);
         } else {
             return true;
@@ -0,0 +1,107 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+/**
+ * Keeps 64-bit fingerprints of the UIDs in an open addressing hash table,
+ * instead of the String and the entry of a {@link java.util.HashSet}. The
+ * table is kept at most half full, so it takes 16 to 32 bytes per UID.
+ * <p>
+ * Two UIDs with the same fingerprint are taken as duplicates, with a good
+ * 64-bit hash the chance of that is about <code>n&#178; / 2<sup>65</sup></code>
+ * for <code>n</code> UIDs, below one in ten million for a million UIDs. Use
+ * {@link SpillingUidSet} where that is not acceptable.
+ */
+public final class FingerprintUidSet implements VisitedUidSet {
+
+    private long[] table = new long[1024];
+
+    private int size = 0;
+
+    public boolean add(String uid) {
+        final long fingerprint = fingerprint(uid);
+        if (size * 2 >= table.length) {
+            resize();
+        }
+        return insert(table, fingerprint);
+    }
+
+    public void close() {
+        table = new long[0];
+        size = 0;
+    }
+
+    /**
+     * Returns the number of fingerprints in the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean insert(final long[] slots, final long fingerprint) {
+        final int mask = slots.length - 1;
+        int i = (int) fingerprint & mask;
+        while (slots[i] != 0L) {
+            if (slots[i] == fingerprint) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = fingerprint;
+        size++;
+        return true;
+    }
+
+    private void resize() {
+        final long[] old = table;
+        final long[] slots = new long[old.length * 2];
+        size = 0;
+        for (long fingerprint : old) {
+            if (fingerprint != 0L) {
+                insert(slots, fingerprint);
+            }
+        }
+        table = slots;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the characters, mixed so the low bits
+     * can index the table. Never returns <code>0</code>, the empty slot.
+     */
+    static long fingerprint(final String uid) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < uid.length(); i++) {
+            final char c = uid.charAt(i);
+            h ^= c & 0xff;
+            h *= 0x100000001b3L;
+            h ^= c >>> 8;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0L ? 1L : h;
+    }
+}
@@ -47,6 +47,10 @@ public class NormalizingFilter extends ExternallyChainedFilter {
         this.normalizerFacade = normalizerFacade;
     }
 
+    ObjectNormalizerFacade getNormalizerFacade() {
+        return normalizerFacade;
+    }
+
     /**
      * Return the decision based on normalized version of the object.
      *
@@ -75,7 +75,7 @@ public class ScriptOnConnectorImpl extends ConnectorAPIOperationRunner
                 throw ConnectorException.wrap(e);
             }
         }
-        return SerializerUtil.cloneObject(rv);
+        return SerializerUtil.copyObject(rv);
     }
 
 }
@@ -24,12 +24,25 @@
 package org.identityconnectors.framework.impl.api.local.operations;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
@@ -38,7 +51,11 @@ import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
+import org.identityconnectors.framework.impl.api.local.ThreadClassLoaderManager;
 import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.PoolableConnector;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.framework.spi.operations.SearchOp;
 
@@ -46,6 +63,44 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
 
     private static final Log logger = Log.getLog(SearchImpl.class);
 
+    /**
+     * System property to set the maximum number of threads running translated
+     * queries concurrently, see
+     * {@link ResultsHandlerConfiguration#getMaxParallelQueries()}.
+     */
+    public static final String MAX_THREADS_PROP =
+            "org.identityconnectors.framework.impl.api.local.operations.SearchImpl.maxThreads";
+
+    /**
+     * Runs the additional queries of a parallel search. When all threads are
+     * busy the queries are left to the calling thread.
+     */
+    private static final ThreadPoolExecutor QUERY_RUNNERS;
+
+    static {
+        int maxThreads = 32;
+        String value = System.getProperty(MAX_THREADS_PROP);
+        if (StringUtil.isNotBlank(value)) {
+            maxThreads = Math.max(1, Integer.parseInt(value.trim()));
+        }
+        QUERY_RUNNERS =
+                new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                            public Thread newThread(Runnable r) {
+                                Thread thread =
+                                        new Thread(r, "SearchImpl-"
+                                                + threadNumber.getAndIncrement());
+                                thread.setDaemon(true);
+                                // don't pin the class loader of whoever
+                                // started the thread
+                                thread.setContextClassLoader(SearchImpl.class.getClassLoader());
+                                return thread;
+                            }
+                        });
+    }
+
     /**
      * Initializes the operation works.
      */
@@ -115,6 +170,11 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
 
         final ResultsHandler handlerChain = handler;
 
+        // other connectors can only be borrowed from a pool
+        final ObjectPool<PoolableConnector> pool =
+                hdlCfg.getMaxParallelQueries() > 1 && null != getOperationalContext()
+                        ? getOperationalContext().getPool() : null;
+
         final AtomicReference<SearchResult> result = new AtomicReference<SearchResult>(null);
         rawSearch(search, objectClass, actualFilter, new SearchResultsHandler() {
 
@@ -125,7 +185,7 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
             public boolean handle(ConnectorObject connectorObject) {
                 return handlerChain.handle(connectorObject);
             }
-        }, options);
+        }, options, pool, hdlCfg.getMaxParallelQueries());
         return result.get();
     }
 
@@ -146,6 +206,17 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
      */
     public static void rawSearch(SearchOp<?> search, ObjectClass objectClass, Filter filter,
             SearchResultsHandler handler, OperationOptions options) {
+        rawSearch(search, objectClass, filter, handler, options, null, 1);
+    }
+
+    /**
+     * Raw, SPI-level search which runs up to <code>parallelism</code>
+     * translated queries concurrently, each additional one on a connector
+     * borrowed from the pool.
+     */
+    static void rawSearch(SearchOp<?> search, ObjectClass objectClass, Filter filter,
+            SearchResultsHandler handler, OperationOptions options,
+            ObjectPool<PoolableConnector> pool, int parallelism) {
         FilterTranslator<?> translator = search.createFilterTranslator(objectClass, options);
         List<?> queries = translator.translate(filter);
 
@@ -154,21 +225,157 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
         } else {
             // eliminate dups if more than one
             boolean eliminateDups = queries.size() > 1;
-            if (eliminateDups) {
-                handler = new DuplicateFilteringResultsHandler(handler);
-            }
-            for (Object query : queries) {
+            if (!eliminateDups) {
                 @SuppressWarnings("unchecked")
                 SearchOp<Object> hack = (SearchOp<Object>) search;
-                hack.executeQuery(objectClass, query, handler, options);
-                // don't run any more queries if the consumer
-                // has stopped
-                if (handler instanceof DuplicateFilteringResultsHandler) {
-                    DuplicateFilteringResultsHandler h = (DuplicateFilteringResultsHandler) handler;
+                hack.executeQuery(objectClass, queries.get(0), handler, options);
+                return;
+            }
+            DuplicateFilteringResultsHandler h = new DuplicateFilteringResultsHandler(handler);
+            try {
+                if (pool != null && parallelism > 1) {
+                    new ParallelQueries(objectClass, queries, h, options).run(search, pool, Math
+                            .min(parallelism, queries.size()));
+                    return;
+                }
+                for (Object query : queries) {
+                    @SuppressWarnings("unchecked")
+                    SearchOp<Object> hack = (SearchOp<Object>) search;
+                    hack.executeQuery(objectClass, query, h, options);
+                    // don't run any more queries if the consumer
+                    // has stopped
                     if (!h.isStillHandling()) {
                         break;
                     }
                 }
+            } finally {
+                h.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the translated queries of one search on several connectors. The
+     * results are passed to the handler one at a time and no more queries are
+     * started once the handler has stopped or a query failed.
+     */
+    private static final class ParallelQueries implements SearchResultsHandler {
+
+        private final ObjectClass objectClass;
+        private final Queue<Object> queries;
+        private final SearchResultsHandler handler;
+        private final OperationOptions options;
+        private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        private volatile boolean stopped = false;
+
+        ParallelQueries(ObjectClass objectClass, List<?> queries, SearchResultsHandler handler,
+                OperationOptions options) {
+            this.objectClass = objectClass;
+            this.queries = new ConcurrentLinkedQueue<Object>(queries);
+            this.handler = handler;
+            this.options = options;
+        }
+
+        public boolean handle(ConnectorObject connectorObject) {
+            if (stopped) {
+                return false;
+            }
+            synchronized (this) {
+                if (stopped) {
+                    return false;
+                }
+                if (!handler.handle(connectorObject)) {
+                    stopped = true;
+                }
+                return !stopped;
+            }
+        }
+
+        public synchronized void handleResult(SearchResult result) {
+            handler.handleResult(result);
+        }
+
+        void run(SearchOp<?> search, final ObjectPool<PoolableConnector> pool, int parallelism) {
+            final int workers = parallelism - 1;
+            final CountDownLatch done = new CountDownLatch(workers);
+            // the loader of the connector bundle and the locale of the caller
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            final Locale locale = CurrentLocale.isSet() ? CurrentLocale.get() : null;
+            for (int i = 0; i < workers; i++) {
+                try {
+                    QUERY_RUNNERS.execute(new Runnable() {
+                        public void run() {
+                            ThreadClassLoaderManager.getInstance().pushClassLoader(loader);
+                            if (locale != null) {
+                                CurrentLocale.set(locale);
+                            } else {
+                                CurrentLocale.clear();
+                            }
+                            try {
+                                runOnPooledConnector(pool);
+                            } finally {
+                                CurrentLocale.clear();
+                                ThreadClassLoaderManager.getInstance().popClassLoader();
+                                done.countDown();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    logger.ok("No thread left for parallel query, running it in the caller");
+                    done.countDown();
+                }
+            }
+            execute(search);
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                stopped = true;
+                Thread.currentThread().interrupt();
+                throw ConnectorException.wrap(e);
+            }
+            if (error.get() != null) {
+                throw ConnectorException.wrap(error.get());
+            }
+        }
+
+        private void runOnPooledConnector(ObjectPool<PoolableConnector> pool) {
+            if (stopped || queries.isEmpty()) {
+                return;
+            }
+            // don't wait for a connector, the others take over the queries
+            final ObjectPoolEntry<PoolableConnector> entry;
+            try {
+                entry = pool.tryBorrowObject();
+            } catch (RuntimeException e) {
+                logger.ok(e, "Failed to make a connector for parallel query");
+                return;
+            }
+            if (null == entry) {
+                logger.ok("No idle connector left for parallel query");
+                return;
+            }
+            try {
+                execute((SearchOp<?>) entry.getPooledObject());
+            } finally {
+                try {
+                    entry.close();
+                } catch (Exception e) {
+                    logger.error(e, null);
+                }
+            }
+        }
+
+        private void execute(SearchOp<?> search) {
+            @SuppressWarnings("unchecked")
+            SearchOp<Object> hack = (SearchOp<Object>) search;
+            Object query;
+            try {
+                while (!stopped && (query = queries.poll()) != null) {
+                    hack.executeQuery(objectClass, query, this, options);
+                }
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+                stopped = true;
             }
         }
     }
@@ -0,0 +1,226 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Exact set of UIDs that moves them to a temporary file once it holds more
+ * than a threshold.
+ * <p>
+ * Up to the threshold the UIDs are kept in a {@link HashSet}. Past it the
+ * heap only keeps a table of 64-bit fingerprints and file offsets. The table
+ * is kept at most half full, so it takes 32 to 64 bytes per UID. A UID whose
+ * fingerprint is new is new, only a matching fingerprint reads the stored UID
+ * back to confirm the duplicate.
+ * <p>
+ * The temporary file is deleted by {@link #close()}.
+ */
+public final class SpillingUidSet implements VisitedUidSet {
+
+    private static final Log logger = Log.getLog(SpillingUidSet.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int threshold;
+
+    private Set<String> visited = new HashSet<String>();
+
+    private long[] fingerprints;
+
+    private long[] offsets;
+
+    private int size = 0;
+
+    private File file;
+
+    private RandomAccessFile store;
+
+    private DataOutputStream out;
+
+    private long length = 0L;
+
+    private boolean dirty = false;
+
+    /**
+     * @param threshold
+     *            number of UIDs kept on the heap before moving them to disk.
+     */
+    public SpillingUidSet(final int threshold) {
+        this.threshold = threshold;
+    }
+
+    public boolean add(String uid) {
+        if (null != visited) {
+            if (!visited.add(uid)) {
+                return false;
+            }
+            if (visited.size() > threshold) {
+                spill();
+            }
+            return true;
+        }
+        try {
+            return addSpilled(uid);
+        } catch (IOException e) {
+            throw ConnectorException.wrap(e);
+        }
+    }
+
+    /**
+     * Returns true once the UIDs are kept on disk.
+     */
+    public boolean isSpilled() {
+        return null == visited && null != fingerprints;
+    }
+
+    public void close() {
+        visited = null;
+        fingerprints = null;
+        offsets = null;
+        IOUtil.quietClose(out);
+        out = null;
+        if (null != store) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            store = null;
+        }
+        if (null != file && !file.delete()) {
+            logger.ok("Failed to delete {0}", file);
+        }
+        file = null;
+    }
+
+    private void spill() {
+        try {
+            file = File.createTempFile("openicf-uids", ".bin");
+            store = new RandomAccessFile(file, "rw");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(store.getFD()),
+                    64 * 1024));
+            int capacity = 1024;
+            while (capacity < visited.size() * 4) {
+                capacity <<= 1;
+            }
+            fingerprints = new long[capacity];
+            offsets = new long[capacity];
+            final Set<String> uids = visited;
+            visited = null;
+            for (String uid : uids) {
+                addSpilled(uid);
+            }
+            logger.ok("Moved {0} visited UIDs to {1}", size, file);
+        } catch (IOException e) {
+            close();
+            throw ConnectorException.wrap(e);
+        }
+    }
+
+    private boolean addSpilled(final String uid) throws IOException {
+        if (size * 2 >= fingerprints.length) {
+            resize();
+        }
+        final long fingerprint = FingerprintUidSet.fingerprint(uid);
+        final int mask = fingerprints.length - 1;
+        int i = (int) fingerprint & mask;
+        while (fingerprints[i] != 0L) {
+            if (fingerprints[i] == fingerprint && uid.equals(read(offsets[i]))) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        fingerprints[i] = fingerprint;
+        offsets[i] = append(uid);
+        size++;
+        return true;
+    }
+
+    private void resize() {
+        final long[] oldFingerprints = fingerprints;
+        final long[] oldOffsets = offsets;
+        fingerprints = new long[oldFingerprints.length * 2];
+        offsets = new long[oldOffsets.length * 2];
+        final int mask = fingerprints.length - 1;
+        for (int j = 0; j < oldFingerprints.length; j++) {
+            if (oldFingerprints[j] != 0L) {
+                int i = (int) oldFingerprints[j] & mask;
+                while (fingerprints[i] != 0L) {
+                    i = (i + 1) & mask;
+                }
+                fingerprints[i] = oldFingerprints[j];
+                offsets[i] = oldOffsets[j];
+            }
+        }
+    }
+
+    private long append(final String uid) throws IOException {
+        final byte[] bytes = uid.getBytes(UTF8);
+        final long offset = length;
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        length += 4 + bytes.length;
+        dirty = true;
+        return offset;
+    }
+
+    private String read(final long offset) throws IOException {
+        if (dirty) {
+            out.flush();
+            dirty = false;
+        }
+        final FileChannel channel = store.getChannel();
+        final ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(channel, header, offset);
+        final ByteBuffer bytes = ByteBuffer.allocate(header.getInt(0));
+        readFully(channel, bytes, offset + 4);
+        return new String(bytes.array(), UTF8);
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer,
+            final long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, pos);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the visited UIDs");
+            }
+            pos += read;
+        }
+    }
+}
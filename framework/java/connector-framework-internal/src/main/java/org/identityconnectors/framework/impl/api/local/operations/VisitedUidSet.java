@@ -0,0 +1,48 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+/**
+ * The UIDs a {@link DuplicateFilteringResultsHandler} has already passed on.
+ * <p>
+ * Implementations trade memory for exactness, see
+ * {@link DuplicateFilteringResultsHandler#STRATEGY_PROP}. They are used by
+ * one search at a time and need not be thread-safe.
+ */
+public interface VisitedUidSet {
+
+    /**
+     * Adds the UID to the set.
+     *
+     * @param uid
+     *            the UID value of an object.
+     * @return true if the UID was not visited yet.
+     */
+    boolean add(String uid);
+
+    /**
+     * Releases the memory and files held by the set, called when the search
+     * is done.
+     */
+    void close();
+}
@@ -0,0 +1,327 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.identityconnectors.common.Pair;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolHandler;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectEncoder;
+
+/**
+ * Keeps a pool of open {@link RemoteFrameworkConnection}s per remote connector
+ * server.
+ * <p/>
+ * The connector server processes requests on a socket in a loop until the
+ * client closes it, so a connection can be reused for the next operation once
+ * the previous response has been read completely. This saves the TCP connect
+ * and the SSL handshake on every call. The wire protocol is not changed.
+ * <p/>
+ * Pooling can be turned off with the {@value #POOLING_PROP} system property,
+ * in which case every call opens and closes its own connection.
+ * <p/>
+ * The connector server holds a worker thread for every open connection,
+ * including the idle ones in this pool. At most {@value #DEFAULT_MAX_IDLE}
+ * idle connections are kept per server by default, set the
+ * {@value #MAX_IDLE_PROP} system property to change it. The number of clients
+ * times this limit must stay well below the <code>maxWorkers</code> of the
+ * server, otherwise new clients wait for the idle connections to be closed.
+ * Idle connections are closed after {@value #IDLE_TIMEOUT} milliseconds, well
+ * before the server closes them itself.
+ */
+public class RemoteConnectionPoolManager {
+
+    /**
+     * System property to turn off the connection pooling. Set it to
+     * {@code false} to open a new connection for every request.
+     */
+    public static final String POOLING_PROP =
+            "org.identityconnectors.framework.impl.api.remote.pooling";
+
+    /**
+     * System property to compress the connections to the servers which
+     * support it. Set it to {@code true} to trade CPU for bandwidth, for
+     * example when large result streams go over a WAN link.
+     */
+    public static final String COMPRESSION_PROP =
+            "org.identityconnectors.framework.impl.api.remote.compression";
+
+    /**
+     * System property to turn off the compact form of the connector objects.
+     * Set it to {@code false} to always send the generic form.
+     */
+    public static final String COMPACT_OBJECTS_PROP =
+            "org.identityconnectors.framework.impl.api.remote.compactObjects";
+
+    /**
+     * System property to set the maximum number of idle connections kept open
+     * to a server.
+     */
+    public static final String MAX_IDLE_PROP =
+            "org.identityconnectors.framework.impl.api.remote.maxIdle";
+
+    /**
+     * Default maximum number of idle connections kept open to a server.
+     */
+    public static final int DEFAULT_MAX_IDLE = 10;
+
+    /**
+     * System property to set how many result pauses (one every 200 objects) a
+     * server which supports it may send ahead of the answers. The server
+     * keeps producing objects until it reads the answer that stops it, so a
+     * window of {@code n} lets a connector run up to {@code 200 * n} objects
+     * past the point where the results handler stopped. The default of 1
+     * waits for the answer to every pause.
+     */
+    public static final String PAUSE_WINDOW_PROP =
+            "org.identityconnectors.framework.impl.api.remote.pauseWindow";
+
+    /**
+     * Time in milliseconds after which an idle connection is closed. It is
+     * shorter than the default <code>connectionIdleTimeout</code> of the
+     * server (5 minutes), so the client releases the worker first and does
+     * not borrow a connection the server is about to close.
+     */
+    public static final long IDLE_TIMEOUT = 60 * 1000;
+
+    private static final Log LOG = Log.getLog(RemoteConnectionPoolManager.class);
+
+    private static class RemoteConnectionPoolHandler implements
+            ObjectPoolHandler<RemoteFrameworkConnection> {
+
+        private final RemoteFrameworkConnectionInfo connectionInfo;
+        private final int encodingVersion;
+
+        public RemoteConnectionPoolHandler(final RemoteFrameworkConnectionInfo connectionInfo,
+                final int encodingVersion) {
+            this.connectionInfo = connectionInfo;
+            this.encodingVersion = encodingVersion;
+        }
+
+        public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+            ObjectPoolConfiguration configuration = new ObjectPoolConfiguration(original);
+            configuration.validate();
+            return configuration;
+        }
+
+        public RemoteFrameworkConnection makeObject() {
+            return new RemoteFrameworkConnection(connectionInfo, encodingVersion);
+        }
+
+        public void testObject(RemoteFrameworkConnection object) {
+            if (object.isBroken()) {
+                throw new ConnectorIOException("Connection is broken: " + connectionInfo);
+            }
+        }
+
+        public void disposeObject(RemoteFrameworkConnection object) {
+            try {
+                object.close();
+            } catch (Exception e) {
+                LOG.ok(e, "Failed to close connection to {0}", connectionInfo);
+            }
+        }
+
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * Cache of the connection pools.
+     */
+    private static final ConcurrentMap<Pair<RemoteFrameworkConnectionInfo, Integer>,
+            ObjectPool<RemoteFrameworkConnection>> POOLS =
+            new ConcurrentHashMap<Pair<RemoteFrameworkConnectionInfo, Integer>,
+                    ObjectPool<RemoteFrameworkConnection>>();
+
+    /**
+     * Returns true if connections are pooled.
+     */
+    public static boolean isPoolingEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(POOLING_PROP));
+    }
+
+    /**
+     * Returns true if connections to the servers which support it are
+     * compressed.
+     */
+    public static boolean isCompressionEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(COMPRESSION_PROP));
+    }
+
+    /**
+     * Returns true if connector objects are sent in the compact form to the
+     * servers which support it.
+     */
+    public static boolean isCompactObjectsEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(COMPACT_OBJECTS_PROP));
+    }
+
+    /**
+     * Returns the encoding version to use with the server of the connector.
+     * The server answers in the same encoding.
+     *
+     * @param connectorInfo
+     *            the remote connector.
+     * @return the {@link BinaryObjectEncoder} encoding version.
+     */
+    public static int getEncodingVersion(final RemoteConnectorInfoImpl connectorInfo) {
+        return BinaryObjectEncoder.getEncodingVersion(connectorInfo.isCompressionSupported()
+                && isCompressionEnabled(), connectorInfo.isCompactObjectsSupported()
+                && isCompactObjectsEnabled());
+    }
+
+    /**
+     * Returns the pause window to ask the server of the connector for.
+     *
+     * @param connectorInfo
+     *            the remote connector.
+     * @return the number of pauses the server may send ahead of the answers,
+     *         1 if the server does not support a window.
+     */
+    public static int getPauseWindow(final RemoteConnectorInfoImpl connectorInfo) {
+        if (!connectorInfo.isPauseWindowSupported()) {
+            return 1;
+        }
+        final String value = System.getProperty(PAUSE_WINDOW_PROP);
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value {0} of {1}, using {2}", value, PAUSE_WINDOW_PROP, 1);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Borrows an open connection to the remote framework. The entry must be
+     * closed to return the connection to the pool. If the connection was left
+     * in an unknown state it must be {@link RemoteFrameworkConnection#invalidate()
+     * invalidated} before the entry is closed.
+     *
+     * @param info
+     *            the remote framework to connect to.
+     * @param encodingVersion
+     *            the encoding version of the connection.
+     * @return the pooled connection.
+     */
+    public static ObjectPoolEntry<RemoteFrameworkConnection> borrowConnection(
+            final RemoteFrameworkConnectionInfo info, final int encodingVersion) {
+        return getPool(info, encodingVersion).borrowObject();
+    }
+
+    private static ObjectPool<RemoteFrameworkConnection> getPool(
+            final RemoteFrameworkConnectionInfo info, final int encodingVersion) {
+        Pair<RemoteFrameworkConnectionInfo, Integer> key = Pair.of(info, encodingVersion);
+        ObjectPool<RemoteFrameworkConnection> pool = POOLS.get(key);
+        if (pool == null) {
+            LOG.info("Creating new connection pool: {0}", info);
+            pool =
+                    new ObjectPool<RemoteFrameworkConnection>(new RemoteConnectionPoolHandler(
+                            info, encodingVersion), newPoolConfiguration(info), info.getHost()
+                            + ":" + info.getPort());
+            ObjectPool<RemoteFrameworkConnection> previousPool = POOLS.putIfAbsent(key, pool);
+            // Use the pool made by other thread
+            if (previousPool != null) {
+                // stop the evictor of the unused pool
+                pool.shutdown();
+                pool = previousPool;
+            }
+        }
+        return pool;
+    }
+
+    private static ObjectPoolConfiguration newPoolConfiguration(
+            final RemoteFrameworkConnectionInfo info) {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        // the number of concurrent requests was never limited on the client
+        config.setMaxObjects(1000);
+        config.setMaxIdle(getMaxIdle());
+        config.setMinIdle(0);
+        config.setMinEvictableIdleTimeMillis(IDLE_TIMEOUT);
+        // don't keep idle sockets longer than the read timeout
+        if (info.getTimeout() > 0) {
+            config.setMinEvictableIdleTimeMillis(Math.min(info.getTimeout(), config
+                    .getMinEvictableIdleTimeMillis()));
+        }
+        // close the sockets of a pool nobody borrows from any more
+        config.setTimeBetweenEvictionRunsMillis(15 * 1000);
+        return config;
+    }
+
+    private static int getMaxIdle() {
+        final String value = System.getProperty(MAX_IDLE_PROP);
+        if (value != null) {
+            try {
+                return Math.max(0, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value {0} of {1}, using {2}", value, MAX_IDLE_PROP,
+                        DEFAULT_MAX_IDLE);
+            }
+        }
+        return DEFAULT_MAX_IDLE;
+    }
+
+    public static void dispose(final RemoteFrameworkConnectionInfo info) {
+        synchronized (POOLS) {
+            for (Iterator<Pair<RemoteFrameworkConnectionInfo, Integer>> iter =
+                    POOLS.keySet().iterator(); iter.hasNext();) {
+                Pair<RemoteFrameworkConnectionInfo, Integer> key = iter.next();
+                if (!key.first.equals(info)) {
+                    continue;
+                }
+                ObjectPool<RemoteFrameworkConnection> pool = POOLS.get(key);
+                iter.remove();
+                if (null != pool) {
+                    try {
+                        pool.shutdown();
+                    } catch (Exception e) {
+                        LOG.warn(e, "Failed to close pool: {0}", pool);
+                    }
+                }
+            }
+        }
+    }
+
+    public static void dispose() {
+        synchronized (POOLS) {
+            for (ObjectPool<RemoteFrameworkConnection> pool : POOLS.values()) {
+                try {
+                    pool.shutdown();
+                } catch (Exception e) {
+                    LOG.warn(e, "Failed to close pool: {0}", pool);
+                }
+            }
+            POOLS.clear();
+        }
+    }
+}
@@ -24,9 +24,14 @@
 package org.identityconnectors.framework.impl.api.remote;
 
 import java.lang.reflect.InvocationHandler;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.util.HashMap;
 
+import org.identityconnectors.common.Base64;
+import org.identityconnectors.common.metrics.Metrics;
 import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
@@ -39,6 +44,12 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
 
     final String remoteConnectorFacadeKey;
 
+    /**
+     * The digest of the remote configuration, sent instead of the
+     * configuration once the server knows it.
+     */
+    final String remoteConfigurationDigest;
+
     /**
      * Builds up the maps of supported operations and calls.
      */
@@ -48,12 +59,30 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
         getAPIConfiguration().setProducerBufferSize(configuration.getProducerBufferSize());
         getAPIConfiguration().setTimeoutMap(configuration.getTimeoutMap());
         remoteConnectorFacadeKey = getConnectorFacadeKey();
+        remoteConfigurationDigest = computeConfigurationDigest(remoteConnectorFacadeKey);
     }
 
     public RemoteConnectorFacadeImpl(final RemoteConnectorInfoImpl connectorInfo,
                                      String configuration) {
         super(configuration, connectorInfo);
         remoteConnectorFacadeKey = generateRemoteConnectorFacadeKey(getAPIConfiguration());
+        remoteConfigurationDigest = computeConfigurationDigest(remoteConnectorFacadeKey);
+    }
+
+    /**
+     * Computes the digest identifying a serialized configuration.
+     *
+     * @param configuration
+     *            the Base64 form of the configuration.
+     * @return the Base64 encoded SHA-256 hash of the configuration.
+     */
+    public static String computeConfigurationDigest(final String configuration) {
+        try {
+            MessageDigest hasher = MessageDigest.getInstance("SHA-256");
+            return Base64.encode(hasher.digest(configuration.getBytes(Charset.forName("UTF-8"))));
+        } catch (Exception e) {
+            throw ConnectorException.wrap(e);
+        }
     }
 
     private static String generateRemoteConnectorFacadeKey(final APIConfigurationImpl configuration) {
@@ -68,10 +97,15 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
         // add remote proxy
         InvocationHandler handler =
                 new RemoteOperationInvocationHandler((RemoteConnectorInfoImpl) getAPIConfiguration()
-                        .getConnectorInfo(), remoteConnectorFacadeKey, api);
+                        .getConnectorInfo(), remoteConnectorFacadeKey,
+                        remoteConfigurationDigest, api);
         APIOperation proxy = newAPIOperationProxy(api, handler);
         // now wrap the proxy in the appropriate timeout proxy
         proxy = createTimeoutProxy(api, proxy);
+        // record the time including the timeout proxy
+        if (Metrics.isEnabled()) {
+            proxy = createMetricsProxy(api, proxy);
+        }
         // add logging proxy
         if (LoggingProxy.isLoggable()) {
             proxy = createLoggingProxy(api, proxy);
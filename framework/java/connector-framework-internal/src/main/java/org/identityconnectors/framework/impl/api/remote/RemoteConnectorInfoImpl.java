@@ -32,6 +32,26 @@ public class RemoteConnectorInfoImpl extends AbstractConnectorInfo {
      */
     private transient RemoteFrameworkConnectionInfo remoteConnectionInfo;
 
+    /**
+     * Transient field, not serialized
+     */
+    private transient boolean compressionSupported = false;
+
+    /**
+     * Transient field, not serialized
+     */
+    private transient boolean compactObjectsSupported = false;
+
+    /**
+     * Transient field, not serialized
+     */
+    private transient boolean configurationDigestSupported = false;
+
+    /**
+     * Transient field, not serialized
+     */
+    private transient boolean pauseWindowSupported = false;
+
     public RemoteConnectorInfoImpl() {
 
     }
@@ -43,4 +63,51 @@ public class RemoteConnectorInfoImpl extends AbstractConnectorInfo {
     public void setRemoteConnectionInfo(RemoteFrameworkConnectionInfo info) {
         remoteConnectionInfo = info;
     }
+
+    /**
+     * Returns true if the server announced it reads compressed streams.
+     */
+    public boolean isCompressionSupported() {
+        return compressionSupported;
+    }
+
+    public void setCompressionSupported(boolean compressionSupported) {
+        this.compressionSupported = compressionSupported;
+    }
+
+    /**
+     * Returns true if the server announced it reads the compact form of the
+     * connector objects.
+     */
+    public boolean isCompactObjectsSupported() {
+        return compactObjectsSupported;
+    }
+
+    public void setCompactObjectsSupported(boolean compactObjectsSupported) {
+        this.compactObjectsSupported = compactObjectsSupported;
+    }
+
+    /**
+     * Returns true if the server announced it accepts the digest of a
+     * configuration instead of the configuration itself.
+     */
+    public boolean isConfigurationDigestSupported() {
+        return configurationDigestSupported;
+    }
+
+    public void setConfigurationDigestSupported(boolean configurationDigestSupported) {
+        this.configurationDigestSupported = configurationDigestSupported;
+    }
+
+    /**
+     * Returns true if the server announced it honours the pause window of a
+     * request.
+     */
+    public boolean isPauseWindowSupported() {
+        return pauseWindowSupported;
+    }
+
+    public void setPauseWindowSupported(boolean pauseWindowSupported) {
+        this.pauseWindowSupported = pauseWindowSupported;
+    }
 }
@@ -106,6 +106,10 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
         // populate transient fields not serialized
         for (RemoteConnectorInfoImpl remoteInfo : remoteInfos) {
             remoteInfo.setRemoteConnectionInfo(frameworkConnectionInfo);
+            remoteInfo.setCompressionSupported(response.isCompressionSupported());
+            remoteInfo.setCompactObjectsSupported(response.isCompactObjectsSupported());
+            remoteInfo.setConfigurationDigestSupported(response.isConfigurationDigestSupported());
+            remoteInfo.setPauseWindowSupported(response.isPauseWindowSupported());
         }
 
         List<ConnectorInfo> connectorInfoBefore = connectorInfoList;
@@ -152,14 +156,22 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
      */
     public RemoteConnectorInfoManagerImpl derive(RemoteFrameworkConnectionInfo info) {
         RemoteConnectorInfoManagerImpl rv = new RemoteConnectorInfoManagerImpl();
-        if (null == connectorInfoList || connectorInfoList.isEmpty()) {
+        List<ConnectorInfo> sourceInfos = connectorInfoList;
+        if (null == sourceInfos || sourceInfos.isEmpty()) {
             rv.connectorInfoList = Collections.emptyList();
         } else {
             @SuppressWarnings("unchecked")
             List<RemoteConnectorInfoImpl> remoteInfos =
-                    (List<RemoteConnectorInfoImpl>) SerializerUtil.cloneObject(connectorInfoList);
-            for (RemoteConnectorInfoImpl remoteInfo : remoteInfos) {
+                    (List<RemoteConnectorInfoImpl>) SerializerUtil.cloneObject(sourceInfos);
+            for (int i = 0; i < remoteInfos.size(); i++) {
+                RemoteConnectorInfoImpl remoteInfo = remoteInfos.get(i);
                 remoteInfo.setRemoteConnectionInfo(info);
+                // the server capabilities are transient, the clone lost them
+                RemoteConnectorInfoImpl source = (RemoteConnectorInfoImpl) sourceInfos.get(i);
+                remoteInfo.setCompressionSupported(source.isCompressionSupported());
+                remoteInfo.setCompactObjectsSupported(source.isCompactObjectsSupported());
+                remoteInfo.setConfigurationDigestSupported(source.isConfigurationDigestSupported());
+                remoteInfo.setPauseWindowSupported(source.isPauseWindowSupported());
             }
             rv.connectorInfoList = CollectionUtil.<ConnectorInfo>newReadOnlyList(remoteInfos);
         }
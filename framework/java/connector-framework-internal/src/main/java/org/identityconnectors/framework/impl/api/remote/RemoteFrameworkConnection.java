@@ -23,12 +23,16 @@
 package org.identityconnectors.framework.impl.api.remote;
 
 import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
@@ -42,6 +46,8 @@ import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
 import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
 import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectDecoder;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectEncoder;
 
 public class RemoteFrameworkConnection implements Closeable {
 
@@ -50,9 +56,47 @@ public class RemoteFrameworkConnection implements Closeable {
     private BinaryObjectSerializer encoder;
     private BinaryObjectDeserializer decoder;
 
+    /**
+     * Set once the stream is in an unknown state and the connection must not
+     * be reused for another request.
+     */
+    private volatile boolean broken = false;
+
+    /**
+     * The server side answers in the encoding the client used.
+     */
+    private boolean mirrorEncoding = false;
+
+    /**
+     * Digests of the configurations already sent on this connection.
+     */
+    private final Set<String> sentConfigurations = new HashSet<String>();
+
+    /**
+     * Number of bytes received on this connection.
+     */
+    private volatile long bytesRead = 0;
+
     public RemoteFrameworkConnection(RemoteFrameworkConnectionInfo info) {
+        this(info, BinaryObjectEncoder.ENCODING_VERSION);
+    }
+
+    /**
+     * Opens a connection to the remote framework.
+     *
+     * @param info
+     *            the remote framework to connect to.
+     * @param encodingVersion
+     *            the {@link BinaryObjectEncoder} encoding version of the
+     *            stream, the server must support it.
+     */
+    public RemoteFrameworkConnection(RemoteFrameworkConnectionInfo info, int encodingVersion) {
         try {
             init(info);
+            if (encodingVersion != BinaryObjectEncoder.ENCODING_VERSION
+                    && encoder instanceof BinaryObjectEncoder) {
+                ((BinaryObjectEncoder) encoder).setEncodingVersion(encodingVersion);
+            }
         } catch (SocketException e) {
             throw new ConnectorIOException("Failed to init remote connection to "
                     + (null != info ? info.toString() : "null"), e);
@@ -65,6 +109,7 @@ public class RemoteFrameworkConnection implements Closeable {
     public RemoteFrameworkConnection(Socket socket) {
         try {
             init(socket);
+            mirrorEncoding = true;
         } catch (SocketException e) {
             throw new ConnectorIOException("Failed to init remote connection to "
                     + (null != socket ? socket.toString() : "null"), e);
@@ -115,7 +160,25 @@ public class RemoteFrameworkConnection implements Closeable {
 
     private void init(Socket socket) throws Exception {
         this.socket = socket;
-        InputStream inputStream = this.socket.getInputStream();
+        InputStream inputStream = new FilterInputStream(this.socket.getInputStream()) {
+            @Override
+            public int read() throws IOException {
+                int rv = super.read();
+                if (rv >= 0) {
+                    bytesRead++;
+                }
+                return rv;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int rv = super.read(b, off, len);
+                if (rv > 0) {
+                    bytesRead += rv;
+                }
+                return rv;
+            }
+        };
         OutputStream outputStream = this.socket.getOutputStream();
         ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
         encoder = factory.newBinarySerializer(outputStream);
@@ -123,34 +186,125 @@ public class RemoteFrameworkConnection implements Closeable {
     }
 
     public void close() {
-        flush();
         try {
-            if (socket instanceof SSLSocket) {
-                // SSLSocket doesn't like shutdownOutput/shutdownInput
-                socket.close();
-            } else {
+            // nothing can be sent on a broken connection
+            if (!broken) {
+                flush();
+            }
+            // SSLSocket doesn't like shutdownOutput/shutdownInput
+            if (!(socket instanceof SSLSocket)) {
                 socket.shutdownOutput();
                 socket.shutdownInput();
-                socket.close();
             }
         } catch (Exception e) {
             LOG.info(e, "Failed to close connection.");
             throw ConnectorException.wrap(e);
+        } finally {
+            // release the socket even if the connection could not be shut
+            // down cleanly
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.ok(e, "Failed to close socket");
+            }
         }
     }
 
+    /**
+     * Returns true if a previous read or write failed, or the connection was
+     * explicitly invalidated, and it can not be reused.
+     *
+     * @return true if the connection is no longer usable.
+     */
+    public boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * Returns the number of bytes received on this connection so far.
+     * <p/>
+     * The server only writes in response to a request, so a connection which
+     * has received nothing since a request was written has not started to
+     * answer it.
+     *
+     * @return the number of bytes read from the socket.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns true if data was received which can be read without blocking.
+     * Not every socket reports it, an SSL socket may only report the data once
+     * a read has decrypted it.
+     *
+     * @return true if the next message, or the start of it, has arrived.
+     */
+    public boolean isInputAvailable() {
+        return decoder instanceof BinaryObjectDecoder
+                && ((BinaryObjectDecoder) decoder).isInputAvailable();
+    }
+
+    /**
+     * Marks this connection as unusable for any further request.
+     */
+    public void invalidate() {
+        broken = true;
+    }
+
+    /**
+     * Returns true if the configuration with the given digest was sent to the
+     * server on this connection.
+     */
+    public boolean isConfigurationSent(String digest) {
+        return sentConfigurations.contains(digest);
+    }
+
+    /**
+     * Records that the configuration with the given digest was sent to the
+     * server on this connection.
+     */
+    public void setConfigurationSent(String digest) {
+        sentConfigurations.add(digest);
+    }
+
     public void flush() {
-        encoder.flush();
+        try {
+            encoder.flush();
+        } catch (RuntimeException e) {
+            broken = true;
+            throw e;
+        }
     }
 
     public void writeObject(Object object) {
-        encoder.writeObject(object);
+        try {
+            encoder.writeObject(object);
+        } catch (RuntimeException e) {
+            broken = true;
+            throw e;
+        }
     }
 
     public Object readObject() {
         // flush first in case there is any data in the
         // output buffer
         flush();
-        return decoder.readObject();
+        try {
+            Object object = decoder.readObject();
+            if (mirrorEncoding) {
+                mirrorEncoding = false;
+                if (decoder instanceof BinaryObjectDecoder
+                        && encoder instanceof BinaryObjectEncoder) {
+                    ((BinaryObjectEncoder) encoder)
+                            .setEncodingVersion(((BinaryObjectDecoder) decoder)
+                                    .getEncodingVersion());
+                }
+            }
+            return object;
+        } catch (RuntimeException e) {
+            broken = true;
+            throw e;
+        }
     }
 }
@@ -25,35 +25,71 @@ package org.identityconnectors.framework.impl.api.remote;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
 import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.api.operations.TestApiOp;
+import org.identityconnectors.framework.api.operations.ValidateApiOp;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
 import org.identityconnectors.framework.impl.api.StreamHandlerUtil;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseUnknownConfiguration;
 
 /**
  * Invocation handler for all of our operations
  */
 public class RemoteOperationInvocationHandler implements InvocationHandler {
+
+    private static final Log LOG = Log.getLog(RemoteOperationInvocationHandler.class);
+
+    /**
+     * Operations without side effects on the resource. Only these are sent
+     * again when a pooled connection turns out to be closed, the server may
+     * have applied any other operation before the connection was lost.
+     */
+    @SuppressWarnings("unchecked")
+    private static final Set<Class<? extends APIOperation>> RETRYABLE_OPERATIONS =
+            CollectionUtil.newReadOnlySet(GetApiOp.class, SearchApiOp.class, SchemaApiOp.class,
+                    TestApiOp.class, ValidateApiOp.class);
+
     private final RemoteConnectorInfoImpl connectorInfo;
     private final String connectorFacadeKey;
+    private final String configurationDigest;
     private final Class<? extends APIOperation> operation;
 
     public RemoteOperationInvocationHandler(final RemoteConnectorInfoImpl connectorInfo,
             String connectorFacadeKey,final Class<? extends APIOperation> operation) {
+        this(connectorInfo, connectorFacadeKey, null, operation);
+    }
+
+    /**
+     * Creates a handler which sends the configuration only once per
+     * connection if the server supports it, and then just its digest.
+     */
+    public RemoteOperationInvocationHandler(final RemoteConnectorInfoImpl connectorInfo,
+            String connectorFacadeKey, String configurationDigest,
+            final Class<? extends APIOperation> operation) {
         this.connectorInfo = connectorInfo;
         this.connectorFacadeKey = connectorFacadeKey;
+        this.configurationDigest =
+                connectorInfo.isConfigurationDigestSupported() ? configurationDigest : null;
         this.operation = operation;
     }
 
@@ -69,54 +105,172 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
         ObjectStreamHandler streamHandlerArg =
                 extractStreamHandler(method.getParameterTypes(), simpleMarshallArgs);
 
-        // build the request object
         RemoteFrameworkConnectionInfo connectionInfo = connectorInfo.getRemoteConnectionInfo();
-        OperationRequest request =
-                new OperationRequest(connectorInfo.getConnectorKey(), connectorFacadeKey,
-                        operation, method.getName(), simpleMarshallArgs);
-
-        // create the connection
-        RemoteFrameworkConnection connection = null;
-
-        try {
-            connection = new RemoteFrameworkConnection(connectionInfo);
-            connection.writeObject(CurrentLocale.get());
-            connection.writeObject(connectionInfo.getKey());
-            // send the request
-            connection.writeObject(request);
-
-            // now process the response stream (if any)
-            if (streamHandlerArg != null) {
-                handleStreamResponse(connection, streamHandlerArg);
+        String methodName = method.getName();
+        int encodingVersion = RemoteConnectionPoolManager.getEncodingVersion(connectorInfo);
+        OperationResponsePart response;
+        if (!RemoteConnectionPoolManager.isPoolingEnabled()) {
+            // one connection per request
+            RemoteFrameworkConnection connection =
+                    new RemoteFrameworkConnection(connectionInfo, encodingVersion);
+            try {
+                response =
+                        sendRequest(connection, connectionInfo, methodName, simpleMarshallArgs,
+                                streamHandlerArg);
+            } finally {
+                connection.close();
+            }
+        } else {
+            ObjectPoolEntry<RemoteFrameworkConnection> entry =
+                    RemoteConnectionPoolManager.borrowConnection(connectionInfo, encodingVersion);
+            RemoteFrameworkConnection connection = entry.getPooledObject();
+            long bytesRead = connection.getBytesRead();
+            try {
+                response =
+                        sendRequest(connection, connectionInfo, methodName, simpleMarshallArgs,
+                                streamHandlerArg);
+            } catch (RuntimeException e) {
+                // the response was not read entirely, the stream is in an
+                // unknown state
+                connection.invalidate();
+                if (!RETRYABLE_OPERATIONS.contains(operation)
+                        || !isStaleConnection(connection, bytesRead, e)) {
+                    throw e;
+                }
+                LOG.ok(e, "Retrying on a new connection, the pooled one is closed: {0}",
+                        connectionInfo);
+                entry.close();
+                entry = null;
+                entry = RemoteConnectionPoolManager.borrowConnection(connectionInfo,
+                        encodingVersion);
+                connection = entry.getPooledObject();
+                try {
+                    response =
+                            sendRequest(connection, connectionInfo, methodName,
+                                    simpleMarshallArgs, streamHandlerArg);
+                } catch (Throwable t) {
+                    connection.invalidate();
+                    throw t;
+                }
+            } catch (Throwable t) {
+                connection.invalidate();
+                throw t;
+            } finally {
+                if (entry != null) {
+                    entry.close();
+                }
+            }
+        }
+        if (response.getException() != null) {
+            throw response.getException();
+        }
+        return response.getResult();
+    }
+
+    /**
+     * Returns true if the request failed on a pooled connection the server
+     * had already closed, so it can be sent again on a new one.
+     * <p/>
+     * That is the case if the connection served a request before but nothing
+     * was received for this one. A read timeout does not count, the server may
+     * still be processing the request.
+     */
+    private static boolean isStaleConnection(final RemoteFrameworkConnection connection,
+            final long bytesRead, final RuntimeException e) {
+        if (bytesRead == 0 || connection.getBytesRead() != bytesRead) {
+            return false;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            // finally return the actual return value
-            OperationResponsePart response = (OperationResponsePart) connection.readObject();
-            if (response.getException() != null) {
-                throw response.getException();
+    /**
+     * Sends the request and reads the response until the final
+     * {@link OperationResponsePart}.
+     */
+    private OperationResponsePart sendRequest(final RemoteFrameworkConnection connection,
+            final RemoteFrameworkConnectionInfo connectionInfo, final String methodName,
+            final List<Object> arguments, final ObjectStreamHandler streamHandlerArg) {
+        final int pauseWindow = RemoteConnectionPoolManager.getPauseWindow(connectorInfo);
+        if (configurationDigest == null) {
+            return sendRequest(connection, connectionInfo, new OperationRequest(connectorInfo
+                    .getConnectorKey(), connectorFacadeKey, null, pauseWindow, operation,
+                    methodName, arguments), streamHandlerArg);
+        }
+        OperationResponsePart response = null;
+        if (connection.isConfigurationSent(configurationDigest)) {
+            // the server should know the configuration by now
+            response =
+                    sendRequest(connection, connectionInfo, new OperationRequest(connectorInfo
+                            .getConnectorKey(), null, configurationDigest, pauseWindow,
+                            operation, methodName, arguments), streamHandlerArg);
+        }
+        if (response == null) {
+            response =
+                    sendRequest(connection, connectionInfo, new OperationRequest(connectorInfo
+                            .getConnectorKey(), connectorFacadeKey, configurationDigest,
+                            pauseWindow, operation, methodName, arguments), streamHandlerArg);
+            if (response == null) {
+                throw new ConnectorException("Configuration rejected by the server");
             }
-            return response.getResult();
-        } finally {
-            if (null != connection) {
-                connection.close();
+            connection.setConfigurationSent(configurationDigest);
+        }
+        return response;
+    }
+
+    /**
+     * Sends the request and reads the response until the final
+     * {@link OperationResponsePart}.
+     *
+     * @return the final part or null if the server did not know the
+     *         configuration.
+     */
+    private static OperationResponsePart sendRequest(final RemoteFrameworkConnection connection,
+            final RemoteFrameworkConnectionInfo connectionInfo, final OperationRequest request,
+            final ObjectStreamHandler streamHandlerArg) {
+        connection.writeObject(CurrentLocale.get());
+        connection.writeObject(connectionInfo.getKey());
+        // send the request
+        connection.writeObject(request);
+
+        Object response = connection.readObject();
+        if (response instanceof OperationResponseUnknownConfiguration) {
+            return null;
+        }
+        // now process the response stream (if any)
+        if (streamHandlerArg != null) {
+            OperationResponsePart failure =
+                    handleStreamResponse(connection, streamHandlerArg, response);
+            if (failure != null) {
+                return failure;
             }
+            response = connection.readObject();
         }
 
+        // finally return the actual return value
+        return (OperationResponsePart) response;
     }
 
     /**
-     * Handles a stream response until the end of the stream
+     * Handles a stream response until the end of the stream.
+     *
+     * @return the part carrying the exception if the operation failed on the
+     *         remote side, otherwise null.
      */
-    private static void handleStreamResponse(final RemoteFrameworkConnection connection,
-            final ObjectStreamHandler streamHandler) throws ConnectorException {
-        Object response;
+    private static OperationResponsePart handleStreamResponse(
+            final RemoteFrameworkConnection connection, final ObjectStreamHandler streamHandler,
+            final Object firstResponse) throws ConnectorException {
+        Object response = firstResponse;
         boolean handleMore = true;
         while (true) {
-            response = connection.readObject();
             if (response instanceof OperationResponsePart) {
                 OperationResponsePart part = (OperationResponsePart) response;
                 if (part.getException() != null) {
-                    throw part.getException();
+                    return part;
                 }
                 Object object = part.getResult();
                 if (handleMore) {
@@ -129,10 +283,11 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
                     connection.writeObject(new OperationRequestStopData());
                 }
             } else if (response instanceof OperationResponseEnd) {
-                break;
+                return null;
             } else {
                 throw new ConnectorException("Unexpected response: " + response);
             }
+            response = connection.readObject();
         }
     }
 
@@ -37,6 +37,30 @@ import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
 public class HelloResponse implements Message {
 
     public static final String SERVER_START_TIME = "SERVER_START_TIME";
+
+    /**
+     * Set to {@code Boolean.TRUE} if the server reads compressed binary streams.
+     */
+    public static final String COMPRESSION_SUPPORTED = "COMPRESSION_SUPPORTED";
+
+    /**
+     * Set to {@code Boolean.TRUE} if the server reads the compact binary form
+     * of the {@code ConnectorObject}s.
+     */
+    public static final String COMPACT_OBJECTS_SUPPORTED = "COMPACT_OBJECTS_SUPPORTED";
+
+    /**
+     * Set to {@code Boolean.TRUE} if the server accepts operation requests
+     * carrying the digest of a configuration it was sent before.
+     */
+    public static final String CONFIGURATION_DIGEST_SUPPORTED = "CONFIGURATION_DIGEST_SUPPORTED";
+
+    /**
+     * Set to {@code Boolean.TRUE} if the server honours the pause window an
+     * operation request asks for.
+     */
+    public static final String PAUSE_WINDOW_SUPPORTED = "PAUSE_WINDOW_SUPPORTED";
+
     /**
      * The exception
      */
@@ -80,6 +104,22 @@ public class HelloResponse implements Message {
         return serverInfo;
     }
 
+    public boolean isCompressionSupported() {
+        return Boolean.TRUE.equals(getServerInfo().get(COMPRESSION_SUPPORTED));
+    }
+
+    public boolean isCompactObjectsSupported() {
+        return Boolean.TRUE.equals(getServerInfo().get(COMPACT_OBJECTS_SUPPORTED));
+    }
+
+    public boolean isConfigurationDigestSupported() {
+        return Boolean.TRUE.equals(getServerInfo().get(CONFIGURATION_DIGEST_SUPPORTED));
+    }
+
+    public boolean isPauseWindowSupported() {
+        return Boolean.TRUE.equals(getServerInfo().get(PAUSE_WINDOW_SUPPORTED));
+    }
+
     public Date getStartTime() {
         Object time = getServerInfo().get(SERVER_START_TIME);
         if (time instanceof Long) {
@@ -45,6 +45,18 @@ public class OperationRequest implements Message {
      */
     private final String configuration;
 
+    /**
+     * The digest of the configuration, the server looks up the configuration
+     * by it when the configuration itself is not sent.
+     */
+    private final String configurationDigest;
+
+    /**
+     * The number of pauses the server may send ahead of the answers of the
+     * client, 1 to wait for the answer to every pause.
+     */
+    private final int pauseWindow;
+
     /**
      * The operation to perform.
      */
@@ -66,8 +78,24 @@ public class OperationRequest implements Message {
     public OperationRequest(ConnectorKey key, String connectorFacadeKey,
             Class<? extends APIOperation> operation, String operationMethodName,
             List<Object> arguments) {
+        this(key, connectorFacadeKey, null, operation, operationMethodName, arguments);
+    }
+
+    public OperationRequest(ConnectorKey key, String connectorFacadeKey,
+            String configurationDigest, Class<? extends APIOperation> operation,
+            String operationMethodName, List<Object> arguments) {
+        this(key, connectorFacadeKey, configurationDigest, 1, operation, operationMethodName,
+                arguments);
+    }
+
+    public OperationRequest(ConnectorKey key, String connectorFacadeKey,
+            String configurationDigest, int pauseWindow,
+            Class<? extends APIOperation> operation, String operationMethodName,
+            List<Object> arguments) {
         connectorKey = key;
         configuration = connectorFacadeKey;
+        this.configurationDigest = configurationDigest;
+        this.pauseWindow = pauseWindow;
         this.operation = operation;
         this.operationMethodName = operationMethodName;
         this.arguments = CollectionUtil.newReadOnlyList(arguments);
@@ -81,6 +109,14 @@ public class OperationRequest implements Message {
         return configuration;
     }
 
+    public String getConfigurationDigest() {
+        return configurationDigest;
+    }
+
+    public int getPauseWindow() {
+        return pauseWindow;
+    }
+
     public Class<? extends APIOperation> getOperation() {
         return operation;
     }
@@ -58,6 +58,13 @@ class APIConfigurationHandlers {
                 rv.setMinEvictableIdleTimeMillis(decoder.readLongField(
                         "minEvictableIdleTimeMillis", rv.getMinEvictableIdleTimeMillis()));
                 rv.setMinIdle(decoder.readIntField("minIdle", rv.getMinIdle()));
+                rv.setTimeBetweenEvictionRunsMillis(decoder.readLongField(
+                        "timeBetweenEvictionRunsMillis", rv.getTimeBetweenEvictionRunsMillis()));
+                rv.setTestWhileIdle(decoder.readBooleanField("testWhileIdle", rv
+                        .isTestWhileIdle()));
+                rv.setTestOnBorrowIdleTimeMillis(decoder.readLongField(
+                        "testOnBorrowIdleTimeMillis", rv.getTestOnBorrowIdleTimeMillis()));
+                rv.setLifo(decoder.readBooleanField("lifo", rv.isLifo()));
                 return rv;
             }
 
@@ -69,6 +76,12 @@ class APIConfigurationHandlers {
                 encoder.writeLongField("minEvictableIdleTimeMillis", val
                         .getMinEvictableIdleTimeMillis());
                 encoder.writeIntField("minIdle", val.getMinIdle());
+                encoder.writeLongField("timeBetweenEvictionRunsMillis", val
+                        .getTimeBetweenEvictionRunsMillis());
+                encoder.writeBooleanField("testWhileIdle", val.isTestWhileIdle());
+                encoder.writeLongField("testOnBorrowIdleTimeMillis", val
+                        .getTestOnBorrowIdleTimeMillis());
+                encoder.writeBooleanField("lifo", val.isLifo());
             }
 
         });
@@ -87,6 +100,8 @@ class APIConfigurationHandlers {
                 rv.setEnableAttributesToGetSearchResultsHandler(decoder.readBooleanField(
                         "enableAttributesToGetSearchResultsHandler", rv
                                 .isEnableAttributesToGetSearchResultsHandler()));
+                rv.setMaxParallelQueries(decoder.readIntField("maxParallelQueries", rv
+                        .getMaxParallelQueries()));
                 return rv;
             }
 
@@ -100,6 +115,7 @@ class APIConfigurationHandlers {
                         .isEnableCaseInsensitiveFilter());
                 encoder.writeBooleanField("enableAttributesToGetSearchResultsHandler", val
                         .isEnableAttributesToGetSearchResultsHandler());
+                encoder.writeIntField("maxParallelQueries", val.getMaxParallelQueries());
             }
         });
 
@@ -298,9 +298,9 @@ class CommonObjectHandlers {
                 encoder.writeStringField(RemoteWrappedException.FIELD_CLASS, val
                         .getExceptionClass());
                 encoder.writeStringField(RemoteWrappedException.FIELD_MESSAGE, val.getMessage());
-                encoder.writeObjectField("RemoteWrappedException", val.getCause(), true);
                 encoder.writeStringField(RemoteWrappedException.FIELD_STACK_TRACE, val
                         .readStackTrace());
+                encoder.writeObjectField("RemoteWrappedException", val.getCause(), true);
             }
         });
 
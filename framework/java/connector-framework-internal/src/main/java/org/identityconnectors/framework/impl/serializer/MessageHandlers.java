@@ -40,6 +40,7 @@ import org.identityconnectors.framework.impl.api.remote.messages.OperationReques
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseUnknownConfiguration;
 
 /**
  * Serialization handles for remote messages.
@@ -99,6 +100,9 @@ class MessageHandlers {
                                 null);
                 final String connectorFacadeKey =
                         decoder.readStringField("connectorFacadeKey", null);
+                final String configurationDigest =
+                        decoder.readStringField("configurationDigest", null);
+                final int pauseWindow = decoder.readIntField("pauseWindow", 1);
                 @SuppressWarnings("unchecked")
                 final Class<? extends APIOperation> operation =
                         (Class) decoder.readClassField("operation", null);
@@ -107,16 +111,19 @@ class MessageHandlers {
                 @SuppressWarnings("unchecked")
                 final List<Object> arguments =
                         (List) decoder.readObjectField("Arguments", List.class, null);
-                return new OperationRequest(connectorKey, connectorFacadeKey, operation,
-                        operationMethodName, arguments);
+                return new OperationRequest(connectorKey, connectorFacadeKey,
+                        configurationDigest, pauseWindow, operation, operationMethodName,
+                        arguments);
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
                 OperationRequest val = (OperationRequest) object;
                 encoder.writeClassField("operation", val.getOperation());
                 encoder.writeStringField("operationMethodName", val.getOperationMethodName());
-                encoder.writeObjectField("ConnectorKey", val.getConnectorKey(), true);
                 encoder.writeStringField("connectorFacadeKey", val.getConnectorFacadeKey());
+                encoder.writeStringField("configurationDigest", val.getConfigurationDigest());
+                encoder.writeIntField("pauseWindow", val.getPauseWindow());
+                encoder.writeObjectField("ConnectorKey", val.getConnectorKey(), true);
                 encoder.writeObjectField("Arguments", val.getArguments(), true);
             }
         });
@@ -183,6 +190,18 @@ class MessageHandlers {
             }
         });
 
+        HANDLERS.add(new AbstractObjectSerializationHandler(
+                OperationResponseUnknownConfiguration.class,
+                "OperationResponseUnknownConfiguration") {
+
+            public Object deserialize(final ObjectDecoder decoder) {
+                return new OperationResponseUnknownConfiguration();
+            }
+
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+            }
+        });
+
         HANDLERS.add(new AbstractObjectSerializationHandler(EchoMessage.class, "EchoMessage") {
 
             public Object deserialize(final ObjectDecoder decoder) {
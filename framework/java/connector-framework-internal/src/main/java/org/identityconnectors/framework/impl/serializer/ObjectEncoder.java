@@ -25,6 +25,10 @@ package org.identityconnectors.framework.impl.serializer;
 /**
  * Interface to abstract away the difference between serializing
  * xml and binary
+ * <p>
+ * The xml encoder writes each start tag incrementally, so the primitive fields
+ * (which become attributes) must be written before any object field or
+ * contents.
  */
 public interface ObjectEncoder {
     /**
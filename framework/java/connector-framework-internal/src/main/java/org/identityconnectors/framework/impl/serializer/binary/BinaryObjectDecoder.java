@@ -30,11 +30,22 @@ import java.io.InputStream;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.zip.DataFormatException;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
 import org.identityconnectors.framework.impl.serializer.ObjectDecoder;
 import org.identityconnectors.framework.impl.serializer.ObjectSerializationHandler;
@@ -77,8 +88,17 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
 
         private final Map<Integer, String> constantPool = new HashMap<Integer, String>();
 
+        /**
+         * Serializers by class for this stream, saves the lookups in the shared
+         * registry.
+         */
+        private final Map<Class<?>, ObjectSerializationHandler> handlers =
+                new HashMap<Class<?>, ObjectSerializationHandler>();
+
         private final Stack<ReadState> readStateStack = new Stack<ReadState>();
-        private final DataInputStream rootInput;
+        private DataInputStream rootInput;
+        private int encodingVersion = BinaryObjectEncoder.ENCODING_VERSION;
+        private int depth = 0;
 
         public InternalDecoder(DataInputStream input) {
             rootInput = input;
@@ -92,14 +112,21 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
                     throw new ConnectorException("Bad magic number: " + magic);
                 }
                 int version = readInt();
-                if (version != BinaryObjectEncoder.ENCODING_VERSION) {
+                if (version < BinaryObjectEncoder.ENCODING_VERSION
+                        || version > BinaryObjectEncoder.COMPACT_COMPRESSED_ENCODING_VERSION) {
                     throw new ConnectorException("Unexpected version: " + version);
                 }
+                encodingVersion = version;
+                if (BinaryObjectEncoder.isCompressed(version)) {
+                    rootInput =
+                            new DataInputStream(new BufferedInputStream(
+                                    new CompressedInputStream(rootInput), 4096));
+                }
                 firstObject = false;
             }
 
             // if it's a top-level object, it's proceeded by a constant pool
-            if (readStateStack.size() == 0) {
+            if (depth == 0) {
                 int size = readInt();
                 for (int i = 0; i < size; i++) {
                     String constant = readString(false);
@@ -108,7 +135,19 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
                 }
             }
 
-            Class<?> clazz = readClass();
+            depth++;
+            try {
+                byte type = readByte();
+                if (type == BinaryObjectEncoder.OBJECT_TYPE_CONNECTOR_OBJECT) {
+                    return readConnectorObject(decoder);
+                }
+                return readObject(decoder, readClass(type));
+            } finally {
+                depth--;
+            }
+        }
+
+        private Object readObject(ObjectDecoder decoder, Class<?> clazz) {
             ReadState state = new ReadState();
 
             while (true) {
@@ -133,8 +172,11 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             if (clazz == null) {
                 rv = null;
             } else {
-                ObjectSerializationHandler handler =
-                        ObjectSerializerRegistry.getHandlerByObjectType(clazz);
+                ObjectSerializationHandler handler = handlers.get(clazz);
+                if (handler == null && !handlers.containsKey(clazz)) {
+                    handler = ObjectSerializerRegistry.getHandlerByObjectType(clazz);
+                    handlers.put(clazz, handler);
+                }
                 if (handler == null) {
                     // we may have special handlers for certain types of arrays
                     // if handler is null, treat like any other array
@@ -159,8 +201,66 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             return rv;
         }
 
+        private ConnectorObject readConnectorObject(ObjectDecoder decoder) {
+            ObjectClass objectClass = new ObjectClass(readString(true));
+            int size = readInt();
+            Set<Attribute> attributes = new HashSet<Attribute>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                byte kind = readByte();
+                if (kind == BinaryObjectEncoder.ATTRIBUTE_UID) {
+                    String value = readString(false);
+                    attributes.add(readBoolean() ? new Uid(value, readString(false)) : new Uid(
+                            value));
+                } else if (kind == BinaryObjectEncoder.ATTRIBUTE_NAME) {
+                    attributes.add(new Name(readString(false)));
+                } else if (kind == BinaryObjectEncoder.ATTRIBUTE_PLAIN) {
+                    String name = readString(true);
+                    attributes.add(AttributeBuilder.build(name, readValues(decoder)));
+                } else if (kind == BinaryObjectEncoder.ATTRIBUTE_OBJECT) {
+                    attributes.add((Attribute) readObject(decoder));
+                } else {
+                    throw new ConnectorException("Unknown attribute kind: " + kind);
+                }
+            }
+            return new ConnectorObject(objectClass, attributes);
+        }
+
+        private List<Object> readValues(ObjectDecoder decoder) {
+            byte type = readByte();
+            if (type == BinaryObjectEncoder.VALUES_NULL) {
+                return null;
+            }
+            int size = readInt();
+            List<Object> values = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                switch (type) {
+                case BinaryObjectEncoder.VALUES_STRING:
+                    values.add(readString(false));
+                    break;
+                case BinaryObjectEncoder.VALUES_INTEGER:
+                    values.add(readInt());
+                    break;
+                case BinaryObjectEncoder.VALUES_LONG:
+                    values.add(readLong());
+                    break;
+                case BinaryObjectEncoder.VALUES_BOOLEAN:
+                    values.add(readBoolean());
+                    break;
+                case BinaryObjectEncoder.VALUES_OBJECT:
+                    values.add(readObject(decoder));
+                    break;
+                default:
+                    throw new ConnectorException("Unknown value type: " + type);
+                }
+            }
+            return values;
+        }
+
         public Class<?> readClass() {
-            int type = readByte();
+            return readClass(readByte());
+        }
+
+        private Class<?> readClass(byte type) {
             if (type == BinaryObjectEncoder.OBJECT_TYPE_NULL) {
                 return null;
             } else if (type == BinaryObjectEncoder.OBJECT_TYPE_ARRAY) {
@@ -272,6 +372,74 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
         }
     }
 
+    /**
+     * Inflates the compressed encodings. {@link InflaterInputStream} reports
+     * one available byte until the end of the stream, this one only reports
+     * the bytes which can be inflated from the input already received, so
+     * {@link BinaryObjectDecoder#isInputAvailable()} does not block.
+     */
+    private static final class CompressedInputStream extends InflaterInputStream {
+
+        /**
+         * Bytes inflated by {@link #available()} and not read yet.
+         */
+        private final byte[] pending = new byte[512];
+        private int pendingPos = 0;
+        private int pendingLength = 0;
+        private boolean closed = false;
+
+        CompressedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pendingPos < pendingLength && len > 0) {
+                int n = Math.min(len, pendingLength - pendingPos);
+                System.arraycopy(pending, pendingPos, b, off, n);
+                pendingPos += n;
+                return n;
+            }
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (pendingPos < pendingLength) {
+                return pendingLength - pendingPos;
+            }
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            try {
+                while (!inf.finished() && !inf.needsDictionary()) {
+                    if (inf.needsInput()) {
+                        // only take the input which is already there
+                        if (in.available() <= 0) {
+                            return 0;
+                        }
+                        fill();
+                    }
+                    int n = inf.inflate(pending, 0, pending.length);
+                    if (n > 0) {
+                        pendingPos = 0;
+                        pendingLength = n;
+                        return n;
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+            return 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
     private InternalDecoder internalDecoder;
 
     public BinaryObjectDecoder(InputStream in) {
@@ -279,6 +447,30 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
                 new InternalDecoder(new DataInputStream(new BufferedInputStream(in, 4096)));
     }
 
+    /**
+     * Returns the encoding version the peer used for the stream. Only known
+     * after the first object has been read.
+     *
+     * @return one of the {@link BinaryObjectEncoder} encoding versions.
+     */
+    public int getEncodingVersion() {
+        return internalDecoder.encodingVersion;
+    }
+
+    /**
+     * Returns true if input was received which can be read without blocking.
+     *
+     * @return true if the next object, or the start of it, has arrived.
+     * @since 1.4
+     */
+    public boolean isInputAvailable() {
+        try {
+            return internalDecoder.rootInput.available() > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     public void close() {
         try {
             internalDecoder.rootInput.close();
@@ -23,19 +23,23 @@
 package org.identityconnectors.framework.impl.serializer.binary;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
 
-import org.identityconnectors.common.Pair;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
 import org.identityconnectors.framework.impl.serializer.ObjectEncoder;
 import org.identityconnectors.framework.impl.serializer.ObjectSerializationHandler;
@@ -50,24 +54,63 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
      */
     public static final int ENCODING_VERSION = 2;
 
+    /**
+     * Same encoding as {@link #ENCODING_VERSION} but everything following the
+     * stream header is Deflate compressed. Only used when the peer is known to
+     * support it.
+     */
+    public static final int COMPRESSED_ENCODING_VERSION = 3;
+
+    /**
+     * Same encoding as {@link #ENCODING_VERSION} but {@link ConnectorObject}s
+     * are written in the compact form. Only used when the peer is known to
+     * support it.
+     */
+    public static final int COMPACT_ENCODING_VERSION = 4;
+
+    /**
+     * Both {@link #COMPACT_ENCODING_VERSION} and
+     * {@link #COMPRESSED_ENCODING_VERSION}.
+     */
+    public static final int COMPACT_COMPRESSED_ENCODING_VERSION = 5;
+
     public static final int OBJECT_MAGIC = 0xFAFB;
 
     public static final byte OBJECT_TYPE_NULL = 60;
     public static final byte OBJECT_TYPE_CLASS = 61;
     public static final byte OBJECT_TYPE_ARRAY = 62;
+    public static final byte OBJECT_TYPE_CONNECTOR_OBJECT = 63;
+
+    /*
+     * Attribute kinds of the compact ConnectorObject
+     */
+    static final byte ATTRIBUTE_PLAIN = 1;
+    static final byte ATTRIBUTE_UID = 2;
+    static final byte ATTRIBUTE_NAME = 3;
+    static final byte ATTRIBUTE_OBJECT = 4;
+
+    /*
+     * Value list types of the compact Attribute
+     */
+    static final byte VALUES_NULL = 0;
+    static final byte VALUES_STRING = 1;
+    static final byte VALUES_INTEGER = 2;
+    static final byte VALUES_LONG = 3;
+    static final byte VALUES_BOOLEAN = 4;
+    static final byte VALUES_OBJECT = 5;
 
     public static final byte FIELD_TYPE_ANONYMOUS_FIELD = 70;
     public static final byte FIELD_TYPE_NAMED_FIELD = 71;
     public static final byte FIELD_TYPE_END_OBJECT = 72;
 
-    private static class OutputBuffer extends Pair<ByteArrayOutputStream, DataOutputStream> {
-        public OutputBuffer(ByteArrayOutputStream buf, DataOutputStream data) {
-            super(buf, data);
-        }
-    }
-
     private static class InternalEncoder {
 
+        /**
+         * Size of the buffer kept between top-level objects, larger buffers
+         * are released after the object is written.
+         */
+        private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+
         /**
          * Mapping from type name to the ID we serialize so we only have to
          */
@@ -75,9 +118,36 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
 
         private List<String> constantBuffer = new ArrayList<String>();
 
-        private Stack<OutputBuffer> outputBufferStack = new Stack<OutputBuffer>();
+        /**
+         * The top-level object is encoded into this single buffer because the
+         * constant pool must be written before it. Nested objects and fields
+         * are written into the same buffer, the length of each field is
+         * back-patched when the field ends.
+         */
+        private byte[] buffer = new byte[4096];
+        private int position = 0;
+
+        /**
+         * Positions of the length prefixes of the open fields.
+         */
+        private int[] fieldStack = new int[16];
+        private int fieldDepth = 0;
+
+        /**
+         * Nesting level of the objects being written.
+         */
+        private int objectDepth = 0;
+
+        /**
+         * Serializers by class for this stream, saves the lookups in the shared
+         * registry.
+         */
+        private final Map<Class<?>, ObjectTypeMapper> mappers =
+                new HashMap<Class<?>, ObjectTypeMapper>();
+
         private DataOutputStream rootOutput;
         private boolean firstObject = true;
+        private int encodingVersion = ENCODING_VERSION;
 
         public InternalEncoder(DataOutputStream output) {
             rootOutput = output;
@@ -86,75 +156,174 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
         public void writeObject(ObjectEncoder encoder, Object object) {
 
             if (firstObject) {
-                writeInt(OBJECT_MAGIC);
-                writeInt(ENCODING_VERSION);
+                writeRootInt(OBJECT_MAGIC);
+                writeRootInt(encodingVersion);
+                if (isCompressed(encodingVersion)) {
+                    // sync flush so each flush() delivers the complete objects
+                    rootOutput =
+                            new DataOutputStream(new BufferedOutputStream(
+                                    new DeflaterOutputStream(rootOutput, true), 4096));
+                }
                 firstObject = false;
             }
 
-            // push the stack
-            OutputBuffer objectBuffer;
-            {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                DataOutputStream data = new DataOutputStream(baos);
-                objectBuffer = new OutputBuffer(baos, data);
-                outputBufferStack.push(objectBuffer);
+            if (objectDepth == 0) {
+                // discard anything left over from a failed object
+                position = 0;
+                fieldDepth = 0;
             }
 
-            if (object == null) {
-                writeByte(OBJECT_TYPE_NULL);
-            } else {
-                Class<?> clazz = object.getClass();
-                writeClass(clazz);
-                ObjectSerializationHandler handler =
-                        ObjectSerializerRegistry.getHandlerByObjectType(clazz);
-                if (handler == null) {
-                    // we may have special handlers for certain types of arrays
-                    // if handler is null, treat like any other array
-                    if (clazz.isArray()) {
-                        int length = Array.getLength(object);
-                        for (int i = 0; i < length; i++) {
-                            Object val = Array.get(object, i);
-                            startAnonymousField();
-                            writeObject(encoder, val);
-                            endField();
+            // push the stack
+            objectDepth++;
+            try {
+                if (object == null) {
+                    writeByte(OBJECT_TYPE_NULL);
+                    writeByte(FIELD_TYPE_END_OBJECT);
+                } else if (object instanceof ConnectorObject
+                        && isCompactObjects(encodingVersion)) {
+                    // the compact form has no fields and no end marker
+                    writeConnectorObject(encoder, (ConnectorObject) object);
+                } else {
+                    Class<?> clazz = object.getClass();
+                    writeClass(clazz);
+                    ObjectSerializationHandler handler = getHandler(clazz);
+                    if (handler == null) {
+                        // we may have special handlers for certain types of arrays
+                        // if handler is null, treat like any other array
+                        if (clazz.isArray()) {
+                            int length = Array.getLength(object);
+                            for (int i = 0; i < length; i++) {
+                                Object val = Array.get(object, i);
+                                startAnonymousField();
+                                writeObject(encoder, val);
+                                endField();
+                            }
+                        } else {
+                            throw new ConnectorException("No serializer for class: " + clazz);
                         }
                     } else {
-                        throw new ConnectorException("No serializer for class: " + clazz);
+                        handler.serialize(object, encoder);
+                    }
+                    writeByte(FIELD_TYPE_END_OBJECT); // write end-object into the
+                                                      // current obj buffer
+                }
+            } finally {
+                // pop the stack
+                objectDepth--;
+            }
+
+            // it's a top-level object, flush the constant pool and then write
+            // the actual object
+            if (objectDepth == 0) {
+                try {
+                    rootOutput.writeInt(constantBuffer.size());
+                    for (String constant : constantBuffer) {
+                        byte[] bytes = constant.getBytes("UTF8");
+                        rootOutput.writeInt(bytes.length);
+                        rootOutput.write(bytes);
+                        rootOutput.writeInt(constantPool.get(constant));
                     }
+                    constantBuffer.clear();
+                    rootOutput.write(buffer, 0, position);
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                } finally {
+                    position = 0;
+                    fieldDepth = 0;
+                    if (buffer.length > RETAINED_BUFFER_SIZE) {
+                        buffer = new byte[4096];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the compact form of the object: no named fields, interned
+         * attribute names and the values of the common types without a class
+         * tag.
+         */
+        private void writeConnectorObject(ObjectEncoder encoder, ConnectorObject object) {
+            writeByte(OBJECT_TYPE_CONNECTOR_OBJECT);
+            writeString(object.getObjectClass().getObjectClassValue(), true);
+            Set<Attribute> attributes = object.getAttributes();
+            writeInt(attributes.size());
+            for (Attribute attribute : attributes) {
+                if (attribute instanceof Uid) {
+                    Uid uid = (Uid) attribute;
+                    writeByte(ATTRIBUTE_UID);
+                    writeString(uid.getUidValue(), false);
+                    writeBoolean(uid.getRevision() != null);
+                    if (uid.getRevision() != null) {
+                        writeString(uid.getRevision(), false);
+                    }
+                } else if (attribute instanceof Name) {
+                    writeByte(ATTRIBUTE_NAME);
+                    writeString(((Name) attribute).getNameValue(), false);
+                } else if (attribute.getClass() == Attribute.class) {
+                    writeByte(ATTRIBUTE_PLAIN);
+                    writeString(attribute.getName(), true);
+                    writeValues(encoder, attribute.getValue());
                 } else {
-                    handler.serialize(object, encoder);
+                    writeByte(ATTRIBUTE_OBJECT);
+                    writeObject(encoder, attribute);
                 }
             }
-            writeByte(FIELD_TYPE_END_OBJECT); // write end-object into the
-                                              // current obj buffer
-
-            // pop the stack
-            outputBufferStack.pop();
-
-            // it's a top-level object, flush the constant pool
-            if (outputBufferStack.size() == 0) {
-                writeInt(constantBuffer.size());
-                for (String constant : constantBuffer) {
-                    writeString(constant, false);
-                    writeInt(constantPool.get(constant));
+        }
+
+        private void writeValues(ObjectEncoder encoder, List<Object> values) {
+            if (values == null) {
+                writeByte(VALUES_NULL);
+                return;
+            }
+            byte type = getValuesType(values);
+            writeByte(type);
+            writeInt(values.size());
+            for (Object value : values) {
+                switch (type) {
+                case VALUES_STRING:
+                    writeString((String) value, false);
+                    break;
+                case VALUES_INTEGER:
+                    writeInt((Integer) value);
+                    break;
+                case VALUES_LONG:
+                    writeLong((Long) value);
+                    break;
+                case VALUES_BOOLEAN:
+                    writeBoolean((Boolean) value);
+                    break;
+                default:
+                    writeObject(encoder, value);
                 }
-                constantBuffer.clear();
             }
+        }
 
-            // now write the actual object
-            try {
-                objectBuffer.second.close();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+        /**
+         * Returns the type shared by all the values or {@link #VALUES_OBJECT}.
+         */
+        private byte getValuesType(List<Object> values) {
+            Class<?> type = null;
+            for (Object value : values) {
+                if (value == null || (type != null && type != value.getClass())) {
+                    return VALUES_OBJECT;
+                }
+                type = value.getClass();
+            }
+            if (type == String.class) {
+                return VALUES_STRING;
+            } else if (type == Integer.class) {
+                return VALUES_INTEGER;
+            } else if (type == Long.class) {
+                return VALUES_LONG;
+            } else if (type == Boolean.class) {
+                return VALUES_BOOLEAN;
             }
-            byte[] bytes = objectBuffer.first.toByteArray();
-            writeBytes(bytes);
+            return VALUES_OBJECT;
         }
 
         public void writeClass(Class<?> clazz) {
-            ObjectSerializationHandler handler =
-                    ObjectSerializerRegistry.getHandlerByObjectType(clazz);
-            ObjectTypeMapper mapper = ObjectSerializerRegistry.getMapperByObjectType(clazz);
+            ObjectTypeMapper mapper = getMapper(clazz);
+            ObjectSerializationHandler handler = getHandler(clazz);
             if (handler == null && clazz.isArray()) {
                 // we may have special handlers for certain types of arrays
                 // if handler is null, treat like any other array
@@ -171,77 +340,61 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
 
         public void startAnonymousField() {
             writeByte(FIELD_TYPE_ANONYMOUS_FIELD);
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            DataOutputStream data = new DataOutputStream(buf);
-            outputBufferStack.push(new OutputBuffer(buf, data));
+            startFieldContents();
         }
 
         public void startField(String name) {
             writeByte(FIELD_TYPE_NAMED_FIELD);
             writeString(name, true);
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            DataOutputStream data = new DataOutputStream(buf);
-            outputBufferStack.push(new OutputBuffer(buf, data));
+            startFieldContents();
         }
 
-        public void endField() {
-            OutputBuffer buf = outputBufferStack.pop();
-            try {
-                buf.second.close();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+        private void startFieldContents() {
+            if (fieldDepth == fieldStack.length) {
+                fieldStack = Arrays.copyOf(fieldStack, fieldDepth * 2);
             }
-            byte[] bytes = buf.first.toByteArray();
-            writeByteArray(bytes);
+            // reserve the length prefix
+            fieldStack[fieldDepth++] = position;
+            ensureCapacity(4);
+            position += 4;
+        }
+
+        public void endField() {
+            int lengthPosition = fieldStack[--fieldDepth];
+            putInt(lengthPosition, position - lengthPosition - 4);
         }
 
         public void writeInt(int v) {
-            try {
-                getCurrentOutput().writeInt(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ensureCapacity(4);
+            putInt(position, v);
+            position += 4;
         }
 
         public void writeLong(long v) {
-            try {
-                getCurrentOutput().writeLong(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ensureCapacity(8);
+            putInt(position, (int) (v >>> 32));
+            putInt(position + 4, (int) v);
+            position += 8;
         }
 
         public void writeDouble(double l) {
-            try {
-                getCurrentOutput().writeDouble(l);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeLong(Double.doubleToLongBits(l));
         }
 
         public void writeByteArray(byte[] v) {
-            try {
-                getCurrentOutput().writeInt(v.length);
-                getCurrentOutput().write(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeInt(v.length);
+            ensureCapacity(v.length);
+            System.arraycopy(v, 0, buffer, position, v.length);
+            position += v.length;
         }
 
         public void writeByte(byte b) {
-            try {
-                getCurrentOutput().writeByte(b);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ensureCapacity(1);
+            buffer[position++] = b;
         }
 
         public void writeBoolean(boolean b) {
-            try {
-                getCurrentOutput().writeBoolean(b);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeByte(b ? (byte) 1 : (byte) 0);
         }
 
         public void writeString(String str, boolean intern) {
@@ -258,14 +411,45 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             }
         }
 
-        private void writeBytes(byte[] v) {
+        private void writeRootInt(int v) {
             try {
-                getCurrentOutput().write(v);
+                rootOutput.writeInt(v);
             } catch (IOException e) {
                 throw ConnectorException.wrap(e);
             }
         }
 
+        private void putInt(int index, int v) {
+            buffer[index] = (byte) (v >>> 24);
+            buffer[index + 1] = (byte) (v >>> 16);
+            buffer[index + 2] = (byte) (v >>> 8);
+            buffer[index + 3] = (byte) v;
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+
+        private ObjectTypeMapper getMapper(Class<?> clazz) {
+            ObjectTypeMapper mapper = mappers.get(clazz);
+            if (mapper == null && !mappers.containsKey(clazz)) {
+                mapper = ObjectSerializerRegistry.getMapperByObjectType(clazz);
+                mappers.put(clazz, mapper);
+            }
+            return mapper;
+        }
+
+        private ObjectSerializationHandler getHandler(Class<?> clazz) {
+            ObjectTypeMapper mapper = getMapper(clazz);
+            if (mapper instanceof ObjectSerializationHandler) {
+                return (ObjectSerializationHandler) mapper;
+            } else {
+                return null;
+            }
+        }
+
         private int internIdentifier(String name) {
             Integer code = constantPool.get(name);
             if (code == null) {
@@ -275,14 +459,6 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             }
             return code;
         }
-
-        private DataOutputStream getCurrentOutput() {
-            if (outputBufferStack.size() == 0) {
-                return rootOutput;
-            } else {
-                return outputBufferStack.peek().second;
-            }
-        }
     }
 
     private InternalEncoder internalEncoder;
@@ -292,6 +468,50 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
                 new InternalEncoder(new DataOutputStream(new BufferedOutputStream(output, 4096)));
     }
 
+    /**
+     * Returns the encoding version for the stream options.
+     *
+     * @param compressed
+     *            true to compress the stream.
+     * @param compactObjects
+     *            true to write {@link ConnectorObject}s in the compact form.
+     * @return one of the encoding versions.
+     */
+    public static int getEncodingVersion(boolean compressed, boolean compactObjects) {
+        if (compactObjects) {
+            return compressed ? COMPACT_COMPRESSED_ENCODING_VERSION : COMPACT_ENCODING_VERSION;
+        }
+        return compressed ? COMPRESSED_ENCODING_VERSION : ENCODING_VERSION;
+    }
+
+    public static boolean isCompressed(int encodingVersion) {
+        return encodingVersion == COMPRESSED_ENCODING_VERSION
+                || encodingVersion == COMPACT_COMPRESSED_ENCODING_VERSION;
+    }
+
+    public static boolean isCompactObjects(int encodingVersion) {
+        return encodingVersion == COMPACT_ENCODING_VERSION
+                || encodingVersion == COMPACT_COMPRESSED_ENCODING_VERSION;
+    }
+
+    /**
+     * Sets the encoding of the stream. Must be called before the first object
+     * is written and only with a version the peer can read.
+     *
+     * @param encodingVersion
+     *            one of the encoding versions.
+     */
+    public void setEncodingVersion(int encodingVersion) {
+        if (!internalEncoder.firstObject) {
+            throw new IllegalStateException("Stream header is already written");
+        }
+        if (encodingVersion < ENCODING_VERSION
+                || encodingVersion > COMPACT_COMPRESSED_ENCODING_VERSION) {
+            throw new IllegalArgumentException("Unknown version: " + encodingVersion);
+        }
+        internalEncoder.encodingVersion = encodingVersion;
+    }
+
     public void flush() {
         try {
             internalEncoder.rootOutput.flush();
@@ -0,0 +1,157 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.serializer.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Minimal element tree of one serialized object, built straight from the
+ * parser events instead of a DOM document.
+ * <p>
+ * Only what {@link XmlObjectDecoder} reads is kept: the name, the attributes,
+ * the child elements and the text before the first child element.
+ */
+final class XmlNode {
+
+    private static final String[] NO_ATTRIBUTES = new String[0];
+
+    private static final List<XmlNode> NO_CHILDREN = new ArrayList<XmlNode>(0);
+
+    private final String name;
+
+    /**
+     * Attribute names and values, alternating.
+     */
+    private String[] attributes = NO_ATTRIBUTES;
+
+    private List<XmlNode> children = NO_CHILDREN;
+
+    private StringBuilder text;
+
+    XmlNode(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void addAttribute(String attrName, String value) {
+        final String[] tmp = new String[attributes.length + 2];
+        System.arraycopy(attributes, 0, tmp, 0, attributes.length);
+        tmp[attributes.length] = attrName;
+        tmp[attributes.length + 1] = value;
+        attributes = tmp;
+    }
+
+    /**
+     * Returns the value of the attribute or null if it is not set.
+     */
+    String getAttribute(String attrName) {
+        for (int i = 0; i < attributes.length; i += 2) {
+            if (attributes[i].equals(attrName)) {
+                return attributes[i + 1];
+            }
+        }
+        return null;
+    }
+
+    void addChild(XmlNode child) {
+        if (children == NO_CHILDREN) {
+            children = new ArrayList<XmlNode>(4);
+        }
+        children.add(child);
+    }
+
+    List<XmlNode> getChildren() {
+        return children;
+    }
+
+    /**
+     * Returns the first child element with the given name or null.
+     */
+    XmlNode getChild(String childName) {
+        for (XmlNode child : children) {
+            if (child.name.equals(childName)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    void appendText(char[] ch, int start, int length) {
+        // like a DOM text node, only the text before the first element counts
+        if (children.isEmpty()) {
+            if (text == null) {
+                text = new StringBuilder(length);
+            }
+            text.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Returns the first text at any level below this node, the same as
+     * {@link org.identityconnectors.common.XmlUtil#getContent(Element)}.
+     */
+    String getContent() {
+        if (text != null) {
+            return text.toString();
+        }
+        for (XmlNode child : children) {
+            final String content = child.getContent();
+            if (content != null) {
+                return content;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies a DOM element.
+     */
+    static XmlNode fromElement(Element element) {
+        final XmlNode rv = new XmlNode(element.getTagName());
+        final NamedNodeMap attrs = element.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            final Attr attr = (Attr) attrs.item(i);
+            rv.addAttribute(attr.getName(), attr.getValue());
+        }
+        for (Node child = element.getFirstChild(); child != null; child =
+                child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                rv.addChild(fromElement((Element) child));
+            } else if (child.getNodeType() == Node.TEXT_NODE
+                    || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                final char[] data = child.getNodeValue().toCharArray();
+                rv.appendText(data, 0, data.length);
+            }
+        }
+        return rv;
+    }
+}
@@ -27,21 +27,23 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.identityconnectors.common.Base64;
-import org.identityconnectors.common.XmlUtil;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.serializer.ObjectDecoder;
 import org.identityconnectors.framework.impl.serializer.ObjectSerializationHandler;
 import org.identityconnectors.framework.impl.serializer.ObjectSerializerRegistry;
 import org.identityconnectors.framework.impl.serializer.ObjectTypeMapper;
-import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 
 public class XmlObjectDecoder implements ObjectDecoder {
 
-    private final Element node;
+    private final XmlNode node;
     private final Class<?> expectedClass;
 
     public XmlObjectDecoder(Element node, Class<?> expectedClass) {
+        this(XmlNode.fromElement(node), expectedClass);
+    }
+
+    XmlObjectDecoder(XmlNode node, Class<?> expectedClass) {
         this.node = node;
         this.expectedClass = expectedClass;
     }
@@ -115,42 +117,31 @@ public class XmlObjectDecoder implements ObjectDecoder {
     }
 
     public int getNumSubObjects() {
-        int count = 0;
-        for (Element subElement = XmlUtil.getFirstChildElement(node); subElement != null; subElement =
-                XmlUtil.getNextElement(subElement)) {
-            count++;
-        }
-        return count;
+        return node.getChildren().size();
     }
 
     public Object readObjectContents(int index) {
-
-        Element subElement = XmlUtil.getFirstChildElement(node);
-        for (int i = 0; i < index; i++) {
-            subElement = XmlUtil.getNextElement(subElement);
-        }
-
-        if (subElement == null) {
+        final List<XmlNode> children = node.getChildren();
+        if (index < 0 || index >= children.size()) {
             throw new ConnectorException("Missing subelement number: " + index);
         }
 
-        return new XmlObjectDecoder(subElement, null).readObject();
+        return new XmlObjectDecoder(children.get(index), null).readObject();
     }
 
     public Object readObjectField(String fieldName, Class<?> expected, Object dflt) {
-        Element child = XmlUtil.findImmediateChildElement(node, fieldName);
+        XmlNode child = node.getChild(fieldName);
         if (child == null) {
             return dflt;
         }
         if (expected != null) {
             return new XmlObjectDecoder(child, expected).readObject();
         }
-        Element subElement = XmlUtil.getFirstChildElement(child);
-        if (subElement == null) {
+        if (child.getChildren().isEmpty()) {
             return dflt;
         }
         // if they specify null, don't apply defaults
-        return new XmlObjectDecoder(subElement, null).readObject();
+        return new XmlObjectDecoder(child.getChildren().get(0), null).readObject();
     }
 
     public String readStringContents() {
@@ -163,16 +154,15 @@ public class XmlObjectDecoder implements ObjectDecoder {
     }
 
     private String readStringContentsInternal() {
-        String xml = XmlUtil.getContent(node);
-        return xml;
+        return node.getContent();
     }
 
     private String readStringAttributeInternal(String name, String dflt) {
-        Attr attr = node.getAttributeNode(name);
-        if (attr == null) {
+        String value = node.getAttribute(name);
+        if (value == null) {
             return dflt;
         }
-        return attr.getValue();
+        return value;
     }
 
     private boolean decodeBoolean(String v) {
@@ -226,8 +216,7 @@ public class XmlObjectDecoder implements ObjectDecoder {
             if (handler == null) {
                 if (expectedClass.isArray()) {
                     List<Object> temp = new ArrayList<Object>();
-                    for (Element child = XmlUtil.getFirstChildElement(node); child != null; child =
-                            XmlUtil.getNextElement(child)) {
+                    for (XmlNode child : node.getChildren()) {
                         XmlObjectDecoder sub = new XmlObjectDecoder(child, null);
                         Object obj = sub.readObject();
                         temp.add(obj);
@@ -245,17 +234,16 @@ public class XmlObjectDecoder implements ObjectDecoder {
             } else {
                 return handler.deserialize(this);
             }
-        } else if (node.getTagName().equals("null")) {
+        } else if (node.getName().equals("null")) {
             return null;
-        } else if (node.getTagName().equals("Array")) {
-            String componentType = XmlUtil.getAttribute(node, "componentType");
-            if (componentType == null) {
+        } else if (node.getName().equals("Array")) {
+            String componentType = node.getAttribute("componentType");
+            if (componentType == null || componentType.length() == 0) {
                 componentType = "Object";
             }
             Class<?> componentClass = decodeClass(componentType);
             List<Object> temp = new ArrayList<Object>();
-            for (Element child = XmlUtil.getFirstChildElement(node); child != null; child =
-                    XmlUtil.getNextElement(child)) {
+            for (XmlNode child : node.getChildren()) {
                 XmlObjectDecoder sub = new XmlObjectDecoder(child, null);
                 Object obj = sub.readObject();
                 temp.add(obj);
@@ -268,7 +256,7 @@ public class XmlObjectDecoder implements ObjectDecoder {
             }
             return array;
         } else {
-            Class<?> clazz = decodeClass(node.getTagName());
+            Class<?> clazz = decodeClass(node.getName());
             ObjectSerializationHandler handler =
                     ObjectSerializerRegistry.getHandlerByObjectType(clazz);
             if (handler == null) {
@@ -34,11 +34,19 @@ import org.identityconnectors.framework.impl.serializer.ObjectSerializationHandl
 import org.identityconnectors.framework.impl.serializer.ObjectSerializerRegistry;
 import org.identityconnectors.framework.impl.serializer.ObjectTypeMapper;
 
+/**
+ * Writes objects as xml to a builder, without buffering the contents of each
+ * element separately.
+ * <p>
+ * The start tag of an element is left open until its first child element or
+ * text is written, so fields written as attributes must come before the
+ * contents of the element.
+ */
 public class XmlObjectEncoder implements ObjectEncoder {
 
     private static class OutputElement {
         private final String name;
-        private final StringBuilder contents = new StringBuilder();
+        private boolean startTagOpen = true;
         private boolean elementData = false;
 
         public OutputElement(String name) {
@@ -48,11 +56,22 @@ public class XmlObjectEncoder implements ObjectEncoder {
 
     private Stack<OutputElement> outputStack = new Stack<OutputElement>();
 
-    private StringBuilder rootBuilder;
+    private final StringBuilder output;
+
+    /**
+     * The handler serializing the current object, named when it writes a
+     * field after the contents.
+     */
+    private ObjectSerializationHandler currentHandler;
+
+    /**
+     * Scratch buffer the escaped values are built in.
+     */
+    private final StringBuilder escapeBuffer = new StringBuilder();
 
     public XmlObjectEncoder(StringBuilder builder) {
         Assertions.nullCheck(builder, "builder");
-        rootBuilder = builder;
+        output = builder;
     }
 
     public String writeObject(Object o) {
@@ -234,7 +253,13 @@ public class XmlObjectEncoder implements ObjectEncoder {
                 if (!inline) {
                     beginElement(typeName);
                 }
-                handler.serialize(object, this);
+                ObjectSerializationHandler previousHandler = currentHandler;
+                currentHandler = handler;
+                try {
+                    handler.serialize(object, this);
+                } finally {
+                    currentHandler = previousHandler;
+                }
                 if (!inline) {
                     endElement();
                 }
@@ -258,68 +283,79 @@ public class XmlObjectEncoder implements ObjectEncoder {
         }
     }
 
-    private StringBuilder getCurrentBuilder() {
-        if (outputStack.size() == 0) {
-            return rootBuilder;
-        } else {
-            return getCurrentElement().contents;
-        }
-    }
-
-    private StringBuilder getPreviousBuilder() {
-        if (outputStack.size() == 0) {
-            return null;
-        } else if (outputStack.size() == 1) {
-            return rootBuilder;
-        } else {
-            return outputStack.get(outputStack.size() - 2).contents;
+    /**
+     * Closes the start tag of the current element, if still open, before its
+     * contents are written.
+     */
+    private void startContents(boolean elementData) {
+        OutputElement current = getCurrentElement();
+        if (current != null) {
+            if (current.startTagOpen) {
+                current.startTagOpen = false;
+                append(">");
+                if (elementData) {
+                    append("\n");
+                }
+            }
+            if (elementData) {
+                current.elementData = true;
+            }
         }
     }
 
     private void beginElement(String name) {
-        indent(getCurrentBuilder(), outputStack.size());
-        OutputElement current = getCurrentElement();
-        if (current != null) {
-            current.elementData = true;
-        }
-        getCurrentBuilder().append("<" + name);
+        startContents(true);
+        indent(outputStack.size());
+        append("<");
+        append(name);
         outputStack.push(new OutputElement(name));
     }
 
     private void endElement() {
         OutputElement endedElement = outputStack.pop();
-        String contents = endedElement.contents.toString();
-        StringBuilder currentBuilder = getCurrentBuilder();
-        if (contents.length() == 0) {
-            currentBuilder.append("/>\n"); // empty element
+        if (endedElement.startTagOpen) {
+            append("/>\n"); // empty element
         } else {
-            currentBuilder.append(">");
-            if (endedElement.elementData) {
-                currentBuilder.append("\n");
-            }
-            getCurrentBuilder().append(contents);
             if (endedElement.elementData) {
-                indent(currentBuilder, outputStack.size());
+                indent(outputStack.size());
             }
-            currentBuilder.append("</").append(endedElement.name).append(">\n");
+            append("</");
+            append(endedElement.name);
+            append(">\n");
         }
     }
 
     private void writeAttributeInternal(String fieldName, String str) {
-        StringBuilder previousBuilder = getPreviousBuilder();
-        previousBuilder.append(" ").append(fieldName).append("='");
-        XmlUtil.escape(previousBuilder, str, XmlUtil.SINGLE_QUOTE);
-        previousBuilder.append("'");
+        OutputElement current = getCurrentElement();
+        if (current == null || !current.startTagOpen) {
+            throw new IllegalStateException("Field " + fieldName
+                    + " must be written before the contents of the element"
+                    + (currentHandler != null ? ", check the order in "
+                            + currentHandler.getClass().getName() : ""));
+        }
+        escapeBuffer.setLength(0);
+        escapeBuffer.append(" ").append(fieldName).append("='");
+        XmlUtil.escape(escapeBuffer, str, XmlUtil.SINGLE_QUOTE);
+        escapeBuffer.append("'");
+        append(escapeBuffer);
     }
 
     private void writeStringContentsInternal(String str) {
-        StringBuilder builder = getCurrentBuilder();
-        XmlUtil.escape(builder, str, XmlUtil.NO_DELIM);
+        escapeBuffer.setLength(0);
+        XmlUtil.escape(escapeBuffer, str, XmlUtil.NO_DELIM);
+        if (escapeBuffer.length() > 0) {
+            startContents(false);
+            append(escapeBuffer);
+        }
     }
 
-    private void indent(StringBuilder builder, int level) {
-        for (int i = 0; i < level * 2; i++) {
-            builder.append(" ");
+    private void indent(int level) {
+        for (int i = 0; i < level; i++) {
+            append("  ");
         }
     }
+
+    private void append(CharSequence str) {
+        output.append(str);
+    }
 }
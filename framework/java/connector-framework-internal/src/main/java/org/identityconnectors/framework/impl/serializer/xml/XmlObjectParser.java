@@ -27,12 +27,8 @@ import java.io.StringReader;
 import java.net.URL;
 import java.util.Stack;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.serializer.XmlObjectResultsHandler;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.EntityResolver;
@@ -63,15 +59,11 @@ public class XmlObjectParser {
 
     private static class MySAXHandler implements ContentHandler, EntityResolver, ErrorHandler {
         /**
-         * The document for the current top-level element. with each top-level
-         * element, we discard the previous to avoid accumulating memory
+         * Stack of elements we are creating. Only the tree of the current
+         * top-level element is kept, with each top-level element we discard
+         * the previous to avoid accumulating memory.
          */
-        private Document currentTopLevelElementDocument;
-
-        /**
-         * Stack of elements we are creating.
-         */
-        private Stack<Element> elementStack = new Stack<Element>();
+        private Stack<XmlNode> elementStack = new Stack<XmlNode>();
 
         /**
          * Do we want to validate.
@@ -93,7 +85,7 @@ public class XmlObjectParser {
             this.validate = validate;
         }
 
-        private Element getCurrentElement() {
+        private XmlNode getCurrentElement() {
             if (elementStack.size() > 0) {
                 return elementStack.peek();
             } else {
@@ -102,10 +94,9 @@ public class XmlObjectParser {
         }
 
         public void characters(char[] ch, int start, int length) {
-            Element currentElement = getCurrentElement();
+            XmlNode currentElement = getCurrentElement();
             if (currentElement != null) {
-                currentElement.appendChild(currentTopLevelElementDocument
-                        .createTextNode(new String(ch, start, length)));
+                currentElement.appendText(ch, start, length);
             }
         }
 
@@ -115,9 +106,8 @@ public class XmlObjectParser {
         public void endElement(String namespaceURI, String localName, String qName) {
             // we don't push the top-level MULTI_OBJECT_ELEMENT on the stack
             if (elementStack.size() > 0) {
-                Element element = elementStack.pop();
+                XmlNode element = elementStack.pop();
                 if (elementStack.isEmpty()) {
-                    currentTopLevelElementDocument = null;
                     if (_stillHandling) {
                         XmlObjectDecoder decoder = new XmlObjectDecoder(element, null);
                         Object object = decoder.readObject();
@@ -131,10 +121,9 @@ public class XmlObjectParser {
         }
 
         public void ignorableWhitespace(char[] ch, int start, int length) {
-            Element currentElement = getCurrentElement();
+            XmlNode currentElement = getCurrentElement();
             if (currentElement != null) {
-                currentElement.appendChild(currentTopLevelElementDocument
-                        .createTextNode(new String(ch, start, length)));
+                currentElement.appendText(ch, start, length);
             }
         }
 
@@ -152,21 +141,14 @@ public class XmlObjectParser {
 
         public void startElement(String namespaceURI, String localName, String qName,
                 Attributes atts) {
-            Element element = null;
+            XmlNode element = null;
             if (elementStack.isEmpty()) {
                 if (!XmlObjectSerializerImpl.MULTI_OBJECT_ELEMENT.equals(localName)) {
-                    try {
-                        currentTopLevelElementDocument =
-                                DocumentBuilderFactory.newInstance().newDocumentBuilder()
-                                        .newDocument();
-                    } catch (Exception e) {
-                        throw ConnectorException.wrap(e);
-                    }
-                    element = currentTopLevelElementDocument.createElement(localName);
+                    element = new XmlNode(localName);
                 }
             } else {
-                element = currentTopLevelElementDocument.createElement(localName);
-                getCurrentElement().appendChild(element);
+                element = new XmlNode(localName);
+                getCurrentElement().addChild(element);
             }
 
             if (element != null) {
@@ -174,7 +156,7 @@ public class XmlObjectParser {
                 for (int i = 0; i < atts.getLength(); i++) {
                     String attrName = atts.getLocalName(i);
                     String value = atts.getValue(i);
-                    element.setAttribute(attrName, value);
+                    element.addAttribute(attrName, value);
                 }
             }
         }
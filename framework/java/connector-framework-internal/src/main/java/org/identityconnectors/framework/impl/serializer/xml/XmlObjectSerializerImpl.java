@@ -32,12 +32,20 @@ public class XmlObjectSerializerImpl implements XmlObjectSerializer {
     public static final String MULTI_OBJECT_ELEMENT = "MultiObject";
     public static final String CONNECTORS_DTD = "connectors.dtd";
 
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
     private final Writer output;
 
     private final boolean multiObject;
 
     private final boolean includeHeader;
 
+    /**
+     * Each object is encoded here first, so an object that fails to encode
+     * leaves nothing in the output.
+     */
+    private final StringBuilder buffer = new StringBuilder();
+
     private boolean firstObjectWritten;
 
     private boolean documentEnded;
@@ -64,8 +72,8 @@ public class XmlObjectSerializerImpl implements XmlObjectSerializer {
             throw new IllegalStateException(
                     "Attempt to writeObject after the document is already closed");
         }
-        StringBuilder buf = new StringBuilder();
-        XmlObjectEncoder encoder = new XmlObjectEncoder(buf);
+        buffer.setLength(0);
+        XmlObjectEncoder encoder = new XmlObjectEncoder(buffer);
         String elementName = encoder.writeObject(object);
         if (!firstObjectWritten) {
             startDocument(elementName);
@@ -75,8 +83,13 @@ public class XmlObjectSerializerImpl implements XmlObjectSerializer {
                         "Attempt to write multiple objects on a single-object document");
             }
         }
-        write(buf.toString());
+        write(buffer);
         firstObjectWritten = true;
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            // do not hold on to the buffer of an unusually large object
+            buffer.setLength(0);
+            buffer.trimToSize();
+        }
     }
 
     public void flush() {
@@ -131,9 +144,9 @@ public class XmlObjectSerializerImpl implements XmlObjectSerializer {
         }
     }
 
-    private void write(String str) {
+    private void write(CharSequence str) {
         try {
-            output.write(str);
+            output.append(str);
         } catch (Exception e) {
             throw ConnectorException.wrap(e);
         }
@@ -70,6 +70,27 @@ public abstract class ConnectorServer {
      */
     private int maxWorkers = 100;
 
+    /**
+     * The number of accepted connections waiting for a free worker thread
+     */
+    private int maxQueuedConnections = 2;
+
+    /**
+     * The time in milliseconds an open connection may wait for the next
+     * request before it is closed. Zero means never.
+     */
+    private int connectionIdleTimeout = 5 * 60 * 1000;
+
+    /**
+     * The number of pauses a streamed result may run ahead of the client
+     */
+    private int pauseWindow = 4;
+
+    /**
+     * Publish the metrics through JMX
+     */
+    private boolean jmxEnabled = false;
+
     /**
      * The maximum time in minutes a facade can be inactive.
      */
@@ -202,6 +223,102 @@ public abstract class ConnectorServer {
         this.minWorkers = minWorkers;
     }
 
+    /**
+     * Returns the number of accepted connections that may wait for a free
+     * worker thread. When the queue is full no more connections are accepted
+     * until a worker becomes available.
+     *
+     * @return The number of connections to queue for the workers.
+     */
+    public int getMaxQueuedConnections() {
+        return maxQueuedConnections;
+    }
+
+    /**
+     * Sets the number of accepted connections that may wait for a free worker
+     * thread.
+     *
+     * @param maxQueuedConnections
+     *            The number of connections to queue for the workers.
+     */
+    public void setMaxQueuedConnections(final int maxQueuedConnections) {
+        assertNotStarted();
+        this.maxQueuedConnections = maxQueuedConnections;
+    }
+
+    /**
+     * Returns the time in milliseconds an open connection may wait for the next
+     * request before it is closed and its worker thread is released.
+     *
+     * @return The idle timeout in milliseconds, zero means never.
+     */
+    public int getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds an open connection may wait for the next
+     * request before it is closed and its worker thread is released.
+     *
+     * @param connectionIdleTimeout
+     *            The idle timeout in milliseconds, zero means never.
+     */
+    public void setConnectionIdleTimeout(final int connectionIdleTimeout) {
+        assertNotStarted();
+        this.connectionIdleTimeout = connectionIdleTimeout;
+    }
+
+    /**
+     * Returns the maximum number of unanswered pauses a streamed result
+     * (search, sync) may send before it waits for the client. A pause is sent
+     * after every 200 objects. The client asks for its window in the request,
+     * clients which do not ask get the original stop-and-wait behaviour, and
+     * this value caps the window granted.
+     *
+     * @return The maximum number of pauses to send ahead of the client
+     *         answers.
+     */
+    public int getPauseWindow() {
+        return pauseWindow;
+    }
+
+    /**
+     * Sets the maximum number of unanswered pauses a streamed result may send
+     * before it waits for the client.
+     *
+     * @param pauseWindow
+     *            The maximum number of pauses to send ahead of the client
+     *            answers.
+     */
+    public void setPauseWindow(final int pauseWindow) {
+        assertNotStarted();
+        this.pauseWindow = pauseWindow;
+    }
+
+    /**
+     * Returns true if the server publishes the operation and pool metrics as
+     * an MXBean in the platform MBean server.
+     *
+     * @return true if the metrics are published.
+     */
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Publish the operation and pool metrics as an MXBean in the platform
+     * MBean server. The in-memory metrics are installed unless another
+     * {@link org.identityconnectors.common.metrics.MetricsSpi} is configured,
+     * in which case only the pool gauges are published.
+     *
+     * @param jmxEnabled
+     *            true to publish the metrics.
+     */
+    public void setJmxEnabled(final boolean jmxEnabled) {
+        assertNotStarted();
+        this.jmxEnabled = jmxEnabled;
+    }
+
     /**
      * Returns the max inactive lifetime of
      * {@link org.identityconnectors.framework.api.ConnectorFacade} to allow.
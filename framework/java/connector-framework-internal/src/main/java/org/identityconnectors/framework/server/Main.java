@@ -55,6 +55,14 @@ public final class Main {
     private static final String PROP_KEY = "connectorserver.key";
     private static final String PROP_FACADE_LIFETIME = "connectorserver.maxFacadeLifeTime";
     private static final String PROP_LOGGER_CLASS = "connectorserver.loggerClass";
+    private static final String PROP_MIN_WORKERS = "connectorserver.minWorkers";
+    private static final String PROP_MAX_WORKERS = "connectorserver.maxWorkers";
+    private static final String PROP_MAX_QUEUED_CONNECTIONS =
+            "connectorserver.maxQueuedConnections";
+    private static final String PROP_CONNECTION_IDLE_TIMEOUT =
+            "connectorserver.connectionIdleTimeout";
+    private static final String PROP_PAUSE_WINDOW = "connectorserver.pauseWindow";
+    private static final String PROP_JMX = "connectorserver.jmx";
 
     private static final String DEFAULT_LOG_SPI =
             "org.identityconnectors.common.logging.StdOutLogger";
@@ -207,6 +215,12 @@ public final class Main {
         String keyHash = properties.getProperty(PROP_KEY);
         String facadeLifeTime = properties.getProperty(PROP_FACADE_LIFETIME);
         String loggerClass = properties.getProperty(PROP_LOGGER_CLASS);
+        String minWorkers = properties.getProperty(PROP_MIN_WORKERS);
+        String maxWorkers = properties.getProperty(PROP_MAX_WORKERS);
+        String maxQueuedConnections = properties.getProperty(PROP_MAX_QUEUED_CONNECTIONS);
+        String connectionIdleTimeout = properties.getProperty(PROP_CONNECTION_IDLE_TIMEOUT);
+        String pauseWindow = properties.getProperty(PROP_PAUSE_WINDOW);
+        String jmx = properties.getProperty(PROP_JMX);
         if (portStr == null) {
             throw new ConnectorException("connectorserver.properties is missing " + PROP_PORT);
         }
@@ -249,6 +263,24 @@ public final class Main {
         if (facadeLifeTime != null) {
             connectorServer.setMaxFacadeLifeTime(Long.parseLong(facadeLifeTime));
         }
+        if (minWorkers != null) {
+            connectorServer.setMinWorkers(Integer.parseInt(minWorkers));
+        }
+        if (maxWorkers != null) {
+            connectorServer.setMaxWorkers(Integer.parseInt(maxWorkers));
+        }
+        if (maxQueuedConnections != null) {
+            connectorServer.setMaxQueuedConnections(Integer.parseInt(maxQueuedConnections));
+        }
+        if (connectionIdleTimeout != null) {
+            connectorServer.setConnectionIdleTimeout(Integer.parseInt(connectionIdleTimeout));
+        }
+        if (pauseWindow != null) {
+            connectorServer.setPauseWindow(Integer.parseInt(pauseWindow));
+        }
+        if (jmx != null) {
+            connectorServer.setJmxEnabled(Boolean.parseBoolean(jmx));
+        }
     }
 
     public static void stop(String[] args) {
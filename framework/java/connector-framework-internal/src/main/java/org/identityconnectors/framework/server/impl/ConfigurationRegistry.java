@@ -0,0 +1,85 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.server.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectorFacadeImpl;
+
+/**
+ * Remembers the configurations sent by the clients so that further requests
+ * only have to carry their digest.
+ * <p/>
+ * The digest is always computed on the server, a client can not register a
+ * configuration under the digest of another one. The least recently used
+ * configurations are dropped once the registry is full, the client then gets
+ * an unknown configuration response and sends the configuration again.
+ */
+class ConfigurationRegistry {
+
+    private final Map<String, String> configurations;
+
+    public ConfigurationRegistry(final int maxSize) {
+        configurations = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Registers a configuration.
+     *
+     * @return the registered instance equal to the configuration, repeated
+     *         lookups of the same instance are cheaper in the facade cache.
+     */
+    public String register(final String configuration) {
+        String digest = RemoteConnectorFacadeImpl.computeConfigurationDigest(configuration);
+        synchronized (configurations) {
+            String registered = configurations.get(digest);
+            if (configuration.equals(registered)) {
+                return registered;
+            }
+            configurations.put(digest, configuration);
+            return configuration;
+        }
+    }
+
+    /**
+     * Finds a configuration by its digest.
+     *
+     * @return the configuration or null if it is not registered.
+     */
+    public String find(final String digest) {
+        if (digest == null) {
+            return null;
+        }
+        synchronized (configurations) {
+            return configurations.get(digest);
+        }
+    }
+}
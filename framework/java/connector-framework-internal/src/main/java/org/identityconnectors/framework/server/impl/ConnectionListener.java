@@ -28,6 +28,8 @@ import java.net.SocketException;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -37,13 +39,6 @@ import org.identityconnectors.framework.server.ConnectorServer;
 
 class ConnectionListener extends CCLWatchThread {
 
-    /**
-     * This is the size of our internal queue. For now I have this relatively
-     * small because I want the OS to manage the connect queue coming in. That
-     * way it can properly turn away excessive requests
-     */
-    private final static int INTERNAL_QUEUE_SIZE = 2;
-
     private static final Log LOG = Log.getLog(ConnectionListener.class);
 
     /**
@@ -61,6 +56,13 @@ class ConnectionListener extends CCLWatchThread {
      */
     private final ExecutorService threadPool;
 
+    /**
+     * One permit per worker and queue slot. A connection is only accepted
+     * with a permit, so the clients beyond that wait in the accept queue of
+     * the socket instead of being accepted and closed again.
+     */
+    private final Semaphore connectionPermits;
+
     /**
      * Set to indicated we need to start shutting down
      */
@@ -78,36 +80,88 @@ class ConnectionListener extends CCLWatchThread {
         super("ConnectionListener");
         connectorServer = server;
         this.socket = socket;
+        // The internal queue is relatively small because we want the OS to
+        // manage the connect queue coming in. That way it can properly turn
+        // away excessive requests.
         // idle time timeout
         threadPool =
                 new ThreadPoolExecutor(server.getMinWorkers(), server.getMaxWorkers(), 30,
-                        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(INTERNAL_QUEUE_SIZE,
-                                true), // fair
-                        new CCLWatchThreadFactory());
+                        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, server
+                                .getMaxQueuedConnections()), true), // fair
+                        new CCLWatchThreadFactory(), new BlockingPolicy());
+        connectionPermits =
+                new Semaphore(server.getMaxWorkers() + Math.max(1, server
+                        .getMaxQueuedConnections()), true);
+    }
+
+    /**
+     * Blocks the listener thread until there is room in the queue instead of
+     * rejecting the connection.
+     * <p/>
+     * The listener holds a permit for every connection, so this only waits
+     * for a worker that has released its permit to take the next connection
+     * from the queue.
+     */
+    private class BlockingPolicy implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            try {
+                while (!executor.isShutdown() && !isStopped()) {
+                    // wake up regularly to notice the shutdown
+                    if (executor.getQueue().offer(r, 1000, TimeUnit.MILLISECONDS)) {
+                        if (executor.isShutdown() && executor.remove(r)) {
+                            break;
+                        }
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
     }
 
     @Override
     public void run() {
         while (!isStopped()) {
             try {
-                Socket connection = socket.accept();
-                ConnectionProcessor processor =
+                // don't accept more connections than there are workers and
+                // queue slots, the effect is that eventually our socket's
+                // accept queue will fill up and start rejecting requests at
+                // the connection (which is what we want)
+                if (!connectionPermits.tryAcquire(1, TimeUnit.SECONDS)) {
+                    continue;
+                }
+                Socket connection = null;
+                try {
+                    connection = socket.accept();
+                } finally {
+                    if (connection == null) {
+                        connectionPermits.release();
+                    }
+                }
+                final ConnectionProcessor processor =
                         new ConnectionProcessor(connectorServer, connection);
-                // this really sucks - ideally, execute would block
-                // if the queue is full. now we have to do a busy wait
-                // the effect is that eventually our socket's accept
-                // queue will fill up and start rejecting requests
-                // at the connection (which is what we want)
-                while (true) {
-                    try {
-                        threadPool.execute(processor);
-                        break;
-                    } catch (RejectedExecutionException e) {
-                        try {
-                            Thread.sleep(100);
-                        } catch (Exception e2) {
-                            /* ignore */
+                try {
+                    threadPool.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                processor.run();
+                            } finally {
+                                connectionPermits.release();
+                            }
                         }
+                    });
+                } catch (RejectedExecutionException e) {
+                    connectionPermits.release();
+                    if (!isStopped()) {
+                        LOG.warn(e, "Closing connection: {0}", connection);
+                    }
+                    try {
+                        connection.close();
+                    } catch (Exception e2) {
+                        /* ignore */
                     }
                 }
             } catch (Throwable e) {
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -63,33 +64,75 @@ import org.identityconnectors.framework.impl.api.remote.messages.OperationReques
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseUnknownConfiguration;
 import org.identityconnectors.framework.server.ConnectorServer;
 
 public class ConnectionProcessor implements Runnable {
 
     private static final Log LOG = Log.getLog(ConnectionListener.class);
 
+    /**
+     * The configurations the clients refer to by digest.
+     */
+    private static final ConfigurationRegistry CONFIGURATIONS = new ConfigurationRegistry(1000);
+
     private static class RemoteResultsHandler implements ObjectStreamHandler {
         private static final int PAUSE_INTERVAL = 200;
 
         private final RemoteFrameworkConnection connection;
+        private final int pauseWindow;
         private long count = 0;
 
-        public RemoteResultsHandler(RemoteFrameworkConnection conn) {
+        /**
+         * Number of pauses sent and not yet answered by the client.
+         */
+        private int unansweredPauses = 0;
+        private boolean stopped = false;
+
+        public RemoteResultsHandler(RemoteFrameworkConnection conn, int pauseWindow) {
             connection = conn;
+            this.pauseWindow = Math.max(1, pauseWindow);
         }
 
         public boolean handle(Object obj) {
+            if (stopped) {
+                return false;
+            }
             try {
                 OperationResponsePart part = new OperationResponsePart(null, obj);
                 connection.writeObject(part);
                 count++;
                 if (count % PAUSE_INTERVAL == 0) {
                     connection.writeObject(new OperationResponsePause());
-                    Object message = connection.readObject();
-                    return message instanceof OperationRequestMoreData;
+                    unansweredPauses++;
+                    // keep streaming while the client has not fallen more
+                    // than pauseWindow pauses behind, but take the answers
+                    // which already arrived so a stop is seen early
+                    if (unansweredPauses >= pauseWindow) {
+                        readAnswer();
+                    }
+                    while (unansweredPauses > 0 && !stopped && connection.isInputAvailable()) {
+                        readAnswer();
+                    }
+                }
+                return !stopped;
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw new BrokenConnectionException((IOException) e.getCause());
                 } else {
-                    return true;
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Reads the answers to all the pauses sent so the next request can be
+         * read from the connection.
+         */
+        public void drain() {
+            try {
+                while (unansweredPauses > 0) {
+                    readAnswer();
                 }
             } catch (RuntimeException e) {
                 if (e.getCause() instanceof IOException) {
@@ -100,13 +143,22 @@ public class ConnectionProcessor implements Runnable {
             }
         }
 
+        private void readAnswer() {
+            Object message = connection.readObject();
+            unansweredPauses--;
+            if (!(message instanceof OperationRequestMoreData)) {
+                stopped = true;
+            }
+        }
     }
 
     private final ConnectorServer connectorServer;
+    private final Socket socket;
     private final RemoteFrameworkConnection connection;
 
     public ConnectionProcessor(ConnectorServer server, Socket socket) {
         connectorServer = server;
+        this.socket = socket;
         connection = new RemoteFrameworkConnection(socket);
     }
 
@@ -134,11 +186,19 @@ public class ConnectionProcessor implements Runnable {
     private boolean processRequest() throws Exception {
         Locale locale;
         try {
+            // release the worker if the client keeps the connection open
+            // without sending the next request
+            socket.setSoTimeout(connectorServer.getConnectionIdleTimeout());
             locale = (Locale) connection.readObject();
+            socket.setSoTimeout(0);
         } catch (RuntimeException e) {
             if (e.getCause() instanceof EOFException) {
                 return false;
             }
+            if (e.getCause() instanceof SocketTimeoutException) {
+                LOG.ok("Closing idle connection: {0}", socket);
+                return false;
+            }
             throw e;
         }
         CurrentLocale.set(locale);
@@ -170,8 +230,13 @@ public class ConnectionProcessor implements Runnable {
                 connection.writeObject(part);
             } else {
                 OperationRequest opRequest = (OperationRequest) requestObject;
-                OperationResponsePart part = processOperationRequest(opRequest);
-                connection.writeObject(part);
+                String configuration = resolveConfiguration(opRequest);
+                if (configuration == null) {
+                    connection.writeObject(new OperationResponseUnknownConfiguration());
+                } else {
+                    OperationResponsePart part = processOperationRequest(opRequest, configuration);
+                    connection.writeObject(part);
+                }
             }
         } else if (requestObject instanceof EchoMessage) {
             if (authException != null) {
@@ -209,9 +274,13 @@ public class ConnectionProcessor implements Runnable {
         Map<String, Object> serverInfo = null;
         Exception exception = null;
         try {
-            serverInfo = new HashMap<String, Object>(1);
+            serverInfo = new HashMap<String, Object>(2);
             if (request.isServerInfo()) {
                 serverInfo.put(HelloResponse.SERVER_START_TIME, connectorServer.getStartTime());
+                serverInfo.put(HelloResponse.COMPRESSION_SUPPORTED, Boolean.TRUE);
+                serverInfo.put(HelloResponse.COMPACT_OBJECTS_SUPPORTED, Boolean.TRUE);
+                serverInfo.put(HelloResponse.CONFIGURATION_DIGEST_SUPPORTED, Boolean.TRUE);
+                serverInfo.put(HelloResponse.PAUSE_WINDOW_SUPPORTED, Boolean.TRUE);
             }
             if (request.isConnectorKeys()) {
                 ConnectorInfoManager manager = getConnectorInfoManager();
@@ -256,23 +325,46 @@ public class ConnectionProcessor implements Runnable {
         return found;
     }
 
-    private OperationResponsePart processOperationRequest(OperationRequest request)
-            throws IOException {
+    /**
+     * Returns the configuration sent with the request or registered under its
+     * digest, null if the client has to send it.
+     */
+    private String resolveConfiguration(OperationRequest request) {
+        String configuration = request.getConnectorFacadeKey();
+        if (configuration == null) {
+            return CONFIGURATIONS.find(request.getConfigurationDigest());
+        } else if (request.getConfigurationDigest() != null) {
+            // the client will only send the digest from now on
+            return CONFIGURATIONS.register(configuration);
+        }
+        return configuration;
+    }
+
+    private OperationResponsePart processOperationRequest(OperationRequest request,
+            String configuration) throws IOException {
         Object result;
         Throwable exception = null;
+        List<RemoteResultsHandler> streamHandlers = new ArrayList<RemoteResultsHandler>(1);
         try {
-            Method method = getOperationMethod(request);
-            APIOperation operation = getAPIOperation(request);
-            List<Object> arguments = request.getArguments();
-            List<Object> argumentsAndStreamHandlers =
-                    populateStreamHandlers(method.getParameterTypes(), arguments);
             try {
-                result = method.invoke(operation, argumentsAndStreamHandlers.toArray());
-            } catch (InvocationTargetException e) {
-                throw e.getCause();
+                Method method = getOperationMethod(request);
+                APIOperation operation = getAPIOperation(request, configuration);
+                List<Object> arguments = request.getArguments();
+                List<Object> argumentsAndStreamHandlers =
+                        populateStreamHandlers(method.getParameterTypes(), arguments,
+                                request.getPauseWindow(), streamHandlers);
+                try {
+                    result = method.invoke(operation, argumentsAndStreamHandlers.toArray());
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            } finally {
+                // the client answers every pause before it reads the end
+                for (RemoteResultsHandler handler : streamHandlers) {
+                    handler.drain();
+                }
             }
-            boolean anyStreams = argumentsAndStreamHandlers.size() > arguments.size();
-            if (anyStreams) {
+            if (!streamHandlers.isEmpty()) {
                 try {
                     connection.writeObject(new OperationResponseEnd());
                 } catch (RuntimeException e) {
@@ -294,7 +386,8 @@ public class ConnectionProcessor implements Runnable {
         return new OperationResponsePart(exception, result);
     }
 
-    private List<Object> populateStreamHandlers(Class<?>[] paramTypes, List<Object> arguments) {
+    private List<Object> populateStreamHandlers(Class<?>[] paramTypes, List<Object> arguments,
+            int pauseWindow, List<RemoteResultsHandler> streamHandlers) {
         List<Object> rv = new ArrayList<Object>();
         boolean firstStream = true;
         Iterator<Object> argIt = arguments.iterator();
@@ -304,7 +397,10 @@ public class ConnectionProcessor implements Runnable {
                     throw new UnsupportedOperationException(
                             "At most one stream handler is supported");
                 }
-                ObjectStreamHandler osh = new RemoteResultsHandler(connection);
+                RemoteResultsHandler osh =
+                        new RemoteResultsHandler(connection, Math.min(pauseWindow,
+                                connectorServer.getPauseWindow()));
+                streamHandlers.add(osh);
                 rv.add(StreamHandlerUtil.adaptFromObjectStreamHandler(paramType, osh));
                 firstStream = false;
             } else {
@@ -314,16 +410,15 @@ public class ConnectionProcessor implements Runnable {
         return rv;
     }
 
-    private APIOperation getAPIOperation(OperationRequest request) throws Exception {
+    private APIOperation getAPIOperation(OperationRequest request, String configuration)
+            throws Exception {
         ConnectorInfoManager manager = getConnectorInfoManager();
         ConnectorInfo info = manager.findConnectorInfo(request.getConnectorKey());
         if (info == null) {
             throw new ConnectorException("No such connector: " + request.getConnectorKey() + " ");
         }
-        String connectorFacadeKey = request.getConnectorFacadeKey();
-
         ConnectorFacade facade =
-                ConnectorFacadeFactory.getManagedInstance().newInstance(info, connectorFacadeKey);
+                ConnectorFacadeFactory.getManagedInstance().newInstance(info, configuration);
 
         return facade.getOperation(request.getOperation());
     }
@@ -24,6 +24,7 @@
 
 package org.identityconnectors.framework.server.impl;
 
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.util.Date;
 import java.util.Timer;
@@ -31,16 +32,19 @@ import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.ObjectName;
 import javax.net.ServerSocketFactory;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocketFactory;
 
+import org.identityconnectors.common.metrics.Metrics;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.ConnectorInfoManagerFactoryImpl;
 import org.identityconnectors.framework.impl.api.ManagedConnectorFacadeFactoryImpl;
+import org.identityconnectors.framework.impl.api.StatisticsMetrics;
 import org.identityconnectors.framework.server.ConnectorServer;
 
 public class ConnectorServerImpl extends ConnectorServer {
@@ -49,6 +53,8 @@ public class ConnectorServerImpl extends ConnectorServer {
     private CountDownLatch stopLatch;
     private Timer timer = null;
     private Long startDate = null;
+    private ObjectName metricsName = null;
+    private StatisticsMetrics installedMetrics = null;
 
     @Override
     public Long getStartTime() {
@@ -84,6 +90,10 @@ public class ConnectorServerImpl extends ConnectorServer {
         startDate = System.currentTimeMillis();
         this.listener = listener;
 
+        if (isJmxEnabled()) {
+            registerMetrics();
+        }
+
         // Create an inferred delegate that invokes methods for the timer.
         if (getMaxFacadeLifeTime() > 0) {
             FacadeDisposer statusChecker =
@@ -94,6 +104,44 @@ public class ConnectorServerImpl extends ConnectorServer {
         }
     }
 
+    private void registerMetrics() {
+        StatisticsMetrics metrics = null;
+        if (!Metrics.isEnabled()) {
+            installedMetrics = new StatisticsMetrics();
+            Metrics.setMetricsSpi(installedMetrics);
+            metrics = installedMetrics;
+        } else if (Metrics.getMetricsSpi() instanceof StatisticsMetrics) {
+            metrics = (StatisticsMetrics) Metrics.getMetricsSpi();
+        }
+        try {
+            ObjectName name =
+                    new ObjectName("org.identityconnectors.framework.server:type=Metrics,port="
+                            + getPort());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new ConnectorServerMetrics(metrics), name);
+            metricsName = name;
+        } catch (Exception e) {
+            logger.warn(e, "Failed to register the metrics MBean");
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (null != metricsName) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (Exception e) {
+                logger.warn(e, "Failed to unregister the metrics MBean");
+            }
+            metricsName = null;
+        }
+        if (null != installedMetrics) {
+            if (Metrics.getMetricsSpi() == installedMetrics) {
+                Metrics.setMetricsSpi(null);
+            }
+            installedMetrics = null;
+        }
+    }
+
     private ServerSocket createServerSocket() {
         try {
             ServerSocketFactory factory;
@@ -146,6 +194,7 @@ public class ConnectorServerImpl extends ConnectorServer {
             timer.cancel();
             timer = null;
         }
+        unregisterMetrics();
         ConnectorFacadeFactory.getManagedInstance().dispose();
     }
 
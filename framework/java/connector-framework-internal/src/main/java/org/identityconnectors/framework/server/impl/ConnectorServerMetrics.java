@@ -0,0 +1,95 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.server.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.identityconnectors.framework.impl.api.MethodTimeoutProxy;
+import org.identityconnectors.framework.impl.api.StatisticsMetrics;
+import org.identityconnectors.framework.impl.api.local.ConnectorPoolManager;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.spi.PoolableConnector;
+
+/**
+ * Publishes the {@link StatisticsMetrics} and the connector pool gauges.
+ */
+public class ConnectorServerMetrics implements ConnectorServerMetricsMXBean {
+
+    /**
+     * The recorded metrics or null if another implementation is used.
+     */
+    private final StatisticsMetrics metrics;
+
+    public ConnectorServerMetrics(final StatisticsMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Map<String, ObjectPool.Statistics> getConnectorPools() {
+        Map<String, ObjectPool.Statistics> rv = new TreeMap<String, ObjectPool.Statistics>();
+        for (ObjectPool<PoolableConnector> pool : ConnectorPoolManager.getPools().values()) {
+            rv.put(pool.getName(), pool.getStatistics());
+        }
+        return rv;
+    }
+
+    public int getTimedOperationsInFlight() {
+        return MethodTimeoutProxy.getInFlightOperations();
+    }
+
+    public Map<String, StatisticsMetrics.Timer> getOperations() {
+        if (null == metrics) {
+            return Collections.emptyMap();
+        }
+        return metrics.getOperations();
+    }
+
+    public Map<String, Long> getStreamedObjects() {
+        if (null == metrics) {
+            return Collections.emptyMap();
+        }
+        return metrics.getStreamedObjects();
+    }
+
+    public Map<String, StatisticsMetrics.Timer> getPoolWaits() {
+        if (null == metrics) {
+            return Collections.emptyMap();
+        }
+        return metrics.getPoolWaits();
+    }
+
+    public Map<String, StatisticsMetrics.Timer> getPoolCreates() {
+        if (null == metrics) {
+            return Collections.emptyMap();
+        }
+        return metrics.getPoolCreates();
+    }
+
+    public Map<String, Long> getPoolTestFailures() {
+        if (null == metrics) {
+            return Collections.emptyMap();
+        }
+        return metrics.getPoolTestFailures();
+    }
+}
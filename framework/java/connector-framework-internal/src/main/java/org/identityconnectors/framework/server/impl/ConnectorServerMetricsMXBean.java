@@ -0,0 +1,73 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.server.impl;
+
+import java.util.Map;
+
+import org.identityconnectors.framework.impl.api.StatisticsMetrics;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+
+/**
+ * Metrics of the connector server published through JMX.
+ * <p/>
+ * The operations are keyed by {@code connector.method}, the pools by the
+ * connector and a sequence number.
+ */
+public interface ConnectorServerMetricsMXBean {
+
+    /**
+     * Returns the idle and active objects of the connector pools.
+     */
+    public Map<String, ObjectPool.Statistics> getConnectorPools();
+
+    /**
+     * Returns the number of operations running under a timeout.
+     */
+    public int getTimedOperationsInFlight();
+
+    /**
+     * Returns the duration statistics of the API operations.
+     */
+    public Map<String, StatisticsMetrics.Timer> getOperations();
+
+    /**
+     * Returns the number of objects the operations passed to the results
+     * handlers.
+     */
+    public Map<String, Long> getStreamedObjects();
+
+    /**
+     * Returns the time the borrowers waited for a pooled object.
+     */
+    public Map<String, StatisticsMetrics.Timer> getPoolWaits();
+
+    /**
+     * Returns the time to make the pooled objects.
+     */
+    public Map<String, StatisticsMetrics.Timer> getPoolCreates();
+
+    /**
+     * Returns the number of pooled objects which failed the test.
+     */
+    public Map<String, Long> getPoolTestFailures();
+}
@@ -23,6 +23,19 @@
 package org.identityconnectors.common.script.groovy;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.script.ScriptExecutor;
@@ -52,6 +65,82 @@ public class GroovyScriptExecutorFactoryTests {
         assertEquals(actual, 3);
     }
 
+    @Test
+    public void testCompiledOnce() throws Exception {
+        String script = "return 'cached ' + x";
+        long misses = GroovyScriptExecutorFactory.getCacheMisses();
+        long hits = GroovyScriptExecutorFactory.getCacheHits();
+        ScriptExecutor first = getScriptExecutor(script);
+        ScriptExecutor second = getScriptExecutor(script);
+        assertEquals(GroovyScriptExecutorFactory.getCacheMisses(), misses + 1);
+        assertEquals(GroovyScriptExecutorFactory.getCacheHits(), hits + 1);
+        assertEquals(first.execute(CollectionUtil.<String, Object> newMap("x", 1)), "cached 1");
+        assertEquals(second.execute(CollectionUtil.<String, Object> newMap("x", 2)), "cached 2");
+        assertTrue(GroovyScriptExecutorFactory.getCacheSize() > 0);
+    }
+
+    @Test
+    public void testCachedPerClassLoader() throws Exception {
+        String script = "return 'per loader ' + x";
+        ClassLoader loader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        long misses = GroovyScriptExecutorFactory.getCacheMisses();
+        getScriptExecutor(script);
+        ScriptExecutor other =
+                ScriptExecutorFactory.newInstance("GROOVY").newScriptExecutor(loader, script, false);
+        assertEquals(GroovyScriptExecutorFactory.getCacheMisses(), misses + 2);
+        assertEquals(other.execute(CollectionUtil.<String, Object> newMap("x", 1)), "per loader 1");
+    }
+
+    @Test
+    public void testClassLoaderNotPinned() throws Exception {
+        ClassLoader loader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        ScriptExecutor ex =
+                ScriptExecutorFactory.newInstance("GROOVY").newScriptExecutor(loader,
+                        "return 'unloaded'", false);
+        assertNotNull(ex);
+        WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+        GroovyScriptExecutorFactory.clearCache(loader);
+        loader = null;
+        ex = null;
+        for (int i = 0; i < 20 && ref.get() != null; i++) {
+            System.gc();
+        }
+        assertNull(ref.get());
+    }
+
+    @Test
+    public void testCachedWithoutExecutor() throws Exception {
+        String script = "return 'kept ' + x";
+        getScriptExecutor(script);
+        System.gc();
+        long misses = GroovyScriptExecutorFactory.getCacheMisses();
+        ScriptExecutor ex = getScriptExecutor(script);
+        assertEquals(GroovyScriptExecutorFactory.getCacheMisses(), misses);
+        assertEquals(ex.execute(CollectionUtil.<String, Object> newMap("x", 1)), "kept 1");
+    }
+
+    @Test
+    public void testConcurrentExecution() throws Exception {
+        final ScriptExecutor ex = getScriptExecutor("Thread.sleep(1); return x * 2;");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 100; i++) {
+                final int x = i;
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return ex.execute(CollectionUtil.<String, Object> newMap("x", x));
+                    }
+                }));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(results.get(i).get(), i * 2);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private ScriptExecutor getScriptExecutor(String script) {
         ClassLoader loader = getClass().getClassLoader();
         return ScriptExecutorFactory.newInstance("GROOVY").newScriptExecutor(loader, script, false);
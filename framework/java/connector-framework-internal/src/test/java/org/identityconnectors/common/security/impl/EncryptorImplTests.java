@@ -0,0 +1,96 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.common.security.impl;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.identityconnectors.common.security.Encryptor;
+import org.testng.annotations.Test;
+
+public class EncryptorImplTests {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Encryptor encryptor = new EncryptorImpl(false);
+        for (int i = 0; i < 100; i++) {
+            byte[] clear = ("secret" + i).getBytes("UTF-8");
+            assertEquals(encryptor.decrypt(encryptor.encrypt(clear)), clear);
+        }
+    }
+
+    @Test
+    public void testDefaultKeyIsStable() throws Exception {
+        byte[] clear = "secret".getBytes("UTF-8");
+        assertEquals(new EncryptorImpl(true).encrypt(clear), new EncryptorImpl(true)
+                .encrypt(clear));
+    }
+
+    @Test
+    public void testRecoversFromBadInput() throws Exception {
+        Encryptor encryptor = new EncryptorImpl(false);
+        try {
+            encryptor.decrypt(new byte[] { 1, 2, 3 });
+        } catch (RuntimeException e) {
+            /* expected */
+        }
+        byte[] clear = "secret".getBytes("UTF-8");
+        assertEquals(encryptor.decrypt(encryptor.encrypt(clear)), clear);
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final Encryptor encryptor = new EncryptorImpl(false);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        for (int i = 0; i < 1000; i++) {
+                            byte[] clear = ("password" + thread + "-" + i).getBytes("UTF-8");
+                            byte[] roundTrip = encryptor.decrypt(encryptor.encrypt(clear));
+                            if (!new String(roundTrip, "UTF-8").equals(new String(clear,
+                                    "UTF-8"))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertEquals(result.get(), Boolean.TRUE);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
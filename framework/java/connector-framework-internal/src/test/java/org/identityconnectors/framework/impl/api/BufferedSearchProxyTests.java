@@ -23,12 +23,17 @@
 package org.identityconnectors.framework.impl.api;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.fail;
 
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.framework.api.operations.SearchApiOp;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
@@ -171,6 +176,101 @@ public class BufferedSearchProxyTests {
         }
     }
 
+    @Test
+    public void propagateLocaleAndClassLoader() {
+        final ClassLoader loader = new ClassLoader() {
+        };
+        final Locale[] locales = new Locale[2];
+        final ClassLoader[] loaders = new ClassLoader[2];
+        final int[] count = new int[1];
+        Thread thread = Thread.currentThread();
+        ClassLoader saved = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            for (int i = 0; i < locales.length; i++) {
+                final int index = i;
+                CurrentLocale.set(i == 0 ? Locale.FRENCH : Locale.GERMAN);
+                SearchApiOp search = new Searches.ConnectorObjectSearch(1) {
+                    @Override
+                    protected void beforeObject(int count) {
+                        locales[index] = CurrentLocale.get();
+                        loaders[index] = Thread.currentThread().getContextClassLoader();
+                    }
+                };
+                createSearchProxy(search, 10, 20000).search(ObjectClass.ACCOUNT, null,
+                        new ResultsHandler() {
+                            public boolean handle(ConnectorObject object) {
+                                count[0]++;
+                                return true;
+                            }
+                        }, null);
+            }
+        } finally {
+            CurrentLocale.clear();
+            thread.setContextClassLoader(saved);
+        }
+        assertEquals(count[0], 2);
+        assertEquals(locales[0], Locale.FRENCH);
+        assertEquals(locales[1], Locale.GERMAN);
+        assertEquals(loaders[0], loader);
+        assertEquals(loaders[1], loader);
+    }
+
+    @Test
+    public void busyProducersTimeOut() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        // hangs like I/O on an unreachable resource
+        SearchApiOp hung = createSearchProxy(new Searches.ConnectorObjectSearch(1) {
+            @Override
+            protected void beforeObject(int count) {
+                boolean released = false;
+                while (!released) {
+                    try {
+                        release.await();
+                        released = true;
+                    } catch (InterruptedException e) {
+                        /* ignored */
+                    }
+                }
+            }
+        }, 10, 10);
+        // no object gets through
+        ExpectedTestResults expected = new ExpectedTestResults();
+        try {
+            while (BufferedResultsProxy.getBusyProducers() < BufferedResultsProxy
+                    .getMaxThreads()) {
+                try {
+                    hung.search(ObjectClass.ACCOUNT, null, expected, null);
+                    fail("Should throw a TimeoutException");
+                } catch (OperationTimeoutException e) {
+                    /* expected */
+                }
+            }
+
+            // no thread is started beyond the pool
+            final AtomicBoolean started = new AtomicBoolean(false);
+            SearchApiOp search = createSearchProxy(new Searches.ConnectorObjectSearch(1) {
+                @Override
+                protected void beforeObject(int count) {
+                    started.set(true);
+                }
+            }, 10, 200);
+            try {
+                search.search(ObjectClass.ACCOUNT, null, expected, null);
+                fail("Should throw a TimeoutException");
+            } catch (OperationTimeoutException e) {
+                /* expected */
+            }
+            assertFalse(started.get());
+        } finally {
+            release.countDown();
+        }
+        for (int i = 0; i < 100 && BufferedResultsProxy.getBusyProducers() != 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(BufferedResultsProxy.getBusyProducers(), 0);
+    }
+
     private static SearchApiOp createSearchProxy(SearchApiOp search, int bufSize, long timeout) {
         BufferedResultsProxy timeoutHandler = new BufferedResultsProxy(search, bufSize, timeout);
         return (SearchApiOp)Proxy.newProxyInstance(SearchApiOp.class.getClassLoader(),
@@ -30,9 +30,11 @@ import static org.testng.Assert.fail;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.metrics.Metrics;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorFacade;
@@ -588,6 +590,50 @@ public class ConnectorFacadeTests {
         assertTrue(obj.getAttributeByName("does not exist") == null);
     }
 
+    @Test
+    public void metricsTest() {
+        StatisticsMetrics metrics = new StatisticsMetrics();
+        Metrics.setMetricsSpi(metrics);
+        try {
+            Configuration config = new MockConfiguration(false);
+            ConnectorFacadeFactory factory = ConnectorFacadeFactory.getInstance();
+            APIConfiguration impl =
+                    TestHelpers.createTestConfiguration(MockAllOpsConnector.class, config);
+            ConnectorFacade facade = factory.newInstance(impl);
+            facade.schema();
+            facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                public boolean handle(ConnectorObject obj) {
+                    return true;
+                }
+            }, null);
+        } finally {
+            Metrics.setMetricsSpi(null);
+        }
+        Map<String, StatisticsMetrics.Timer> operations = metrics.getOperations();
+        assertEquals(operations.size(), 2);
+        for (Map.Entry<String, StatisticsMetrics.Timer> entry : operations.entrySet()) {
+            assertTrue(entry.getKey().endsWith(".schema") || entry.getKey().endsWith(".search"));
+            assertEquals(entry.getValue().getCount(), 1);
+            assertEquals(entry.getValue().getFailures(), 0);
+        }
+        Map<String, Long> streamed = metrics.getStreamedObjects();
+        assertEquals(streamed.size(), 1);
+        assertEquals(streamed.values().iterator().next(), Long.valueOf(0));
+    }
+
+    @Test
+    public void metricsRemovePoolTest() {
+        StatisticsMetrics metrics = new StatisticsMetrics();
+        metrics.recordPoolWait("pool#1", 1000);
+        metrics.recordPoolCreate("pool#1", 1000, false);
+        metrics.recordPoolTestFailure("pool#1");
+        metrics.recordPoolWait("pool#2", 1000);
+        metrics.removePool("pool#1");
+        assertEquals(metrics.getPoolWaits().keySet(), CollectionUtil.newSet("pool#2"));
+        assertTrue(metrics.getPoolCreates().isEmpty());
+        assertTrue(metrics.getPoolTestFailures().isEmpty());
+    }
+
     static Uid newUid(int id) {
         return new Uid(Integer.toString(id));
     }
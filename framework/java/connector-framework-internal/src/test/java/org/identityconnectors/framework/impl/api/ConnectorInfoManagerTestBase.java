@@ -85,6 +85,8 @@ import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
 import org.identityconnectors.framework.impl.api.local.ConnectorPoolManager;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectionPoolManager;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
 import org.identityconnectors.framework.impl.api.remote.RemoteWrappedException;
 import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeMethod;
@@ -376,6 +378,68 @@ public abstract class ConnectorInfoManagerTestBase {
         }
     }
 
+    /**
+     * Tests a stopped search when the client lets the server run a window of
+     * pauses ahead.
+     */
+    @Test
+    public void testSearchWithPauseWindow() throws Exception {
+        if (getPauseWindow() == 0) {
+            // no pauses when the connectors run locally
+            return;
+        }
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        assertTrue(((RemoteConnectorInfoImpl) info).isPauseWindowSupported());
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.setProducerBufferSize(0);
+        api.getConfigurationProperties().getProperty("numResults").setValue(1000);
+
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        final List<ConnectorObject> results = new ArrayList<ConnectorObject>();
+        System.setProperty(RemoteConnectionPoolManager.PAUSE_WINDOW_PROP, String
+                .valueOf(getPauseWindow()));
+        try {
+            SearchResult searchResult =
+                    facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+
+                        public boolean handle(ConnectorObject obj) {
+                            if (results.size() < 500) {
+                                results.add(obj);
+                                return true;
+                            } else {
+                                return false;
+                            }
+                        }
+                    }, null);
+
+            assertEquals(results.size(), 500);
+            // The stop answers the third pause. The server may have sent
+            // pauseWindow - 1 more pauses when it reads it, so it produces at
+            // most 200 * (pauseWindow - 1) objects more than under
+            // stop-and-wait.
+            int remaining = searchResult.getRemainingPagedResults();
+            assertTrue(remaining <= 401 && remaining >= 401 - 200 * (getPauseWindow() - 1),
+                    String.valueOf(remaining));
+        } finally {
+            System.clearProperty(RemoteConnectionPoolManager.PAUSE_WINDOW_PROP);
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).getUid().getUidValue(), String.valueOf(i));
+        }
+        // the connection stays aligned for the next request
+        assertEquals(facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+
+            public boolean handle(ConnectorObject obj) {
+                return true;
+            }
+        }, null).getRemainingPagedResults(), 0);
+    }
+
     @Test
     public void testSearchStress() throws Exception {
         ConnectorInfoManager manager = getConnectorInfoManager();
@@ -936,4 +1000,12 @@ public abstract class ConnectorInfoManagerTestBase {
     protected abstract ConnectorInfoManager getConnectorInfoManager() throws Exception;
 
     protected abstract void shutdownConnnectorInfoManager();
+
+    /**
+     * Returns the number of pauses the connector server allows a client to
+     * ask for, or 0 when the connectors run locally.
+     */
+    protected int getPauseWindow() {
+        return 0;
+    }
 }
@@ -22,16 +22,32 @@
  */
 package org.identityconnectors.framework.impl.api;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
 
+import org.identityconnectors.common.IOUtil;
 import org.identityconnectors.common.Version;
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
 import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
 import org.identityconnectors.framework.common.FrameworkUtilTestHelpers;
 import org.identityconnectors.framework.common.exceptions.ConfigurationException;
+import org.identityconnectors.framework.impl.api.local.LocalConnectorInfoManagerImpl;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -63,6 +79,170 @@ public class LocalConnectorInfoManagerTests extends ConnectorInfoManagerTestBase
         }
     }
 
+    /**
+     * Tests that only the classes listed by the index of a bundle are loaded
+     * as connectors, and only the listed message catalogs are read.
+     */
+    @Test
+    public void testConnectorIndex() throws Exception {
+        final URL bundle = getTestBundles().get(0);
+        final ConnectorInfoManagerFactory factory = ConnectorInfoManagerFactory.getInstance();
+        final List<ConnectorInfo> scanned = factory.getLocalManager(bundle).getConnectorInfos();
+        Assert.assertTrue(scanned.size() > 1);
+        final String connectorName = scanned.get(0).getConnectorKey().getConnectorName();
+        final String catalog =
+                connectorName.substring(0, connectorName.lastIndexOf('.') + 1).replace('.', '/')
+                        + "Messages";
+        Assert.assertTrue(((ConnectorMessagesImpl) scanned.get(0).getMessages()).getCatalogs()
+                .size() > 1);
+        shutdownConnnectorInfoManager();
+
+        final File indexed = File.createTempFile("indexedbundle", ".jar");
+        indexed.deleteOnExit();
+        final JarInputStream in = new JarInputStream(bundle.openStream());
+        final JarOutputStream out =
+                new JarOutputStream(new FileOutputStream(indexed), in.getManifest());
+        try {
+            JarEntry entry;
+            while ((entry = in.getNextJarEntry()) != null) {
+                out.putNextEntry(new JarEntry(entry.getName()));
+                IOUtil.copyFile(in, out);
+                out.closeEntry();
+            }
+            out.putNextEntry(new JarEntry(LocalConnectorInfoManagerImpl.CONNECTOR_INDEX));
+            // a stale index may list missing classes or no connectors
+            out.write(("# indexed\n" + connectorName + "\norg.example.MissingConnector\n"
+                    + String.class.getName() + "\n").getBytes("UTF-8"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry(LocalConnectorInfoManagerImpl.MESSAGE_CATALOG_INDEX));
+            out.write((catalog + ".properties\n").getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            in.close();
+            out.close();
+        }
+        try {
+            final List<ConnectorInfo> infos =
+                    factory.getLocalManager(indexed.toURI().toURL()).getConnectorInfos();
+            Assert.assertEquals(infos.size(), 1);
+            Assert.assertEquals(infos.get(0).getConnectorKey().getConnectorName(), connectorName);
+            Assert.assertEquals(((ConnectorMessagesImpl) infos.get(0).getMessages())
+                    .getCatalogs().keySet(), Collections.singleton(new Locale("")));
+        } finally {
+            shutdownConnnectorInfoManager();
+        }
+    }
+
+    /**
+     * Tests that the bundles are extracted once into the bundle cache and
+     * loaded from there afterwards.
+     */
+    @Test
+    public void testBundleCache() throws Exception {
+        final File cache = File.createTempFile("bundlecache", "");
+        Assert.assertTrue(cache.delete());
+        // earlier tests leave the bundles loaded and extracted elsewhere
+        shutdownConnnectorInfoManager();
+        System.setProperty(LocalConnectorInfoManagerImpl.BUNDLE_CACHE_PROP, cache.getPath());
+        try {
+            final int expected = getConnectorInfoManager().getConnectorInfos().size();
+            shutdownConnnectorInfoManager();
+            final File[] entries = cache.listFiles();
+            Assert.assertNotNull(entries);
+            int extracted = 0;
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    Assert.assertTrue(new File(entry, ".complete").isFile(), entry.getPath());
+                    extracted++;
+                }
+            }
+            // the bundles and the libraries they embed
+            Assert.assertTrue(extracted > getTestBundles().size());
+            // backdate the extracted files, extracting them again would not
+            final long backdated = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
+            final int files = setLastModified(cache, backdated);
+
+            Assert.assertEquals(getConnectorInfoManager().getConnectorInfos().size(), expected);
+            Assert.assertEquals(cache.listFiles().length, entries.length);
+            Assert.assertEquals(checkLastModified(cache, backdated), files);
+        } finally {
+            shutdownConnnectorInfoManager();
+            System.clearProperty(LocalConnectorInfoManagerImpl.BUNDLE_CACHE_PROP);
+            IOUtil.delete(cache);
+        }
+    }
+
+    /**
+     * Tests that a bundle cache entry which cannot be locked does not leave
+     * the cache locked for the other threads.
+     */
+    @Test
+    public void testBundleCacheLockReleasedOnFailure() throws Exception {
+        final File cache = File.createTempFile("bundlecache", "");
+        Assert.assertTrue(cache.delete());
+        shutdownConnnectorInfoManager();
+        System.setProperty(LocalConnectorInfoManagerImpl.BUNDLE_CACHE_PROP, cache.getPath());
+        try {
+            final URL bundle = getTestBundles().get(0);
+            final InputStream in = bundle.openStream();
+            final String digest;
+            try {
+                digest = SecurityUtil.computeHexSHA256Hash(in);
+            } finally {
+                in.close();
+            }
+            // a directory in place of the lock file can not be opened
+            final File lockFile = new File(cache, digest + ".lock");
+            Assert.assertTrue(lockFile.mkdirs());
+            try {
+                getConnectorInfoManager().getConnectorInfos();
+                Assert.fail("expected exception");
+            } catch (RuntimeException e) {
+                // expected
+            }
+            Assert.assertTrue(lockFile.delete());
+
+            final FutureTask<Integer> load = new FutureTask<Integer>(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return getConnectorInfoManager().getConnectorInfos().size();
+                }
+            });
+            new Thread(load).start();
+            Assert.assertTrue(load.get(30, TimeUnit.SECONDS) > 0);
+        } finally {
+            shutdownConnnectorInfoManager();
+            System.clearProperty(LocalConnectorInfoManagerImpl.BUNDLE_CACHE_PROP);
+            IOUtil.delete(cache);
+        }
+    }
+
+    private static int setLastModified(File dir, long time) {
+        int count = 0;
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                count += setLastModified(file, time);
+            } else if (!file.getName().endsWith(".lock")) {
+                Assert.assertTrue(file.setLastModified(time), file.getPath());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int checkLastModified(File dir, long time) {
+        int count = 0;
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                count += checkLastModified(file, time);
+            } else if (!file.getName().endsWith(".lock")) {
+                // compare in seconds, some file systems are not more precise
+                Assert.assertEquals(file.lastModified() / 1000, time / 1000, file.getPath());
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * To be overridden by subclasses to get different ConnectorInfoManagers
      *
@@ -0,0 +1,231 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.testng.annotations.Test;
+
+public class MethodTimeoutProxyTests {
+
+    public interface Operation {
+        Thread run(long sleepMillis) throws Exception;
+    }
+
+    private static class SleepOperation implements Operation {
+        public Thread run(long sleepMillis) throws InterruptedException {
+            Thread.sleep(sleepMillis);
+            return Thread.currentThread();
+        }
+    }
+
+    /**
+     * Hangs like I/O on an unreachable resource until it is released.
+     */
+    private static class HungOperation implements Operation {
+        private final CountDownLatch release;
+
+        HungOperation(CountDownLatch release) {
+            this.release = release;
+        }
+
+        public Thread run(long sleepMillis) {
+            boolean released = false;
+            while (!released) {
+                try {
+                    release.await();
+                    released = true;
+                } catch (InterruptedException e) {
+                    /* ignored */
+                }
+            }
+            return Thread.currentThread();
+        }
+    }
+
+    @Test
+    public void runOnWorkerThread() throws Exception {
+        Operation op = createTimeoutProxy(new SleepOperation(), 5000);
+        assertNotSame(op.run(10), Thread.currentThread());
+        assertEquals(MethodTimeoutProxy.getInFlightOperations(), 0);
+    }
+
+    @Test
+    public void throwTimeoutException() throws Exception {
+        Operation op = createTimeoutProxy(new SleepOperation(), 50);
+        long start = System.currentTimeMillis();
+        try {
+            op.run(10000);
+            fail("Should throw a TimeoutException");
+        } catch (OperationTimeoutException e) {
+            /* expected */
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+        if (System.currentTimeMillis() - start > 5000) {
+            fail("The caller waited past the timeout");
+        }
+        // the worker is interrupted
+        waitForInFlightOperations(0);
+    }
+
+    @Test
+    public void throwTimeoutExceptionWhenIgnoringInterrupts() throws Exception {
+        // a socket read does not respond to interrupts
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        final Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket accepted = server.accept();
+        try {
+            Operation op = createTimeoutProxy(new Operation() {
+                public Thread run(long sleepMillis) throws IOException {
+                    client.getInputStream().read();
+                    return Thread.currentThread();
+                }
+            }, 200);
+            long start = System.currentTimeMillis();
+            try {
+                op.run(0);
+                fail("Should throw a TimeoutException");
+            } catch (OperationTimeoutException e) {
+                /* expected */
+            }
+            if (System.currentTimeMillis() - start > 5000) {
+                fail("The caller waited past the timeout");
+            }
+            assertEquals(MethodTimeoutProxy.getInFlightOperations(), 1);
+        } finally {
+            accepted.close();
+            client.close();
+            server.close();
+        }
+        waitForInFlightOperations(0);
+    }
+
+    @Test
+    public void busyWorkersTimeOut() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Operation hung = createTimeoutProxy(new HungOperation(release), 10);
+        try {
+            hangWorkers(hung, MethodTimeoutProxy.getMaxThreads());
+
+            // no thread is started beyond the pool
+            Operation op = createTimeoutProxy(new SleepOperation(), 200);
+            try {
+                op.run(0);
+                fail("Should throw a TimeoutException");
+            } catch (OperationTimeoutException e) {
+                /* expected */
+            }
+            assertEquals(MethodTimeoutProxy.getInFlightOperations(), MethodTimeoutProxy
+                    .getMaxThreads());
+        } finally {
+            release.countDown();
+        }
+        waitForInFlightOperations(0);
+        Operation op = createTimeoutProxy(new SleepOperation(), 5000);
+        assertNotSame(op.run(10), Thread.currentThread());
+    }
+
+    @Test
+    public void busyFacadeDoesNotStarveOtherFacades() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Semaphore facadeLimit = new Semaphore(2);
+        Operation hung = createTimeoutProxy(new HungOperation(release), 10, facadeLimit);
+        try {
+            hangWorkers(hung, 2);
+
+            // the facade has no workers left
+            Operation op = createTimeoutProxy(new SleepOperation(), 200, facadeLimit);
+            try {
+                op.run(0);
+                fail("Should throw a TimeoutException");
+            } catch (OperationTimeoutException e) {
+                /* expected */
+            }
+            assertEquals(MethodTimeoutProxy.getInFlightOperations(), 2);
+
+            // another connector still runs
+            op = createTimeoutProxy(new SleepOperation(), 5000, new Semaphore(2));
+            assertNotSame(op.run(10), Thread.currentThread());
+        } finally {
+            release.countDown();
+        }
+        waitForInFlightOperations(0);
+        assertEquals(facadeLimit.availablePermits(), 2);
+    }
+
+    @Test
+    public void passException() throws Exception {
+        Operation op = createTimeoutProxy(new Operation() {
+            public Thread run(long sleepMillis) {
+                throw new IllegalArgumentException();
+            }
+        }, 5000);
+        try {
+            op.run(0);
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+    }
+
+    private static void hangWorkers(Operation hung, int count) throws Exception {
+        // a call may time out before its worker started it
+        while (MethodTimeoutProxy.getInFlightOperations() < count) {
+            try {
+                hung.run(0);
+                fail("Should throw a TimeoutException");
+            } catch (OperationTimeoutException e) {
+                /* expected */
+            }
+        }
+    }
+
+    private static void waitForInFlightOperations(int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && MethodTimeoutProxy.getInFlightOperations() != expected; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(MethodTimeoutProxy.getInFlightOperations(), expected);
+    }
+
+    private static Operation createTimeoutProxy(Operation op, long timeout) {
+        return createTimeoutProxy(op, timeout, null);
+    }
+
+    private static Operation createTimeoutProxy(Operation op, long timeout, Semaphore facadeLimit) {
+        return (Operation) Proxy.newProxyInstance(Operation.class.getClassLoader(),
+                new Class<?>[] { Operation.class }, new MethodTimeoutProxy(op, timeout,
+                        facadeLimit));
+    }
+}
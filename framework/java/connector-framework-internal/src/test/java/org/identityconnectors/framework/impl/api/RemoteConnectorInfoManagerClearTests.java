@@ -22,11 +22,22 @@
  */
 package org.identityconnectors.framework.impl.api;
 
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.api.APIConfiguration;
@@ -38,8 +49,15 @@ import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
 import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoManagerImpl;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseUnknownConfiguration;
 import org.identityconnectors.framework.server.ConnectorServer;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -48,8 +66,15 @@ public class RemoteConnectorInfoManagerClearTests extends ConnectorInfoManagerTe
 
     private static ConnectorServer _server;
 
+    private static final int PAUSE_WINDOW = 2;
+
     final int PORT = 8759;
 
+    @Override
+    protected int getPauseWindow() {
+        return PAUSE_WINDOW;
+    }
+
     /**
      * To be overridden by subclasses to get different ConnectorInfoManagers
      *
@@ -66,6 +91,7 @@ public class RemoteConnectorInfoManagerClearTests extends ConnectorInfoManagerTe
                 _server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
                 _server.setBundleURLs(urls);
                 _server.setPort(PORT);
+                _server.setPauseWindow(PAUSE_WINDOW);
                 _server.setIfAddress(InetAddress.getByName("127.0.0.1"));
                 _server.start();
             }
@@ -104,6 +130,39 @@ public class RemoteConnectorInfoManagerClearTests extends ConnectorInfoManagerTe
         Assert.assertEquals(mgr.getConnectorKeys().size(), 4);
     }
 
+    @Test
+    public void testConfigurationDigest() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        ConnectorFacade facade =
+                ConnectorFacadeFactory.getInstance().newInstance(
+                        info.createDefaultAPIConfiguration());
+        // the first call registers the configuration, the next ones only
+        // send its digest
+        for (int i = 0; i < 3; i++) {
+            Assert.assertNotNull(facade.schema());
+        }
+
+        // an unknown digest is reported so the client can send the
+        // configuration
+        RemoteFrameworkConnectionInfo connInfo =
+                new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                        .toCharArray()));
+        RemoteFrameworkConnection connection = new RemoteFrameworkConnection(connInfo);
+        try {
+            connection.writeObject(CurrentLocale.get());
+            connection.writeObject(connInfo.getKey());
+            connection.writeObject(new OperationRequest(info.getConnectorKey(), null, "unknown",
+                    SchemaApiOp.class, "schema", new ArrayList<Object>()));
+            Object response = connection.readObject();
+            Assert.assertTrue(response instanceof OperationResponseUnknownConfiguration);
+        } finally {
+            connection.close();
+        }
+    }
+
     @Test
     public void testFacadeEviction() throws Exception {
         ConnectorServer server = ConnectorServer.newInstance();
@@ -153,4 +212,197 @@ public class RemoteConnectorInfoManagerClearTests extends ConnectorInfoManagerTe
             server.stop();
         }
     }
+
+    /**
+     * Tests that a connection beyond the workers and queue slots waits to be
+     * accepted until a worker is free.
+     */
+    @Test
+    public void testConnectionWaitsForFreeWorker() throws Exception {
+        ConnectorServer server = ConnectorServer.newInstance();
+        final List<Socket> idle = new ArrayList<Socket>();
+        try {
+            server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
+            server.setBundleURLs(getTestBundles());
+            server.setPort(8763);
+            server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+            server.setMinWorkers(1);
+            server.setMaxWorkers(1);
+            server.setMaxQueuedConnections(1);
+            server.start();
+
+            // one connection holds the worker, the next one the queue slot
+            for (int i = 0; i < 2; i++) {
+                idle.add(new Socket("127.0.0.1", 8763));
+            }
+            final FutureTask<Integer> hello = new FutureTask<Integer>(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return new RemoteConnectorInfoManagerImpl(new RemoteFrameworkConnectionInfo(
+                            "127.0.0.1", 8763, new GuardedString("changeit".toCharArray())))
+                            .getConnectorKeys().size();
+                }
+            });
+            new Thread(hello).start();
+            try {
+                hello.get(1, TimeUnit.SECONDS);
+                Assert.fail("The connection must wait for a worker");
+            } catch (TimeoutException e) {
+                /* expected */
+            }
+            for (Socket socket : idle) {
+                socket.close();
+            }
+            Assert.assertEquals(hello.get(30, TimeUnit.SECONDS), Integer.valueOf(4));
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testServerClosedPooledConnection() throws Exception {
+        getConnectorInfoManager();
+        SocketProxy proxy = new SocketProxy(8761, PORT);
+        try {
+            RemoteFrameworkConnectionInfo connInfo =
+                    new RemoteFrameworkConnectionInfo("127.0.0.1", 8761, new GuardedString(
+                            "changeit".toCharArray()), false, null, 0);
+            ConnectorInfo info =
+                    findConnectorInfo(ConnectorInfoManagerFactory.getInstance().getRemoteManager(
+                            connInfo), "1.0.0.0",
+                            "org.identityconnectors.testconnector.TstConnector");
+            ConnectorFacade facade =
+                    ConnectorFacadeFactory.getInstance().newInstance(
+                            info.createDefaultAPIConfiguration());
+            Assert.assertNotNull(facade.schema());
+            // the server side closes the idle pooled connection
+            proxy.closeConnections();
+            Assert.assertNotNull(facade.schema());
+        } finally {
+            proxy.close();
+        }
+    }
+
+    @Test
+    public void testServerClosedPooledConnectionCreateNotResent() throws Exception {
+        getConnectorInfoManager();
+        SocketProxy proxy = new SocketProxy(8762, PORT);
+        try {
+            RemoteFrameworkConnectionInfo connInfo =
+                    new RemoteFrameworkConnectionInfo("127.0.0.1", 8762, new GuardedString(
+                            "changeit".toCharArray()), false, null, 0);
+            ConnectorInfo info =
+                    findConnectorInfo(ConnectorInfoManagerFactory.getInstance().getRemoteManager(
+                            connInfo), "1.0.0.0",
+                            "org.identityconnectors.testconnector.TstConnector");
+            ConnectorFacade facade =
+                    ConnectorFacadeFactory.getInstance().newInstance(
+                            info.createDefaultAPIConfiguration());
+            Assert.assertNotNull(facade.schema());
+            int accepted = proxy.getAcceptedCount();
+            // the server side closes the idle pooled connection
+            proxy.closeConnections();
+            try {
+                facade.create(ObjectClass.ACCOUNT, CollectionUtil.newSet(new Name("a")), null);
+                Assert.fail("The create must fail on the closed connection");
+            } catch (ConnectorException e) {
+                /* expected */
+            }
+            // the create was not sent again on a new connection
+            Assert.assertEquals(proxy.getAcceptedCount(), accepted);
+        } finally {
+            proxy.close();
+        }
+    }
+
+    /**
+     * Forwards the connections to the connector server, so the test can close
+     * them on the server side.
+     */
+    private static class SocketProxy implements Runnable {
+
+        private final ServerSocket serverSocket;
+        private final int targetPort;
+        private final List<Socket> sockets = new ArrayList<Socket>();
+        private int acceptedCount = 0;
+
+        SocketProxy(int port, int targetPort) throws Exception {
+            this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+            this.targetPort = targetPort;
+            Thread thread = new Thread(this, "SocketProxy");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Socket client = serverSocket.accept();
+                    Socket target = new Socket("127.0.0.1", targetPort);
+                    synchronized (sockets) {
+                        sockets.add(client);
+                        sockets.add(target);
+                        acceptedCount++;
+                    }
+                    pump(client, target);
+                    pump(target, client);
+                }
+            } catch (Exception e) {
+                /* closed */
+            }
+        }
+
+        private void pump(final Socket from, final Socket to) {
+            Thread thread = new Thread("SocketProxy-pump") {
+                public void run() {
+                    try {
+                        InputStream in = from.getInputStream();
+                        OutputStream out = to.getOutputStream();
+                        byte[] buffer = new byte[8192];
+                        int count;
+                        while ((count = in.read(buffer)) >= 0) {
+                            out.write(buffer, 0, count);
+                            out.flush();
+                        }
+                    } catch (Exception e) {
+                        /* closed */
+                    }
+                    closeQuietly(from);
+                    closeQuietly(to);
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getAcceptedCount() {
+            synchronized (sockets) {
+                return acceptedCount;
+            }
+        }
+
+        void closeConnections() {
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    closeQuietly(socket);
+                }
+                sockets.clear();
+            }
+        }
+
+        void close() {
+            closeQuietly(serverSocket);
+            closeConnections();
+        }
+
+        private static void closeQuietly(Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                /* ignore */
+            }
+        }
+    }
 }
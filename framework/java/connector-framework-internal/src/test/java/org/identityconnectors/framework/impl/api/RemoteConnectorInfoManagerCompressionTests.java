@@ -0,0 +1,115 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.List;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfoManager;
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectionPoolManager;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectEncoder;
+import org.identityconnectors.framework.server.ConnectorServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the remote tests over compressed connections.
+ */
+public class RemoteConnectorInfoManagerCompressionTests extends ConnectorInfoManagerTestBase {
+
+    private static ConnectorServer _server;
+
+    private static final int PAUSE_WINDOW = 2;
+
+    final int PORT = 8764;
+
+    @BeforeClass
+    public void enableCompression() {
+        System.setProperty(RemoteConnectionPoolManager.COMPRESSION_PROP, "true");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void disableCompression() {
+        System.clearProperty(RemoteConnectionPoolManager.COMPRESSION_PROP);
+    }
+
+    @Override
+    protected int getPauseWindow() {
+        return PAUSE_WINDOW;
+    }
+
+    @Override
+    protected ConnectorInfoManager getConnectorInfoManager() throws Exception {
+        List<URL> urls = getTestBundles();
+
+        synchronized (RemoteConnectorInfoManagerCompressionTests.class) {
+            if (_server == null) {
+                _server = ConnectorServer.newInstance();
+                _server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
+                _server.setBundleURLs(urls);
+                _server.setPort(PORT);
+                _server.setPauseWindow(PAUSE_WINDOW);
+                _server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+                _server.start();
+            }
+        }
+        ConnectorInfoManagerFactory fact = ConnectorInfoManagerFactory.getInstance();
+
+        RemoteFrameworkConnectionInfo connInfo =
+                new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                        .toCharArray()), false, null, 0);
+
+        return fact.getRemoteManager(connInfo);
+    }
+
+    @Override
+    protected synchronized void shutdownConnnectorInfoManager() {
+        synchronized (RemoteConnectorInfoManagerCompressionTests.class) {
+            if (_server != null) {
+                _server.stop();
+                _server = null;
+            }
+        }
+        // These are initialized by the connector server.
+        ConnectorFacadeFactory.getInstance().dispose();
+        ConnectorInfoManagerFactory.getInstance().clearLocalCache();
+    }
+
+    @Test
+    public void testCompressionNegotiated() throws Exception {
+        RemoteConnectorInfoImpl info =
+                (RemoteConnectorInfoImpl) findConnectorInfo(getConnectorInfoManager(), "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        Assert.assertTrue(BinaryObjectEncoder.isCompressed(RemoteConnectionPoolManager
+                .getEncodingVersion(info)));
+    }
+}
@@ -188,7 +188,12 @@ public class RemoteConnectorInfoManagerSSLTests extends ConnectorInfoManagerTest
 
     private static ConnectorServer _server;
 
+    private static final int PAUSE_WINDOW = 2;
 
+    @Override
+    protected int getPauseWindow() {
+        return PAUSE_WINDOW;
+    }
 
     /**
      * To be overridden by subclasses to get different ConnectorInfoManagers
@@ -211,6 +216,7 @@ public class RemoteConnectorInfoManagerSSLTests extends ConnectorInfoManagerTest
                 _server = ConnectorServer.newInstance();
                 _server.setBundleURLs(urls);
                 _server.setPort(PORT);
+                _server.setPauseWindow(PAUSE_WINDOW);
                 _server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
                 _server.setUseSSL(true);
                 _server.setKeyManagers(CollectionUtil.newList(serverKeyManager));
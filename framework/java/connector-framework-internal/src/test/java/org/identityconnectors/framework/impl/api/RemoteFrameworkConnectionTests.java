@@ -0,0 +1,94 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
+import org.testng.annotations.Test;
+
+public class RemoteFrameworkConnectionTests {
+
+    /**
+     * Tests that the socket is closed even if the connection can not be shut
+     * down cleanly.
+     */
+    @Test
+    public void testCloseReleasesSocket() throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Socket peer = null;
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        try {
+            peer = server.accept();
+            RemoteFrameworkConnection connection = new RemoteFrameworkConnection(socket);
+            // shutting the output down a second time fails
+            socket.shutdownOutput();
+            try {
+                connection.close();
+                fail("expected exception");
+            } catch (ConnectorException e) {
+                // expected
+            }
+            assertTrue(socket.isClosed());
+        } finally {
+            socket.close();
+            if (peer != null) {
+                peer.close();
+            }
+            server.close();
+        }
+    }
+
+    /**
+     * Tests that a broken connection is closed without trying to send the
+     * buffered data.
+     */
+    @Test
+    public void testCloseBrokenConnection() throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Socket peer = null;
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        try {
+            peer = server.accept();
+            RemoteFrameworkConnection connection = new RemoteFrameworkConnection(socket);
+            connection.writeObject("unsent");
+            connection.invalidate();
+            peer.close();
+            try {
+                connection.close();
+            } catch (ConnectorException e) {
+                // the shutdown may fail once the peer is gone
+            }
+            assertTrue(socket.isClosed());
+        } finally {
+            socket.close();
+            server.close();
+        }
+    }
+}
@@ -22,6 +22,10 @@
  */
 package org.identityconnectors.framework.impl.api.local;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -93,6 +97,26 @@ public class ObjectPoolTests {
         }
     }
 
+    /**
+     * Counts down a latch for each disposed connection.
+     */
+    private class MyDisposeLatchFactory extends MyTestConnectionFactory {
+        private final CountDownLatch _disposed;
+
+        public MyDisposeLatchFactory(int count) {
+            _disposed = new CountDownLatch(count);
+        }
+
+        public void disposeObject(MyTestConnection object) {
+            super.disposeObject(object);
+            _disposed.countDown();
+        }
+
+        public boolean awaitDisposed() throws InterruptedException {
+            return _disposed.await(30, TimeUnit.SECONDS);
+        }
+    }
+
     private class MyTestThread extends Thread {
         private final ObjectPool<MyTestConnection> _pool;
         private final int _numIterations;
@@ -232,6 +256,125 @@ public class ObjectPoolTests {
         Assert.assertEquals(true, conn4.getPooledObject().isGood());
     }
 
+    @Test
+    public void testLifo() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setLifo(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        Assert.assertSame(pool.borrowObject(), conn2);
+        Assert.assertSame(pool.borrowObject(), conn1);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testTestOnBorrowIdleTime() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setTestOnBorrowIdleTimeMillis(60*1000);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        conn.close();
+        //the connection was idle for a short time, so it is not tested
+        conn.getPooledObject().dispose();
+        Assert.assertSame(pool.borrowObject(), conn);
+        Assert.assertEquals(1, fact.getTotalCreatedConnections());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testBackgroundEviction() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMinIdle(1);
+        config.setMinEvictableIdleTimeMillis(60*1000);
+        config.setTimeBetweenEvictionRunsMillis(100);
+        config.setTestWhileIdle(true);
+        MyDisposeLatchFactory fact = new MyDisposeLatchFactory(1);
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        conn3.close();
+        //the evictor tests the idle connections and drops the bad one
+        conn2.getPooledObject().dispose();
+        Assert.assertTrue(fact.awaitDisposed());
+        Assert.assertEquals(true, conn1.getPooledObject().isGood());
+        Assert.assertEquals(true, conn3.getPooledObject().isGood());
+        pool.shutdown();
+
+        //the evictor drops the connections idle for too long
+        config.setMinEvictableIdleTimeMillis(100);
+        config.setTestWhileIdle(false);
+        fact = new MyDisposeLatchFactory(1);
+        pool = new ObjectPool<MyTestConnection>(fact,config);
+        conn1 = pool.borrowObject();
+        conn2 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        Assert.assertTrue(fact.awaitDisposed());
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+        Assert.assertEquals(false, conn1.getPooledObject().isGood());
+        Assert.assertEquals(true, conn2.getPooledObject().isGood());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testHungIdleTestDoesNotBlockOtherPools() throws Exception {
+        final CountDownLatch testing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean hang = new AtomicBoolean();
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMinEvictableIdleTimeMillis(60*1000);
+        config.setTimeBetweenEvictionRunsMillis(100);
+        config.setTestWhileIdle(true);
+        MyTestConnectionFactory hungFact = new MyTestConnectionFactory() {
+            public void testObject(MyTestConnection object) {
+                if (!hang.get()) {
+                    return;
+                }
+                testing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ObjectPool<MyTestConnection> hungPool = new ObjectPool<MyTestConnection>(hungFact,config);
+        hungPool.borrowObject().close();
+        hang.set(true);
+
+        config.setMinIdle(0);
+        config.setMinEvictableIdleTimeMillis(100);
+        config.setTestWhileIdle(false);
+        MyDisposeLatchFactory fact = new MyDisposeLatchFactory(1);
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        try {
+            Assert.assertTrue(testing.await(30, TimeUnit.SECONDS));
+            //the other pool is still evicted while the test hangs
+            ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+            conn.close();
+            Assert.assertTrue(fact.awaitDisposed());
+            Assert.assertEquals(false, conn.getPooledObject().isGood());
+        } finally {
+            release.countDown();
+            hungPool.shutdown();
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void testCreateBadConnection()
         throws Exception
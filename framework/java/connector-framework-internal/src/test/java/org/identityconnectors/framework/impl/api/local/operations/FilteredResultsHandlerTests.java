@@ -23,11 +23,30 @@
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
+import static org.identityconnectors.framework.common.objects.AttributeBuilder.build;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.and;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.contains;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.containsAllValues;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.endsWith;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.equalTo;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.greaterThan;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.greaterThanOrEqualTo;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.lessThan;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.lessThanOrEqualTo;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.not;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.or;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.startsWith;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
 import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
 import org.identityconnectors.framework.impl.api.Searches.ConnectorObjectSearch;
@@ -110,6 +129,121 @@ public class FilteredResultsHandlerTests {
      * Basic filter depends on the 'count' attribute. We're testing that we can
      * filter the producer output.
      */
+    @Test
+    public void compiledFilterMatchesFilter() {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        for (int i = 0; i < 20; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setUid(String.valueOf(i)).setName(i % 2 == 0 ? "Name" + i : "name" + i);
+            builder.addAttribute("count", i);
+            builder.addAttribute("mail", i % 3 == 0 ? "User" + i + "@example.com" : "x" + i);
+            builder.addAttribute("groups", "g" + (i % 4), "all");
+            objects.add(builder.build());
+        }
+        Filter[] filters =
+                new Filter[] {
+                    equalTo(new Uid("3")),
+                    equalTo(build("count", 4)),
+                    and(greaterThan(build("count", 3)), lessThanOrEqualTo(build("count", 12))),
+                    or(lessThan(build("count", 2)), greaterThanOrEqualTo(build("count", 18))),
+                    and(startsWith(build("__NAME__", "name")), not(contains(build("mail",
+                            "example")))),
+                    or(endsWith(build("mail", ".com")), and(equalTo(build("count", 1)),
+                            new RangeFilter(0, 5))),
+                    containsAllValues(build("groups", "all", "g1")),
+                    and(and(greaterThan(build("count", 1)), greaterThan(build("count", 2))),
+                            lessThan(build("count", 9))),
+                    lessThan(build("__NAME__", "name5")) };
+        ObjectNormalizerFacade normalizer =
+                new ObjectNormalizerFacade(ObjectClass.ACCOUNT, new CaseNormalizer());
+        for (Filter filter : filters) {
+            for (Filter f : new Filter[] { filter, new NormalizingFilter(filter, normalizer) }) {
+                FilterCompiler.Matcher matcher = FilterCompiler.compile(f);
+                for (ConnectorObject object : objects) {
+                    assertEquals(matcher.matches(object), f.accept(object), f + " on "
+                            + object);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compiledFilterKeepsExceptions() {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid("1").setName("name1");
+        builder.addAttribute("count", 1);
+        ConnectorObject object = builder.build();
+        // startsWith on an Integer throws ClassCastException
+        Filter[] filters =
+                new Filter[] {
+                    and(startsWith(build("count", "1")), equalTo(new Uid("2"))),
+                    and(equalTo(new Uid("2")), startsWith(build("count", "1"))),
+                    or(greaterThan(build("count", "1")), equalTo(new Uid("1"))),
+                    and(equalTo(build("count", 2)), new RangeFilter(0, 5), startsWith(build(
+                            "count", "1")), equalTo(new Uid("2"))) };
+        for (Filter filter : filters) {
+            FilterCompiler.Matcher matcher = FilterCompiler.compile(filter);
+            Object expected;
+            try {
+                expected = filter.accept(object);
+            } catch (RuntimeException e) {
+                expected = e.getClass();
+            }
+            Object actual;
+            try {
+                actual = matcher.matches(object);
+            } catch (RuntimeException e) {
+                actual = e.getClass();
+            }
+            assertEquals(actual, expected, filter.toString());
+        }
+    }
+
+    @Test
+    public void compiledFilterOnNullValue() {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid("1").setName("name1");
+        // no value list at all and a single null value
+        builder.addAttribute(build("empty"));
+        builder.addAttribute(build("nothing", (Object) null));
+        ConnectorObject object = builder.build();
+        assertNull(object.getAttributeByName("empty").getValue());
+        ObjectNormalizerFacade normalizer =
+                new ObjectNormalizerFacade(ObjectClass.ACCOUNT, new CaseNormalizer());
+        for (String name : new String[] { "empty", "nothing" }) {
+            Filter[] filters =
+                    new Filter[] {
+                        equalTo(build(name, "a")),
+                        greaterThan(build(name, "a")),
+                        greaterThanOrEqualTo(build(name, "a")),
+                        lessThan(build(name, "a")),
+                        lessThanOrEqualTo(build(name, "a")),
+                        startsWith(build(name, "a")),
+                        endsWith(build(name, "a")),
+                        contains(build(name, "a")),
+                        containsAllValues(build(name, "a")),
+                        or(lessThan(build(name, "a")), equalTo(new Uid("1"))) };
+            for (Filter filter : filters) {
+                for (Filter f : new Filter[] { filter, new NormalizingFilter(filter, normalizer) }) {
+                    FilterCompiler.Matcher matcher = FilterCompiler.compile(f);
+                    Object expected;
+                    try {
+                        expected = f.accept(object);
+                    } catch (RuntimeException e) {
+                        expected = e.getClass();
+                    }
+                    Object actual;
+                    try {
+                        actual = matcher.matches(object);
+                    } catch (RuntimeException e) {
+                        actual = e.getClass();
+                    }
+                    assertEquals(actual, expected, f.toString());
+                }
+            }
+        }
+    }
+
     static class RangeFilter implements Filter {
         final long low, high;
 
@@ -26,11 +26,18 @@ package org.identityconnectors.framework.impl.api.local.operations;
 import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
 import org.testng.annotations.Test;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
@@ -38,10 +45,15 @@ import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
 import org.identityconnectors.framework.spi.Configuration;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolHandler;
 import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.PoolableConnector;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.framework.spi.operations.SearchOp;
 import org.identityconnectors.test.common.TestHelpers;
 import org.testng.Assert;
@@ -114,6 +126,111 @@ public class SearchImplTests {
         Assert.assertEquals(expecteList, actual);
     }
 
+    @Test
+    public void testParallelQueries() {
+        Set<ConnectorObject> expected = new HashSet<ConnectorObject>();
+        List<List<ConnectorObject>> main = new ArrayList<List<ConnectorObject>>();
+        for (int batch = 0; batch < 8; batch++) {
+            List<ConnectorObject> data = new ArrayList<ConnectorObject>();
+            for (int i = batch * 5; i < batch * 5 + 8; i++) {
+                data.add(createObject(i));
+                expected.add(createObject(i));
+            }
+            main.add(data);
+        }
+        // the queries on the other threads run with the locale of the caller,
+        // not the one of the search that started the thread
+        for (Locale locale : new Locale[] { Locale.GERMANY, Locale.JAPAN }) {
+            final List<ConnectorObject> actual =
+                    Collections.synchronizedList(new ArrayList<ConnectorObject>());
+            ObjectPool<PoolableConnector> pool = newPool();
+            CurrentLocale.set(locale);
+            PooledDuplicateProvider.LOCALES.clear();
+            try {
+                SearchImpl.rawSearch(new PooledDuplicateProvider(), ObjectClass.ACCOUNT,
+                        new MockFilter(main), new SearchResultsHandler() {
+                            public void handleResult(SearchResult result) {
+                            }
+
+                            public boolean handle(ConnectorObject connectorObject) {
+                                actual.add(connectorObject);
+                                return true;
+                            }
+                        }, new OperationOptionsBuilder().build(), pool, 4);
+            } finally {
+                CurrentLocale.clear();
+                pool.shutdown();
+            }
+            Assert.assertEquals(actual.size(), expected.size());
+            Assert.assertEquals(new HashSet<ConnectorObject>(actual), expected);
+            Assert.assertTrue(PooledDuplicateProvider.THREADS.size() > 1);
+            Assert.assertEquals(PooledDuplicateProvider.LOCALES, Collections.singleton(locale));
+        }
+    }
+
+    @Test
+    public void testParallelQueriesStop() {
+        List<List<ConnectorObject>> main = new ArrayList<List<ConnectorObject>>();
+        for (int batch = 0; batch < 8; batch++) {
+            List<ConnectorObject> data = new ArrayList<ConnectorObject>();
+            for (int i = batch * 10; i < batch * 10 + 10; i++) {
+                data.add(createObject(i));
+            }
+            main.add(data);
+        }
+        final AtomicInteger count = new AtomicInteger();
+        ObjectPool<PoolableConnector> pool = newPool();
+        try {
+            SearchImpl.rawSearch(new PooledDuplicateProvider(), ObjectClass.ACCOUNT,
+                    new MockFilter(main), new SearchResultsHandler() {
+                        public void handleResult(SearchResult result) {
+                        }
+
+                        public boolean handle(ConnectorObject connectorObject) {
+                            return count.incrementAndGet() < 5;
+                        }
+                    }, new OperationOptionsBuilder().build(), pool, 4);
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertEquals(count.get(), 5);
+    }
+
+    @Test
+    public void testMaxParallelQueriesConfiguration() {
+        ResultsHandlerConfiguration config = new ResultsHandlerConfiguration();
+        Assert.assertEquals(config.getMaxParallelQueries(), 1);
+        config.setMaxParallelQueries(4);
+        Assert.assertEquals(new ResultsHandlerConfiguration(config), config);
+        try {
+            config.setMaxParallelQueries(0);
+            Assert.fail("maxParallelQueries must be positive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private ObjectPool<PoolableConnector> newPool() {
+        return new ObjectPool<PoolableConnector>(new ObjectPoolHandler<PoolableConnector>() {
+            public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+                return original;
+            }
+
+            public PoolableConnector makeObject() {
+                return new PooledDuplicateProvider();
+            }
+
+            public void testObject(PoolableConnector object) {
+            }
+
+            public void disposeObject(PoolableConnector object) {
+            }
+
+            public void shutdown() {
+            }
+        }, new ObjectPoolConfiguration());
+    }
+
     ConnectorObject createObject(int uid) {
         ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
         bld.setUid("" + uid);
@@ -168,6 +285,34 @@ public class SearchImplTests {
         }
     }
 
+    /**
+     * Slow poolable provider which records the threads and locales running its
+     * queries.
+     */
+    public static class PooledDuplicateProvider extends DuplicateProvider implements
+            PoolableConnector {
+
+        static final Set<Thread> THREADS = Collections.synchronizedSet(new HashSet<Thread>());
+
+        static final Set<Locale> LOCALES = Collections.synchronizedSet(new HashSet<Locale>());
+
+        @Override
+        public void executeQuery(ObjectClass objectClass, List<ConnectorObject> query,
+                ResultsHandler handler, OperationOptions options) {
+            THREADS.add(Thread.currentThread());
+            LOCALES.add(CurrentLocale.get());
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.executeQuery(objectClass, query, handler, options);
+        }
+
+        public void checkAlive() {
+        }
+    }
+
     /**
      * Use the filter to pass objects to the filter translator.
      */
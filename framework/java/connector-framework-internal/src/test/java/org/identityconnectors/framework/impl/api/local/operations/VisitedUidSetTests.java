@@ -0,0 +1,111 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.testng.annotations.Test;
+
+public class VisitedUidSetTests {
+
+    @Test
+    public void testFingerprintUidSet() {
+        FingerprintUidSet set = new FingerprintUidSet();
+        checkSet(set, 5000);
+        assertEquals(set.size(), 5001);
+        set.close();
+    }
+
+    @Test
+    public void testSpillingUidSet() {
+        int files = countSpillFiles();
+        SpillingUidSet set = new SpillingUidSet(100);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(set.add("uid" + i));
+        }
+        assertFalse(set.isSpilled());
+        checkSet(set, 5000);
+        assertTrue(set.isSpilled());
+        assertEquals(countSpillFiles(), files + 1);
+        set.close();
+        // the temporary file is deleted right away
+        assertEquals(countSpillFiles(), files);
+    }
+
+    @Test
+    public void testDuplicateFilteringResultsHandler() {
+        final List<ConnectorObject> passed = new ArrayList<ConnectorObject>();
+        DuplicateFilteringResultsHandler handler =
+                new DuplicateFilteringResultsHandler(new SearchResultsHandler() {
+                    public void handleResult(SearchResult result) {
+                    }
+
+                    public boolean handle(ConnectorObject connectorObject) {
+                        passed.add(connectorObject);
+                        return true;
+                    }
+                }, new SpillingUidSet(2));
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 10; i++) {
+                ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+                bld.setUid("" + i);
+                bld.setName("" + i);
+                assertTrue(handler.handle(bld.build()));
+            }
+        }
+        handler.close();
+        assertEquals(passed.size(), 10);
+    }
+
+    private int countSpillFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().startsWith("openicf-uids")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void checkSet(VisitedUidSet set, int count) {
+        for (int i = 0; i < count; i++) {
+            set.add("uid" + i);
+        }
+        for (int i = 0; i < count; i++) {
+            assertFalse(set.add("uid" + i), "uid" + i);
+        }
+        assertTrue(set.add("new"));
+        assertFalse(set.add("new"));
+    }
+}
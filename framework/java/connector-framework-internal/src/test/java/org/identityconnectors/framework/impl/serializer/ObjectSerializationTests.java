@@ -32,6 +32,7 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.math.BigDecimal;
@@ -46,6 +47,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
@@ -82,6 +84,7 @@ import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.ObjectClassInfo;
 import org.identityconnectors.framework.common.objects.ObjectClassInfoBuilder;
 import org.identityconnectors.framework.common.objects.OperationOptionInfo;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.QualifiedUid;
@@ -121,6 +124,9 @@ import org.identityconnectors.framework.impl.api.remote.messages.OperationReques
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseUnknownConfiguration;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectDecoder;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectEncoder;
 
 
 public class ObjectSerializationTests {
@@ -422,6 +428,10 @@ public class ObjectSerializationTests {
         v1.setMaxWait(3);
         v1.setMinEvictableIdleTimeMillis(4);
         v1.setMinIdle(5);
+        v1.setTimeBetweenEvictionRunsMillis(6);
+        v1.setTestWhileIdle(true);
+        v1.setTestOnBorrowIdleTimeMillis(7);
+        v1.setLifo(true);
 
         ObjectPoolConfiguration v2 =
             (ObjectPoolConfiguration)cloneObject(v1);
@@ -433,6 +443,10 @@ public class ObjectSerializationTests {
         assertEquals(3, v2.getMaxWait());
         assertEquals(4, v2.getMinEvictableIdleTimeMillis());
         assertEquals(5, v2.getMinIdle());
+        assertEquals(6, v2.getTimeBetweenEvictionRunsMillis());
+        assertTrue(v2.isTestWhileIdle());
+        assertEquals(7, v2.getTestOnBorrowIdleTimeMillis());
+        assertTrue(v2.isLifo());
     }
 
     @Test
@@ -952,6 +966,26 @@ public class ObjectSerializationTests {
         assertEquals(args, v2.getArguments());
     }
 
+    @Test
+    public void testOperationRequestWithDigest() {
+        OperationRequest v1 =
+                new OperationRequest(new ConnectorKey("my bundle", "my version", "my connector"),
+                        null, "my digest", CreateApiOp.class, "mymethodName",
+                        new ArrayList<Object>());
+        OperationRequest v2 = (OperationRequest) cloneObject(v1);
+        assertNull(v2.getConnectorFacadeKey());
+        assertEquals(v2.getConfigurationDigest(), "my digest");
+        assertEquals(v2.getOperation(), CreateApiOp.class);
+    }
+
+    @Test
+    public void testOperationResponseUnknownConfiguration() {
+        OperationResponseUnknownConfiguration v1 = new OperationResponseUnknownConfiguration();
+        OperationResponseUnknownConfiguration v2 =
+                (OperationResponseUnknownConfiguration) cloneObject(v1);
+        assertNotNull(v2);
+    }
+
     @Test
     public void testOperationResponseEnd() {
         OperationResponseEnd v1 = new OperationResponseEnd();
@@ -1008,6 +1042,62 @@ public class ObjectSerializationTests {
         assertEquals("bar2",v2.getOptions().get("foo2"));
     }
 
+    @Test
+    public void testCopyObject() {
+        Map<String, Object> caseInsensitive = CollectionUtil.newCaseInsensitiveMap();
+        caseInsensitive.put("Key", "value");
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("uid", new Uid("1"));
+        map.put("names", new String[] { "a", "b" });
+        map.put("list", new ArrayList<Object>(Arrays.asList(1, 2L, "3")));
+        map.put("ci", caseInsensitive);
+        map.put("password", new GuardedString("secret".toCharArray()));
+
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> copy = (Map<Object, Object>) SerializerUtil.copyObject(map);
+        assertTrue(copy != map);
+        // immutable values are shared
+        assertTrue(copy.get("uid") == map.get("uid"));
+        // mutable values are copied
+        assertTrue(copy.get("names") != map.get("names"));
+        assertTrue(copy.get("names") instanceof String[]);
+        assertTrue(Arrays.equals((String[]) map.get("names"), (String[]) copy.get("names")));
+        assertTrue(copy.get("list") != map.get("list"));
+        assertEquals(copy.get("list"), map.get("list"));
+        assertTrue(copy.get("password") != map.get("password"));
+        assertTrue(CollectionUtil.isCaseInsensitiveMap((Map<?, ?>) copy.get("ci")));
+        assertEquals(((Map<?, ?>) copy.get("ci")).get("KEY"), "value");
+    }
+
+    @Test
+    public void testCopyEnum() {
+        // enums with a serialization handler are shared
+        assertTrue(SerializerUtil.copyObject(SyncDeltaType.DELETE) == SyncDeltaType.DELETE);
+        assertTrue(SerializerUtil.copyObject(Flags.REQUIRED) == Flags.REQUIRED);
+        // the others are rejected like by the serializer
+        try {
+            SerializerUtil.copyObject(Arrays.asList(TimeUnit.SECONDS));
+            Assert.fail("expected exception");
+        } catch (ConnectorException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOperationOptionsCopyOnWrite() {
+        OperationOptions v1 =
+                new OperationOptionsBuilder().setAttributesToGet("a", "b").setScope("x").build();
+        // unchanged options are shared
+        assertTrue(new OperationOptionsBuilder(v1).build() == v1);
+        OperationOptionsBuilder builder = new OperationOptionsBuilder(v1);
+        builder.setPageSize(10);
+        OperationOptions v2 = builder.build();
+        assertEquals(v1.getOptions().size(), 2);
+        assertEquals(v2.getOptions().size(), 3);
+        assertTrue(v2.getAttributesToGet() != v1.getAttributesToGet());
+        assertTrue(Arrays.equals(v1.getAttributesToGet(), v2.getAttributesToGet()));
+    }
+
     @Test
     public void testScript() {
         ScriptBuilder builder = new ScriptBuilder();
@@ -1113,6 +1203,102 @@ public class ObjectSerializationTests {
         assertEquals("myuid", v2.getUid().getUidValue());
     }
 
+    @Test
+    public void testBinaryWireFormat() {
+        // the encoding must not change, older Java and .NET peers decode it
+        byte[] bytes = SerializerUtil.serializeBinaryObject(Arrays.asList("ab", 5));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        assertEquals(hex.toString(), "0000fafb00000002" + "00000003"
+                + "000000044c69737400000000" + "00000006537472696e6700000001"
+                + "00000007496e746567657200000002" + "3d00000000"
+                + "46000000113d00000001460000000600000002616248"
+                + "460000000f3d000000024600000004000000054848");
+        assertEquals(SerializerUtil.deserializeBinaryObject(bytes), Arrays.asList("ab", 5));
+    }
+
+    @Test
+    public void testCompressedBinaryStream() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryObjectEncoder encoder = new BinaryObjectEncoder(out);
+        encoder.setEncodingVersion(BinaryObjectEncoder.COMPRESSED_ENCODING_VERSION);
+        List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 100; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setUid("uid" + i);
+            builder.setName("name" + i);
+            builder.addAttribute("description", "Some repeated text for user " + i);
+            objects.add(builder.build());
+            encoder.writeObject(objects.get(i));
+        }
+        encoder.flush();
+        BinaryObjectDecoder decoder =
+                new BinaryObjectDecoder(new ByteArrayInputStream(out.toByteArray()));
+        for (Object object : objects) {
+            assertTrue(decoder.isInputAvailable());
+            assertEquals(decoder.readObject(), object);
+        }
+        assertEquals(decoder.getEncodingVersion(), BinaryObjectEncoder.COMPRESSED_ENCODING_VERSION);
+        // the end of the deflater stream is not there yet, this must not block
+        assertFalse(decoder.isInputAvailable());
+    }
+
+    @Test
+    public void testCompactConnectorObjects() {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setObjectClass(ObjectClass.GROUP);
+        builder.setUid(new Uid("uid", "revision"));
+        builder.setName("name");
+        builder.addAttribute("strings", "a", "b");
+        builder.addAttribute("integers", 1, 2);
+        builder.addAttribute("longs", 1L);
+        builder.addAttribute("booleans", true, false);
+        builder.addAttribute("mixed", "a", 1, null);
+        builder.addAttribute("bytes", new Object[] { new byte[] { 1, 2 } });
+        builder.addAttribute("empty");
+        builder.addAttribute(AttributeBuilder.buildPassword("secret".toCharArray()));
+        builder.addAttribute(AttributeBuilder.buildEnabled(true));
+        ConnectorObject object = builder.build();
+
+        SyncDeltaBuilder deltaBuilder = new SyncDeltaBuilder();
+        deltaBuilder.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE);
+        deltaBuilder.setToken(new SyncToken(1));
+        deltaBuilder.setObject(object);
+        SyncDelta delta = deltaBuilder.build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryObjectEncoder encoder = new BinaryObjectEncoder(out);
+        encoder.setEncodingVersion(BinaryObjectEncoder.COMPACT_ENCODING_VERSION);
+        encoder.writeObject(object);
+        encoder.writeObject(delta);
+        encoder.writeObject(Arrays.asList(object, null));
+        encoder.flush();
+        byte[] compact = out.toByteArray();
+
+        BinaryObjectDecoder decoder = new BinaryObjectDecoder(new ByteArrayInputStream(compact));
+        ConnectorObject read = (ConnectorObject) decoder.readObject();
+        assertEquals(read, object);
+        assertEquals(read.getUid().getRevision(), "revision");
+        assertTrue(Arrays.equals((byte[]) read.getAttributeByName("bytes").getValue().get(0),
+                new byte[] { 1, 2 }));
+        assertEquals(decryptToString((GuardedString) read.getAttributeByName(
+                OperationalAttributes.PASSWORD_NAME).getValue().get(0)), "secret");
+        assertEquals(decoder.readObject(), delta);
+        assertEquals(decoder.readObject(), Arrays.asList(object, null));
+        assertEquals(decoder.getEncodingVersion(), BinaryObjectEncoder.COMPACT_ENCODING_VERSION);
+
+        // the compact form must be smaller than the generic one
+        out = new ByteArrayOutputStream();
+        encoder = new BinaryObjectEncoder(out);
+        encoder.writeObject(object);
+        encoder.writeObject(delta);
+        encoder.writeObject(Arrays.asList(object, null));
+        encoder.flush();
+        assertTrue(compact.length < out.size());
+    }
+
     /**
      * Highly insecure method! Do not do this in production
      * code. This is only for test purposes
@@ -24,12 +24,14 @@ package org.identityconnectors.framework.impl.serializer;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Index.atIndex;
+import static org.testng.Assert.fail;
 
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.common.serializer.XmlObjectResultsHandler;
@@ -77,4 +79,73 @@ public class XmlSerializationTests extends ObjectSerializationTests {
 
         assertThat(results).hasSize(2).contains("foo", atIndex(0)).contains("bar", atIndex(1));
     }
+
+    @Test
+    public void testStreamedMultiObject() throws Exception {
+        ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
+        StringWriter sw = new StringWriter();
+        XmlObjectSerializer ser = factory.newXmlSerializer(sw, true, true);
+        List<Object> first = new ArrayList<Object>();
+        first.add("foo");
+        first.add(new String[] { "a<b", null });
+        ser.writeObject(first);
+        // each object is written as soon as it is encoded
+        String written = sw.toString();
+        assertThat(written).endsWith("</List>\n");
+        ser.writeObject("bar");
+        assertThat(sw.toString()).startsWith(written).endsWith("<String>bar</String>\n");
+        ser.writeObject("baz");
+        ser.close(true);
+
+        // stop after the first two objects
+        final List<Object> results = new ArrayList<Object>();
+        factory.deserializeXmlStream(new InputSource(new StringReader(sw.toString())),
+                new XmlObjectResultsHandler() {
+
+                    public boolean handle(Object o) {
+                        results.add(o);
+                        return results.size() < 2;
+                    }
+                }, true);
+
+        assertThat(results).hasSize(2).contains("bar", atIndex(1));
+        @SuppressWarnings("unchecked")
+        List<Object> list = (List<Object>) results.get(0);
+        assertThat(list).hasSize(2).contains("foo", atIndex(0));
+        assertThat((String[]) list.get(1)).containsOnly("a<b", null);
+    }
+
+    @Test
+    public void testFailedObjectNotWritten() throws Exception {
+        ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
+        StringWriter sw = new StringWriter();
+        XmlObjectSerializer ser = factory.newXmlSerializer(sw, true, true);
+        ser.writeObject("foo");
+        String written = sw.toString();
+        List<Object> broken = new ArrayList<Object>();
+        broken.add("bar");
+        broken.add(new Object());
+        try {
+            ser.writeObject(broken);
+            fail("expected exception");
+        } catch (ConnectorException e) {
+            // expected, no serializer for Object
+        }
+        // nothing of the failed object reaches the writer
+        assertThat(sw.toString()).isEqualTo(written);
+        ser.writeObject("baz");
+        ser.close(true);
+
+        final List<Object> results = new ArrayList<Object>();
+        factory.deserializeXmlStream(new InputSource(new StringReader(sw.toString())),
+                new XmlObjectResultsHandler() {
+
+                    public boolean handle(Object o) {
+                        results.add(o);
+                        return true;
+                    }
+                }, true);
+
+        assertThat(results).hasSize(2).contains("foo", atIndex(0)).contains("baz", atIndex(1));
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.common.metrics;
+
+import org.identityconnectors.common.ReflectionUtil;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Gives access to the {@link MetricsSpi} the framework reports to.
+ * <p/>
+ * The implementation is set with the {@value #METRICSSPI_PROP} system property
+ * or with {@link #setMetricsSpi(MetricsSpi)}. By default nothing is recorded
+ * and {@link #isEnabled()} returns false, so the callers can skip taking the
+ * timestamps. If the class set in the property can not be instantiated the
+ * error is logged and nothing is recorded.
+ *
+ * @since 1.4
+ */
+public final class Metrics {
+
+    private static final String PACKAGE = ReflectionUtil.getPackage(Metrics.class);
+
+    /**
+     * System property to set the class of the {@link MetricsSpi}. It must have
+     * a public no-argument constructor.
+     */
+    public static final String METRICSSPI_PROP = PACKAGE + ".class";
+
+    private static final MetricsSpi NO_OP = new NoOpMetrics();
+
+    private static volatile MetricsSpi metricsImpl = NO_OP;
+
+    static {
+        final String impl = System.getProperty(METRICSSPI_PROP);
+        if (StringUtil.isNotBlank(impl)) {
+            try {
+                metricsImpl = (MetricsSpi) Class.forName(impl.trim()).newInstance();
+            } catch (Exception e) {
+                Log.getLog(Metrics.class).error(e, "Failed to instantiate {0}, metrics disabled",
+                        impl);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns true if metrics are recorded.
+     */
+    public static boolean isEnabled() {
+        return metricsImpl != NO_OP;
+    }
+
+    /**
+     * Returns the implementation to report to, never null.
+     */
+    public static MetricsSpi getMetricsSpi() {
+        return metricsImpl;
+    }
+
+    /**
+     * Sets the implementation to report to.
+     *
+     * @param spi
+     *            the implementation or null to stop recording.
+     */
+    public static void setMetricsSpi(final MetricsSpi spi) {
+        metricsImpl = null != spi ? spi : NO_OP;
+    }
+
+    /**
+     * Records nothing.
+     */
+    private static final class NoOpMetrics implements MetricsSpi {
+
+        public void recordOperation(String connector, String operation, long durationNanos,
+                boolean failed) {
+        }
+
+        public void recordStreamedObjects(String connector, String operation, long count) {
+        }
+
+        public void recordPoolWait(String pool, long durationNanos) {
+        }
+
+        public void recordPoolCreate(String pool, long durationNanos, boolean failed) {
+        }
+
+        public void recordPoolTestFailure(String pool) {
+        }
+
+        public void removePool(String pool) {
+        }
+    }
+}
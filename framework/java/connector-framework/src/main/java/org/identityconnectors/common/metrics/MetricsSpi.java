@@ -0,0 +1,102 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.common.metrics;
+
+/**
+ * Metrics 'Service Provider Interface'.
+ * <p/>
+ * The framework reports the operation latencies, the connector pool activity
+ * and the number of streamed objects to the implementation set in
+ * {@link Metrics}. The methods are called on the operation threads, so they
+ * must be thread safe and must not block.
+ *
+ * @since 1.4
+ */
+public interface MetricsSpi {
+
+    /**
+     * Records an API operation.
+     *
+     * @param connector
+     *            name of the connector.
+     * @param operation
+     *            simple name of the API operation.
+     * @param durationNanos
+     *            duration of the call.
+     * @param failed
+     *            true if the call threw an exception.
+     */
+    public void recordOperation(String connector, String operation, long durationNanos,
+            boolean failed);
+
+    /**
+     * Records the number of objects an API operation passed to the results
+     * handler.
+     *
+     * @param connector
+     *            name of the connector.
+     * @param operation
+     *            simple name of the API operation.
+     * @param count
+     *            number of objects.
+     */
+    public void recordStreamedObjects(String connector, String operation, long count);
+
+    /**
+     * Records the time a borrower waited for an object from the pool.
+     *
+     * @param pool
+     *            name of the pool.
+     * @param durationNanos
+     *            time spent in the pool, without the test of the object.
+     */
+    public void recordPoolWait(String pool, long durationNanos);
+
+    /**
+     * Records the creation of a new pooled object.
+     *
+     * @param pool
+     *            name of the pool.
+     * @param durationNanos
+     *            time to make the object.
+     * @param failed
+     *            true if the object could not be made.
+     */
+    public void recordPoolCreate(String pool, long durationNanos, boolean failed);
+
+    /**
+     * Records a pooled object which failed the test and was disposed.
+     *
+     * @param pool
+     *            name of the pool.
+     */
+    public void recordPoolTestFailure(String pool);
+
+    /**
+     * Drops the metrics of a pool which has been disposed.
+     *
+     * @param pool
+     *            name of the pool.
+     */
+    public void removePool(String pool);
+}
@@ -40,6 +40,10 @@ public final class ObjectPoolConfiguration {
         this.setMaxWait(other.getMaxWait());
         this.setMinEvictableIdleTimeMillis(other.getMinEvictableIdleTimeMillis());
         this.setMinIdle(other.getMinIdle());
+        this.setTimeBetweenEvictionRunsMillis(other.getTimeBetweenEvictionRunsMillis());
+        this.setTestWhileIdle(other.isTestWhileIdle());
+        this.setTestOnBorrowIdleTimeMillis(other.getTestOnBorrowIdleTimeMillis());
+        this.setLifo(other.isLifo());
     }
 
     /**
@@ -69,6 +73,28 @@ public final class ObjectPoolConfiguration {
      */
     private int minIdle = 1;
 
+    /**
+     * Time between two runs of the background evictor. Zero means idle
+     * objects are only evicted when an object is borrowed or returned.
+     */
+    private long timeBetweenEvictionRunsMillis = 0;
+
+    /**
+     * Test the idle objects when the background evictor runs.
+     */
+    private boolean testWhileIdle = false;
+
+    /**
+     * Objects idle for less than this time are not tested when borrowed. Zero
+     * means test on every borrow.
+     */
+    private long testOnBorrowIdleTimeMillis = 0;
+
+    /**
+     * Borrow the most recently returned idle object first.
+     */
+    private boolean lifo = false;
+
     /**
      * Get the set number of maximum objects (idle+active).
      */
@@ -144,6 +170,68 @@ public final class ObjectPoolConfiguration {
         this.minIdle = minIdle;
     }
 
+    /**
+     * Time between two runs of the background evictor. Zero means idle
+     * objects are only evicted when an object is borrowed or returned.
+     */
+    public long getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * Time between two runs of the background evictor. Zero means idle
+     * objects are only evicted when an object is borrowed or returned.
+     */
+    public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * Test the idle objects when the background evictor runs.
+     */
+    public boolean isTestWhileIdle() {
+        return testWhileIdle;
+    }
+
+    /**
+     * Test the idle objects when the background evictor runs.
+     */
+    public void setTestWhileIdle(boolean testWhileIdle) {
+        this.testWhileIdle = testWhileIdle;
+    }
+
+    /**
+     * Objects idle for less than this time are not tested when borrowed. Zero
+     * means test on every borrow.
+     */
+    public long getTestOnBorrowIdleTimeMillis() {
+        return testOnBorrowIdleTimeMillis;
+    }
+
+    /**
+     * Objects idle for less than this time are not tested when borrowed. Zero
+     * means test on every borrow.
+     */
+    public void setTestOnBorrowIdleTimeMillis(long testOnBorrowIdleTimeMillis) {
+        this.testOnBorrowIdleTimeMillis = testOnBorrowIdleTimeMillis;
+    }
+
+    /**
+     * Borrow the most recently returned idle object first. The default is to
+     * borrow the object which has been idle for the longest.
+     */
+    public boolean isLifo() {
+        return lifo;
+    }
+
+    /**
+     * Borrow the most recently returned idle object first. The default is to
+     * borrow the object which has been idle for the longest.
+     */
+    public void setLifo(boolean lifo) {
+        this.lifo = lifo;
+    }
+
     public void validate() {
         if (minIdle < 0) {
             throw new IllegalArgumentException("Min idle is less than zero.");
@@ -160,6 +248,13 @@ public final class ObjectPoolConfiguration {
         if (minEvictableIdleTimeMillis < 0) {
             throw new IllegalArgumentException("Min evictable idle time millis less than zero.");
         }
+        if (timeBetweenEvictionRunsMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Time between eviction runs millis less than zero.");
+        }
+        if (testOnBorrowIdleTimeMillis < 0) {
+            throw new IllegalArgumentException("Test on borrow idle time millis less than zero.");
+        }
         if (minIdle > maxIdle) {
             throw new IllegalArgumentException("Min idle is greater than max idle.");
         }
@@ -171,7 +266,9 @@ public final class ObjectPoolConfiguration {
     @Override
     public int hashCode() {
         return (int) (getMaxObjects() + getMaxIdle() + getMaxWait()
-                + getMinEvictableIdleTimeMillis() + getMinIdle());
+                + getMinEvictableIdleTimeMillis() + getMinIdle()
+                + getTimeBetweenEvictionRunsMillis() + getTestOnBorrowIdleTimeMillis()
+                + (isTestWhileIdle() ? 1 : 0) + (isLifo() ? 2 : 0));
     }
 
     @Override
@@ -194,6 +291,18 @@ public final class ObjectPoolConfiguration {
             if (getMinIdle() != other.getMinIdle()) {
                 return false;
             }
+            if (getTimeBetweenEvictionRunsMillis() != other.getTimeBetweenEvictionRunsMillis()) {
+                return false;
+            }
+            if (isTestWhileIdle() != other.isTestWhileIdle()) {
+                return false;
+            }
+            if (getTestOnBorrowIdleTimeMillis() != other.getTestOnBorrowIdleTimeMillis()) {
+                return false;
+            }
+            if (isLifo() != other.isLifo()) {
+                return false;
+            }
             return true;
         }
         return false;
@@ -208,6 +317,10 @@ public final class ObjectPoolConfiguration {
         bld.put("MaxWait", getMaxWait());
         bld.put("MinEvictableIdleTimeMillis", getMinEvictableIdleTimeMillis());
         bld.put("MinIdle", getMinIdle());
+        bld.put("TimeBetweenEvictionRunsMillis", getTimeBetweenEvictionRunsMillis());
+        bld.put("TestWhileIdle", isTestWhileIdle());
+        bld.put("TestOnBorrowIdleTimeMillis", getTestOnBorrowIdleTimeMillis());
+        bld.put("Lifo", isLifo());
         return bld.toString();
     }
 }
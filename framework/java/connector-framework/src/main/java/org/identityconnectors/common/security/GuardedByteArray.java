@@ -22,6 +22,11 @@
  */
 package org.identityconnectors.common.security;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Secure byte array implementation that solves the problems associated with
  * keeping confidential data as <code>byte[]</code>. That is, anything
@@ -64,7 +69,23 @@ public final class GuardedByteArray {
         public void access(byte[] clearBytes);
     }
 
-    private static Encryptor encryptor;
+    /**
+     * Callback interface to access the clear text of several byte arrays at once.
+     */
+    public interface BulkAccessor {
+
+        /**
+         * This method will be called with the clear text of the byte arrays, in
+         * the order they were given.
+         *
+         * After the call all the arrays will be automatically zeroed out.
+         *
+         * @param clearBytes
+         */
+        public void access(List<byte[]> clearBytes);
+    }
+
+    private static volatile Encryptor encryptor;
 
     private boolean readOnly;
     private boolean disposed;
@@ -90,6 +111,14 @@ public final class GuardedByteArray {
         encryptBytes(clearBytes);
     }
 
+    /**
+     * Creates a copy from the encrypted bytes of another instance.
+     */
+    private GuardedByteArray(byte[] encryptedBytes, String base64SHA1Hash) {
+        this.encryptedBytes = encryptedBytes;
+        this.base64SHA1Hash = base64SHA1Hash;
+    }
+
     /**
      * Provides access to the clear-text value of the byte array in a controlled
      * fashion.
@@ -118,6 +147,37 @@ public final class GuardedByteArray {
         }
     }
 
+    /**
+     * Provides access to the clear-text values of several byte arrays in one
+     * pass.
+     * <p>
+     * The clear-text bytes will only be available for the duration of the call
+     * and automatically zeroed out following the call.
+     *
+     * @param byteArrays
+     *            The byte arrays to decrypt.
+     * @param accessor
+     *            Accessor callback.
+     * @throws IllegalStateException
+     *             If one of the byte arrays has been disposed
+     */
+    public static void accessAll(Collection<GuardedByteArray> byteArrays,
+            BulkAccessor accessor) {
+        final Encryptor encryptor = getEncryptor();
+        final List<byte[]> clearBytes = new ArrayList<byte[]>(byteArrays.size());
+        try {
+            for (GuardedByteArray byteArray : byteArrays) {
+                byteArray.checkNotDisposed();
+                clearBytes.add(encryptor.decrypt(byteArray.encryptedBytes));
+            }
+            accessor.access(Collections.unmodifiableList(clearBytes));
+        } finally {
+            for (byte[] bytes : clearBytes) {
+                SecurityUtil.clear(bytes);
+            }
+        }
+    }
+
     /**
      * Appends a single clear-text byte to the secure byte array.
      *
@@ -192,9 +252,7 @@ public final class GuardedByteArray {
         checkNotDisposed();
         byte[] encryptedBytes2 = new byte[encryptedBytes.length];
         System.arraycopy(encryptedBytes, 0, encryptedBytes2, 0, encryptedBytes.length);
-        GuardedByteArray rv = new GuardedByteArray();
-        rv.encryptedBytes = encryptedBytes2;
-        return rv;
+        return new GuardedByteArray(encryptedBytes2, base64SHA1Hash);
     }
 
     /**
@@ -224,11 +282,18 @@ public final class GuardedByteArray {
         }
     }
 
-    private static synchronized Encryptor getEncryptor() {
-        if (encryptor == null) {
-            encryptor = EncryptorFactory.getInstance().newRandomEncryptor();
+    private static Encryptor getEncryptor() {
+        Encryptor rv = encryptor;
+        if (rv == null) {
+            synchronized (GuardedByteArray.class) {
+                rv = encryptor;
+                if (rv == null) {
+                    rv = EncryptorFactory.getInstance().newRandomEncryptor();
+                    encryptor = rv;
+                }
+            }
         }
-        return encryptor;
+        return rv;
     }
 
     static synchronized void setEncryptor(Encryptor encryptor) {
@@ -22,6 +22,11 @@
  */
 package org.identityconnectors.common.security;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Secure string implementation that solves the problems associated with keeping
  * passwords as <code>java.lang.String</code>. That is, anything represented as
@@ -64,7 +69,23 @@ public final class GuardedString {
         public void access(char[] clearChars);
     }
 
-    static Encryptor encryptor;
+    /**
+     * Callback interface to access the clear text of several strings at once.
+     */
+    public interface BulkAccessor {
+
+        /**
+         * This method will be called with the clear text of the strings, in
+         * the order they were given.
+         *
+         * After the call all the arrays will be automatically zeroed out.
+         *
+         * @param clearChars
+         */
+        public void access(List<char[]> clearChars);
+    }
+
+    static volatile Encryptor encryptor;
 
     private boolean readOnly;
     private boolean disposed;
@@ -91,6 +112,14 @@ public final class GuardedString {
         encryptChars(clearChars);
     }
 
+    /**
+     * Creates a copy from the encrypted bytes of another instance.
+     */
+    private GuardedString(byte[] encryptedBytes, String base64SHA1Hash) {
+        this.encryptedBytes = encryptedBytes;
+        this.base64SHA1Hash = base64SHA1Hash;
+    }
+
     /**
      * Provides access to the clear-text value of the string in a controlled
      * fashion.
@@ -119,6 +148,42 @@ public final class GuardedString {
         }
     }
 
+    /**
+     * Provides access to the clear-text values of several strings in one pass,
+     * for example all the passwords of a batch.
+     * <p>
+     * The clear-text characters will only be available for the duration of the
+     * call and automatically zeroed out following the call.
+     *
+     * @param strings
+     *            The strings to decrypt.
+     * @param accessor
+     *            Accessor callback.
+     * @throws IllegalStateException
+     *             If one of the strings has been disposed
+     */
+    public static void accessAll(Collection<GuardedString> strings, BulkAccessor accessor) {
+        final Encryptor encryptor = getEncryptor();
+        final List<char[]> clearChars = new ArrayList<char[]>(strings.size());
+        try {
+            for (GuardedString string : strings) {
+                string.checkNotDisposed();
+                byte[] clearBytes = null;
+                try {
+                    clearBytes = encryptor.decrypt(string.encryptedBytes);
+                    clearChars.add(SecurityUtil.bytesToChars(clearBytes));
+                } finally {
+                    SecurityUtil.clear(clearBytes);
+                }
+            }
+            accessor.access(Collections.unmodifiableList(clearChars));
+        } finally {
+            for (char[] chars : clearChars) {
+                SecurityUtil.clear(chars);
+            }
+        }
+    }
+
     /**
      * Appends a single clear-text character to the secure string.
      *
@@ -193,9 +258,7 @@ public final class GuardedString {
         checkNotDisposed();
         byte[] encryptedBytes2 = new byte[encryptedBytes.length];
         System.arraycopy(encryptedBytes, 0, encryptedBytes2, 0, encryptedBytes.length);
-        GuardedString rv = new GuardedString();
-        rv.encryptedBytes = encryptedBytes2;
-        return rv;
+        return new GuardedString(encryptedBytes2, base64SHA1Hash);
     }
 
     /**
@@ -245,11 +308,18 @@ public final class GuardedString {
         }
     }
 
-    private static synchronized Encryptor getEncryptor() {
-        if (encryptor == null) {
-            encryptor = EncryptorFactory.getInstance().newRandomEncryptor();
+    private static Encryptor getEncryptor() {
+        Encryptor rv = encryptor;
+        if (rv == null) {
+            synchronized (GuardedString.class) {
+                rv = encryptor;
+                if (rv == null) {
+                    rv = EncryptorFactory.getInstance().newRandomEncryptor();
+                    encryptor = rv;
+                }
+            }
         }
-        return encryptor;
+        return rv;
     }
 
     static synchronized void setEncryptor(Encryptor encryptor) {
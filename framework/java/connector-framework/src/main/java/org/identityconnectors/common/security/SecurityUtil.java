@@ -22,7 +22,10 @@
  */
 package org.identityconnectors.common.security;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 import org.identityconnectors.common.Base64;
@@ -157,6 +160,55 @@ public final class SecurityUtil {
         return inputHash.equals(hash);
     }
 
+    /**
+     * Computes the hex encoded SHA-256 hash of the input.
+     *
+     * @param bytes
+     *            The input bytes.
+     * @return the hash as 64 lower case hex digits.
+     * @since 1.4
+     */
+    public static String computeHexSHA256Hash(byte[] bytes) {
+        return toHex(newSHA256Digest().digest(bytes));
+    }
+
+    /**
+     * Computes the hex encoded SHA-256 hash of the content of the stream. The
+     * stream is read to its end but not closed.
+     *
+     * @param in
+     *            The input stream.
+     * @return the hash as 64 lower case hex digits.
+     * @throws IOException
+     *             if the stream cannot be read.
+     * @since 1.4
+     */
+    public static String computeHexSHA256Hash(InputStream in) throws IOException {
+        MessageDigest hasher = newSHA256Digest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            hasher.update(buffer, 0, read);
+        }
+        return toHex(hasher.digest());
+    }
+
+    private static MessageDigest newSHA256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder rv = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            rv.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return rv.toString();
+    }
+
     /**
      * Decrypts the value of a {@link GuardedString}.
      *
@@ -62,6 +62,15 @@ public class ResultsHandlerConfiguration {
      * in the handler chain.
      */
     boolean enableAttributesToGetSearchResultsHandler = true;
+    /**
+     * Maximum number of queries run concurrently when the filter translator
+     * of a poolable connector returns more than one query. Each concurrent
+     * query runs on its own connector borrowed from the pool. The default
+     * <code>1</code> runs the queries one after the other.
+     *
+     * @since 1.4
+     */
+    int maxParallelQueries = 1;
 
     /**
      * default empty constructor.
@@ -81,6 +90,7 @@ public class ResultsHandlerConfiguration {
         this.enableCaseInsensitiveFilter = source.isEnableCaseInsensitiveFilter();
         this.enableAttributesToGetSearchResultsHandler =
                 source.isEnableAttributesToGetSearchResultsHandler();
+        this.maxParallelQueries = source.getMaxParallelQueries();
     }
 
     public boolean isEnableAttributesToGetSearchResultsHandler() {
@@ -116,6 +126,17 @@ public class ResultsHandlerConfiguration {
         this.enableNormalizingResultsHandler = enableNormalizingResultsHandler;
     }
 
+    public int getMaxParallelQueries() {
+        return maxParallelQueries;
+    }
+
+    public void setMaxParallelQueries(int maxParallelQueries) {
+        if (maxParallelQueries < 1) {
+            throw new IllegalArgumentException("maxParallelQueries must be at least 1");
+        }
+        this.maxParallelQueries = maxParallelQueries;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -137,6 +158,9 @@ public class ResultsHandlerConfiguration {
         if (this.enableAttributesToGetSearchResultsHandler != other.enableAttributesToGetSearchResultsHandler) {
             return false;
         }
+        if (this.maxParallelQueries != other.maxParallelQueries) {
+            return false;
+        }
         return true;
     }
 
@@ -147,6 +171,7 @@ public class ResultsHandlerConfiguration {
         hash = 79 * hash + (this.enableFilteredResultsHandler ? 1 : 0);
         hash = 79 * hash + (this.enableCaseInsensitiveFilter ? 1 : 0);
         hash = 79 * hash + (this.enableAttributesToGetSearchResultsHandler ? 1 : 0);
+        hash = 79 * hash + this.maxParallelQueries;
         return hash;
     }
 
@@ -156,6 +181,7 @@ public class ResultsHandlerConfiguration {
                 + enableNormalizingResultsHandler + "\nenableFilteredResultsHandler="
                 + enableFilteredResultsHandler + "\nenableCaseInsensitiveFilter="
                 + enableCaseInsensitiveFilter + "\nenableAttributesToGetSearchResultsHandler="
-                + enableAttributesToGetSearchResultsHandler + '}';
+                + enableAttributesToGetSearchResultsHandler + "\nmaxParallelQueries="
+                + maxParallelQueries + '}';
     }
 }
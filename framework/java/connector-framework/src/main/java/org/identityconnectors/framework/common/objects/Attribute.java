@@ -25,10 +25,12 @@ package org.identityconnectors.framework.common.objects;
 import static org.identityconnectors.framework.common.objects.NameUtil.nameHashCode;
 import static org.identityconnectors.framework.common.objects.NameUtil.namesEqual;
 
+import java.util.AbstractList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.StringUtil;
@@ -93,9 +95,12 @@ public class Attribute {
     private final String name;
 
     /**
-     * Values of the {@link Attribute}.
+     * Values of the {@link Attribute}, kept compact since large result sets
+     * hold many of them: {@code null} for no value list, the value itself for
+     * a single non-null value that is not an {@code Object[]}, otherwise an
+     * {@code Object[]} of all values.
      */
-    private final List<Object> value;
+    private final Object value;
 
     /**
      * Create an attribute.
@@ -116,9 +121,16 @@ public class Attribute {
             }
         }
         // make this case insensitive
-        this.name = name;
+        this.name = NameUtil.intern(name);
         // copy to prevent corruption..
-        this.value = (value == null) ? null : CollectionUtil.newReadOnlyList(value);
+        if (value == null) {
+            this.value = null;
+        } else if (value.size() == 1 && value.get(0) != null
+                && !(value.get(0) instanceof Object[])) {
+            this.value = value.get(0);
+        } else {
+            this.value = value.toArray();
+        }
     }
 
     public String getName() {
@@ -126,7 +138,12 @@ public class Attribute {
     }
 
     public List<Object> getValue() {
-        return (this.value == null) ? null : Collections.unmodifiableList(this.value);
+        if (value == null) {
+            return null;
+        } else if (value instanceof Object[]) {
+            return new ReadOnlyValues((Object[]) value);
+        }
+        return Collections.singletonList(value);
     }
 
     /**
@@ -182,9 +199,31 @@ public class Attribute {
             return false;
         }
 
-        if (!CollectionUtil.equals(value, other.value)) {
+        if (!CollectionUtil.equals(getValue(), other.getValue())) {
             return false;
         }
         return true;
     }
+
+    /**
+     * Read-only list view over the values array, which is never exposed.
+     */
+    private static final class ReadOnlyValues extends AbstractList<Object> implements
+            RandomAccess {
+        private final Object[] values;
+
+        ReadOnlyValues(final Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
 }
@@ -23,8 +23,14 @@
  */
 package org.identityconnectors.framework.common.objects;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.identityconnectors.common.CollectionUtil;
@@ -38,8 +44,24 @@ import org.identityconnectors.common.CollectionUtil;
  * construct instances of ConnectorObject.
  */
 public final class ConnectorObject {
+
+    private static final Comparator<Attribute> BY_NAME = new Comparator<Attribute>() {
+        public int compare(Attribute a1, Attribute a2) {
+            return String.CASE_INSENSITIVE_ORDER.compare(a1.getName(), a2.getName());
+        }
+    };
+
     final ObjectClass objectClass;
-    final Map<String, Attribute> attributeMap;
+
+    /**
+     * One attribute per name, sorted by case insensitive name so lookups can
+     * use a binary search without the overhead of a map.
+     */
+    private final Attribute[] attributes;
+
+    private final Attribute uid;
+
+    private final Attribute name;
 
     /**
      * Public only for serialization; please use {@link ConnectorObjectBuilder}.
@@ -48,6 +70,10 @@ public final class ConnectorObject {
      *             if {@link Name} or {@link Uid} is missing from the set.
      */
     public ConnectorObject(ObjectClass objectClass, Set<? extends Attribute> set) {
+        this(objectClass, (Collection<? extends Attribute>) set);
+    }
+
+    ConnectorObject(ObjectClass objectClass, Collection<? extends Attribute> set) {
         if (objectClass == null) {
             throw new IllegalArgumentException("ObjectClass may not be null");
         }
@@ -58,26 +84,57 @@ public final class ConnectorObject {
             throw new IllegalArgumentException("The set can not be null or empty.");
         }
         this.objectClass = objectClass;
-        // create an easy look map..
-        this.attributeMap = AttributeUtil.toMap(set);
+        // the last attribute of a name wins, as with a case insensitive map
+        Attribute[] sorted = set.toArray(new Attribute[set.size()]);
+        Arrays.sort(sorted, BY_NAME);
+        int size = 0;
+        for (Attribute attribute : sorted) {
+            if (size > 0 && BY_NAME.compare(sorted[size - 1], attribute) == 0) {
+                sorted[size - 1] = attribute;
+            } else {
+                sorted[size++] = attribute;
+            }
+        }
+        this.attributes = size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+        this.uid = find(Uid.NAME);
+        this.name = find(Name.NAME);
         // make sure the Uid was added..
-        if (!this.attributeMap.containsKey(Uid.NAME)) {
+        if (this.uid == null) {
             throw new IllegalArgumentException("The Attribute set must contain a 'Uid'.");
         }
         // make sure the Name attribute was added..
-        if (!this.attributeMap.containsKey(Name.NAME)) {
+        if (this.name == null) {
             throw new IllegalArgumentException("The Attribute set must contain a 'Name'.");
         }
     }
 
+    private Attribute find(String attributeName) {
+        int low = 0;
+        int high = attributes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp =
+                    String.CASE_INSENSITIVE_ORDER.compare(attributes[mid].getName(),
+                            attributeName);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return attributes[mid];
+            }
+        }
+        return null;
+    }
+
     /**
      * Get the set of attributes that represent this object.
      *
      * This includes the {@link Uid} and all {@link OperationalAttributes}.
      */
     public Set<Attribute> getAttributes() {
-        // create a copy/unmodifiable set..
-        return CollectionUtil.newReadOnlySet(this.attributeMap.values());
+        // read-only view, nothing is copied
+        return new AttributeSet();
     }
 
     /**
@@ -85,14 +142,18 @@ public final class ConnectorObject {
      */
     public Attribute getAttributeByName(String name) {
         // no need to clone since it has no setters
-        return this.attributeMap.get(name);
+        if (Uid.NAME.equals(name)) {
+            return uid;
+        } else if (Name.NAME.equals(name)) {
+            return this.name;
+        }
+        return name == null ? null : find(name);
     }
 
     /**
      * Get the native identifier for this object.
      */
     public Uid getUid() {
-        final Attribute uid = this.attributeMap.get(Uid.NAME);
         if (uid instanceof Uid) {
             return (Uid) uid;
         }
@@ -103,7 +164,6 @@ public final class ConnectorObject {
      * Gets the {@link Name} of the object.
      */
     public Name getName() {
-        final Attribute name = this.attributeMap.get(Name.NAME);
         if (name instanceof Name) {
             return (Name) name;
         }
@@ -145,4 +205,45 @@ public final class ConnectorObject {
         return map.toString();
     }
 
+    /**
+     * Unmodifiable set view of the attributes array.
+     */
+    private final class AttributeSet extends AbstractSet<Attribute> {
+
+        @Override
+        public Iterator<Attribute> iterator() {
+            return new Iterator<Attribute>() {
+                private int next = 0;
+
+                public boolean hasNext() {
+                    return next < attributes.length;
+                }
+
+                public Attribute next() {
+                    if (next >= attributes.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return attributes[next++];
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return attributes.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o instanceof Attribute) {
+                Attribute attribute = find(((Attribute) o).getName());
+                return attribute != null && attribute.equals(o);
+            }
+            return false;
+        }
+    }
 }
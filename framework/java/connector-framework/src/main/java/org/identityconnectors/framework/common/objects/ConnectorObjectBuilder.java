@@ -26,10 +26,8 @@ package org.identityconnectors.framework.common.objects;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 import org.identityconnectors.common.Assertions;
-import org.identityconnectors.common.CollectionUtil;
 
 /**
  * Builder class to create a {@link ConnectorObject}.
@@ -158,7 +156,6 @@ public final class ConnectorObjectBuilder {
         if (attributeMap.size() == 0) {
             throw new IllegalStateException("No attributes set!");
         }
-        Set<Attribute> attrs = CollectionUtil.newReadOnlySet(attributeMap.values());
-        return new ConnectorObject(objectClass, attrs);
+        return new ConnectorObject(objectClass, attributeMap.values());
     }
 }
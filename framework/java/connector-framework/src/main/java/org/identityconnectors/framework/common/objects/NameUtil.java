@@ -22,10 +22,22 @@
  */
 package org.identityconnectors.framework.common.objects;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.identityconnectors.common.StringUtil;
 
 final class NameUtil {
 
+    /**
+     * Upper bound of distinct names kept by {@link #intern(String)}, so
+     * arbitrary names cannot grow the cache without limit.
+     */
+    private static final int MAX_INTERNED_NAMES = 4096;
+
+    private static final ConcurrentMap<String, String> NAMES =
+            new ConcurrentHashMap<String, String>();
+
     private NameUtil() {
     }
 
@@ -50,4 +62,23 @@ final class NameUtil {
     public static int nameHashCode(final String name) {
         return name.toUpperCase(LocaleCache.getInstance()).hashCode();
     }
+
+    /**
+     * Returns a shared instance equal to the given name. Attribute names
+     * repeat across every object of a result set, deserialized objects would
+     * otherwise hold a copy of each name per attribute.
+     */
+    public static String intern(final String name) {
+        String shared = NAMES.get(name);
+        if (shared == null) {
+            if (NAMES.size() >= MAX_INTERNED_NAMES) {
+                return name;
+            }
+            shared = NAMES.putIfAbsent(name, name);
+            if (shared == null) {
+                shared = name;
+            }
+        }
+        return shared;
+    }
 }
@@ -158,30 +158,14 @@ public final class OperationOptions {
      *            The options.
      */
     public OperationOptions(Map<String, Object> operationOptions) {
-        for (Object value : operationOptions.values()) {
-            FrameworkUtil.checkOperationOptionValue(value);
+        // deep copy in case anything is an array, immutable values are shared
+        Map<String, Object> operationOptionsCopy =
+                new HashMap<String, Object>(operationOptions.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Object> entry : operationOptions.entrySet()) {
+            FrameworkUtil.checkOperationOptionValue(entry.getValue());
+            operationOptionsCopy.put(entry.getKey(), SerializerUtil.copyObject(entry.getValue()));
         }
-        // clone options to do a deep copy in case anything
-        // is an array
-        @SuppressWarnings("unchecked")
-        Map<String, Object> operationOptionsClone =
-                (Map<String, Object>) SerializerUtil.cloneObject(operationOptions);
-        this.operationOptions = CollectionUtil.asReadOnlyMap(operationOptionsClone);
-    }
-
-    // NOTE: this method makes a heavy assumption that in OpenICF only arrays
-    // occur as mutable values in operation options, and that there is a single
-    // level of array/nesting.
-    // Really would be better if OpenICF switched to List and not array
-    // To more easily return immutable views
-    private Map<String, Object> copyMutables(Map<String, Object> operationOptions) {
-        Map<String, Object> operationOptionsCopy = new HashMap<String, Object>(operationOptions);
-        for (Map.Entry<String, Object> entry : operationOptionsCopy.entrySet()) {
-            if (entry.getValue() instanceof Object[]) {
-                entry.setValue(((Object[]) entry.getValue()).clone());
-            }
-        }
-        return operationOptionsCopy;
+        this.operationOptions = CollectionUtil.asReadOnlyMap(operationOptionsCopy);
     }
 
     /**
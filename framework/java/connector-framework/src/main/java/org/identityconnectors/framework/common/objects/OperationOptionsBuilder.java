@@ -37,7 +37,13 @@ import org.identityconnectors.framework.common.serializer.SerializerUtil;
  * Builder for {@link OperationOptions}.
  */
 public final class OperationOptionsBuilder {
-    private final Map<String, Object> options;
+    /**
+     * The options this builder was created from, returned as is by
+     * {@link #build()} until the first change.
+     */
+    private OperationOptions source;
+
+    private Map<String, Object> options;
 
     /**
      * Create a builder with an empty set of options.
@@ -54,12 +60,22 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder(OperationOptions options) {
         Assertions.nullCheck(options, "options");
-        // clone options to do a deep copy in case anything
-        // is an array
-        @SuppressWarnings("unchecked")
-        Map<String, Object> operationOptionsClone =
-                (Map<String, Object>) SerializerUtil.cloneObject(options.getOptions());
-        this.options = operationOptionsClone;
+        // OperationOptions is immutable, copy on the first write only
+        this.source = options;
+    }
+
+    private Map<String, Object> mutableOptions() {
+        if (source != null) {
+            // the source already holds private copies, only arrays and
+            // collections have to be copied again to stay isolated
+            Map<String, Object> sourceOptions = source.getOptions();
+            options = new HashMap<String, Object>(sourceOptions.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Object> entry : sourceOptions.entrySet()) {
+                options.put(entry.getKey(), SerializerUtil.copyObject(entry.getValue()));
+            }
+            source = null;
+        }
+        return options;
     }
 
     /**
@@ -77,7 +93,7 @@ public final class OperationOptionsBuilder {
         // don't validate value here - we do that in
         // the constructor of OperationOptions - that's
         // really the only place we can truly enforce this
-        options.put(name, value);
+        mutableOptions().put(name, value);
         return this;
     }
 
@@ -92,7 +108,7 @@ public final class OperationOptionsBuilder {
         // don't validate value here - we do that in
         // the constructor of OperationOptions - that's
         // really the only place we can truly enforce this
-        options.put(OperationOptions.OP_ATTRIBUTES_TO_GET, attrNames);
+        mutableOptions().put(OperationOptions.OP_ATTRIBUTES_TO_GET, attrNames);
         return this;
     }
 
@@ -109,7 +125,7 @@ public final class OperationOptionsBuilder {
         // really the only place we can truly enforce this
         String[] attrs = new String[attrNames.size()];
         attrs = attrNames.toArray(attrs);
-        options.put(OperationOptions.OP_ATTRIBUTES_TO_GET, attrs);
+        mutableOptions().put(OperationOptions.OP_ATTRIBUTES_TO_GET, attrs);
         return this;
     }
 
@@ -118,7 +134,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setRunWithPassword(GuardedString password) {
         Assertions.nullCheck(password, "password");
-        options.put(OperationOptions.OP_RUN_WITH_PASSWORD, password);
+        mutableOptions().put(OperationOptions.OP_RUN_WITH_PASSWORD, password);
         return this;
     }
 
@@ -127,7 +143,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setRunAsUser(String user) {
         Assertions.nullCheck(user, "user");
-        options.put(OperationOptions.OP_RUN_AS_USER, user);
+        mutableOptions().put(OperationOptions.OP_RUN_AS_USER, user);
         return this;
     }
 
@@ -140,7 +156,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setScope(String scope) {
         Assertions.nullCheck(scope, "scope");
-        options.put(OperationOptions.OP_SCOPE, scope);
+        mutableOptions().put(OperationOptions.OP_SCOPE, scope);
         return this;
     }
 
@@ -153,7 +169,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setContainer(QualifiedUid container) {
         Assertions.nullCheck(container, "container");
-        options.put(OperationOptions.OP_CONTAINER, container);
+        mutableOptions().put(OperationOptions.OP_CONTAINER, container);
         return this;
     }
 
@@ -168,7 +184,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setPagedResultsCookie(String pagedResultsCookie) {
         Assertions.nullCheck(pagedResultsCookie, "pagedResultsCookie");
-        options.put(OperationOptions.OP_PAGED_RESULTS_COOKIE, pagedResultsCookie);
+        mutableOptions().put(OperationOptions.OP_PAGED_RESULTS_COOKIE, pagedResultsCookie);
         return this;
     }
 
@@ -183,7 +199,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setPagedResultsOffset(Integer pagedResultsOffset) {
         Assertions.nullCheck(pagedResultsOffset, "pagedResultsOffset");
-        options.put(OperationOptions.OP_PAGED_RESULTS_OFFSET, pagedResultsOffset);
+        mutableOptions().put(OperationOptions.OP_PAGED_RESULTS_OFFSET, pagedResultsOffset);
         return this;
     }
 
@@ -197,7 +213,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setPageSize(Integer pageSize) {
         Assertions.nullCheck(pageSize, "pageSize");
-        options.put(OperationOptions.OP_PAGE_SIZE, pageSize);
+        mutableOptions().put(OperationOptions.OP_PAGE_SIZE, pageSize);
         return this;
     }
 
@@ -211,7 +227,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setSortKeys(List<SortKey> sortKeys) {
         Assertions.nullCheck(sortKeys, "sortKeys");
-        options.put(OperationOptions.OP_SORT_KEYS, sortKeys.toArray(new SortKey[sortKeys.size()]));
+        mutableOptions().put(OperationOptions.OP_SORT_KEYS, sortKeys.toArray(new SortKey[sortKeys.size()]));
         return this;
     }
 
@@ -225,7 +241,7 @@ public final class OperationOptionsBuilder {
      */
     public OperationOptionsBuilder setSortKeys(SortKey... sortKeys) {
         Assertions.nullCheck(sortKeys, "sortKeys");
-        options.put(OperationOptions.OP_SORT_KEYS, sortKeys);
+        mutableOptions().put(OperationOptions.OP_SORT_KEYS, sortKeys);
         return this;
     }
 
@@ -237,7 +253,7 @@ public final class OperationOptionsBuilder {
     public Map<String, Object> getOptions() {
         // might as well be mutable since it's the builder and
         // we don't want to deep copy anyway
-        return options;
+        return mutableOptions();
     }
 
     /**
@@ -246,6 +262,9 @@ public final class OperationOptionsBuilder {
      * @return The newly-created <code>OperationOptions</code>
      */
     public OperationOptions build() {
+        if (source != null) {
+            return source;
+        }
         return new OperationOptions(options);
     }
 }
@@ -25,12 +25,36 @@ package org.identityconnectors.framework.common.serializer;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
 
 import org.identityconnectors.common.Base64;
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.script.Script;
+import org.identityconnectors.common.security.GuardedByteArray;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.AttributeInfo;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.QualifiedUid;
+import org.identityconnectors.framework.common.objects.SortKey;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.Uid;
 import org.xml.sax.InputSource;
 
 /**
@@ -38,6 +62,26 @@ import org.xml.sax.InputSource;
  */
 public final class SerializerUtil {
 
+    /**
+     * Serializable types whose instances cannot change once constructed and
+     * may therefore be shared rather than copied.
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES;
+
+    static {
+        Set<Class<?>> types = new HashSet<Class<?>>();
+        for (Class<?> type : new Class<?>[] { String.class, Boolean.class, Character.class,
+            Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+            BigInteger.class, BigDecimal.class, Class.class, File.class, URI.class,
+            Locale.class, Uid.class, Name.class, ObjectClass.class, QualifiedUid.class,
+            SortKey.class, Script.class,
+            // the enums the serializer has a handler for
+            AttributeInfo.Flags.class, SyncDeltaType.class }) {
+            types.add(type);
+        }
+        IMMUTABLE_TYPES = Collections.unmodifiableSet(types);
+    }
+
     private SerializerUtil() {
 
     }
@@ -160,4 +204,84 @@ public final class SerializerUtil {
         return deserializeBinaryObject(bytes);
     }
 
+    /**
+     * Returns a deep copy of the given object without going through the
+     * serializer for the common types.
+     * <p>
+     * Immutable values are shared, arrays and the {@link List}, {@link Set}
+     * and {@link Map} containers are copied structurally into the same
+     * concrete types the serializer would produce, and guarded values are
+     * copied with their own {@code copy()} method. Anything else is handed to
+     * {@link #cloneObject(Object)}, so unsupported types are still rejected
+     * the same way.
+     *
+     * @param object
+     *            The object, may be null.
+     * @return A copy of the object that shares no mutable state with it.
+     * @see ObjectSerializerFactory for a list of supported types
+     */
+    @SuppressWarnings("unchecked")
+    public static Object copyObject(Object object) {
+        if (object == null || IMMUTABLE_TYPES.contains(object.getClass())) {
+            return object;
+        }
+        if (object instanceof GuardedString) {
+            return ((GuardedString) object).copy();
+        }
+        if (object instanceof GuardedByteArray) {
+            return ((GuardedByteArray) object).copy();
+        }
+        if (object instanceof byte[]) {
+            return ((byte[]) object).clone();
+        }
+        if (object instanceof Object[]) {
+            Object[] array = (Object[]) object;
+            Object[] copy =
+                    (Object[]) Array.newInstance(array.getClass().getComponentType(),
+                            array.length);
+            for (int i = 0; i < array.length; i++) {
+                copy[i] = copyObject(array[i]);
+            }
+            return copy;
+        }
+        if (object instanceof List) {
+            List<Object> list = (List<Object>) object;
+            List<Object> copy = new ArrayList<Object>(list.size());
+            for (Object value : list) {
+                copy.add(copyObject(value));
+            }
+            return copy;
+        }
+        if (object instanceof Set) {
+            if (CollectionUtil.isCaseInsensitiveSet((Set<?>) object)) {
+                // the elements are strings
+                Set<String> copy = CollectionUtil.newCaseInsensitiveSet();
+                copy.addAll((Set<String>) object);
+                return copy;
+            } else if (!(object instanceof SortedSet)) {
+                Set<Object> set = (Set<Object>) object;
+                Set<Object> copy = new HashSet<Object>(set.size() * 4 / 3 + 1);
+                for (Object value : set) {
+                    copy.add(copyObject(value));
+                }
+                return copy;
+            }
+        } else if (object instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) object;
+            Map<Object, Object> copy = null;
+            if (CollectionUtil.isCaseInsensitiveMap(map)) {
+                copy = (Map) CollectionUtil.newCaseInsensitiveMap();
+            } else if (!(map instanceof SortedMap)) {
+                copy = new HashMap<Object, Object>(map.size() * 4 / 3 + 1);
+            }
+            if (copy != null) {
+                for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                    copy.put(copyObject(entry.getKey()), copyObject(entry.getValue()));
+                }
+                return copy;
+            }
+        }
+        return cloneObject(object);
+    }
+
 }
@@ -27,6 +27,9 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -85,6 +88,39 @@ public class GuardedStringTests {
         assertEquals(decryptToString(str), "foo2");
     }
 
+    @Test
+    public void testCopyEquals() {
+        GuardedString str = new GuardedString("foo".toCharArray());
+        GuardedString copy = str.copy();
+        assertEquals(copy, str);
+        assertTrue(copy.verifyBase64SHA1Hash(SecurityUtil
+                .computeBase64SHA1Hash("foo".toCharArray())));
+    }
+
+    @Test
+    public void testAccessAll() {
+        final List<GuardedString> strings = new ArrayList<GuardedString>();
+        for (int i = 0; i < 10; i++) {
+            strings.add(new GuardedString(("pwd" + i).toCharArray()));
+        }
+        final List<char[]> seen = new ArrayList<char[]>();
+        GuardedString.accessAll(strings, new GuardedString.BulkAccessor() {
+            public void access(List<char[]> clearChars) {
+                assertEquals(clearChars.size(), 10);
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(new String(clearChars.get(i)), "pwd" + i);
+                }
+                seen.addAll(clearChars);
+            }
+        });
+        // cleared after the call
+        for (char[] chars : seen) {
+            for (char c : chars) {
+                assertEquals(c, (char) 0);
+            }
+        }
+    }
+
     @Test
     public void testDispose() {
         GuardedString str = new GuardedString("foo".toCharArray());
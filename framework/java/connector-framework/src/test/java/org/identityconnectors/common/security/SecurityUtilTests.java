@@ -0,0 +1,44 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.common.security;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+
+import org.testng.annotations.Test;
+
+public class SecurityUtilTests {
+
+    private static final String ABC_SHA256 =
+            "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    public void testComputeHexSHA256Hash() throws Exception {
+        final byte[] abc = "abc".getBytes("UTF-8");
+        assertEquals(SecurityUtil.computeHexSHA256Hash(abc), ABC_SHA256);
+        assertEquals(SecurityUtil.computeHexSHA256Hash(new ByteArrayInputStream(abc)), ABC_SHA256);
+        assertEquals(SecurityUtil.computeHexSHA256Hash(new byte[0]),
+                "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+    }
+}
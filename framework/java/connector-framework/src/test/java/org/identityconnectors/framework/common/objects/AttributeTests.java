@@ -26,9 +26,12 @@ import static org.identityconnectors.framework.common.objects.AttributeBuilder.b
 import static org.identityconnectors.framework.common.objects.LocaleTestUtil.resetLocaleCache;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -69,6 +72,21 @@ public class AttributeTests {
         assertFalse(build("test", 1, 2, 4).equals(build("test", 2, 4)));
     }
 
+    @Test
+    public void testValues() {
+        assertNull(build("test").getValue());
+        assertEquals(build("test", Collections.emptyList()).getValue(), Collections.emptyList());
+        assertEquals(build("test", "a").getValue(), Arrays.asList("a"));
+        assertEquals(build("test", (Object) null).getValue(), Arrays.asList((Object) null));
+        assertEquals(build("test", "a", null, "c").getValue(), Arrays.asList("a", null, "c"));
+        try {
+            build("test", "a", "b").getValue().set(0, "c");
+            assertTrue(false);
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testEqualsObservesLocale() {
         Locale defLocale = Locale.getDefault();
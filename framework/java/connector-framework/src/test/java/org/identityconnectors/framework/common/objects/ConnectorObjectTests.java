@@ -0,0 +1,78 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Evolveum. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.common.objects;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+public class ConnectorObjectTests {
+
+    @Test
+    public void testAttributeLookup() {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid("uid").setName("name");
+        builder.addAttribute("b", 2).addAttribute("a", 1).addAttribute("C", 3);
+        ConnectorObject object = builder.build();
+
+        assertEquals(object.getUid(), new Uid("uid"));
+        assertEquals(object.getName(), new Name("name"));
+        assertEquals(object.getAttributeByName("a"), AttributeBuilder.build("a", 1));
+        assertEquals(object.getAttributeByName("c"), AttributeBuilder.build("C", 3));
+        assertEquals(object.getAttributeByName("__uid__"), new Uid("uid"));
+        assertNull(object.getAttributeByName("d"));
+        assertNull(object.getAttributeByName(null));
+    }
+
+    @Test
+    public void testAttributes() {
+        Set<Attribute> attributes =
+                new HashSet<Attribute>(Arrays.asList(new Uid("uid"), new Name("name"),
+                        AttributeBuilder.build("a", 1), AttributeBuilder.build("b", 2)));
+        ConnectorObject object = new ConnectorObject(ObjectClass.ACCOUNT, attributes);
+
+        assertEquals(object.getAttributes(), attributes);
+        assertEquals(object.getAttributes().hashCode(), attributes.hashCode());
+        assertTrue(object.getAttributes().contains(AttributeBuilder.build("A", 1)));
+        assertFalse(object.getAttributes().contains(AttributeBuilder.build("a", 2)));
+        assertEquals(object, new ConnectorObjectBuilder().add(object).build());
+        try {
+            object.getAttributes().add(AttributeBuilder.build("c"));
+            assertTrue(false);
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingName() {
+        new ConnectorObjectBuilder().setUid("uid").build();
+    }
+}
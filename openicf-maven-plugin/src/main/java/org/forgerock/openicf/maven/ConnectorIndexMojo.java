@@ -0,0 +1,252 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+import org.identityconnectors.common.ReflectionUtil;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.ConnectorClass;
+
+/**
+ * Goal writes the index of the connector classes of the project to
+ * <code>META-INF/openicf/connectors</code> and the index of their message
+ * catalogs to <code>META-INF/openicf/messages</code>, the framework then
+ * loads only these classes and catalogs instead of scanning the whole bundle.
+ * <p/>
+ * The classes are loaded, not initialized, with the compile classpath of the
+ * project to find the ones with the {@link ConnectorClass} annotation. The
+ * catalogs are looked up in the classes of the project and the dependencies
+ * embedded into the bundle.
+ * <p/>
+ * To debug execute this command:
+ * {@code mvnDebug org.forgerock.maven.plugins:openicf-maven-plugin:connector-index}
+ */
+@Mojo(name = "connector-index", defaultPhase = LifecyclePhase.PROCESS_CLASSES,
+        requiresDependencyResolution = ResolutionScope.COMPILE)
+public class ConnectorIndexMojo extends AbstractMojo {
+
+    /**
+     * Path of the index of the connector classes in the bundle, see
+     * {@code LocalConnectorInfoManagerImpl.CONNECTOR_INDEX}.
+     */
+    static final String CONNECTOR_INDEX = "META-INF/openicf/connectors";
+
+    /**
+     * Path of the index of the message catalogs in the bundle, see
+     * {@code LocalConnectorInfoManagerImpl.MESSAGE_CATALOG_INDEX}.
+     */
+    static final String MESSAGE_CATALOG_INDEX = "META-INF/openicf/messages";
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final String CATALOG_SUFFIX = ".properties";
+
+    /**
+     * The directory of the compiled classes.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File outputDirectory;
+
+    /**
+     * The compile classpath of the project, the classes of the project
+     * included.
+     */
+    @Parameter(defaultValue = "${project.compileClasspathElements}", required = true,
+            readonly = true)
+    private List<String> classpathElements;
+
+    /**
+     * Flag whether to skip writing the index.
+     */
+    @Parameter(property = "openicf.index.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     * The Maven Project
+     */
+    @Component
+    private MavenProject project;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException {
+        if (skip || !outputDirectory.isDirectory()) {
+            return;
+        }
+        try {
+            ClassLoader loader = createClassLoader();
+            List<String> catalogCandidates = listCatalogCandidates();
+            Set<String> connectors = new TreeSet<String>();
+            Set<String> catalogs = new TreeSet<String>();
+            @SuppressWarnings("unchecked")
+            List<String> classFiles =
+                    FileUtils.getFileNames(outputDirectory, "**/*" + CLASS_SUFFIX, null, false);
+            for (String classFile : classFiles) {
+                String name = classFile.replace(File.separatorChar, '/');
+                String className =
+                        name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.');
+                Class<?> clazz;
+                try {
+                    clazz = Class.forName(className, false, loader);
+                } catch (ClassNotFoundException e) {
+                    getLog().debug("Unable to load class " + className, e);
+                    continue;
+                } catch (LinkageError e) {
+                    getLog().debug("Unable to load class " + className, e);
+                    continue;
+                }
+                ConnectorClass options = clazz.getAnnotation(ConnectorClass.class);
+                if (options == null) {
+                    continue;
+                }
+                if (!Connector.class.isAssignableFrom(clazz)) {
+                    throw new MojoExecutionException("Class " + className + " does not implement "
+                            + Connector.class.getName());
+                }
+                connectors.add(className);
+                for (String prefix : getCatalogPrefixes(clazz, options)) {
+                    for (String candidate : catalogCandidates) {
+                        if (candidate.startsWith(prefix)) {
+                            catalogs.add(candidate);
+                        }
+                    }
+                }
+            }
+            if (connectors.isEmpty()) {
+                getLog().info("No connector class found, no index written");
+                return;
+            }
+            writeIndex(CONNECTOR_INDEX, connectors);
+            writeIndex(MESSAGE_CATALOG_INDEX, catalogs);
+            getLog().info("Indexed connector classes " + connectors);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error writing the connector index", e);
+        }
+    }
+
+    private ClassLoader createClassLoader() throws MalformedURLException {
+        List<URL> urls = new ArrayList<URL>(classpathElements.size());
+        for (String element : classpathElements) {
+            urls.add(new File(element).toURI().toURL());
+        }
+        // the framework classes of the plugin, so the annotation matches
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), ConnectorClass.class
+                .getClassLoader());
+    }
+
+    /**
+     * Lists the properties files of the project and of the dependencies
+     * embedded into the bundle.
+     */
+    private List<String> listCatalogCandidates() throws IOException {
+        List<String> candidates = new ArrayList<String>();
+        @SuppressWarnings("unchecked")
+        List<String> files =
+                FileUtils.getFileNames(outputDirectory, "**/*" + CATALOG_SUFFIX, null, false);
+        for (String file : files) {
+            candidates.add(file.replace(File.separatorChar, '/'));
+        }
+        for (Artifact artifact : project.getArtifacts()) {
+            // the provided ones, as the framework, are not embedded
+            if (!Artifact.SCOPE_COMPILE.equals(artifact.getScope())
+                    && !Artifact.SCOPE_RUNTIME.equals(artifact.getScope())) {
+                continue;
+            }
+            File file = artifact.getFile();
+            if (file == null || !file.isFile()) {
+                continue;
+            }
+            ZipFile zip = new ZipFile(file);
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().endsWith(CATALOG_SUFFIX)) {
+                        candidates.add(entry.getName());
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the path prefixes of the message catalogs of a connector, as
+     * {@code LocalConnectorInfoManagerImpl} looks them up.
+     */
+    private static List<String> getCatalogPrefixes(Class<?> connector, ConnectorClass options) {
+        List<String> prefixes = new ArrayList<String>();
+        String[] paths = options.messageCatalogPaths();
+        if (paths == null || paths.length == 0) {
+            paths = new String[] { ReflectionUtil.getPackage(connector) + ".Messages" };
+        }
+        for (String path : paths) {
+            prefixes.add(path.replace('.', '/'));
+        }
+        return prefixes;
+    }
+
+    private void writeIndex(String path, Set<String> lines) throws IOException {
+        File index = new File(outputDirectory, path);
+        index.getParentFile().mkdirs();
+        Writer writer = WriterFactory.newWriter(index, "UTF-8");
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            IOUtil.close(writer);
+        }
+    }
+}